@@ -0,0 +1,109 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.miro.assignment.benchmark.BoardSeeder.Distribution;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.WidgetRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * This class benchmarks area queries (a viewport over the board) on the
+ * database with JMH, filtering the rows of the board in the JVM or in the
+ * database over the indexed edges. The rows read by each query are printed
+ * after every iteration.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="AreaQueryBenchmark -p boardSize=10000,100000,1000000"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AreaQueryBenchmark {
+    private static final int VIEWPORT_SIZE = 2_000;
+
+    @Param({ "100000" })
+    private int boardSize;
+
+    private ConfigurableApplicationContext context;
+    private WidgetRepository repository;
+    private final Random random = new Random(42);
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        repository = context.getBean(WidgetRepository.class);
+        BoardSeeder.seedDenseZStack(context.getBean(JdbcTemplate.class), boardSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printRows() {
+        System.out.printf("%n%d rows read/query%n", rows.getAndSet(0) / Math.max(1, queries.getAndSet(0)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Reads the whole board and filters it in the JVM
+     */
+    @Benchmark
+    public List<Widget> jvmFilter() {
+        final int[] viewport = viewport();
+        final List<Widget> widgets = repository.findAllByBoardId(DEFAULT_BOARD_ID);
+        rows.addAndGet(widgets.size());
+        return widgets.stream()
+                .filter(x -> x.getXCoordinate() >= viewport[0] && x.getYCoordinate() >= viewport[1]
+                        && x.getXCoordinate() + x.getWidth() <= viewport[0] + VIEWPORT_SIZE
+                        && x.getYCoordinate() + x.getHeight() <= viewport[1] + VIEWPORT_SIZE)
+                .sorted(Comparator.comparingInt(Widget::getZIndex)).collect(Collectors.toList());
+    }
+
+    /**
+     * Filters in the database, over the indexed edges
+     */
+    @Benchmark
+    public List<Widget> database() {
+        final int[] viewport = viewport();
+        return repository.findAllWithinArea(DEFAULT_BOARD_ID, viewport[0], viewport[1], VIEWPORT_SIZE,
+                VIEWPORT_SIZE, rows::addAndGet);
+    }
+
+    /**
+     * @return The X and Y coordinates of a random viewport within the plane
+     */
+    private int[] viewport() {
+        queries.incrementAndGet();
+        final int range = BoardSeeder.planeSize(Distribution.DENSE) - VIEWPORT_SIZE;
+        return new int[] { random.nextInt(range), random.nextInt(range) };
+    }
+}
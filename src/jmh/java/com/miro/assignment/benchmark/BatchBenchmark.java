@@ -0,0 +1,120 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetOperation;
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * This class benchmarks applying a list of operations (50% creates on taken
+ * z-indexes, 30% updates, 20% deletes) as one batch and as individual calls
+ * with JMH, on a board seeded again before each iteration, for every storage
+ * given as parameter.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="BatchBenchmark -p boardSize=5000 -p operations=1000"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+    @Param({ "5000" })
+    private int boardSize;
+
+    @Param({ "1000" })
+    private int operations;
+
+    @Param({ "jpa", "memory", "columnar" })
+    private String storage;
+
+    private ConfigurableApplicationContext context;
+    private WidgetService widgetService;
+    private WidgetRepository repository;
+    private List<WidgetOperation> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("widget.storage=" + storage);
+        widgetService = context.getBean(WidgetService.class);
+        repository = context.getBean(WidgetRepository.class);
+    }
+
+    /**
+     * Seeds the board again and generates the operations, each update and delete
+     * on a different widget
+     */
+    @Setup(Level.Iteration)
+    public void seed() {
+        final List<Long> ids = BoardSeeder.seedDenseZStack(repository, boardSize);
+        final Random random = new Random(operations);
+        Collections.shuffle(ids, random);
+
+        batch = new ArrayList<>(operations);
+        for (int i = 0; i < operations; i++) {
+            final int dice = i % 10;
+            final Widget widget = new Widget.Builder(random.nextInt(1000), random.nextInt(1000), 10, 10).build();
+            if (dice < 5) {
+                widget.setZIndex(random.nextInt(boardSize));
+                batch.add(WidgetOperation.create(widget));
+            } else if (dice < 8) {
+                batch.add(WidgetOperation.update(ids.get(i), widget));
+            } else {
+                batch.add(WidgetOperation.delete(ids.get(i)));
+            }
+        }
+        Collections.shuffle(batch, random);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Widget> batch() {
+        return widgetService.applyBatch(DEFAULT_BOARD_ID, batch);
+    }
+
+    @Benchmark
+    public void individualCalls() {
+        for (final WidgetOperation operation : batch) {
+            switch (operation.getType()) {
+            case CREATE:
+                widgetService.create(DEFAULT_BOARD_ID, operation.getWidget());
+                break;
+            case UPDATE:
+                widgetService.update(DEFAULT_BOARD_ID, operation.getId(), operation.getWidget());
+                break;
+            default:
+                widgetService.delete(DEFAULT_BOARD_ID, operation.getId());
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.miro.assignment.benchmark;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import com.miro.assignment.AssignmentApplication;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * This class starts the application for the JMH benchmarks, quietly and on a
+ * random port
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * Starts the application
+     *
+     * @param properties The properties of the benchmark (`name=value`), which
+     *                   take precedence over application.properties
+     * @return The application context
+     */
+    static ConfigurableApplicationContext start(final String... properties) {
+        final String[] arguments = Stream
+                .concat(Stream.of("server.port=0", "logging.level.root=WARN",
+                        "logging.level.com.miro.assignment=WARN"), Arrays.stream(properties))
+                .map(property -> "--" + property).toArray(String[]::new);
+        return new SpringApplicationBuilder(AssignmentApplication.class).run(arguments);
+    }
+}
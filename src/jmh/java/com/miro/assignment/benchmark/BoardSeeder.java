@@ -0,0 +1,151 @@
+package com.miro.assignment.benchmark;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.WidgetRepository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * This class provides helpers to seed large boards for benchmarks
+ */
+public final class BoardSeeder {
+    private static final int BATCH_SIZE = 1000;
+    private static final int COORDINATE_RANGE = 100_000;
+    private static final int MAX_SIDE = 500;
+    private static final int SPARSE_COORDINATE_RANGE = 10_000_000;
+    private static final int SPARSE_Z_INDEX_GAP = 100;
+    private static final int CLUSTERS = 8;
+    private static final int CLUSTER_SIZE = 5_000;
+
+    private BoardSeeder() {
+        // Do not instantiate
+    }
+
+    /**
+     * Replaces all widgets with a board of randomly placed widgets with dense
+     * z-indexes (0 to size - 1)
+     *
+     * @param jdbcTemplate The JDBC template to use
+     * @param size         The number of widgets
+     */
+    public static void seedDenseZStack(final JdbcTemplate jdbcTemplate, final int size) {
+        jdbcTemplate.update("DELETE FROM widget");
+
+        final Random random = new Random(size);
+        final Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int zIndex = 0; zIndex < size; zIndex++) {
+            rows.add(new Object[] { random.nextInt(COORDINATE_RANGE), random.nextInt(COORDINATE_RANGE), zIndex,
+                    1 + random.nextInt(MAX_SIDE), 1 + random.nextInt(MAX_SIDE), now });
+            if (rows.size() == BATCH_SIZE) {
+                insert(jdbcTemplate, rows);
+            }
+        }
+        insert(jdbcTemplate, rows);
+    }
+
+    /**
+     * Replaces all widgets in a repository with a board of randomly placed
+     * widgets with dense z-indexes (0 to size - 1). Works with any storage.
+     *
+     * @param repository The repository to use
+     * @param size       The number of widgets
+     * @return The ids of the new widgets
+     */
+    public static List<Long> seedDenseZStack(final WidgetRepository repository, final int size) {
+        return seed(repository, size, Distribution.DENSE);
+    }
+
+    /**
+     * Replaces all widgets in a repository with a board of the given
+     * distribution. Works with any storage.
+     *
+     * @param repository   The repository to use
+     * @param size         The number of widgets
+     * @param distribution The placement of the widgets
+     * @return The ids of the new widgets (in z-order)
+     */
+    public static List<Long> seed(final WidgetRepository repository, final int size,
+            final Distribution distribution) {
+        repository.deleteAll();
+
+        final Random random = new Random(size);
+        final int planeSize = planeSize(distribution);
+        final int[][] clusters = new int[distribution == Distribution.CLUSTERED ? CLUSTERS : 0][];
+        for (int i = 0; i < clusters.length; i++) {
+            clusters[i] = new int[] { random.nextInt(planeSize - CLUSTER_SIZE),
+                    random.nextInt(planeSize - CLUSTER_SIZE) };
+        }
+
+        final List<Widget> widgets = new ArrayList<>(size);
+        int zIndex = 0;
+        for (int i = 0; i < size; i++) {
+            final int xCoordinate;
+            final int yCoordinate;
+            if (distribution == Distribution.CLUSTERED) {
+                final int[] cluster = clusters[random.nextInt(CLUSTERS)];
+                xCoordinate = cluster[0] + random.nextInt(CLUSTER_SIZE);
+                yCoordinate = cluster[1] + random.nextInt(CLUSTER_SIZE);
+            } else {
+                xCoordinate = random.nextInt(planeSize);
+                yCoordinate = random.nextInt(planeSize);
+            }
+            widgets.add(new Widget.Builder(xCoordinate, yCoordinate, 1 + random.nextInt(MAX_SIDE),
+                    1 + random.nextInt(MAX_SIDE)).withZIndex(zIndex).build());
+            zIndex += distribution == Distribution.SPARSE ? 1 + random.nextInt(SPARSE_Z_INDEX_GAP) : 1;
+        }
+        final List<Long> ids = new ArrayList<>(size);
+        repository.saveAll(widgets).forEach(widget -> ids.add(widget.getId()));
+        return ids;
+    }
+
+    /**
+     * Gives the side of the square the widgets of a distribution are placed in
+     *
+     * @param distribution The distribution
+     * @return The side of the plane (from 0)
+     */
+    public static int planeSize(final Distribution distribution) {
+        return distribution == Distribution.SPARSE ? SPARSE_COORDINATE_RANGE : COORDINATE_RANGE;
+    }
+
+    /**
+     * The placement of the widgets of a seeded board
+     */
+    public enum Distribution {
+        /**
+         * Random coordinates, z-indexes 0 to size - 1 (every insert or move shifts)
+         */
+        DENSE,
+        /**
+         * Random coordinates on a plane 100 times wider, z-indexes with random gaps
+         * (inserts and moves rarely shift)
+         */
+        SPARSE,
+        /**
+         * A few small regions holding all widgets (viewports are empty or crowded),
+         * z-indexes 0 to size - 1
+         */
+        CLUSTERED
+    }
+
+    /**
+     * Inserts and clears a batch of rows
+     *
+     * @param jdbcTemplate The JDBC template to use
+     * @param rows         The rows to insert
+     */
+    private static void insert(final JdbcTemplate jdbcTemplate, final List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO widget (x_coordinate, y_coordinate, z_index, width, height,"
+                    + " last_modified) VALUES (?, ?, ?, ?, ?, ?)", rows);
+            rows.clear();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.miro.assignment.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * This class benchmarks the throughput of concurrent writers on the in-memory
+ * storage with JMH, each on its own board or all of them on the same board.
+ * Every write creates a widget on the bottom z-index of a window, shifting the
+ * widgets the writer created before it; the writers start on new boards every
+ * iteration.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="BoardShardingBenchmark -t 4"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardShardingBenchmark {
+    private static final int WINDOW_SIZE = 1_000_000;
+
+    /**
+     * The application, and the boards of the current iteration
+     */
+    @State(Scope.Benchmark)
+    public static class Application {
+        /**
+         * `own` for a board per writer, `same` for a window of z-indexes per
+         * writer on a shared board
+         */
+        @Param({ "own", "same" })
+        private String boards;
+
+        private ConfigurableApplicationContext context;
+        private WidgetService widgetService;
+        private final AtomicLong nextBoardId = new AtomicLong(1_000_000);
+        private final AtomicInteger nextWindow = new AtomicInteger();
+        private long sharedBoardId;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = BenchmarkApplication.start("widget.storage=memory");
+            widgetService = context.getBean(WidgetService.class);
+        }
+
+        @Setup(Level.Iteration)
+        public void newBoard() {
+            sharedBoardId = nextBoardId.getAndIncrement();
+            nextWindow.set(0);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    /**
+     * The board and window of one writer
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private final Random random = new Random(42);
+        private WidgetService widgetService;
+        private long boardId;
+        private int window;
+
+        @Setup(Level.Iteration)
+        public void newBoard(final Application application) {
+            final boolean ownBoard = application.boards.equals("own");
+            widgetService = application.widgetService;
+            boardId = ownBoard ? application.nextBoardId.getAndIncrement() : application.sharedBoardId;
+            window = ownBoard ? 0 : application.nextWindow.getAndIncrement() * WINDOW_SIZE;
+        }
+    }
+
+    @Benchmark
+    public Widget create(final Writer writer) {
+        return writer.widgetService.create(writer.boardId, new Widget.Builder(writer.random.nextInt(1000),
+                writer.random.nextInt(1000), 10, 10).withZIndex(writer.window).build());
+    }
+}
@@ -0,0 +1,156 @@
+package com.miro.assignment.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.ColumnarWidgetRepository;
+import com.miro.assignment.repository.InMemoryWidgetRepository;
+import com.miro.assignment.repository.WidgetRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class compares the in-memory storages (a Widget object per widget
+ * against primitive columns) with JMH: filling a board, updating a tenth of
+ * its widgets, and a full collection with the board in the heap. The memory
+ * used by each widget of the board is printed once the board is filled.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="FootprintBenchmark -p boardSize=1000000,10000000 -jvmArgs
+ * -Xmx4g -prof gc"
+ * <p>
+ * The `gc` profiler reports the collections of each phase (`gc.count`,
+ * `gc.time`).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FootprintBenchmark {
+    private static final int PLANE_SIZE = 100_000;
+
+    /**
+     * The storage and the size of its board
+     */
+    @State(Scope.Benchmark)
+    public static class Storage {
+        @Param({ "1000000" })
+        private int boardSize;
+
+        @Param({ "memory", "columnar" })
+        private String storage;
+
+        private WidgetRepository repository;
+
+        /**
+         * Creates an empty storage
+         *
+         * @return The storage
+         */
+        private WidgetRepository create() {
+            return storage.equals("columnar") ? new ColumnarWidgetRepository() : new InMemoryWidgetRepository();
+        }
+
+        /**
+         * Drops the storage filled by the iteration
+         */
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            repository = null;
+        }
+    }
+
+    /**
+     * A storage holding a filled board
+     */
+    @State(Scope.Benchmark)
+    public static class Board {
+        private WidgetRepository repository;
+        private int boardSize;
+
+        @Setup(Level.Trial)
+        public void setUp(final Storage storage) {
+            boardSize = storage.boardSize;
+            final long baseline = usedHeap();
+            repository = fill(storage.create(), boardSize, new Random(42));
+            System.out.printf("%n%s: %d bytes/widget%n", storage.storage, (usedHeap() - baseline) / boardSize);
+        }
+    }
+
+    /**
+     * Fills an empty storage (the one of the previous iteration is dropped)
+     */
+    @Benchmark
+    public WidgetRepository fill(final Storage storage) {
+        storage.repository = fill(storage.create(), storage.boardSize, new Random(42));
+        return storage.repository;
+    }
+
+    /**
+     * Updates a tenth of the widgets of the board, keeping their z-index
+     */
+    @Benchmark
+    public WidgetRepository update(final Board board) {
+        final Random random = new Random(board.boardSize);
+        for (int i = 0; i < board.boardSize / 10; i++) {
+            board.repository.save(widget(1L + random.nextInt(board.boardSize), i, random));
+        }
+        return board.repository;
+    }
+
+    /**
+     * Runs a full collection with the board in the heap
+     */
+    @Benchmark
+    public WidgetRepository fullCollection(final Board board) {
+        System.gc();
+        return board.repository;
+    }
+
+    private static WidgetRepository fill(final WidgetRepository repository, final int boardSize,
+            final Random random) {
+        for (int i = 0; i < boardSize; i++) {
+            repository.save(widget(null, i, random));
+        }
+        if (repository.count() != boardSize) {
+            throw new IllegalStateException("Stored " + repository.count() + " widgets");
+        }
+        return repository;
+    }
+
+    /**
+     * Creates a widget at a random position. Updates keep the z-index of the
+     * widget (the z-index of widget n is n - 1).
+     */
+    private static Widget widget(final Long id, final int i, final Random random) {
+        final Widget widget = new Widget.Builder(random.nextInt(PLANE_SIZE), random.nextInt(PLANE_SIZE),
+                1 + random.nextInt(100), 1 + random.nextInt(100)).withZIndex(id == null ? i : (int) (id - 1)).build();
+        widget.setId(id);
+        widget.setVersion(1L);
+        return widget;
+    }
+
+    /**
+     * @return The heap used after a full collection
+     */
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
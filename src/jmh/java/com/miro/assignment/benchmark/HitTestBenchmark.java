@@ -0,0 +1,93 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.miro.assignment.benchmark.BoardSeeder.Distribution;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.ColumnarWidgetRepository;
+import com.miro.assignment.repository.InMemoryWidgetRepository;
+import com.miro.assignment.repository.WidgetRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks the hit-test (topmost widget at a point) and the
+ * topmost widgets intersecting a viewport on the in-memory storages with JMH,
+ * for every board size and storage given as parameters.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="HitTestBenchmark -p boardSize=10000,100000,1000000"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitTestBenchmark {
+    private static final int VIEWPORT_SIZE = 2_000;
+    private static final int VIEWPORT_LIMIT = 100;
+
+    /**
+     * A storage holding a seeded board
+     */
+    @State(Scope.Benchmark)
+    public static class Board {
+        @Param({ "100000" })
+        private int boardSize;
+
+        @Param({ "memory", "columnar" })
+        private String storage;
+
+        private WidgetRepository repository;
+        private int planeSize;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            repository = storage.equals("columnar") ? new ColumnarWidgetRepository() : new InMemoryWidgetRepository();
+            BoardSeeder.seedDenseZStack(repository, boardSize);
+            planeSize = BoardSeeder.planeSize(Distribution.DENSE);
+        }
+    }
+
+    /**
+     * The random points of one benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Dice {
+        private final Random random = new Random(42);
+
+        private int coordinate(final Board board) {
+            return random.nextInt(board.planeSize);
+        }
+    }
+
+    /**
+     * Hit-tests a random point (which may be empty)
+     */
+    @Benchmark
+    public List<Widget> hitTest(final Board board, final Dice dice) {
+        return board.repository.findContainingArea(DEFAULT_BOARD_ID, dice.coordinate(board), dice.coordinate(board),
+                0, 0, 1);
+    }
+
+    @Benchmark
+    public List<Widget> intersecting(final Board board, final Dice dice) {
+        return board.repository.findIntersectingArea(DEFAULT_BOARD_ID, dice.coordinate(board),
+                dice.coordinate(board), VIEWPORT_SIZE, VIEWPORT_SIZE, VIEWPORT_LIMIT);
+    }
+}
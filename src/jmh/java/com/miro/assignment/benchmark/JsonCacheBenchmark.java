@@ -0,0 +1,92 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * This class benchmarks the serialization of the responses with JMH, with and
+ * without the cache of the JSON of the widgets: a single widget, an area and a
+ * whole board, listed once and serialized as the controller would.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="JsonCacheBenchmark -p boardSize=10000,100000 -prof gc"
+ * <p>
+ * The `gc` profiler reports the bytes allocated by each serialization
+ * (`gc.alloc.rate.norm`).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCacheBenchmark {
+    private static final int AREA_SIDE = 20_000;
+
+    @Param({ "10000" })
+    private int boardSize;
+
+    @Param({ "true", "false" })
+    private boolean jsonCache;
+
+    private ConfigurableApplicationContext context;
+    private ObjectMapper objectMapper;
+    private Widget widget;
+    private List<Widget> area;
+    private List<Widget> board;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("widget.cache.maximum-size=0",
+                "widget.json-cache.maximum-size=" + (jsonCache ? 100_000 : 0));
+        objectMapper = context.getBean(ObjectMapper.class);
+        BoardSeeder.seedDenseZStack(context.getBean(WidgetRepository.class), boardSize);
+        final WidgetService widgetService = context.getBean(WidgetService.class);
+        board = widgetService.getAll(DEFAULT_BOARD_ID);
+        widget = board.get(board.size() / 2);
+        area = widgetService.getWidgetsFilteredByArea(DEFAULT_BOARD_ID, 0, 0, AREA_SIDE, AREA_SIDE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] widget() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(widget);
+    }
+
+    @Benchmark
+    public byte[] area() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(area);
+    }
+
+    @Benchmark
+    public byte[] board() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(board);
+    }
+}
@@ -0,0 +1,136 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * This class benchmarks a mixed CRUD and ordered listing workload with JMH,
+ * running concurrently on one board: 7 threads finding widgets, one listing
+ * pages, one creating widgets (on free z-indexes) and one updating them
+ * (without z-index changes). Each operation is reported on its own, for every
+ * storage and set of caches given as parameters.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="MixedWorkloadBenchmark -p storage=jpa -p caches=second-level,none"
+ * <p>
+ * `second-level` and `none` compare the reads reaching Hibernate with and
+ * without its second-level and query caches (JPA storage).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MixedWorkloadBenchmark {
+    private static final int CREATE_Z_INDEX_BASE = 1_000_000;
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * The application, with a seeded board
+     */
+    @State(Scope.Benchmark)
+    public static class Board {
+        @Param({ "10000" })
+        private int boardSize;
+
+        @Param({ "jpa", "memory" })
+        private String storage;
+
+        /**
+         * The caches in front of the storage: `all`, `second-level` (without the
+         * widget cache) or `none` (nor the Hibernate caches)
+         */
+        @Param({ "all", "second-level", "none" })
+        private String caches;
+
+        private ConfigurableApplicationContext context;
+        private WidgetService widgetService;
+        private List<Long> ids;
+        private final AtomicInteger nextZIndex = new AtomicInteger(CREATE_Z_INDEX_BASE);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            final boolean secondLevelCache = !caches.equals("none");
+            context = BenchmarkApplication.start("widget.storage=" + storage,
+                    "widget.cache.maximum-size=" + (caches.equals("all") ? 10_000 : 0),
+                    "spring.jpa.properties.hibernate.cache.use_second_level_cache=" + secondLevelCache,
+                    "spring.jpa.properties.hibernate.cache.use_query_cache=" + secondLevelCache);
+            widgetService = context.getBean(WidgetService.class);
+            ids = BoardSeeder.seedDenseZStack(context.getBean(WidgetRepository.class), boardSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    /**
+     * The random choices of one benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Dice {
+        private final Random random = new Random(42);
+
+        private long id(final Board board) {
+            return board.ids.get(random.nextInt(board.ids.size()));
+        }
+
+        private Widget widget() {
+            return new Widget.Builder(random.nextInt(1000), random.nextInt(1000), 10, 10).build();
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public Widget find(final Board board, final Dice dice) {
+        return board.widgetService.find(DEFAULT_BOARD_ID, dice.id(board));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public List<Widget> page(final Board board, final Dice dice) {
+        return board.widgetService.getAll(DEFAULT_BOARD_ID, dice.random.nextInt(board.boardSize / PAGE_SIZE),
+                PAGE_SIZE, "zIndex");
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public Widget create(final Board board, final Dice dice) {
+        final Widget widget = dice.widget();
+        widget.setZIndex(board.nextZIndex.getAndIncrement());
+        return board.widgetService.create(DEFAULT_BOARD_ID, widget);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public Widget update(final Board board, final Dice dice) {
+        return board.widgetService.update(DEFAULT_BOARD_ID, dice.id(board), dice.widget());
+    }
+}
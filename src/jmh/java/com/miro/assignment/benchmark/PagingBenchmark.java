@@ -0,0 +1,81 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * This class benchmarks reading a deep page with JMH, using offset paging
+ * (OFFSET and count queries) and cursor paging (a seek on the z-index).
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="PagingBenchmark -p boardSize=100000 -p page=100,1000"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PagingBenchmark {
+    private static final int PAGE_SIZE = 20;
+
+    @Param({ "100000" })
+    private int boardSize;
+
+    @Param({ "1000" })
+    private int page;
+
+    private ConfigurableApplicationContext context;
+    private WidgetService widgetService;
+    private Widget last;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        widgetService = context.getBean(WidgetService.class);
+        BoardSeeder.seedDenseZStack(context.getBean(JdbcTemplate.class), boardSize);
+
+        // The cursor of a page is the last widget of the previous one
+        final List<Widget> previousPage = widgetService.getAll(DEFAULT_BOARD_ID, page - 1, PAGE_SIZE, "zIndex");
+        last = previousPage.get(previousPage.size() - 1);
+        if (!offset().equals(cursor())) {
+            throw new IllegalStateException("Offset and cursor pages differ");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Widget> offset() {
+        return widgetService.getAll(DEFAULT_BOARD_ID, page, PAGE_SIZE, "zIndex");
+    }
+
+    @Benchmark
+    public List<Widget> cursor() {
+        return widgetService.getAllAfter(DEFAULT_BOARD_ID, last.getId(), last.getZIndex(), PAGE_SIZE);
+    }
+}
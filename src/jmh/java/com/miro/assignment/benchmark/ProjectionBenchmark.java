@@ -0,0 +1,94 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * This class benchmarks listing a whole board (`getAll`) and an area of it with
+ * JMH, as full widgets and as projections on the id, z-index and bounding box
+ * (`fields=id,zindex,xcoordinate,ycoordinate,width,height`), serialized as the
+ * controller would. The size of the JSON of each listing is printed before the
+ * first iteration.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="ProjectionBenchmark -p boardSize=10000,100000 -prof gc"
+ * <p>
+ * The `gc` profiler reports the bytes allocated by each listing
+ * (`gc.alloc.rate.norm`).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProjectionBenchmark {
+    private static final Set<WidgetField> VIEW = WidgetField.parse("id,zindex,xcoordinate,ycoordinate,width,height");
+    private static final int AREA_SIDE = 20_000;
+
+    @Param({ "10000" })
+    private int boardSize;
+
+    /**
+     * `full` for whole widgets, `view` for the projections
+     */
+    @Param({ "full", "view" })
+    private String fields;
+
+    private ConfigurableApplicationContext context;
+    private WidgetService widgetService;
+    private ObjectMapper objectMapper;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        context = BenchmarkApplication.start("widget.cache.maximum-size=0");
+        widgetService = context.getBean(WidgetService.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        BoardSeeder.seedDenseZStack(context.getBean(JdbcTemplate.class), boardSize);
+        System.out.printf("%nJSON: board %.2f MB, area %.2f MB%n", board().length / 1e6, area().length / 1e6);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] board() throws JsonProcessingException {
+        final List<?> widgets = fields.equals("view") ? widgetService.getAll(DEFAULT_BOARD_ID, VIEW)
+                : widgetService.getAll(DEFAULT_BOARD_ID);
+        return objectMapper.writeValueAsBytes(widgets);
+    }
+
+    @Benchmark
+    public byte[] area() throws JsonProcessingException {
+        final List<?> widgets = fields.equals("view")
+                ? widgetService.getWidgetsFilteredByArea(DEFAULT_BOARD_ID, 0, 0, AREA_SIDE, AREA_SIDE, VIEW)
+                : widgetService.getWidgetsFilteredByArea(DEFAULT_BOARD_ID, 0, 0, AREA_SIDE, AREA_SIDE);
+        return objectMapper.writeValueAsBytes(widgets);
+    }
+}
@@ -0,0 +1,111 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class benchmarks listing a whole board (`getAll`) with JMH, in a
+ * read-write transaction, where Hibernate keeps a snapshot of every widget
+ * loaded and dirty-checks them at commit, and in the read-only transaction of
+ * the service. The heap held by the persistence context before the commit is
+ * printed before the first iteration.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="ReadOnlyTransactionBenchmark -p boardSize=10000,100000 -prof gc"
+ * <p>
+ * The `gc` profiler reports the bytes allocated by each listing
+ * (`gc.alloc.rate.norm`).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadOnlyTransactionBenchmark {
+    @Param({ "10000" })
+    private int boardSize;
+
+    /**
+     * `read-write` for the service joining a read-write transaction, as it did
+     * before its reads were read-only, or `read-only`
+     */
+    @Param({ "read-write", "read-only" })
+    private String transaction;
+
+    private ConfigurableApplicationContext context;
+    private WidgetService widgetService;
+    private TransactionTemplate readWrite;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("widget.cache.maximum-size=0");
+        widgetService = context.getBean(WidgetService.class);
+        BoardSeeder.seedDenseZStack(context.getBean(JdbcTemplate.class), boardSize);
+        readWrite = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        final TransactionTemplate held = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        held.setReadOnly(transaction.equals("read-only"));
+        System.out.printf("%npersistence context: %.1f MB%n", held.execute(status -> heldHeap()) / 1e6);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Widget> getAll() {
+        final List<Widget> widgets = transaction.equals("read-only") ? widgetService.getAll(DEFAULT_BOARD_ID)
+                : readWrite.execute(status -> widgetService.getAll(DEFAULT_BOARD_ID));
+        if (widgets.size() != boardSize) {
+            throw new IllegalStateException("The listing misses widgets");
+        }
+        return widgets;
+    }
+
+    /**
+     * Lists the board within the current transaction and measures the heap held
+     * by the persistence context (the listing itself is dropped)
+     *
+     * @return The heap held, in bytes
+     */
+    private long heldHeap() {
+        final long baseline = usedHeap();
+        widgetService.getAll(DEFAULT_BOARD_ID);
+        return usedHeap() - baseline;
+    }
+
+    /**
+     * @return The heap used after a full collection
+     */
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,123 @@
+package com.miro.assignment.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.InMemoryWidgetRepository;
+import com.miro.assignment.repository.WidgetWriteAheadLog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * This class benchmarks recovering the in-memory storage from its write-ahead
+ * log with JMH: reading a snapshot of the board and the log written since (a
+ * tenth of the board changed), alone and followed by building the storage's
+ * indexes.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="RecoveryBenchmark -p boardSize=100000,1000000 -jvmArgs -Xmx4g"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+    @Param({ "1000000" })
+    private int boardSize;
+
+    private Path directory;
+    private WidgetWriteAheadLog recovered;
+
+    /**
+     * Writes a snapshot of the board, and a log changing a tenth of it
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("recovery-benchmark");
+        final Random random = new Random(42);
+        final List<Widget> board = new ArrayList<>(boardSize);
+        for (int i = 0; i < boardSize; i++) {
+            board.add(widget(i, random));
+        }
+        final WidgetWriteAheadLog log = new WidgetWriteAheadLog(directory, Duration.ofSeconds(1),
+                Duration.ofHours(1));
+        log.recover();
+        log.start(() -> {
+            log.rotate();
+            return board;
+        });
+        for (int i = 0; i < boardSize / 10; i++) {
+            final Widget widget = widget(random.nextInt(boardSize), random);
+            log.append(widget.getId(), widget);
+        }
+        log.flush();
+        log.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        recovered.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    /**
+     * Reads the snapshot and the log only
+     */
+    @Benchmark
+    public WidgetWriteAheadLog read() throws IOException {
+        recovered = new WidgetWriteAheadLog(directory, Duration.ofSeconds(1), Duration.ofHours(1));
+        recovered.recover();
+        return recovered;
+    }
+
+    /**
+     * Reads the snapshot and the log, and builds the indexes of the storage
+     */
+    @Benchmark
+    public InMemoryWidgetRepository recover() throws IOException {
+        final InMemoryWidgetRepository repository = new InMemoryWidgetRepository();
+        ReflectionTestUtils.setField(repository, "writeAheadLog", read());
+        repository.onApplicationEvent(null);
+        if (repository.count() != boardSize) {
+            throw new IllegalStateException("Recovered " + repository.count() + " widgets");
+        }
+        return repository;
+    }
+
+    private static Widget widget(final int id, final Random random) {
+        final Widget widget = new Widget.Builder(random.nextInt(100_000), random.nextInt(100_000), 10, 10)
+                .withZIndex(id).build();
+        widget.setId(id + 1L);
+        widget.setVersion(1L);
+        widget.setLastModified(LocalDateTime.now());
+        return widget;
+    }
+}
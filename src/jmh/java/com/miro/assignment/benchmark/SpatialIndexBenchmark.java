@@ -0,0 +1,90 @@
+package com.miro.assignment.benchmark;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.WidgetQuadTree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks area queries (a viewport over the board) with JMH,
+ * using a linear scan and the quadtree, both returning widgets in z-order.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="SpatialIndexBenchmark -p boardSize=10000,100000,1000000"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpatialIndexBenchmark {
+    private static final int COORDINATE_RANGE = 100_000;
+    private static final int MAX_SIDE = 500;
+    private static final int VIEWPORT_SIZE = 2_000;
+
+    @Param({ "100000" })
+    private int boardSize;
+
+    private final Random random = new Random(42);
+    private List<Widget> widgets;
+    private Map<Long, Widget> widgetsById;
+    private WidgetQuadTree tree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random board = new Random(boardSize);
+        widgets = new ArrayList<>(boardSize);
+        widgetsById = new HashMap<>(boardSize * 2);
+        tree = new WidgetQuadTree();
+        for (int i = 0; i < boardSize; i++) {
+            final Widget widget = new Widget.Builder(board.nextInt(COORDINATE_RANGE), board.nextInt(COORDINATE_RANGE),
+                    1 + board.nextInt(MAX_SIDE), 1 + board.nextInt(MAX_SIDE)).withZIndex(i).build();
+            widget.setId((long) i);
+            widgets.add(widget);
+            widgetsById.put(widget.getId(), widget);
+            tree.insert(widget);
+        }
+    }
+
+    /**
+     * The linear scan, as done on the database rows
+     */
+    @Benchmark
+    public List<Widget> linearScan() {
+        final int xCoordinate = random.nextInt(COORDINATE_RANGE);
+        final int yCoordinate = random.nextInt(COORDINATE_RANGE);
+        return widgets.stream()
+                .filter(x -> x.getXCoordinate() >= xCoordinate && x.getYCoordinate() >= yCoordinate
+                        && x.getXCoordinate() + x.getWidth() <= xCoordinate + VIEWPORT_SIZE
+                        && x.getYCoordinate() + x.getHeight() <= yCoordinate + VIEWPORT_SIZE)
+                .sorted(Comparator.comparingInt(Widget::getZIndex)).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Widget> quadtree() {
+        return tree.findWithin(random.nextInt(COORDINATE_RANGE), random.nextInt(COORDINATE_RANGE), VIEWPORT_SIZE,
+                VIEWPORT_SIZE).stream().map(widgetsById::get).sorted(Comparator.comparingInt(Widget::getZIndex))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,214 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.miro.assignment.benchmark.BoardSeeder.Distribution;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetTile;
+import com.miro.assignment.exception.WidgetNotFoundException;
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * This class benchmarks each WidgetService operation with JMH, on boards of
+ * every size, distribution and storage given as parameters (each combination
+ * in its own JVM).
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="-p boardSize=10000,100000 -p distribution=DENSE,SPARSE"
+ * <p>
+ * For the write latency percentiles and throughput of concurrent writers:
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="-bm sample -t 4 -p
+ * distribution=DENSE -p storage=jpa,write-behind create update insertAndDelete"
+ * <p>
+ * The results are written to target/jmh-result.json.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WidgetServiceBenchmark {
+    private static final int PAGE_SIZE = 20;
+    private static final int VIEWPORT_SIZE = 2_000;
+    private static final int VIEWPORT_LIMIT = 100;
+
+    /**
+     * The application, with a seeded board
+     */
+    @State(Scope.Benchmark)
+    public static class Board {
+        @Param({ "10000" })
+        private int boardSize;
+
+        @Param({ "DENSE", "SPARSE", "CLUSTERED" })
+        private Distribution distribution;
+
+        /**
+         * The storage, or `write-behind` for the in-memory one written back to
+         * the database
+         */
+        @Param({ "jpa", "memory", "columnar", "write-behind" })
+        private String storage;
+
+        private ConfigurableApplicationContext context;
+        private WidgetService widgetService;
+        private List<Long> ids;
+        private int maxZIndex;
+        private int planeSize;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            final boolean writeBehind = storage.equals("write-behind");
+            context = BenchmarkApplication.start("widget.storage=" + (writeBehind ? "memory" : storage),
+                    "widget.write-behind.enabled=" + writeBehind);
+            widgetService = context.getBean(WidgetService.class);
+            ids = BoardSeeder.seed(context.getBean(WidgetRepository.class), boardSize, distribution);
+            maxZIndex = widgetService.find(DEFAULT_BOARD_ID, ids.get(ids.size() - 1)).getZIndex();
+            planeSize = BoardSeeder.planeSize(distribution);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    /**
+     * The random choices of one benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Dice {
+        private final Random random = new Random(42);
+
+        private long id(final Board board) {
+            return board.ids.get(random.nextInt(board.ids.size()));
+        }
+
+        private int zIndex(final Board board) {
+            return random.nextInt(board.maxZIndex + 1);
+        }
+
+        private int coordinate(final Board board) {
+            return random.nextInt(board.planeSize);
+        }
+    }
+
+    @Benchmark
+    public Widget find(final Board board, final Dice dice) {
+        return board.widgetService.find(DEFAULT_BOARD_ID, dice.id(board));
+    }
+
+    /**
+     * Creates a widget at the bottom (grows the board for the length of the run)
+     */
+    @Benchmark
+    public Widget create(final Board board, final Dice dice) {
+        return board.widgetService.create(DEFAULT_BOARD_ID,
+                new Widget.Builder(dice.coordinate(board), dice.coordinate(board), 10, 10).build());
+    }
+
+    /**
+     * Creates a widget within the z-index range, shifting the run above it, and
+     * deletes it again (keeps the board size)
+     */
+    @Benchmark
+    public Widget insertAndDelete(final Board board, final Dice dice) {
+        final Widget widget = board.widgetService.create(DEFAULT_BOARD_ID, new Widget.Builder(dice.coordinate(board),
+                dice.coordinate(board), 10, 10).withZIndex(dice.zIndex(board)).build());
+        board.widgetService.delete(DEFAULT_BOARD_ID, widget.getId());
+        return widget;
+    }
+
+    /**
+     * Updates the coordinates of a widget, keeping its z-index
+     */
+    @Benchmark
+    public Widget update(final Board board, final Dice dice) {
+        return board.widgetService.update(DEFAULT_BOARD_ID, dice.id(board),
+                new Widget.Builder(dice.coordinate(board), dice.coordinate(board), 10, 10).build());
+    }
+
+    /**
+     * Moves a widget to a z-index within the range, shifting the run above it if
+     * the z-index is taken
+     */
+    @Benchmark
+    public Widget move(final Board board, final Dice dice) {
+        final Widget widget = new Widget();
+        widget.setZIndex(dice.zIndex(board));
+        return board.widgetService.update(DEFAULT_BOARD_ID, dice.id(board), widget);
+    }
+
+    @Benchmark
+    public List<Widget> getAll(final Board board) {
+        return board.widgetService.getAll(DEFAULT_BOARD_ID);
+    }
+
+    @Benchmark
+    public List<Widget> getPage(final Board board, final Dice dice) {
+        return board.widgetService.getAll(DEFAULT_BOARD_ID, dice.random.nextInt(board.boardSize / PAGE_SIZE),
+                PAGE_SIZE, "zIndex");
+    }
+
+    @Benchmark
+    public List<Widget> getPageAfter(final Board board, final Dice dice) {
+        return board.widgetService.getAllAfter(DEFAULT_BOARD_ID, dice.id(board), null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Widget> filterByArea(final Board board, final Dice dice) {
+        return board.widgetService.getWidgetsFilteredByArea(DEFAULT_BOARD_ID, dice.coordinate(board),
+                dice.coordinate(board),
+                VIEWPORT_SIZE, VIEWPORT_SIZE);
+    }
+
+    @Benchmark
+    public List<Widget> intersectingArea(final Board board, final Dice dice) {
+        return board.widgetService.getWidgetsIntersectingArea(DEFAULT_BOARD_ID, dice.coordinate(board),
+                dice.coordinate(board),
+                VIEWPORT_SIZE, VIEWPORT_SIZE, VIEWPORT_LIMIT);
+    }
+
+    /**
+     * Hit-tests a random point (which may be empty)
+     */
+    @Benchmark
+    public Widget widgetAt(final Board board, final Dice dice) {
+        try {
+            return board.widgetService.getWidgetAt(DEFAULT_BOARD_ID, dice.coordinate(board), dice.coordinate(board));
+        } catch (final WidgetNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the tile of a random point (mostly cache hits once the board's
+     * tiles were read)
+     */
+    @Benchmark
+    public WidgetTile getTile(final Board board, final Dice dice) {
+        final int tileSize = board.widgetService.getTileSize();
+        return board.widgetService.getTile(DEFAULT_BOARD_ID, Math.floorDiv(dice.coordinate(board), tileSize),
+                Math.floorDiv(dice.coordinate(board), tileSize));
+    }
+}
@@ -0,0 +1,137 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * This class benchmarks the throughput of concurrent writers with JMH (a third
+ * each of creates and z-index moves onto taken z-indexes, and deletes), with
+ * the z-index range locks, and with a single lock around every write for
+ * comparison. Each writer works on its own window of z-indexes, or all of them
+ * on the same window.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="WriteThroughputBenchmark -t 4"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteThroughputBenchmark {
+    private static final int WINDOW_SIZE = 100;
+
+    /**
+     * The application, with a seeded board
+     */
+    @State(Scope.Benchmark)
+    public static class Application {
+        @Param({ "10000" })
+        private int boardSize;
+
+        /**
+         * `own` for a window of z-indexes per writer, `same` for a single one
+         */
+        @Param({ "own", "same" })
+        private String windows;
+
+        /**
+         * `range` for the z-index range locks only, `global` for a single lock
+         * around every write too
+         */
+        @Param({ "range", "global" })
+        private String locking;
+
+        private ConfigurableApplicationContext context;
+        private WidgetService widgetService;
+        private final Lock globalLock = new ReentrantLock();
+        private final AtomicInteger nextWriter = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = BenchmarkApplication.start();
+            widgetService = context.getBean(WidgetService.class);
+            BoardSeeder.seedDenseZStack(context.getBean(JdbcTemplate.class), boardSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    /**
+     * The window and widgets of one writer
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private final List<Long> ids = new ArrayList<>();
+        private Random random;
+        private WidgetService widgetService;
+        private Lock globalLock;
+        private int window;
+
+        @Setup(Level.Trial)
+        public void setUp(final Application application) {
+            final int writer = application.nextWriter.getAndIncrement();
+            random = new Random(writer);
+            widgetService = application.widgetService;
+            globalLock = application.locking.equals("global") ? application.globalLock : null;
+            window = application.boardSize + (application.windows.equals("own") ? writer * WINDOW_SIZE * 10 : 0);
+        }
+    }
+
+    @Benchmark
+    public Widget write(final Writer writer) {
+        final Random random = writer.random;
+        final Widget widget = new Widget.Builder(random.nextInt(1000), random.nextInt(1000), 10, 10)
+                .withZIndex(writer.window + random.nextInt(WINDOW_SIZE)).build();
+        if (writer.globalLock != null) {
+            writer.globalLock.lock();
+        }
+        try {
+            final int dice = writer.ids.isEmpty() ? 0 : random.nextInt(3);
+            if (dice == 0) {
+                final Widget created = writer.widgetService.create(DEFAULT_BOARD_ID, widget);
+                writer.ids.add(created.getId());
+                return created;
+            } else if (dice == 1) {
+                return writer.widgetService.update(DEFAULT_BOARD_ID, writer.ids.get(random.nextInt(writer.ids.size())),
+                        widget);
+            } else {
+                writer.widgetService.delete(DEFAULT_BOARD_ID, writer.ids.remove(random.nextInt(writer.ids.size())));
+                return widget;
+            }
+        } finally {
+            if (writer.globalLock != null) {
+                writer.globalLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.miro.assignment.benchmark;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * This class benchmarks creating a widget at an occupied z-index (the worst
+ * case, where the whole board has to move up) with JMH, using the former
+ * recursive cascade and the bulk range shift. The cascade overflows the stack
+ * on large boards.
+ * <p>
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.args="ZIndexShiftBenchmark -p boardSize=1000,5000,10000"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZIndexShiftBenchmark {
+    @Param({ "1000", "5000", "10000" })
+    private int boardSize;
+
+    private ConfigurableApplicationContext context;
+    private WidgetService widgetService;
+    private WidgetRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        widgetService = context.getBean(WidgetService.class);
+        repository = context.getBean(WidgetRepository.class);
+        BoardSeeder.seedDenseZStack(context.getBean(JdbcTemplate.class), boardSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Widget bulkRangeShift() {
+        return widgetService.create(DEFAULT_BOARD_ID, newBottomWidget());
+    }
+
+    /**
+     * The former implementation: loads the board into a map and frees the z-index
+     * recursively, saving each moved widget
+     */
+    @Benchmark
+    public Widget recursiveCascade() {
+        final Widget widget = newBottomWidget();
+        final Map<Integer, Widget> widgets = repository.findAll().stream()
+                .collect(Collectors.toMap(Widget::getZIndex, x -> x));
+        legacyFreeZIndex(widget.getZIndex(), widget, widgets);
+        return widget;
+    }
+
+    /**
+     * Creates a widget for the lowest z-index of the seeded board
+     *
+     * @return The widget
+     */
+    private static Widget newBottomWidget() {
+        return new Widget.Builder(0, 0, 10, 10).withZIndex(0).build();
+    }
+
+    /**
+     * The former recursive cascade
+     *
+     * @param zIndex  The z-index to free
+     * @param widget  The entity
+     * @param widgets The map of widgets (z-index <-> widget)
+     */
+    private void legacyFreeZIndex(final int zIndex, final Widget widget, final Map<Integer, Widget> widgets) {
+        if (widgets.containsKey(zIndex)) {
+            legacyFreeZIndex(zIndex + 1, widgets.get(zIndex), widgets);
+        }
+        widget.setZIndex(zIndex);
+        repository.save(widget);
+    }
+}
@@ -0,0 +1,115 @@
+package com.miro.assignment.config;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class is used to configure the connection pools: read-only transactions
+ * take their connections from a pool of their own, every other statement from
+ * the write pool, so reads and writes scale separately.
+ * <p>
+ * The read pool connects to `widget.read-datasource.url`, by default the same
+ * database as the write pool. A replica would have to be kept in sync, as a
+ * widget can be read right after it was written.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * Creates the pools and routes the connections by transaction. A connection
+     * is only taken from a pool at its first statement, once the transaction is
+     * known to be read-only (it is not yet when the transaction manager asks for
+     * it).
+     *
+     * @param properties  The settings of the write pool (`spring.datasource`)
+     * @param environment The settings of the pools (`spring.datasource.hikari`
+     *                    and `widget.read-datasource.hikari`)
+     * @param readUrl     The database of the read pool
+     * @param registry    The registry to record the pool metrics in
+     * @return The data source used by JPA and JDBC
+     */
+    @Bean
+    public DataSource dataSource(final DataSourceProperties properties, final Environment environment,
+            final @Value("${widget.read-datasource.url:${spring.datasource.url}}") String readUrl,
+            final MeterRegistry registry) {
+        final HikariDataSource writePool = pool(properties, properties.determineUrl(), "widget-write",
+                "spring.datasource.hikari", environment, registry);
+        final HikariDataSource readPool = pool(properties, readUrl, "widget-read", "widget.read-datasource.hikari",
+                environment, registry);
+        readPool.setReadOnly(true);
+        return new ReadWriteDataSource(writePool, readPool);
+    }
+
+    /**
+     * Creates a pool
+     *
+     * @param properties  The settings of the write pool (driver and credentials)
+     * @param url         The database
+     * @param name        The name of the pool (the `pool` tag of its metrics)
+     * @param prefix      The prefix of the settings of the pool
+     * @param environment The settings
+     * @param registry    The registry to record the pool metrics in
+     * @return The pool
+     */
+    private static HikariDataSource pool(final DataSourceProperties properties, final String url, final String name,
+            final String prefix, final Environment environment, final MeterRegistry registry) {
+        final HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(url)
+                .build();
+        Binder.get(environment).bind(prefix, Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        pool.setMetricRegistry(registry);
+        return pool;
+    }
+
+    /**
+     * The data source routing the connections to the pools, which it closes on
+     * shutdown
+     */
+    private static final class ReadWriteDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+        private final HikariDataSource writePool;
+        private final HikariDataSource readPool;
+
+        /**
+         * @param writePool The pool of the statements outside read-only
+         *                  transactions
+         * @param readPool  The pool of the read-only transactions
+         */
+        private ReadWriteDataSource(final HikariDataSource writePool, final HikariDataSource readPool) {
+            this.writePool = writePool;
+            this.readPool = readPool;
+            final AbstractRoutingDataSource routing = new AbstractRoutingDataSource() {
+                @Override
+                protected Object determineCurrentLookupKey() {
+                    return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+                }
+            };
+            routing.setTargetDataSources(Map.of(true, readPool, false, writePool));
+            routing.setDefaultTargetDataSource(writePool);
+            routing.afterPropertiesSet();
+            setTargetDataSource(routing);
+            afterPropertiesSet();
+        }
+
+        @Override
+        public void close() {
+            readPool.close();
+            writePool.close();
+        }
+    }
+}
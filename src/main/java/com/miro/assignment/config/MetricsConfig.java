@@ -0,0 +1,26 @@
+package com.miro.assignment.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class is used to configure the application metrics
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Times the methods annotated with @Timed (tagged with their class and
+     * method)
+     * 
+     * @param registry The registry to record the timers in
+     * @return The aspect
+     */
+    @Bean
+    public TimedAspect timedAspect(final MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
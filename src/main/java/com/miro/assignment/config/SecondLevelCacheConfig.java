@@ -0,0 +1,93 @@
+package com.miro.assignment.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class is used to configure the Hibernate second-level cache (widgets by
+ * id) and query cache (the listings), stored in Caffeine through JCache.
+ * <p>
+ * The regions live in a cache manager of their own, apart from the caches of
+ * the rate limiters, and are bounded like the widget cache. The timestamps
+ * region (the last write of each table, which tells whether a cached query is
+ * stale) holds one entry per table and is never evicted.
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+    /**
+     * The region of the widgets
+     */
+    public static final String WIDGET_REGION = "widgets";
+
+    private static final URI CACHE_MANAGER_URI = URI.create("hibernate-second-level-cache");
+
+    /**
+     * Hands the cache manager holding the regions to Hibernate
+     *
+     * @param maximumSize      The maximum number of widgets cached
+     * @param maximumQueries   The maximum number of query results cached
+     * @param expireAfterWrite The time after which a cached entry expires
+     * @return The customizer
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCache(
+            @Value("${widget.second-level-cache.maximum-size:10000}") final long maximumSize,
+            @Value("${widget.second-level-cache.maximum-queries:1000}") final long maximumQueries,
+            @Value("${widget.second-level-cache.expire-after-write:300s}") final Duration expireAfterWrite) {
+        return properties -> {
+            final CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+            final CacheManager cacheManager = provider.getCacheManager(CACHE_MANAGER_URI,
+                    provider.getDefaultClassLoader());
+            createRegion(cacheManager, WIDGET_REGION, maximumSize, expireAfterWrite);
+            createRegion(cacheManager, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, maximumQueries,
+                    expireAfterWrite);
+            createRegion(cacheManager, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, null, null);
+
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    /**
+     * Creates a region, unless a previous application context left it open
+     *
+     * @param cacheManager     The cache manager
+     * @param name             The name of the region
+     * @param maximumSize      The maximum number of entries (unbounded if null)
+     * @param expireAfterWrite The time after which an entry expires (never if
+     *                         null)
+     */
+    private static void createRegion(final CacheManager cacheManager, final String name, final Long maximumSize,
+            final Duration expireAfterWrite) {
+        if (cacheManager.getCache(name) != null) {
+            return;
+        }
+        final CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        // Hibernate caches immutable entries: copying them would only cost
+        configuration.setStoreByValue(false);
+        if (maximumSize != null) {
+            configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        }
+        if (expireAfterWrite != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        }
+        cacheManager.createCache(name, configuration);
+    }
+}
@@ -0,0 +1,222 @@
+package com.miro.assignment.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.service.impl.WidgetJsonCache;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class is used to configure the serialization of the widgets: every
+ * widget written by the application's ObjectMapper (single widgets, listings,
+ * areas, pages, deltas, changes and tiles) is copied from its JSON in the
+ * WidgetJsonCache, straight into the output buffer, and only serialized field
+ * by field on a miss.
+ * <p>
+ * The JSON is encoded with the configuration of the mapper and the generator
+ * writing it, which every entry keeps: a widget written with another
+ * configuration (e.g. another mapper, or other features) is encoded again.
+ * Pretty-printed output is not cached, as the JSON of a widget is indented
+ * according to where it is written.
+ */
+@Configuration
+public class WidgetJsonConfig {
+
+    /**
+     * Wraps the serializer of the widgets, picked up by the ObjectMapper of
+     * Spring Boot
+     *
+     * @param cache The cache of the JSON of the widgets
+     * @return The module
+     */
+    @Bean
+    public Module widgetJsonModule(final WidgetJsonCache cache) {
+        final SimpleModule module = new SimpleModule("widget-json-cache");
+        if (!cache.isEnabled()) {
+            return module;
+        }
+        module.setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public JsonSerializer<?> modifySerializer(final SerializationConfig config,
+                    final BeanDescription description, final JsonSerializer<?> serializer) {
+                return description.getBeanClass() == Widget.class
+                        ? new CachedWidgetSerializer((JsonSerializer<Object>) serializer, cache)
+                        : serializer;
+            }
+        });
+        return module;
+    }
+
+    /**
+     * Writes the cached JSON of a widget, encoded with the serializer Jackson
+     * built for widgets on a miss
+     */
+    private static final class CachedWidgetSerializer extends StdSerializer<Widget>
+            implements ResolvableSerializer, ContextualSerializer {
+
+        private static final long serialVersionUID = 4361284609937142518L;
+
+        /**
+         * Creates the generators encoding the widgets missing from the cache
+         */
+        private static final JsonFactory ENCODERS = new JsonFactory();
+
+        private final JsonSerializer<Object> serializer;
+        private final transient WidgetJsonCache cache;
+
+        /**
+         * The encoding of the latest widget written, reused while it matches
+         */
+        private transient volatile Encoding lastEncoding;
+
+        /**
+         * @param serializer The serializer built for widgets
+         * @param cache      The cache of the JSON of the widgets
+         */
+        private CachedWidgetSerializer(final JsonSerializer<Object> serializer, final WidgetJsonCache cache) {
+            super(Widget.class);
+            this.serializer = serializer;
+            this.cache = cache;
+        }
+
+        @Override
+        public void resolve(final SerializerProvider provider) throws JsonMappingException {
+            if (serializer instanceof ResolvableSerializer) {
+                ((ResolvableSerializer) serializer).resolve(provider);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public JsonSerializer<?> createContextual(final SerializerProvider provider, final BeanProperty property)
+                throws JsonMappingException {
+            if (!(serializer instanceof ContextualSerializer)) {
+                return this;
+            }
+            final JsonSerializer<?> contextual = ((ContextualSerializer) serializer).createContextual(provider,
+                    property);
+            return contextual == serializer ? this
+                    : new CachedWidgetSerializer((JsonSerializer<Object>) contextual, cache);
+        }
+
+        @Override
+        public void serialize(final Widget widget, final JsonGenerator generator, final SerializerProvider provider)
+                throws IOException {
+            if (generator instanceof TokenBuffer || generator.getPrettyPrinter() != null) {
+                // Converted to another type (e.g. a tree), or indented: not cached
+                serializer.serialize(widget, generator, provider);
+                return;
+            }
+            final Encoding encoding = encoding(generator, provider);
+            try {
+                generator.writeRawValue(cache.find(widget, encoding, missing -> encode(missing, generator, provider)));
+            } catch (final UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * @param generator The generator writing a widget
+         * @param provider  The provider of the current serialization
+         * @return The encoding the widget is written with
+         */
+        private Encoding encoding(final JsonGenerator generator, final SerializerProvider provider) {
+            final Encoding last = lastEncoding;
+            if (last != null && last.matches(generator, provider)) {
+                return last;
+            }
+            final Encoding encoding = new Encoding(generator, provider);
+            lastEncoding = encoding;
+            return encoding;
+        }
+
+        /**
+         * @param widget    A widget
+         * @param generator The generator writing it, whose settings are copied
+         * @param provider  The provider of the current serialization
+         * @return The JSON of the widget, in UTF-8
+         */
+        private byte[] encode(final Widget widget, final JsonGenerator generator, final SerializerProvider provider) {
+            final ByteArrayBuilder bytes = new ByteArrayBuilder();
+            try (JsonGenerator encoder = ENCODERS.createGenerator(bytes)) {
+                encoder.overrideStdFeatures(generator.getFeatureMask(), -1);
+                encoder.setCharacterEscapes(generator.getCharacterEscapes());
+                encoder.setHighestNonEscapedChar(generator.getHighestEscapedChar());
+                serializer.serialize(widget, encoder, provider);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * What the JSON of a widget depends on besides the widget: the configuration
+     * of the mapper (or writer) and the settings of the generator
+     */
+    private static final class Encoding {
+        private final SerializationConfig config;
+        private final Class<?> view;
+        private final int features;
+        private final CharacterEscapes escapes;
+        private final int highestNonEscapedChar;
+
+        private Encoding(final JsonGenerator generator, final SerializerProvider provider) {
+            config = provider.getConfig();
+            view = provider.getActiveView();
+            features = generator.getFeatureMask();
+            escapes = generator.getCharacterEscapes();
+            highestNonEscapedChar = generator.getHighestEscapedChar();
+        }
+
+        /**
+         * @param generator The generator writing a widget
+         * @param provider  The provider of the current serialization
+         * @return Whether the widget is written with this encoding
+         */
+        private boolean matches(final JsonGenerator generator, final SerializerProvider provider) {
+            // Configurations are immutable: any change makes a new one
+            return config == provider.getConfig() && view == provider.getActiveView()
+                    && features == generator.getFeatureMask() && escapes == generator.getCharacterEscapes()
+                    && highestNonEscapedChar == generator.getHighestEscapedChar();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Encoding)) {
+                return false;
+            }
+            final Encoding encoding = (Encoding) other;
+            return config == encoding.config && view == encoding.view && features == encoding.features
+                    && escapes == encoding.escapes && highestNonEscapedChar == encoding.highestNonEscapedChar;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(config), view, features, System.identityHashCode(escapes),
+                    highestNonEscapedChar);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.miro.assignment.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetView;
+import com.miro.assignment.exception.InvalidCursorException;
+
+/**
+ * This class represents the opaque continuation token of cursor paging: the
+ * last widget (id and z-index) of the previous page
+ */
+public final class PageCursor {
+    private final long id;
+    private final int zIndex;
+
+    private PageCursor(final long id, final int zIndex) {
+        this.id = id;
+        this.zIndex = zIndex;
+    }
+
+    /**
+     * Creates the cursor following a widget
+     * 
+     * @param widget The last widget of a page
+     * @return The cursor
+     */
+    public static PageCursor after(final Widget widget) {
+        return new PageCursor(widget.getId(), widget.getZIndex());
+    }
+
+    /**
+     * Creates the cursor following a projection of a widget
+     * 
+     * @param widget The last projection of a page (with its id and z-index)
+     * @return The cursor
+     */
+    public static PageCursor after(final WidgetView widget) {
+        return new PageCursor(widget.getId(), widget.getZIndex());
+    }
+
+    /**
+     * Decodes a token
+     * 
+     * @param token The token
+     * @return The cursor
+     * @throws InvalidCursorException If the token is not valid
+     */
+    public static PageCursor decode(final String token) throws InvalidCursorException {
+        try {
+            final String[] fields = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split(":");
+            if (fields.length != 2) {
+                throw new InvalidCursorException(token);
+            }
+            return new PageCursor(Long.parseLong(fields[0]), Integer.parseInt(fields[1]));
+        } catch (final IllegalArgumentException e) {
+            throw new InvalidCursorException(token);
+        }
+    }
+
+    /**
+     * Encodes the cursor as a token
+     * 
+     * @return The token
+     */
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((id + ":" + zIndex).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getZIndex() {
+        return zIndex;
+    }
+}
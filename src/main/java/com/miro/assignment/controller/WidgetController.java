@@ -1,13 +1,36 @@
 package com.miro.assignment.controller;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.miro.assignment.domain.CacheStatistics;
 import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetChange;
+import com.miro.assignment.domain.WidgetDelta;
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.domain.WidgetOperation;
+import com.miro.assignment.domain.WidgetTile;
+import com.miro.assignment.domain.WidgetView;
+import com.miro.assignment.exception.BatchSizeExceededException;
 import com.miro.assignment.exception.PagingSizeExceededException;
+import com.miro.assignment.service.api.WidgetChangeListener;
 import com.miro.assignment.service.api.WidgetService;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -18,15 +41,19 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 
 /**
- * This class is the REST API controller for Widget entities
+ * This class is the REST API controller for Widget entities. Every endpoint is
+ * available for a board under `/api/v1/boards/{board_id}/widgets`, and for the
+ * default board under `/api/v1/widgets`.
  */
-@RequestMapping("/api/v1/widgets")
+@RequestMapping({ "/api/v1/widgets", "/api/v1/boards/{board_id}/widgets" })
 @RestController
 @Api(tags = { "widgets" })
 public class WidgetController {
@@ -34,71 +61,307 @@ public class WidgetController {
     @Autowired
     protected WidgetService widgetService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     private static final int PAGE_MAX_SIZE = 500;
     private static final String PAGE_DEFAULT_PAGE = "0";
     private static final String PAGING_DEFAULT_SIZE = "10";
     private static final String PAGING_DEFAULT_SORT = "zIndex";
+    private static final String PAGING_NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final int BATCH_MAX_SIZE = 1000;
+    private static final long CHANGES_TIMEOUT_MS = 30 * 60 * 1000L;
+    private static final String CHANGES_OVERFLOW_EVENT = "OVERFLOW";
+    private static final String TILE_SIZE_HEADER = "X-Tile-Size";
+
+    @Value("${widget.tiles.max-age:0s}")
+    private Duration tileMaxAge;
 
     @GetMapping("/")
     @ResponseStatus(HttpStatus.OK)
-    @ApiOperation(value = "List all widgets.", notes = "Returns a list of all widgets sorted by incrementing z-index.")
-    public List<Widget> getAllWidgets() {
-        return widgetService.getAll();
+    @ApiOperation(value = "List all widgets.", notes = "Returns a list of all widgets sorted by incrementing z-index, "
+            + "optionally with only some of their fields.")
+    public List<?> getAllWidgets(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            @ApiParam(value = "The fields to return (e.g. `id,zindex,xcoordinate,ycoordinate,width,height`), all when missing.") final @RequestParam(name = "fields", required = false) String fields) {
+        return fields == null ? widgetService.getAll(board(boardId))
+                : widgetService.getAll(board(boardId), WidgetField.parse(fields));
+    }
+
+    @GetMapping(value = "/", produces = NDJSON_VALUE)
+    @ApiOperation(value = "Stream all widgets.", notes = "Streams all widgets sorted by incrementing z-index as newline delimited JSON, "
+            + "reading them in fixed-size chunks.")
+    public ResponseEntity<StreamingResponseBody> streamAllWidgets(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId) {
+        final long board = board(boardId);
+        final ObjectWriter writer = objectMapper.writerFor(Widget.class);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(outputStream -> {
+            List<Widget> chunk = widgetService.getAllAfter(board, null, null, STREAM_CHUNK_SIZE);
+            while (!chunk.isEmpty()) {
+                for (final Widget widget : chunk) {
+                    outputStream.write(writer.writeValueAsBytes(widget));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+
+                final Widget last = chunk.get(chunk.size() - 1);
+                chunk = chunk.size() < STREAM_CHUNK_SIZE ? List.of()
+                        : widgetService.getAllAfter(board, last.getId(), last.getZIndex(), STREAM_CHUNK_SIZE);
+            }
+        });
+    }
+
+    @GetMapping("/delta")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "List the changes since a version.", notes = "Returns the widgets created or changed (including "
+            + "those shifted in the z-plane) and the ids of the widgets deleted since a version, and the version to ask "
+            + "from next time. Without a version, returns the whole board. Answers 410 when the version is unknown "
+            + "(e.g. after a restart), in which case the board must be reloaded.")
+    public WidgetDelta getDelta(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            @ApiParam(value = "The version returned by the previous call.") final @RequestParam(name = "since", required = false) Long since) {
+        return widgetService.getDelta(board(boardId), since);
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation(value = "Stream the changes of all widgets of the board.", notes = "Streams the changes committed from now on as server-sent "
+            + "events named after the change type (CREATED, UPDATED, DELETED and SHIFTED, for a z-index range moved by an "
+            + "offset, negative when moved down by a z-index compaction) with increasing ids. A client too slow to keep up "
+            + "receives an OVERFLOW event and is disconnected, and must reload the board.")
+    public SseEmitter streamChanges(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId) {
+        final SseEmitter emitter = new SseEmitter(CHANGES_TIMEOUT_MS);
+        final Runnable unsubscribe = widgetService.subscribeToChanges(board(boardId), new WidgetChangeListener() {
+            @Override
+            public void onChange(final long sequence, final WidgetChange change) throws IOException {
+                emitter.send(SseEmitter.event().id(Long.toString(sequence)).name(change.getType().name())
+                        .data(change, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void onOverflow() {
+                try {
+                    emitter.send(SseEmitter.event().name(CHANGES_OVERFLOW_EVENT).data(""));
+                    emitter.complete();
+                } catch (final IOException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        });
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        return emitter;
     }
 
     @GetMapping("/paged_list")
     @ResponseStatus(HttpStatus.OK)
-    @ApiOperation(value = "List all widgets (paged).", notes = "Returns a list of all widgets using paging, filtering and sorting.")
-    public List<Widget> getAllWidgetsPaged(final @RequestParam(name = "page", defaultValue = PAGE_DEFAULT_PAGE) int pageNo,
+    @ApiOperation(value = "List all widgets (paged).", notes = "Returns a list of all widgets using paging, filtering and sorting. "
+            + "When a cursor is given (empty for the first page), pages follow the cursor in ascending z-index instead "
+            + "(page and sort are ignored) and the cursor of the next page is returned in the `X-Next-Cursor` header. "
+            + "With cursors, the id and z-index are always among the fields returned.")
+    public List<?> getAllWidgetsPaged(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            final @RequestParam(name = "page", defaultValue = PAGE_DEFAULT_PAGE) int pageNo,
             final @RequestParam(name = "size", defaultValue = PAGING_DEFAULT_SIZE) int pageSize,
-            final @RequestParam(name = "sort", defaultValue = PAGING_DEFAULT_SORT) String sortBy) {
+            final @RequestParam(name = "sort", defaultValue = PAGING_DEFAULT_SORT) String sortBy,
+            @ApiParam(value = "The cursor returned with the previous page.") final @RequestParam(name = "cursor", required = false) String cursor,
+            @ApiParam(value = "The fields to return (e.g. `id,zindex,xcoordinate,ycoordinate,width,height`), all when missing.") final @RequestParam(name = "fields", required = false) String fields,
+            final HttpServletResponse response) {
         if (pageSize > PAGE_MAX_SIZE) {
             throw new PagingSizeExceededException(PAGE_MAX_SIZE, pageSize);
         }
-        return widgetService.getAll(pageNo, pageSize, sortBy);
+        if (fields != null) {
+            return getViewsPaged(board(boardId), pageNo, pageSize, sortBy, cursor, WidgetField.parse(fields),
+                    response);
+        }
+        if (cursor == null) {
+            return widgetService.getAll(board(boardId), pageNo, pageSize, sortBy);
+        }
+
+        final PageCursor after = cursor.isEmpty() ? null : PageCursor.decode(cursor);
+        final List<Widget> widgets = after == null ? widgetService.getAllAfter(board(boardId), null, null, pageSize)
+                : widgetService.getAllAfter(board(boardId), after.getId(), after.getZIndex(), pageSize);
+        if (!widgets.isEmpty() && widgets.size() == pageSize) {
+            response.setHeader(PAGING_NEXT_CURSOR_HEADER, PageCursor.after(widgets.get(widgets.size() - 1)).encode());
+        }
+        return widgets;
     }
 
     @GetMapping("/{id}")
     @ResponseStatus(HttpStatus.OK)
     @ApiOperation(value = "Display Widget data.", notes = "Displays Widget data given an ID.")
     public Widget showWidget(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
             @ApiParam(value = "The id of the Widget to display.", required = true) final @PathVariable(name = "id") Long id) {
-        return widgetService.find(id);
+        return widgetService.find(board(boardId), id);
     }
 
     @PostMapping("/")
     @ResponseStatus(HttpStatus.CREATED)
     @ApiOperation(value = "Create a new Widget.", notes = "Creates a new Widget entity with the specified data.")
-    public Widget createWidget(@RequestBody final Widget widget) {
-        return widgetService.create(widget);
+    public Widget createWidget(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            @RequestBody final Widget widget) {
+        return widgetService.create(board(boardId), widget);
+    }
+
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Apply a batch of changes.", notes = "Applies a list of create, update and delete operations as a whole, "
+            + "resolving the z-index conflicts of all of them at once. Returns the resulting Widget of each operation "
+            + "(null for deletes).")
+    public List<Widget> applyBatch(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            @RequestBody final List<WidgetOperation> operations) {
+        if (operations.size() > BATCH_MAX_SIZE) {
+            throw new BatchSizeExceededException(BATCH_MAX_SIZE, operations.size());
+        }
+        return widgetService.applyBatch(board(boardId), operations);
     }
 
     @PutMapping("/{id}")
     @ResponseStatus(HttpStatus.OK)
     @ApiOperation(value = "Update a Widget.", notes = "Updates a Widget entity according to the specified data.")
     public Widget updateWidget(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
             @ApiParam(value = "The id of the Widget to update.", required = true) @PathVariable("id") final Long id,
             @RequestBody final Widget widget) {
-        return widgetService.update(id, widget);
+        return widgetService.update(board(boardId), id, widget);
     }
 
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.OK)
     @ApiOperation(value = "Delete a Widget.", notes = "Deletes a Widget entity given an ID.")
     public void deleteWidget(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
             @ApiParam(value = "The id of the Widget to delete.", required = true) final @PathVariable(name = "id") Long id) {
-        widgetService.delete(id);
+        widgetService.delete(board(boardId), id);
+    }
+
+    @GetMapping("/cache_stats")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Display cache statistics.", notes = "Displays the hit, miss and eviction counts of the widget "
+            + "cache (`widgets`), of the listing cache (`listing`), of the tile cache (`tiles`) and of the JSON cache "
+            + "(`json`).")
+    public Map<String, CacheStatistics> getCacheStatistics() {
+        return widgetService.getCacheStatistics();
     }
 
     @GetMapping("/area")
     @ResponseStatus(HttpStatus.OK)
-    @ApiOperation(value = "List all widgets with fit an area.", notes = "Returns a list of all widgets which fit a specified area.")
-    public List<Widget> getAllWidgetFilterdByArea(
+    @ApiOperation(value = "List all widgets with fit an area.", notes = "Returns a list of all widgets which fit a specified area, "
+            + "optionally with only some of their fields.")
+    public List<?> getAllWidgetFilterdByArea(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
             final @RequestParam(name = "x_coordinate", required = true) int xCoordinate,
             final @RequestParam(name = "y_coordinate", required = true) int yCoordinate,
             final @RequestParam(name = "width", required = true) int width,
-            final @RequestParam(name = "height", required = true) int height) {
-        return widgetService.getWidgetsFilteredByArea(xCoordinate, yCoordinate, width, height);
+            final @RequestParam(name = "height", required = true) int height,
+            @ApiParam(value = "The fields to return (e.g. `id,zindex,xcoordinate,ycoordinate,width,height`), all when missing.") final @RequestParam(name = "fields", required = false) String fields) {
+        return fields == null
+                ? widgetService.getWidgetsFilteredByArea(board(boardId), xCoordinate, yCoordinate, width, height)
+                : widgetService.getWidgetsFilteredByArea(board(boardId), xCoordinate, yCoordinate, width, height,
+                        WidgetField.parse(fields));
+    }
+
+    @GetMapping("/intersecting")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "List the widgets which intersect an area.", notes = "Returns the widgets which overlap or touch a "
+            + "specified area, topmost first (descending z-index), optionally only the first ones.")
+    public List<Widget> getWidgetsIntersectingArea(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            final @RequestParam(name = "x_coordinate", required = true) int xCoordinate,
+            final @RequestParam(name = "y_coordinate", required = true) int yCoordinate,
+            final @RequestParam(name = "width", required = true) int width,
+            final @RequestParam(name = "height", required = true) int height,
+            @ApiParam(value = "The maximum number of widgets to return.") final @RequestParam(name = "limit", required = false) Integer limit) {
+        return widgetService.getWidgetsIntersectingArea(board(boardId), xCoordinate, yCoordinate, width, height, limit);
+    }
+
+    @GetMapping("/containing")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "List the widgets which contain an area.", notes = "Returns the widgets which fully contain a "
+            + "specified area, topmost first (descending z-index), optionally only the first ones.")
+    public List<Widget> getWidgetsContainingArea(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            final @RequestParam(name = "x_coordinate", required = true) int xCoordinate,
+            final @RequestParam(name = "y_coordinate", required = true) int yCoordinate,
+            final @RequestParam(name = "width", required = true) int width,
+            final @RequestParam(name = "height", required = true) int height,
+            @ApiParam(value = "The maximum number of widgets to return.") final @RequestParam(name = "limit", required = false) Integer limit) {
+        return widgetService.getWidgetsContainingArea(board(boardId), xCoordinate, yCoordinate, width, height, limit);
+    }
+
+    @GetMapping("/tiles/{tile_x}/{tile_y}")
+    @ApiOperation(value = "List the widgets of a tile.", notes = "Returns the widgets which overlap or touch a tile of the plane "
+            + "(tile x covers the coordinates from x * size to (x + 1) * size - 1, the size being returned in the "
+            + "`X-Tile-Size` header), sorted by incrementing z-index. The response carries an ETag and answers 304 when "
+            + "the tile has not changed.")
+    public ResponseEntity<byte[]> getTile(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            @ApiParam(value = "The tile's column.", required = true) final @PathVariable(name = "tile_x") int tileX,
+            @ApiParam(value = "The tile's row.", required = true) final @PathVariable(name = "tile_y") int tileY) {
+        final WidgetTile tile = widgetService.getTile(board(boardId), tileX, tileY);
+        final CacheControl cacheControl = tileMaxAge.isZero() ? CacheControl.noCache()
+                : CacheControl.maxAge(tileMaxAge.getSeconds(), TimeUnit.SECONDS);
+        // Not modified responses are answered from the ETag
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(tile.getETag())
+                .cacheControl(cacheControl.cachePublic())
+                .header(TILE_SIZE_HEADER, Integer.toString(widgetService.getTileSize())).body(tile.getContent());
+    }
+
+    @GetMapping("/at")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(value = "Display the topmost widget at a point.", notes = "Returns the widget with the highest z-index "
+            + "containing a point (edges included), e.g. the one clicked.")
+    public Widget getWidgetAt(
+            @ApiParam(value = "The board (the default board when missing).") final @PathVariable(name = "board_id", required = false) Long boardId,
+            final @RequestParam(name = "x_coordinate", required = true) int xCoordinate,
+            final @RequestParam(name = "y_coordinate", required = true) int yCoordinate) {
+        return widgetService.getWidgetAt(board(boardId), xCoordinate, yCoordinate);
+    }
+
+    /**
+     * Lists a page of projections, as getAllWidgetsPaged
+     * 
+     * @param boardId  The board
+     * @param pageNo   The page number
+     * @param pageSize The page size
+     * @param sortBy   The sorting criteria
+     * @param cursor   The cursor of the page (null for offset paging)
+     * @param fields   The fields to return
+     * @param response The response, which receives the cursor of the next page
+     * @return The projections
+     */
+    private List<WidgetView> getViewsPaged(final long boardId, final int pageNo, final int pageSize,
+            final String sortBy, final String cursor, final Set<WidgetField> fields,
+            final HttpServletResponse response) {
+        if (cursor == null) {
+            return widgetService.getAll(boardId, pageNo, pageSize, sortBy, fields);
+        }
+
+        // The next cursor is made of the id and z-index of the last widget
+        final Set<WidgetField> cursorFields = EnumSet.of(WidgetField.ID, WidgetField.Z_INDEX);
+        cursorFields.addAll(fields);
+        final PageCursor after = cursor.isEmpty() ? null : PageCursor.decode(cursor);
+        final List<WidgetView> widgets = after == null
+                ? widgetService.getAllAfter(boardId, null, null, pageSize, cursorFields)
+                : widgetService.getAllAfter(boardId, after.getId(), after.getZIndex(), pageSize, cursorFields);
+        if (!widgets.isEmpty() && widgets.size() == pageSize) {
+            response.setHeader(PAGING_NEXT_CURSOR_HEADER, PageCursor.after(widgets.get(widgets.size() - 1)).encode());
+        }
+        return widgets;
+    }
+
+    /**
+     * @param boardId The board in the path (null for the default board)
+     * @return The board to use
+     */
+    private static long board(final Long boardId) {
+        return boardId == null ? Widget.DEFAULT_BOARD_ID : boardId;
     }
 
 }
@@ -0,0 +1,32 @@
+package com.miro.assignment.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class represents the statistics of a cache since startup
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatistics {
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * The ratio of hits to requests (1 when there were no requests)
+     */
+    private double hitRate;
+
+    /**
+     * The number of entries evicted by size or age (not by writes)
+     */
+    private long evictionCount;
+
+    /**
+     * The approximate number of entries
+     */
+    private long size;
+}
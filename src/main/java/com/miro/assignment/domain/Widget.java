@@ -2,25 +2,51 @@ package com.miro.assignment.domain;
 
 import java.time.LocalDateTime;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 import javax.validation.constraints.Min;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.miro.assignment.config.SecondLevelCacheConfig;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
 
 /**
- * This class represents a Widget entity
+ * This class represents a Widget entity. Each widget belongs to a board, which
+ * has its own z-index space. Widgets are kept in the Hibernate second-level
+ * cache (see SecondLevelCacheConfig).
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCacheConfig.WIDGET_REGION)
+@Table(uniqueConstraints = @UniqueConstraint(name = "widget_board_z_index", columnNames = { "boardId",
+        "zIndex" }), indexes = { @Index(name = "widget_board_version", columnList = "boardId, version"),
+                @Index(name = "widget_board_left_top", columnList = "boardId, xCoordinate, yCoordinate"),
+                @Index(name = "widget_board_right_bottom", columnList = "boardId, rightEdge, bottomEdge") })
 @Data
 @EqualsAndHashCode
 public class Widget {
+    /**
+     * The board of the widgets created without a board (e.g. through
+     * /api/v1/widgets)
+     */
+    public static final long DEFAULT_BOARD_ID = 0;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -31,7 +57,16 @@ public class Widget {
     @Column(nullable = false)
     private Integer yCoordinate;
 
-    @Column(unique = true, nullable = false)
+    /**
+     * The board the widget belongs to (never changes). Returned in the JSON of
+     * the widget, but only ever taken from the path of a request: a request body
+     * cannot set it.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long boardId = DEFAULT_BOARD_ID;
+
+    @Column(nullable = false)
     private Integer zIndex;
 
     @Min(0)
@@ -42,24 +77,78 @@ public class Widget {
     @Column(nullable = false)
     private Integer height;
 
+    /**
+     * The right edge (x coordinate plus width), computed by the database so that
+     * area queries can seek it in an index. Only read by queries: it is not
+     * exposed and is not set on the widgets built by the application.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @Column(insertable = false, updatable = false,
+            columnDefinition = "BIGINT AS (CAST(x_coordinate AS BIGINT) + width)")
+    private Long rightEdge;
+
+    /**
+     * The bottom edge (y coordinate plus height), computed by the database like
+     * the right edge
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @Column(insertable = false, updatable = false,
+            columnDefinition = "BIGINT AS (CAST(y_coordinate AS BIGINT) + height)")
+    private Long bottomEdge;
+
     @UpdateTimestamp
     @Column(nullable = false)
     private LocalDateTime lastModified;
 
+    /**
+     * The version of the board in which the widget last changed (see the delta
+     * sync). Returned in the JSON of the widget, but set by the service only.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long version = 0L;
+
+    /**
+     * Copies the widget, e.g. so that a cache or a storage never shares its own
+     * widgets with callers
+     *
+     * @return A copy of the widget, with all its fields
+     */
+    public Widget copy() {
+        final Widget copy = new Widget();
+        copy.id = id;
+        copy.xCoordinate = xCoordinate;
+        copy.yCoordinate = yCoordinate;
+        copy.boardId = boardId;
+        copy.zIndex = zIndex;
+        copy.width = width;
+        copy.height = height;
+        copy.rightEdge = rightEdge;
+        copy.bottomEdge = bottomEdge;
+        copy.lastModified = lastModified;
+        copy.version = version;
+        return copy;
+    }
+
     /**
      * Overrides the toString representation
      */
     @Override
     public String toString() {
-        return "Widget {" + "id=" + id + ", xCoordinate='" + xCoordinate + '\'' + ", yCoordinate='" + yCoordinate + '\''
-                + ", zIndex='" + zIndex + '\'' + ", width='" + width + '\'' + ", height='" + height + '\''
-                + ", lastModified=" + lastModified + '}';
+        return "Widget {" + "id=" + id + ", boardId=" + boardId + ", xCoordinate='" + xCoordinate + '\''
+                + ", yCoordinate='" + yCoordinate + '\'' + ", zIndex='" + zIndex + '\'' + ", width='" + width + '\''
+                + ", height='" + height + '\'' + ", lastModified=" + lastModified + ", version=" + version + '}';
     }
 
     /**
      * Builder for the Widget entity
      */
     public static class Builder {
+        private long boardId = DEFAULT_BOARD_ID;
         private Integer xCoordinate;
         private Integer yCoordinate;
         private Integer zIndex;
@@ -93,6 +182,17 @@ public class Widget {
             return this;
         }
 
+        /**
+         * Optionally assign a board (the default board otherwise)
+         * 
+         * @param boardId The Widget's board
+         * @return The builder object
+         */
+        public Builder withBoardId(final long boardId) {
+            this.boardId = boardId;
+            return this;
+        }
+
         /**
          * Builds an entity
          * 
@@ -100,6 +200,7 @@ public class Widget {
          */
         public Widget build() {
             final Widget widget = new Widget();
+            widget.boardId = boardId;
             widget.xCoordinate = xCoordinate;
             widget.yCoordinate = yCoordinate;
             widget.zIndex = zIndex;
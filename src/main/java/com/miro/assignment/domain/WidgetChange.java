@@ -0,0 +1,101 @@
+package com.miro.assignment.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class represents one committed change of the board, as published to
+ * the change feed. Only the fields of its type are set.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WidgetChange {
+    /**
+     * The change types
+     */
+    public enum Type {
+        CREATED, UPDATED, DELETED, SHIFTED
+    }
+
+    private Type type;
+
+    /**
+     * The board changed
+     */
+    private Long boardId;
+
+    /**
+     * The Widget created or updated (as stored)
+     */
+    private Widget widget;
+
+    /**
+     * The id of the Widget deleted
+     */
+    private Long id;
+
+    /**
+     * The first z-index of the range shifted (inclusive)
+     */
+    private Integer from;
+
+    /**
+     * The last z-index of the range shifted (inclusive), before the shift
+     */
+    private Integer to;
+
+    /**
+     * The number of places the range was moved up (negative when a z-index
+     * compaction moved it down)
+     */
+    private Integer offset;
+
+    /**
+     * Creates a change for a created Widget
+     * 
+     * @param widget The Widget created
+     * @return The change
+     */
+    public static WidgetChange created(final Widget widget) {
+        return new WidgetChange(Type.CREATED, widget.getBoardId(), widget, null, null, null, null);
+    }
+
+    /**
+     * Creates a change for an updated Widget
+     * 
+     * @param widget The Widget updated
+     * @return The change
+     */
+    public static WidgetChange updated(final Widget widget) {
+        return new WidgetChange(Type.UPDATED, widget.getBoardId(), widget, null, null, null, null);
+    }
+
+    /**
+     * Creates a change for a deleted Widget
+     * 
+     * @param widget The Widget deleted
+     * @return The change
+     */
+    public static WidgetChange deleted(final Widget widget) {
+        return new WidgetChange(Type.DELETED, widget.getBoardId(), null, widget.getId(), null, null, null);
+    }
+
+    /**
+     * Creates a change for a range of z-indexes moved up (or down)
+     * 
+     * @param boardId The board of the range
+     * @param from    The first z-index of the range (inclusive)
+     * @param to      The last z-index of the range (inclusive)
+     * @param offset  The number of places the range was moved up (negative
+     *                when moved down)
+     * @return The change
+     */
+    public static WidgetChange shifted(final long boardId, final int from, final int to, final int offset) {
+        return new WidgetChange(Type.SHIFTED, boardId, null, null, from, to, offset);
+    }
+}
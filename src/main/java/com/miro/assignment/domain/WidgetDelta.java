@@ -0,0 +1,31 @@
+package com.miro.assignment.domain;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class represents the changes of the board between two versions
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WidgetDelta {
+    /**
+     * The version the changes lead to (the cursor of the next delta)
+     */
+    private long version;
+
+    /**
+     * The widgets created or changed (including those shifted in the z-plane),
+     * in their latest state
+     */
+    private List<Widget> widgets;
+
+    /**
+     * The ids of the widgets deleted
+     */
+    private List<Long> deleted;
+}
@@ -0,0 +1,99 @@
+package com.miro.assignment.domain;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.miro.assignment.exception.UnknownWidgetFieldException;
+
+/**
+ * This enum lists the fields of a widget which a listing can be restricted to
+ * (sparse fieldsets), with their name in JSON and in the entity
+ */
+public enum WidgetField {
+    ID("id", "id", Widget::getId, (view, value) -> view.setId((Long) value)),
+    BOARD_ID("boardId", "boardId", Widget::getBoardId, (view, value) -> view.setBoardId((Long) value)),
+    X_COORDINATE("xcoordinate", "xCoordinate", Widget::getXCoordinate,
+            (view, value) -> view.setXCoordinate((Integer) value)),
+    Y_COORDINATE("ycoordinate", "yCoordinate", Widget::getYCoordinate,
+            (view, value) -> view.setYCoordinate((Integer) value)),
+    Z_INDEX("zindex", "zIndex", Widget::getZIndex, (view, value) -> view.setZIndex((Integer) value)),
+    WIDTH("width", "width", Widget::getWidth, (view, value) -> view.setWidth((Integer) value)),
+    HEIGHT("height", "height", Widget::getHeight, (view, value) -> view.setHeight((Integer) value)),
+    LAST_MODIFIED("lastModified", "lastModified", Widget::getLastModified,
+            (view, value) -> view.setLastModified((LocalDateTime) value)),
+    VERSION("version", "version", Widget::getVersion, (view, value) -> view.setVersion((Long) value));
+
+    private final String jsonName;
+    private final String attribute;
+    private final Function<Widget, Object> getter;
+    private final BiConsumer<WidgetView, Object> setter;
+
+    WidgetField(final String jsonName, final String attribute, final Function<Widget, Object> getter,
+            final BiConsumer<WidgetView, Object> setter) {
+        this.jsonName = jsonName;
+        this.attribute = attribute;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * @return The name of the attribute of the Widget entity
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Copies the field of a widget to a view
+     *
+     * @param widget The widget
+     * @param view   The view
+     */
+    public void copy(final Widget widget, final WidgetView view) {
+        setter.accept(view, getter.apply(widget));
+    }
+
+    /**
+     * Sets the field of a view
+     *
+     * @param view  The view
+     * @param value The value of the field (as read from the entity)
+     */
+    public void set(final WidgetView view, final Object value) {
+        setter.accept(view, value);
+    }
+
+    /**
+     * Parses a comma-separated list of fields, named as in the JSON of a widget
+     * (case is ignored)
+     *
+     * @param fields The list
+     * @return The fields
+     * @throws UnknownWidgetFieldException If a field is unknown, or the list is
+     *                                     empty
+     */
+    public static Set<WidgetField> parse(final String fields) throws UnknownWidgetFieldException {
+        final Set<WidgetField> parsed = EnumSet.noneOf(WidgetField.class);
+        for (final String name : fields.split(",")) {
+            parsed.add(named(name.trim()));
+        }
+        return parsed;
+    }
+
+    /**
+     * @param name The JSON name of a field (case is ignored)
+     * @return The field
+     * @throws UnknownWidgetFieldException If no field has the name
+     */
+    private static WidgetField named(final String name) throws UnknownWidgetFieldException {
+        for (final WidgetField field : values()) {
+            if (field.jsonName.equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        throw new UnknownWidgetFieldException(name);
+    }
+}
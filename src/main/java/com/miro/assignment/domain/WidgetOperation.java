@@ -0,0 +1,64 @@
+package com.miro.assignment.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class represents one operation of a batch of Widget changes
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WidgetOperation {
+    /**
+     * The operation types
+     */
+    public enum Type {
+        CREATE, UPDATE, DELETE
+    }
+
+    private Type type;
+
+    /**
+     * The id of the Widget to update or delete
+     */
+    private Long id;
+
+    /**
+     * The data of the Widget to create, or the data to update (empty fields will
+     * be ignored)
+     */
+    private Widget widget;
+
+    /**
+     * Creates a create operation
+     * 
+     * @param widget The data of the Widget to create
+     * @return The operation
+     */
+    public static WidgetOperation create(final Widget widget) {
+        return new WidgetOperation(Type.CREATE, null, widget);
+    }
+
+    /**
+     * Creates an update operation
+     * 
+     * @param id     The id of the Widget to update
+     * @param widget The data to update
+     * @return The operation
+     */
+    public static WidgetOperation update(final Long id, final Widget widget) {
+        return new WidgetOperation(Type.UPDATE, id, widget);
+    }
+
+    /**
+     * Creates a delete operation
+     * 
+     * @param id The id of the Widget to delete
+     * @return The operation
+     */
+    public static WidgetOperation delete(final Long id) {
+        return new WidgetOperation(Type.DELETE, id, null);
+    }
+}
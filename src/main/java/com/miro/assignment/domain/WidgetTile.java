@@ -0,0 +1,25 @@
+package com.miro.assignment.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class represents a tile of the plane as served to clients: the widgets
+ * intersecting it, already serialized
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WidgetTile {
+    /**
+     * The widgets intersecting the tile in ascending z-index, as a JSON array
+     * (shared, not to be modified)
+     */
+    private byte[] content;
+
+    /**
+     * The entity tag of the content (changes whenever the content does)
+     */
+    private String eTag;
+}
@@ -0,0 +1,39 @@
+package com.miro.assignment.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class records the deletion of a widget, so the delta sync can report it
+ */
+@Entity
+@Table(indexes = @Index(name = "widget_tombstone_board_version", columnList = "boardId, version"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WidgetTombstone {
+    /**
+     * The id of the deleted widget (ids are never reused)
+     */
+    @Id
+    private Long id;
+
+    /**
+     * The board the widget belonged to
+     */
+    @Column(nullable = false)
+    private Long boardId;
+
+    /**
+     * The version of the board in which the widget was deleted
+     */
+    @Column(nullable = false)
+    private Long version;
+}
@@ -0,0 +1,40 @@
+package com.miro.assignment.domain;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+/**
+ * This class represents a projection of a widget on some of its fields (see
+ * WidgetField), read without loading the entity. Only the fields of the
+ * projection are set and serialized, under the same names as in a Widget.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WidgetView {
+    private Long id;
+    private Long boardId;
+    private Integer xCoordinate;
+    private Integer yCoordinate;
+    private Integer zIndex;
+    private Integer width;
+    private Integer height;
+    private LocalDateTime lastModified;
+    private Long version;
+
+    /**
+     * Projects a widget
+     *
+     * @param widget The widget
+     * @param fields The fields to keep
+     * @return The projection
+     */
+    public static WidgetView of(final Widget widget, final Set<WidgetField> fields) {
+        final WidgetView view = new WidgetView();
+        fields.forEach(field -> field.copy(widget, view));
+        return view;
+    }
+}
@@ -0,0 +1,28 @@
+package com.miro.assignment.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This class represents the exception thrown when a batch has more operations
+ * than the maximum allowed.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class BatchSizeExceededException extends RuntimeException {
+
+    /**
+     * Generated serial ID
+     */
+    private static final long serialVersionUID = -5521436793826290340L;
+
+    /**
+     * Generates the exception
+     * 
+     * @param maximumBatchSize The maximum number of operations allowed
+     * @param requestedSize    The requested number of operations
+     */
+    public BatchSizeExceededException(final int maximumBatchSize, final int requestedSize) {
+        super("The batch of " + requestedSize + " operations exceeds the maximum allowed of " + maximumBatchSize
+                + ".");
+    }
+}
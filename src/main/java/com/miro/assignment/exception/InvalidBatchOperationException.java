@@ -0,0 +1,27 @@
+package com.miro.assignment.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This class represents the exception thrown when an operation of a batch
+ * cannot be applied together with the rest of the batch.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidBatchOperationException extends RuntimeException {
+
+    /**
+     * Generated serial ID
+     */
+    private static final long serialVersionUID = 2716253406651254874L;
+
+    /**
+     * Generates the exception
+     * 
+     * @param operationIndex The position of the operation in the batch
+     * @param reason         Why the operation is not valid
+     */
+    public InvalidBatchOperationException(final int operationIndex, final String reason) {
+        super("Batch operation #" + operationIndex + " is not valid: " + reason + ".");
+    }
+}
@@ -0,0 +1,26 @@
+package com.miro.assignment.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This class represents the exception thrown when a paging cursor cannot be
+ * decoded.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidCursorException extends RuntimeException {
+
+    /**
+     * Generated serial ID
+     */
+    private static final long serialVersionUID = -2398127310464915013L;
+
+    /**
+     * Generates the exception
+     * 
+     * @param cursor The invalid cursor
+     */
+    public InvalidCursorException(final String cursor) {
+        super("The paging cursor `" + cursor + "` is not valid.");
+    }
+}
@@ -0,0 +1,26 @@
+package com.miro.assignment.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This class represents the exception thrown when the requested result limit
+ * of a query is not positive.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidLimitException extends RuntimeException {
+
+    /**
+     * Generated serial ID
+     */
+    private static final long serialVersionUID = 2817346519054721398L;
+
+    /**
+     * Generates the exception
+     * 
+     * @param limit The requested limit
+     */
+    public InvalidLimitException(final int limit) {
+        super("The requested limit of " + limit + " must be at least 1.");
+    }
+}
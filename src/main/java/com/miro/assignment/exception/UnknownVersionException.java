@@ -0,0 +1,28 @@
+package com.miro.assignment.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This class represents the exception thrown when a delta is requested since a
+ * version the board has not reached (e.g. after the storage was reset), so the
+ * client must reload the board.
+ */
+@ResponseStatus(value = HttpStatus.GONE)
+public class UnknownVersionException extends RuntimeException {
+
+    /**
+     * Generated serial ID
+     */
+    private static final long serialVersionUID = 4719203866172301592L;
+
+    /**
+     * Generates the exception
+     * 
+     * @param version The unknown version
+     * @param current The current version of the board
+     */
+    public UnknownVersionException(final long version, final long current) {
+        super("The version " + version + " is unknown, the board is at version " + current + ".");
+    }
+}
@@ -0,0 +1,26 @@
+package com.miro.assignment.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This class represents the exception thrown when a listing is restricted to a
+ * field which widgets do not have.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class UnknownWidgetFieldException extends RuntimeException {
+
+    /**
+     * Generated serial ID
+     */
+    private static final long serialVersionUID = -6204415730938475102L;
+
+    /**
+     * Generates the exception
+     *
+     * @param field The unknown field
+     */
+    public UnknownWidgetFieldException(final String field) {
+        super("Widgets have no field `" + field + "`.");
+    }
+}
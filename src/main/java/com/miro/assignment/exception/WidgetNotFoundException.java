@@ -4,7 +4,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
- * This class represents the exception thrown when a Widget cannot be found
+ * This class represents the exception thrown when a Widget cannot be found (by
+ * id or at a point)
  */
 @ResponseStatus(value = HttpStatus.NOT_FOUND)
 public class WidgetNotFoundException extends RuntimeException {
@@ -22,4 +23,14 @@ public class WidgetNotFoundException extends RuntimeException {
     public WidgetNotFoundException(final long id) {
         super("Widget with id `" + id + "` cannot be found.");
     }
+
+    /**
+     * Generates the exception for a point without any widget
+     * 
+     * @param xCoordinate The point's X coordinate
+     * @param yCoordinate The point's Y coordinate
+     */
+    public WidgetNotFoundException(final int xCoordinate, final int yCoordinate) {
+        super("No Widget can be found at (" + xCoordinate + ", " + yCoordinate + ").");
+    }
 }
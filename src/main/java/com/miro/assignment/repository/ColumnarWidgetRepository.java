@@ -0,0 +1,906 @@
+package com.miro.assignment.repository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.domain.WidgetView;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class provides a compact in-memory implementation of the
+ * WidgetRepository, enabled with `widget.storage=columnar`. Instead of a
+ * Widget object per widget, the fields are kept in parallel primitive arrays
+ * (columns) indexed by slot, and the slots of deleted widgets are reused.
+ * Widgets are only materialized when returned.
+ * <p>
+ * The indexes hold slots only: ids in a primitive hash table (IdSlotMap), and
+ * for each board, z-index, version and area orders in sorted blocks of slots
+ * (SlotIndex). The area order sorts the widgets by bucket of x coordinates
+ * (1024 wide), then by y coordinate, so an area query scans a range of y
+ * coordinates in each bucket it crosses, on the columns (widened by the
+ * largest width and height for intersecting and containing queries). A widget
+ * costs about 95 bytes against about 380 with the memory storage, and the heap
+ * holds a few thousand arrays instead of millions of objects, so garbage
+ * collections stay short whatever the size of the board (see
+ * FootprintBenchmark).
+ * <p>
+ * Reads run in parallel, writes are serialized and exclude reads (the columns
+ * are shared by every board, so unlike the memory storage, writes to
+ * different boards do not run in parallel). A transaction calling
+ * {@link #writeAtomically(long)} holds the write lock until it completes, so
+ * all its writes are seen at once, and undoes them if it rolls back. The store is seeded from the
+ * database (demo data) once the application is ready; the write-behind and the
+ * write-ahead log are only available with the memory storage.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "widget.storage", havingValue = "columnar")
+public class ColumnarWidgetRepository implements WidgetRepository, ApplicationListener<ApplicationReadyEvent> {
+
+    private static final int MIN_CAPACITY = 1024;
+    private static final int AREA_BUCKET_BITS = 10;
+
+    private long[] ids = new long[MIN_CAPACITY];
+    private long[] boardIds = new long[MIN_CAPACITY];
+    private int[] xCoordinates = new int[MIN_CAPACITY];
+    private int[] yCoordinates = new int[MIN_CAPACITY];
+    private int[] zIndexes = new int[MIN_CAPACITY];
+    private int[] widths = new int[MIN_CAPACITY];
+    private int[] heights = new int[MIN_CAPACITY];
+    private long[] versions = new long[MIN_CAPACITY];
+    private long[] lastModified = new long[MIN_CAPACITY];
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    private int slotCount;
+    private int maxWidth;
+    private int maxHeight;
+
+    private final IdSlotMap slotsById = new IdSlotMap();
+    private final Map<Long, Board> boards = new TreeMap<>();
+    private long idSequence;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * While a transaction holds the write lock (see writeAtomically), the widgets
+     * as they were before it by id (null for the ones it created)
+     */
+    private Map<Long, Widget> undo;
+
+    @Autowired
+    @Qualifier("widgetRepository")
+    private WidgetRepository seedRepository;
+
+    /**
+     * Loads the widgets stored in the database
+     *
+     * @param event The event fired once the database has been initialized
+     */
+    @Override
+    public void onApplicationEvent(final ApplicationReadyEvent event) {
+        seedRepository.findAll().forEach(this::save);
+    }
+
+    @Override
+    public <S extends Widget> S save(final S widget) {
+        lock.writeLock().lock();
+        try {
+            if (widget.getId() == null) {
+                widget.setId(++idSequence);
+            } else {
+                idSequence = Math.max(idSequence, widget.getId());
+            }
+
+            final int slot = slotsById.get(widget.getId());
+            if (slot >= 0 && boardIds[slot] != widget.getBoardId()) {
+                throw new DataIntegrityViolationException("widget " + widget.getId() + " belongs to board "
+                        + boardIds[slot]);
+            }
+            final Board board = boards.computeIfAbsent(widget.getBoardId(), id -> new Board());
+            final int taken = board.findSlotByZIndex(widget.getZIndex());
+            if (taken >= 0 && ids[taken] != widget.getId()) {
+                throw new DataIntegrityViolationException("z-index " + widget.getZIndex() + " is already taken");
+            }
+
+            widget.setLastModified(LocalDateTime.now());
+            undo(widget.getId());
+            store(board, widget);
+            return widget;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public <S extends Widget> Iterable<S> saveAll(final Iterable<S> widgets) {
+        final List<S> saved = new ArrayList<>();
+        widgets.forEach(widget -> saved.add(save(widget)));
+        return saved;
+    }
+
+    @Override
+    public Optional<Widget> findById(final Long id) {
+        lock.readLock().lock();
+        try {
+            final int slot = slotsById.get(id);
+            return slot < 0 ? Optional.empty() : Optional.of(materialize(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsById(final Long id) {
+        lock.readLock().lock();
+        try {
+            return slotsById.get(id) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> findAll() {
+        lock.readLock().lock();
+        try {
+            final List<Widget> widgets = new ArrayList<>(slotsById.size());
+            for (final Board board : boards.values()) {
+                board.slotsByZIndex.forEach(slot -> widgets.add(materialize(slot)));
+            }
+            return widgets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> findAllByBoardId(final long boardId) {
+        lock.readLock().lock();
+        try {
+            final Board board = boards.get(boardId);
+            final List<Widget> widgets = new ArrayList<>(board == null ? 0 : board.slotsByZIndex.size());
+            if (board != null) {
+                board.slotsByZIndex.forEach(slot -> widgets.add(materialize(slot)));
+            }
+            return widgets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Long> findBoardIds() {
+        lock.readLock().lock();
+        try {
+            return boards.entrySet().stream().filter(board -> board.getValue().slotsByZIndex.size() > 0)
+                    .map(Map.Entry::getKey).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long countByBoardId(final long boardId) {
+        lock.readLock().lock();
+        try {
+            final Board board = boards.get(boardId);
+            return board == null ? 0 : board.slotsByZIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Widget> findAllById(final Iterable<Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false).map(this::findById).filter(Optional::isPresent)
+                .map(Optional::get).collect(Collectors.toList());
+    }
+
+    @Override
+    public Iterable<Widget> findAll(final Sort sort) {
+        final List<Widget> widgets = findAll();
+        widgets.sort(InMemoryWidgetRepository.comparator(sort));
+        return widgets;
+    }
+
+    @Override
+    public Page<Widget> findAll(final Pageable pageable) {
+        return page(findAll(), pageable);
+    }
+
+    @Override
+    public Page<Widget> findAllByBoardId(final long boardId, final Pageable pageable) {
+        // Paging by z-index walks the index, anything else needs sorting
+        if (pageable.getSort().isUnsorted() || pageable.getSort().equals(Sort.by("zIndex"))) {
+            lock.readLock().lock();
+            try {
+                final Board board = boards.get(boardId);
+                final List<Widget> content = new ArrayList<>();
+                if (board == null) {
+                    return new PageImpl<>(content, pageable, 0);
+                }
+                final long[] skipped = { 0 };
+                board.slotsByZIndex.forEach(slot -> {
+                    if (skipped[0]++ >= pageable.getOffset()) {
+                        content.add(materialize(slot));
+                    }
+                    return content.size() < pageable.getPageSize();
+                });
+                return new PageImpl<>(content, pageable, board.slotsByZIndex.size());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        return page(findAllByBoardId(boardId), pageable);
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteById(final Long id) {
+        lock.writeLock().lock();
+        try {
+            undo(id);
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(final Widget widget) {
+        deleteById(widget.getId());
+    }
+
+    @Override
+    public void deleteAll(final Iterable<? extends Widget> widgets) {
+        widgets.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            slotsById.clear();
+            boards.clear();
+            freeCount = 0;
+            slotCount = 0;
+            maxWidth = 0;
+            maxHeight = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> findPageFromZIndex(final long boardId, final int zIndex, final Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            final List<Widget> widgets = new ArrayList<>();
+            final Board board = boards.get(boardId);
+            if (board == null) {
+                return widgets;
+            }
+            board.slotsByZIndex.forEachFrom(slot -> zIndexes[slot] < zIndex, slot -> {
+                widgets.add(materialize(slot));
+                return widgets.size() < pageable.getPageSize();
+            });
+            return widgets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> findAllWithinArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final LongConsumer scanned) {
+        final long maxX = (long) xCoordinate + width;
+        final long maxY = (long) yCoordinate + height;
+        lock.readLock().lock();
+        try {
+            final long[] found = findSlots(boardId, xCoordinate, maxX, yCoordinate, maxY,
+                    slot -> (long) xCoordinates[slot] + widths[slot] <= maxX
+                            && (long) yCoordinates[slot] + heights[slot] <= maxY,
+                    scanned);
+            final List<Widget> widgets = new ArrayList<>(found.length);
+            for (final long packed : found) {
+                widgets.add(materialize((int) packed));
+            }
+            return widgets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> findWithin(final long boardId, final int minX, final int minY, final long maxX,
+            final long maxY) {
+        return findAllWithinArea(boardId, minX, minY, (int) (maxX - minX), (int) (maxY - minY), scanned -> {
+        });
+    }
+
+    @Override
+    public List<Widget> findPageToZIndex(final long boardId, final int zIndex, final Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            final List<Widget> widgets = new ArrayList<>();
+            final Board board = boards.get(boardId);
+            if (board == null) {
+                return widgets;
+            }
+            board.slotsByZIndex.forEachBefore(slot -> zIndexes[slot] <= zIndex, slot -> {
+                widgets.add(materialize(slot));
+                return widgets.size() < pageable.getPageSize();
+            });
+            return widgets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> findIntersecting(final long boardId, final long minX, final long minY, final long maxX,
+            final long maxY, final Pageable pageable) {
+        return topmost(boardId, minX - maxWidth, maxX, minY - maxHeight, maxY,
+                slot -> (long) xCoordinates[slot] + widths[slot] >= minX
+                        && (long) yCoordinates[slot] + heights[slot] >= minY,
+                pageable.getPageSize());
+    }
+
+    @Override
+    public List<Widget> findContaining(final long boardId, final long minX, final long minY, final long maxX,
+            final long maxY, final Pageable pageable) {
+        return topmost(boardId, maxX - maxWidth, minX, maxY - maxHeight, minY,
+                slot -> (long) xCoordinates[slot] + widths[slot] >= maxX
+                        && (long) yCoordinates[slot] + heights[slot] >= maxY,
+                pageable.getPageSize());
+    }
+
+    @Override
+    public Integer findZIndexById(final long boardId, final Long id) {
+        lock.readLock().lock();
+        try {
+            final int slot = slotsById.get(id);
+            return slot < 0 || boardIds[slot] != boardId ? null : zIndexes[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsByZIndex(final long boardId, final int zIndex) {
+        lock.readLock().lock();
+        try {
+            final Board board = boards.get(boardId);
+            return board != null && board.findSlotByZIndex(zIndex) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Integer findZIndexRunEnd(final long boardId, final int zIndex) {
+        lock.readLock().lock();
+        try {
+            final Board board = boards.get(boardId);
+            if (board == null) {
+                return null;
+            }
+            final Integer[] runEnd = { null };
+            board.slotsByZIndex.forEachFrom(slot -> zIndexes[slot] < zIndex, slot -> {
+                if (runEnd[0] != null && zIndexes[slot] != runEnd[0] + 1) {
+                    return false;
+                }
+                runEnd[0] = zIndexes[slot];
+                return true;
+            });
+            return runEnd[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Integer findMinZIndex(final long boardId) {
+        lock.readLock().lock();
+        try {
+            final Board board = boards.get(boardId);
+            final int slot = board == null ? -1 : board.slotsByZIndex.first();
+            return slot < 0 ? null : zIndexes[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Integer findMaxZIndex(final long boardId) {
+        lock.readLock().lock();
+        try {
+            final Board board = boards.get(boardId);
+            final int slot = board == null ? -1 : board.slotsByZIndex.last();
+            return slot < 0 ? null : zIndexes[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<WidgetView> findViewsByBoardId(final long boardId, final Set<WidgetField> fields,
+            final Pageable pageable) {
+        return views(findAllByBoardId(boardId, pageable).getContent(), fields);
+    }
+
+    @Override
+    public List<WidgetView> findViewsFromZIndex(final long boardId, final int zIndex, final Set<WidgetField> fields,
+            final Pageable pageable) {
+        return views(findPageFromZIndex(boardId, zIndex,
+                pageable.isPaged() ? pageable : PageRequest.of(0, Integer.MAX_VALUE)), fields);
+    }
+
+    @Override
+    public List<WidgetView> findViewsWithinArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final Set<WidgetField> fields, final LongConsumer scanned) {
+        return views(findAllWithinArea(boardId, xCoordinate, yCoordinate, width, height, scanned), fields);
+    }
+
+    @Override
+    public List<Widget> findChangedBetween(final long boardId, final long since, final long until) {
+        lock.readLock().lock();
+        try {
+            final List<Widget> widgets = new ArrayList<>();
+            final Board board = boards.get(boardId);
+            if (board == null) {
+                return widgets;
+            }
+            board.slotsByVersion.forEachFrom(slot -> versions[slot] <= since, slot -> {
+                if (versions[slot] > until) {
+                    return false;
+                }
+                widgets.add(materialize(slot));
+                return true;
+            });
+            return widgets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Long findMaxVersion() {
+        lock.readLock().lock();
+        try {
+            Long maxVersion = null;
+            for (final Board board : boards.values()) {
+                final int slot = board.slotsByVersion.last();
+                if (slot >= 0 && (maxVersion == null || versions[slot] > maxVersion)) {
+                    maxVersion = versions[slot];
+                }
+            }
+            return maxVersion;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int shiftZIndexRange(final long boardId, final int from, final int to, final int offset,
+            final long version) {
+        lock.writeLock().lock();
+        try {
+            final Board board = boards.get(boardId);
+            if (board == null) {
+                return 0;
+            }
+            final int[][] moved = { new int[16] };
+            final int[] count = { 0 };
+            final int[] next = { -1 };
+            board.slotsByZIndex.forEachFrom(slot -> zIndexes[slot] < from, slot -> {
+                if (zIndexes[slot] > to) {
+                    next[0] = slot;
+                    return false;
+                }
+                if (count[0] == moved[0].length) {
+                    moved[0] = Arrays.copyOf(moved[0], count[0] * 2);
+                }
+                moved[0][count[0]++] = slot;
+                return true;
+            });
+
+            // Moving up short of the next widget (or down short of the previous one) keeps the z order, so the
+            // z-index index stays as it is
+            final int[] previous = { -1 };
+            if (offset < 0) {
+                board.slotsByZIndex.forEachBefore(slot -> zIndexes[slot] < from, slot -> {
+                    previous[0] = slot;
+                    return false;
+                });
+            }
+            final boolean keepsOrder = offset > 0 ? next[0] < 0 || zIndexes[next[0]] > to + offset
+                    : offset < 0 && (previous[0] < 0 || zIndexes[previous[0]] < from + offset);
+            final long now = toEpochNanos(LocalDateTime.now());
+            for (int i = 0; i < count[0]; i++) {
+                undo(ids[moved[0][i]]);
+                if (!keepsOrder) {
+                    board.slotsByZIndex.remove(moved[0][i]);
+                }
+                board.slotsByVersion.remove(moved[0][i]);
+            }
+            for (int i = 0; i < count[0]; i++) {
+                final int slot = moved[0][i];
+                zIndexes[slot] += offset;
+                versions[slot] = version;
+                lastModified[slot] = now;
+                if (!keepsOrder) {
+                    board.slotsByZIndex.insert(slot);
+                }
+                board.slotsByVersion.insert(slot);
+            }
+            return count[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Changes are applied when saved
+    }
+
+    @Override
+    public void writeAtomically(final long boardId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || lock.isWriteLockedByCurrentThread()) {
+            return;
+        }
+        lock.writeLock().lock();
+        undo = new HashMap<>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(final int status) {
+                try {
+                    if (status != STATUS_COMMITTED) {
+                        rollback();
+                    }
+                } finally {
+                    undo = null;
+                    lock.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Selects the topmost widgets of a board matching a condition among the ones
+     * whose top-left corner is within an area
+     *
+     * @param boardId The board
+     * @param fromX   The lowest x coordinate of the corner
+     * @param toX     The highest x coordinate of the corner
+     * @param fromY   The lowest y coordinate of the corner
+     * @param toY     The highest y coordinate of the corner
+     * @param matches Tells whether the widget in a slot matches
+     * @param limit   The maximum number of widgets to return
+     * @return The topmost matching widgets, in descending z-index
+     */
+    private List<Widget> topmost(final long boardId, final long fromX, final long toX, final long fromY,
+            final long toY, final IntPredicate matches, final int limit) {
+        lock.readLock().lock();
+        try {
+            final long[] found = findSlots(boardId, fromX, toX, fromY, toY, matches, scanned -> {
+            });
+            final List<Widget> widgets = new ArrayList<>(Math.min(found.length, limit));
+            for (int i = found.length - 1; i >= 0 && widgets.size() < limit; i--) {
+                widgets.add(materialize((int) found[i]));
+            }
+            return widgets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the widgets of a board matching a condition among the ones whose
+     * top-left corner is within an area: for each bucket of x coordinates the
+     * area crosses, a seek to the lowest y coordinate then a scan up to the
+     * highest. Must be called holding the lock.
+     *
+     * @param boardId The board
+     * @param fromX   The lowest x coordinate of the corner
+     * @param toX     The highest x coordinate of the corner
+     * @param fromY   The lowest y coordinate of the corner
+     * @param toY     The highest y coordinate of the corner
+     * @param matches Tells whether the widget in a slot matches
+     * @param scanned Receives the number of widgets examined
+     * @return The z-index and slot of each matching widget packed in a long, in
+     *         ascending z-index
+     */
+    private long[] findSlots(final long boardId, final long fromX, final long toX, final long fromY,
+            final long toY, final IntPredicate matches, final LongConsumer scanned) {
+        final Board board = boards.get(boardId);
+        if (board == null) {
+            scanned.accept(0);
+            return new long[0];
+        }
+        final long[][] found = { new long[16] };
+        final int[] count = { 0 };
+        final long[] examined = { 0 };
+        final long[] nextBucket = { fromX >> AREA_BUCKET_BITS };
+        while (nextBucket[0] <= toX >> AREA_BUCKET_BITS) {
+            final long bucket = nextBucket[0];
+            nextBucket[0] = Long.MAX_VALUE;
+            board.slotsByArea.forEachFrom(
+                    slot -> areaBucket(slot) < bucket || areaBucket(slot) == bucket && yCoordinates[slot] < fromY,
+                    slot -> {
+                        if (areaBucket(slot) != bucket || yCoordinates[slot] > toY) {
+                            // Skips the buckets without any widget
+                            nextBucket[0] = areaBucket(slot) != bucket ? areaBucket(slot) : bucket + 1;
+                            return false;
+                        }
+                        examined[0]++;
+                        if (xCoordinates[slot] >= fromX && xCoordinates[slot] <= toX && matches.test(slot)) {
+                            if (count[0] == found[0].length) {
+                                found[0] = Arrays.copyOf(found[0], count[0] * 2);
+                            }
+                            found[0][count[0]++] = (long) zIndexes[slot] << 32 | slot;
+                        }
+                        return true;
+                    });
+        }
+        scanned.accept(examined[0]);
+        final long[] sorted = Arrays.copyOf(found[0], count[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Sorts and pages a list of widgets
+     *
+     * @param widgets  The widgets
+     * @param pageable The page and its sort criteria
+     * @return The page
+     */
+    private static Page<Widget> page(final List<Widget> widgets, final Pageable pageable) {
+        final List<Widget> content = widgets.stream().sorted(InMemoryWidgetRepository.comparator(pageable.getSort()))
+                .skip(pageable.getOffset()).limit(pageable.getPageSize()).collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, widgets.size());
+    }
+
+    /**
+     * @param widgets Widgets
+     * @param fields  The fields to keep
+     * @return Their projections, in the same order
+     */
+    private static List<WidgetView> views(final List<Widget> widgets, final Set<WidgetField> fields) {
+        return widgets.stream().map(widget -> WidgetView.of(widget, fields)).collect(Collectors.toList());
+    }
+
+    /**
+     * Writes a widget to its slot, taking one if it is new, and indexes it. Must
+     * be called holding the write lock.
+     *
+     * @param board  The widget's board
+     * @param widget The widget
+     */
+    private void store(final Board board, final Widget widget) {
+        int slot = slotsById.get(widget.getId());
+        if (slot >= 0) {
+            board.unindex(slot);
+        } else {
+            slot = allocate();
+            slotsById.put(widget.getId(), slot);
+        }
+        ids[slot] = widget.getId();
+        boardIds[slot] = widget.getBoardId();
+        xCoordinates[slot] = widget.getXCoordinate();
+        yCoordinates[slot] = widget.getYCoordinate();
+        zIndexes[slot] = widget.getZIndex();
+        widths[slot] = widget.getWidth();
+        heights[slot] = widget.getHeight();
+        maxWidth = Math.max(maxWidth, widths[slot]);
+        maxHeight = Math.max(maxHeight, heights[slot]);
+        versions[slot] = widget.getVersion();
+        lastModified[slot] = toEpochNanos(widget.getLastModified());
+        board.index(slot);
+    }
+
+    /**
+     * Puts back the widgets changed by the transaction holding the write lock,
+     * as they were before it. Must be called holding the write lock.
+     */
+    private void rollback() {
+        undo.keySet().forEach(this::remove);
+        undo.values().stream().filter(Objects::nonNull).forEach(
+                previous -> store(boards.computeIfAbsent(previous.getBoardId(), id -> new Board()), previous));
+    }
+
+    /**
+     * Keeps a widget as it was before the transaction holding the write lock
+     * changed it, if one holds it. Must be called holding the write lock.
+     *
+     * @param id The widget's id
+     */
+    private void undo(final long id) {
+        if (undo != null && !undo.containsKey(id)) {
+            final int slot = slotsById.get(id);
+            undo.put(id, slot < 0 ? null : materialize(slot));
+        }
+    }
+
+    /**
+     * Removes a widget and frees its slot. Must be called holding the write lock.
+     *
+     * @param id The widget's id
+     */
+    private void remove(final long id) {
+        final int slot = slotsById.remove(id);
+        if (slot >= 0) {
+            boards.get(boardIds[slot]).unindex(slot);
+            release(slot);
+        }
+    }
+
+    /**
+     * Takes a free slot, growing the columns if there is none. Must be called
+     * holding the write lock.
+     *
+     * @return The slot
+     */
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == ids.length) {
+            final int capacity = slotCount + (slotCount >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            boardIds = Arrays.copyOf(boardIds, capacity);
+            xCoordinates = Arrays.copyOf(xCoordinates, capacity);
+            yCoordinates = Arrays.copyOf(yCoordinates, capacity);
+            zIndexes = Arrays.copyOf(zIndexes, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            lastModified = Arrays.copyOf(lastModified, capacity);
+        }
+        return slotCount++;
+    }
+
+    /**
+     * Returns a slot to reuse. Must be called holding the write lock.
+     *
+     * @param slot The slot, no longer indexed
+     */
+    private void release(final int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeCount * 2));
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Builds the Widget stored in a slot. Must be called holding the lock.
+     *
+     * @param slot The slot
+     * @return A new Widget
+     */
+    private Widget materialize(final int slot) {
+        final Widget widget = new Widget();
+        widget.setId(ids[slot]);
+        widget.setBoardId(boardIds[slot]);
+        widget.setXCoordinate(xCoordinates[slot]);
+        widget.setYCoordinate(yCoordinates[slot]);
+        widget.setZIndex(zIndexes[slot]);
+        widget.setWidth(widths[slot]);
+        widget.setHeight(heights[slot]);
+        widget.setVersion(versions[slot]);
+        widget.setLastModified(LocalDateTime.ofEpochSecond(Math.floorDiv(lastModified[slot], 1_000_000_000L),
+                (int) Math.floorMod(lastModified[slot], 1_000_000_000L), ZoneOffset.UTC));
+        return widget;
+    }
+
+    private int areaBucket(final int slot) {
+        return xCoordinates[slot] >> AREA_BUCKET_BITS;
+    }
+
+    private static long toEpochNanos(final LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+    }
+
+    /**
+     * The ordered indexes of the widgets of a board. Guarded by the lock, as the
+     * columns.
+     */
+    private final class Board {
+        private final SlotIndex slotsByZIndex = new SlotIndex((a, b) -> Integer.compare(zIndexes[a], zIndexes[b]));
+        private final SlotIndex slotsByVersion = new SlotIndex((a, b) -> {
+            final int byVersion = Long.compare(versions[a], versions[b]);
+            return byVersion != 0 ? byVersion : Long.compare(ids[a], ids[b]);
+        });
+        private final SlotIndex slotsByArea = new SlotIndex((a, b) -> {
+            final int byBucket = Integer.compare(areaBucket(a), areaBucket(b));
+            if (byBucket != 0) {
+                return byBucket;
+            }
+            final int byYCoordinate = Integer.compare(yCoordinates[a], yCoordinates[b]);
+            return byYCoordinate != 0 ? byYCoordinate : Long.compare(ids[a], ids[b]);
+        });
+
+        /**
+         * Finds the slot of the widget at a z-index
+         *
+         * @param zIndex The z-index
+         * @return The slot, or -1 if the z-index is free
+         */
+        private int findSlotByZIndex(final int zIndex) {
+            final int[] found = { -1 };
+            slotsByZIndex.forEachFrom(slot -> zIndexes[slot] < zIndex, slot -> {
+                if (zIndexes[slot] == zIndex) {
+                    found[0] = slot;
+                }
+                return false;
+            });
+            return found[0];
+        }
+
+        /**
+         * Adds a slot to the ordered indexes. Must be called holding the write
+         * lock.
+         *
+         * @param slot The slot, with its columns set
+         */
+        private void index(final int slot) {
+            slotsByZIndex.insert(slot);
+            slotsByVersion.insert(slot);
+            slotsByArea.insert(slot);
+        }
+
+        /**
+         * Removes a slot from the ordered indexes, before its columns change. Must
+         * be called holding the write lock.
+         *
+         * @param slot The slot
+         */
+        private void unindex(final int slot) {
+            slotsByZIndex.remove(slot);
+            slotsByVersion.remove(slot);
+            slotsByArea.remove(slot);
+        }
+    }
+}
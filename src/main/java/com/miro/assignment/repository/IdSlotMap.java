@@ -0,0 +1,137 @@
+package com.miro.assignment.repository;
+
+import java.util.Arrays;
+
+/**
+ * This class maps widget ids to the slots of a columnar store, in open
+ * addressing hash tables of primitive ids and slots (linear probing, removals
+ * by backward shifting), so an entry costs about 20 bytes without any object.
+ * The map is not thread-safe.
+ */
+class IdSlotMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] ids;
+    private int[] slots;
+    private int size;
+
+    /**
+     * Creates an empty map
+     */
+    IdSlotMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @return The number of ids mapped
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the slot of an id
+     *
+     * @param id The id
+     * @return The slot, or -1 if the id is not mapped
+     */
+    int get(final long id) {
+        final int mask = ids.length - 1;
+        for (int i = hash(id, mask); slots[i] >= 0; i = (i + 1) & mask) {
+            if (ids[i] == id) {
+                return slots[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Maps an id to a slot, replacing its previous slot
+     *
+     * @param id   The id
+     * @param slot The slot (0 or more)
+     */
+    void put(final long id, final int slot) {
+        if ((size + 1) * 4L > ids.length * 3L) {
+            resize(ids.length * 2);
+        }
+        final int mask = ids.length - 1;
+        int i = hash(id, mask);
+        for (; slots[i] >= 0; i = (i + 1) & mask) {
+            if (ids[i] == id) {
+                slots[i] = slot;
+                return;
+            }
+        }
+        ids[i] = id;
+        slots[i] = slot;
+        size++;
+    }
+
+    /**
+     * Removes an id
+     *
+     * @param id The id
+     * @return The slot it was mapped to, or -1 if it was not mapped
+     */
+    int remove(final long id) {
+        final int mask = ids.length - 1;
+        int i = hash(id, mask);
+        while (slots[i] >= 0 && ids[i] != id) {
+            i = (i + 1) & mask;
+        }
+        final int slot = slots[i];
+        if (slot < 0) {
+            return -1;
+        }
+        // Moves back the entries of the probe sequence which would not be found past the gap
+        for (int next = (i + 1) & mask; slots[next] >= 0; next = (next + 1) & mask) {
+            final int home = hash(ids[next], mask);
+            if (((next - home) & mask) >= ((next - i) & mask)) {
+                ids[i] = ids[next];
+                slots[i] = slots[next];
+                i = next;
+            }
+        }
+        slots[i] = -1;
+        size--;
+        return slot;
+    }
+
+    /**
+     * Removes all ids
+     */
+    void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private void resize(final int capacity) {
+        final long[] oldIds = ids;
+        final int[] oldSlots = slots;
+        allocate(capacity);
+        final int mask = capacity - 1;
+        for (int j = 0; j < oldIds.length; j++) {
+            if (oldSlots[j] >= 0) {
+                int i = hash(oldIds[j], mask);
+                while (slots[i] >= 0) {
+                    i = (i + 1) & mask;
+                }
+                ids[i] = oldIds[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        ids = new long[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, -1);
+    }
+
+    private static int hash(final long id, final int mask) {
+        final long mixed = id * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ mixed >>> 32) & mask;
+    }
+}
@@ -0,0 +1,994 @@
+package com.miro.assignment.repository;
+
+import java.time.LocalDateTime;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.domain.WidgetView;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class provides an in-memory implementation of the WidgetRepository,
+ * enabled with `widget.storage=memory`. Widgets are kept in an id index and,
+ * for each board, a z-ordered skip list, a version-ordered one and a quadtree,
+ * so lookups, ordered iteration, paging by z-index and delta queries need no
+ * SQL.
+ * <p>
+ * Writes are serialized by board, so writes to different boards run in
+ * parallel; only checkpoints and {@link #deleteAll()} stop every board. Reads
+ * of a board are lock-free but see each write whole (e.g. a z-index shift
+ * never shows half-moved): they run optimistically and run again holding the
+ * board's read lock if a write of the board ended meanwhile. A transaction
+ * calling {@link #writeAtomically(long)} holds the board until it completes,
+ * so all its writes are seen at once, and undoes them if it rolls back.
+ * Widgets are copied on the way in and out, so callers must save changes
+ * explicitly, and never move between boards. The store is seeded from the
+ * database (demo data) once the application is ready, and with
+ * `widget.write-behind.enabled` its changes are written back to it (see
+ * WidgetWriteBehind). With `widget.wal.enabled` the store is recovered from its
+ * own write-ahead log instead (see WidgetWriteAheadLog).
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "widget.storage", havingValue = "memory")
+public class InMemoryWidgetRepository implements WidgetRepository, ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Map<String, Comparator<Widget>> COMPARATORS = Map.of(
+            "id", Comparator.comparing(Widget::getId),
+            "boardId", Comparator.comparing(Widget::getBoardId),
+            "xCoordinate", Comparator.comparing(Widget::getXCoordinate),
+            "yCoordinate", Comparator.comparing(Widget::getYCoordinate),
+            "zIndex", Comparator.comparing(Widget::getZIndex),
+            "width", Comparator.comparing(Widget::getWidth),
+            "height", Comparator.comparing(Widget::getHeight),
+            "lastModified", Comparator.comparing(Widget::getLastModified));
+
+    private final ConcurrentHashMap<Long, Widget> widgetsById = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Board> boards = new ConcurrentSkipListMap<>();
+    private final AtomicLong idSequence = new AtomicLong();
+    /**
+     * Shared by the writes, exclusive for the operations spanning every board
+     */
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+
+    @Autowired
+    @Qualifier("widgetRepository")
+    private WidgetRepository seedRepository;
+
+    @Autowired(required = false)
+    private WidgetWriteBehind writeBehind;
+
+    @Autowired(required = false)
+    private WidgetWriteAheadLog writeAheadLog;
+
+    /**
+     * Loads the widgets stored in the database
+     *
+     * @param event The event fired once the database has been initialized
+     */
+    @Override
+    public void onApplicationEvent(final ApplicationReadyEvent event) {
+        final WidgetWriteAheadLog.Recovery recovery = writeAheadLog == null ? null : writeAheadLog.getRecovery();
+        // The recovered widgets are not shared, and already by board in ascending
+        // z-index
+        final List<Widget> widgets = recovery == null ? copyAll(seedRepository.findAll()) : recovery.getWidgets();
+        if (recovery == null) {
+            widgets.sort(Comparator.comparing(Widget::getBoardId).thenComparing(Widget::getZIndex));
+        }
+        storeLock.writeLock().lock();
+        try {
+            // Every index is built at once from the widgets rather than widget by
+            // widget
+            widgetsById.putAll(new WidgetMap<>(widgets, null, Widget::getId, widget -> widget));
+            for (int start = 0; start < widgets.size();) {
+                final long boardId = widgets.get(start).getBoardId();
+                int end = start + 1;
+                while (end < widgets.size() && widgets.get(end).getBoardId() == boardId) {
+                    end++;
+                }
+                boards.put(boardId, new Board(widgets.subList(start, end)));
+                start = end;
+            }
+            widgets.forEach(widget -> idSequence.accumulateAndGet(widget.getId(), Math::max));
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+        if (writeAheadLog != null) {
+            writeAheadLog.start(this::checkpoint);
+        }
+    }
+
+    @Override
+    public <S extends Widget> S save(final S widget) {
+        final Board board = startWrite(widget.getBoardId());
+        try {
+            if (widget.getId() == null) {
+                widget.setId(idSequence.incrementAndGet());
+            } else {
+                idSequence.accumulateAndGet(widget.getId(), Math::max);
+            }
+
+            final Widget previous = widgetsById.get(widget.getId());
+            if (previous != null && !previous.getBoardId().equals(widget.getBoardId())) {
+                throw new DataIntegrityViolationException("widget " + widget.getId() + " belongs to board "
+                        + previous.getBoardId());
+            }
+            final Widget taken = board.widgetsByZIndex.get(widget.getZIndex());
+            if (taken != null && !taken.getId().equals(widget.getId())) {
+                throw new DataIntegrityViolationException("z-index " + widget.getZIndex() + " is already taken");
+            }
+
+            widget.setLastModified(LocalDateTime.now());
+            final Widget stored = widget.copy();
+            store(board, stored);
+            writeBack(board, stored.getId(), stored);
+            return widget;
+        } finally {
+            endWrite(board);
+        }
+    }
+
+    @Override
+    public <S extends Widget> Iterable<S> saveAll(final Iterable<S> widgets) {
+        final List<S> saved = new ArrayList<>();
+        widgets.forEach(widget -> saved.add(save(widget)));
+        return saved;
+    }
+
+    @Override
+    public Optional<Widget> findById(final Long id) {
+        return Optional.ofNullable(stored(id)).map(Widget::copy);
+    }
+
+    @Override
+    public boolean existsById(final Long id) {
+        return stored(id) != null;
+    }
+
+    @Override
+    public List<Widget> findAll() {
+        final List<Widget> widgets = new ArrayList<>();
+        boards.values()
+                .forEach(board -> widgets.addAll(read(board, () -> copyAll(board.widgetsByZIndex.values()))));
+        return widgets;
+    }
+
+    @Override
+    public List<Widget> findAllByBoardId(final long boardId) {
+        final Board board = boards.get(boardId);
+        return board == null ? new ArrayList<>() : read(board, () -> copyAll(board.widgetsByZIndex.values()));
+    }
+
+    @Override
+    public List<Long> findBoardIds() {
+        return boards.entrySet().stream().filter(board -> !board.getValue().widgetsByZIndex.isEmpty())
+                .map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    @Override
+    public long countByBoardId(final long boardId) {
+        final Board board = boards.get(boardId);
+        return board == null ? 0 : read(board, board.widgetsByZIndex::size);
+    }
+
+    @Override
+    public Iterable<Widget> findAllById(final Iterable<Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false).map(this::stored).filter(x -> x != null)
+                .map(Widget::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public Iterable<Widget> findAll(final Sort sort) {
+        final List<Widget> widgets = findAll();
+        widgets.sort(comparator(sort));
+        return widgets;
+    }
+
+    @Override
+    public Page<Widget> findAll(final Pageable pageable) {
+        final List<Widget> widgets = findAll();
+        widgets.sort(comparator(pageable.getSort()));
+        return new PageImpl<>(widgets.stream().skip(pageable.getOffset()).limit(pageable.getPageSize())
+                .collect(Collectors.toList()), pageable, widgets.size());
+    }
+
+    @Override
+    public Page<Widget> findAllByBoardId(final long boardId, final Pageable pageable) {
+        final Board board = boards.get(boardId);
+        if (board == null) {
+            return new PageImpl<>(List.of(), pageable, 0);
+        }
+        return read(board, () -> {
+            // Paging by z-index walks the skip list, anything else needs sorting
+            final Collection<Widget> ordered = pageable.getSort().isUnsorted()
+                    || pageable.getSort().equals(Sort.by("zIndex")) ? board.widgetsByZIndex.values()
+                            : board.widgetsByZIndex.values().stream().sorted(comparator(pageable.getSort()))
+                                    .collect(Collectors.toList());
+            final List<Widget> content = ordered.stream().skip(pageable.getOffset())
+                    .limit(pageable.getPageSize()).map(Widget::copy).collect(Collectors.toList());
+            return new PageImpl<>(content, pageable, board.widgetsByZIndex.size());
+        });
+    }
+
+    @Override
+    public long count() {
+        return widgetsById.size();
+    }
+
+    @Override
+    public void deleteById(final Long id) {
+        final Widget found = widgetsById.get(id);
+        if (found == null) {
+            return;
+        }
+        final Board board = startWrite(found.getBoardId());
+        try {
+            final Widget widget;
+            if (board.undo == null) {
+                widget = widgetsById.remove(id);
+            } else {
+                // Kept in the id index until the transaction commits
+                widget = board.deletedIds.contains(id) ? null : widgetsById.get(id);
+                if (widget != null) {
+                    undo(board, id, widget);
+                    board.deletedIds.add(id);
+                }
+            }
+            if (widget != null) {
+                writeBack(board, id, null);
+                unindex(board, widget);
+            }
+        } finally {
+            endWrite(board);
+        }
+    }
+
+    @Override
+    public void delete(final Widget widget) {
+        deleteById(widget.getId());
+    }
+
+    @Override
+    public void deleteAll(final Iterable<? extends Widget> widgets) {
+        widgets.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        awaitWriteBehind();
+        storeLock.writeLock().lock();
+        try {
+            final Map<Long, Widget> deleted = new HashMap<>();
+            widgetsById.keySet().forEach(id -> deleted.put(id, null));
+            writeBack(deleted);
+            boards.clear();
+            widgetsById.clear();
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> findPageFromZIndex(final long boardId, final int zIndex, final Pageable pageable) {
+        final Board board = boards.get(boardId);
+        return board == null ? new ArrayList<>()
+                : read(board, () -> board.widgetsByZIndex.tailMap(zIndex).values().stream()
+                        .limit(pageable.getPageSize()).map(Widget::copy)
+                        .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Widget> findPageToZIndex(final long boardId, final int zIndex, final Pageable pageable) {
+        final Board board = boards.get(boardId);
+        return board == null ? new ArrayList<>()
+                : read(board, () -> board.widgetsByZIndex.headMap(zIndex, true).descendingMap().values().stream()
+                        .limit(pageable.getPageSize()).map(Widget::copy)
+                        .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Widget> findAllWithinArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final LongConsumer scanned) {
+        final Board board = boards.get(boardId);
+        if (board == null) {
+            scanned.accept(0);
+            return new ArrayList<>();
+        }
+        // Reported once, as the area may be read twice
+        final long[] scannedCount = new long[1];
+        final List<Widget> widgets = read(board, () -> board.widgetsByArea
+                .findWithin(xCoordinate, yCoordinate, width, height, count -> scannedCount[0] = count).stream()
+                .map(widgetsById::get).filter(x -> x != null).sorted(Comparator.comparingInt(Widget::getZIndex))
+                .map(Widget::copy).collect(Collectors.toList()));
+        scanned.accept(scannedCount[0]);
+        return widgets;
+    }
+
+    @Override
+    public List<Widget> findWithin(final long boardId, final int minX, final int minY, final long maxX,
+            final long maxY) {
+        return findAllWithinArea(boardId, minX, minY, (int) (maxX - minX), (int) (maxY - minY), scanned -> {
+        });
+    }
+
+    @Override
+    public List<Widget> findIntersecting(final long boardId, final long minX, final long minY, final long maxX,
+            final long maxY, final Pageable pageable) {
+        final Board board = boards.get(boardId);
+        return board == null ? new ArrayList<>()
+                : read(board, () -> topmost(board.widgetsByArea.findIntersecting((int) minX, (int) minY,
+                        (int) (maxX - minX), (int) (maxY - minY)), pageable.getPageSize()));
+    }
+
+    @Override
+    public List<Widget> findContaining(final long boardId, final long minX, final long minY, final long maxX,
+            final long maxY, final Pageable pageable) {
+        final Board board = boards.get(boardId);
+        return board == null ? new ArrayList<>()
+                : read(board, () -> topmost(board.widgetsByArea.findContaining((int) minX, (int) minY,
+                        (int) (maxX - minX), (int) (maxY - minY)), pageable.getPageSize()));
+    }
+
+    @Override
+    public Integer findZIndexById(final long boardId, final Long id) {
+        final Widget widget = stored(id);
+        return widget == null || widget.getBoardId() != boardId ? null : widget.getZIndex();
+    }
+
+    @Override
+    public boolean existsByZIndex(final long boardId, final int zIndex) {
+        final Board board = boards.get(boardId);
+        return board != null && read(board, () -> board.widgetsByZIndex.containsKey(zIndex));
+    }
+
+    @Override
+    public Integer findZIndexRunEnd(final long boardId, final int zIndex) {
+        final Board board = boards.get(boardId);
+        if (board == null) {
+            return null;
+        }
+        return read(board, () -> {
+            Integer runEnd = null;
+            for (final Integer taken : board.widgetsByZIndex.tailMap(zIndex).keySet()) {
+                if (runEnd != null && taken != runEnd + 1) {
+                    break;
+                }
+                runEnd = taken;
+            }
+            return runEnd;
+        });
+    }
+
+    @Override
+    public Integer findMinZIndex(final long boardId) {
+        final Board board = boards.get(boardId);
+        final Map.Entry<Integer, Widget> lowest = board == null ? null
+                : read(board, board.widgetsByZIndex::firstEntry);
+        return lowest == null ? null : lowest.getKey();
+    }
+
+    @Override
+    public Integer findMaxZIndex(final long boardId) {
+        final Board board = boards.get(boardId);
+        final Map.Entry<Integer, Widget> highest = board == null ? null
+                : read(board, board.widgetsByZIndex::lastEntry);
+        return highest == null ? null : highest.getKey();
+    }
+
+    @Override
+    public List<WidgetView> findViewsByBoardId(final long boardId, final Set<WidgetField> fields,
+            final Pageable pageable) {
+        return views(findAllByBoardId(boardId, pageable).getContent(), fields);
+    }
+
+    @Override
+    public List<WidgetView> findViewsFromZIndex(final long boardId, final int zIndex, final Set<WidgetField> fields,
+            final Pageable pageable) {
+        // Projected straight from the stored widgets, without copying them
+        final Board board = boards.get(boardId);
+        return board == null ? new ArrayList<>()
+                : read(board, () -> board.widgetsByZIndex.tailMap(zIndex).values().stream()
+                        .limit(pageable.isPaged() ? pageable.getPageSize() : Long.MAX_VALUE)
+                        .map(widget -> WidgetView.of(widget, fields)).collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<WidgetView> findViewsWithinArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final Set<WidgetField> fields, final LongConsumer scanned) {
+        return views(findAllWithinArea(boardId, xCoordinate, yCoordinate, width, height, scanned), fields);
+    }
+
+    @Override
+    public List<Widget> findChangedBetween(final long boardId, final long since, final long until) {
+        final Board board = boards.get(boardId);
+        if (board == null) {
+            return new ArrayList<>();
+        }
+        final Widget lower = new Widget();
+        lower.setVersion(since);
+        lower.setId(Long.MAX_VALUE);
+        final Widget upper = new Widget();
+        upper.setVersion(until);
+        upper.setId(Long.MAX_VALUE);
+        return read(board, () -> copyAll(board.widgetsByVersion.subMap(lower, false, upper, true).keySet()));
+    }
+
+    @Override
+    public Long findMaxVersion() {
+        Long maxVersion = null;
+        for (final Board board : boards.values()) {
+            final Map.Entry<Widget, Boolean> latest = board.widgetsByVersion.lastEntry();
+            if (latest != null && (maxVersion == null || latest.getKey().getVersion() > maxVersion)) {
+                maxVersion = latest.getKey().getVersion();
+            }
+        }
+        return maxVersion;
+    }
+
+    @Override
+    public int shiftZIndexRange(final long boardId, final int from, final int to, final int offset,
+            final long version) {
+        final Board board = startWrite(boardId);
+        try {
+            final ConcurrentNavigableMap<Integer, Widget> range = board.widgetsByZIndex.subMap(from, true, to,
+                    true);
+            final List<Widget> moved = new ArrayList<>(range.values());
+            range.clear();
+
+            final LocalDateTime now = LocalDateTime.now();
+            for (final Widget widget : moved) {
+                final Widget shifted = widget.copy();
+                shifted.setZIndex(widget.getZIndex() + offset);
+                shifted.setLastModified(now);
+                shifted.setVersion(version);
+                store(board, shifted);
+                writeBack(board, shifted.getId(), shifted);
+            }
+            return moved.size();
+        } finally {
+            endWrite(board);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Changes are applied when saved
+    }
+
+    @Override
+    public void writeAtomically(final long boardId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        final Board board = startWrite(boardId);
+        if (board.undo != null) {
+            // Held already
+            endWrite(board);
+            return;
+        }
+        board.undo = new HashMap<>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(final int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        board.deletedIds.forEach(widgetsById::remove);
+                    } else {
+                        rollback(board);
+                    }
+                } finally {
+                    board.undo = null;
+                    board.deletedIds.clear();
+                    endWrite(board);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits while the changes not yet written back lag too far behind (before
+     * taking any lock, which the write-behind needs)
+     */
+    private void awaitWriteBehind() {
+        if (writeBehind != null) {
+            writeBehind.awaitLag();
+        }
+    }
+
+    /**
+     * Finds a board, creating it if it does not exist yet
+     *
+     * @param boardId The board's id
+     * @return The board
+     */
+    private Board board(final long boardId) {
+        return boards.computeIfAbsent(boardId, id -> new Board());
+    }
+
+    /**
+     * Starts a write to a board, taking its write lock
+     *
+     * @param boardId The board's id
+     * @return The board, locked
+     */
+    private Board startWrite(final long boardId) {
+        final Board held = boards.get(boardId);
+        if (held == null || !held.writeLock.isHeldByCurrentThread()) {
+            awaitWriteBehind();
+        }
+        storeLock.readLock().lock();
+        final Board board = board(boardId);
+        board.writeLock.lock();
+        if (board.writeLock.getHoldCount() == 1) {
+            board.publishStamp = board.published.writeLock();
+        }
+        return board;
+    }
+
+    /**
+     * Keeps a change to be logged and written back to the database once the
+     * write ends. Must be called holding the board's write lock.
+     *
+     * @param board  The board being written
+     * @param id     The widget's id
+     * @param widget The widget as stored (not shared with callers), or null if it
+     *               was deleted
+     */
+    private void writeBack(final Board board, final Long id, final Widget widget) {
+        if (writeBehind != null || writeAheadLog != null) {
+            board.writtenBack.put(id, widget);
+        }
+    }
+
+    /**
+     * Logs the changes of a write and queues them to be written back to the
+     * database, all at once so the log and every flush hold whole writes
+     *
+     * @param changes The widgets as stored by id, or null for the deleted ones
+     */
+    private void writeBack(final Map<Long, Widget> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (writeAheadLog != null) {
+            writeAheadLog.append(changes);
+        }
+        if (writeBehind != null) {
+            writeBehind.changed(changes);
+        }
+    }
+
+    /**
+     * Writes the changes of a write and releases the board's write lock. The
+     * changes of writes within a transaction holding the board are written
+     * once it commits.
+     *
+     * @param board The board being written
+     */
+    private void endWrite(final Board board) {
+        if (board.writeLock.getHoldCount() > 1) {
+            board.writeLock.unlock();
+            storeLock.readLock().unlock();
+            return;
+        }
+        board.published.unlockWrite(board.publishStamp);
+        try {
+            writeBack(board.writtenBack);
+        } finally {
+            board.writtenBack.clear();
+            board.writeLock.unlock();
+            storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Puts back the widgets changed by the transaction holding a board, as they
+     * were before it. Must be called holding the board's write lock.
+     *
+     * @param board The board
+     */
+    private void rollback(final Board board) {
+        board.writtenBack.clear();
+        for (final Long id : board.undo.keySet()) {
+            final Widget current = widgetsById.get(id);
+            if (current != null && !board.deletedIds.contains(id)) {
+                unindex(board, current);
+            }
+        }
+        board.undo.forEach((id, previous) -> {
+            if (previous == null) {
+                widgetsById.remove(id);
+            } else {
+                widgetsById.put(id, previous);
+                board.widgetsByZIndex.put(previous.getZIndex(), previous);
+                board.widgetsByVersion.put(previous, Boolean.TRUE);
+                board.widgetsByArea.insert(previous);
+            }
+        });
+    }
+
+    /**
+     * Keeps a widget as it was before the transaction holding its board changed
+     * it, if the board is held. Must be called holding the board's write lock.
+     *
+     * @param board    The board
+     * @param id       The widget's id
+     * @param previous The widget as stored before, or null if it is new
+     */
+    private static void undo(final Board board, final Long id, final Widget previous) {
+        if (board.undo != null && !board.undo.containsKey(id)) {
+            board.undo.put(id, previous);
+        }
+    }
+
+    /**
+     * Finds a stored widget as of between two writes of its board
+     *
+     * @param id The widget's id
+     * @return The widget as stored (not to be shared with callers), or null
+     */
+    private Widget stored(final Long id) {
+        final Widget widget = widgetsById.get(id);
+        final Board board = widget == null ? null : boards.get(widget.getBoardId());
+        return board == null ? widget : read(board, () -> board.deletedIds.contains(id) ? null : widgetsById.get(id));
+    }
+
+    /**
+     * Reads a board as it is between two writes: optimistically first, then
+     * holding its read lock if a write of the board ran meanwhile
+     *
+     * @param board The board
+     * @param read  Reads the board (without side effects, as it may run twice)
+     * @return The result of the read
+     */
+    private static <T> T read(final Board board, final Supplier<T> read) {
+        if (board.writeLock.isHeldByCurrentThread()) {
+            return read.get();
+        }
+        final long stamp = board.published.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final T result = read.get();
+                if (board.published.validate(stamp)) {
+                    return result;
+                }
+            } catch (final RuntimeException e) {
+                // Read across a write: read again below
+                if (board.published.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        final long readStamp = board.published.readLock();
+        try {
+            return read.get();
+        } finally {
+            board.published.unlockRead(readStamp);
+        }
+    }
+
+    /**
+     * Starts a new log segment and copies the store as of its start
+     *
+     * @return Every widget
+     */
+    private List<Widget> checkpoint() {
+        storeLock.writeLock().lock();
+        try {
+            writeAheadLog.rotate();
+            return new ArrayList<>(widgetsById.values());
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puts a widget in all indexes, replacing its previous version. Must be called
+     * holding the board's write lock.
+     *
+     * @param board  The widget's board
+     * @param widget The widget to store (not shared with callers)
+     */
+    private void store(final Board board, final Widget widget) {
+        final Widget previous = widgetsById.put(widget.getId(), widget);
+        undo(board, widget.getId(), previous);
+        if (previous != null) {
+            board.widgetsByZIndex.remove(previous.getZIndex(), previous);
+            board.widgetsByVersion.remove(previous);
+        }
+        board.widgetsByZIndex.put(widget.getZIndex(), widget);
+        board.widgetsByVersion.put(widget, Boolean.TRUE);
+
+        if (previous == null || !sameBoundingBox(previous, widget)) {
+            if (previous != null) {
+                board.widgetsByArea.remove(previous);
+            }
+            board.widgetsByArea.insert(widget);
+        }
+    }
+
+    /**
+     * Removes a stored widget from the indexes of its board. Must be called
+     * holding the board's write lock.
+     *
+     * @param board  The widget's board
+     * @param widget The widget as stored
+     */
+    private static void unindex(final Board board, final Widget widget) {
+        board.widgetsByZIndex.remove(widget.getZIndex(), widget);
+        board.widgetsByVersion.remove(widget);
+        board.widgetsByArea.remove(widget);
+    }
+
+    /**
+     * Selects the topmost widgets among the ones found by the spatial index,
+     * keeping only the top ones while going through them
+     *
+     * @param ids   The ids of the widgets found
+     * @param limit The maximum number of widgets to return
+     * @return Copies of the topmost widgets, in descending z-index
+     */
+    private List<Widget> topmost(final List<Long> ids, final int limit) {
+        final PriorityQueue<Widget> top = new PriorityQueue<>(Comparator.comparingInt(Widget::getZIndex));
+        for (final Long id : ids) {
+            final Widget widget = widgetsById.get(id);
+            if (widget != null) {
+                top.add(widget);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        }
+        final List<Widget> widgets = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            widgets.add(top.poll().copy());
+        }
+        Collections.reverse(widgets);
+        return widgets;
+    }
+
+    /**
+     * Checks whether two widgets have the same bounding box
+     *
+     * @param a A widget
+     * @param b Another widget
+     * @return True if the bounding boxes are equal
+     */
+    private static boolean sameBoundingBox(final Widget a, final Widget b) {
+        return a.getXCoordinate().equals(b.getXCoordinate()) && a.getYCoordinate().equals(b.getYCoordinate())
+                && a.getWidth().equals(b.getWidth()) && a.getHeight().equals(b.getHeight());
+    }
+
+    /**
+     * Builds a comparator for a sort criteria, the same way a query would
+     *
+     * @param sort The sort criteria
+     * @return The comparator
+     */
+    static Comparator<Widget> comparator(final Sort sort) {
+        Comparator<Widget> comparator = (a, b) -> 0;
+        for (final Sort.Order order : sort) {
+            final String property = PropertyPath.from(order.getProperty(), Widget.class).getSegment();
+            final Comparator<Widget> propertyComparator = COMPARATORS.get(property);
+            comparator = comparator.thenComparing(order.isAscending() ? propertyComparator
+                    : propertyComparator.reversed());
+        }
+        return comparator;
+    }
+
+    /**
+     * Copies a collection of widgets
+     *
+     * @param widgets The widgets
+     * @return A list with copies of the widgets
+     */
+    private static List<Widget> copyAll(final Collection<Widget> widgets) {
+        return widgets.stream().map(Widget::copy).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * @param widgets Widgets
+     * @param fields  The fields to keep
+     * @return Their projections, in the same order
+     */
+    private static List<WidgetView> views(final List<Widget> widgets, final Set<WidgetField> fields) {
+        return widgets.stream().map(widget -> WidgetView.of(widget, fields)).collect(Collectors.toList());
+    }
+
+    /**
+     * The indexes of the widgets of a board, and the lock serializing its writes
+     */
+    private static final class Board {
+        private static final Comparator<Widget> BY_VERSION = Comparator.comparing(Widget::getVersion)
+                .thenComparing(Widget::getId);
+
+        private final ConcurrentSkipListMap<Integer, Widget> widgetsByZIndex;
+        /**
+         * A set (every widget maps to true), kept as a map as only a map can be
+         * built at once from sorted widgets
+         */
+        private final ConcurrentSkipListMap<Widget, Boolean> widgetsByVersion;
+        private final WidgetQuadTree widgetsByArea;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        /**
+         * Held by the writes (while holding the write lock), so reads can tell
+         * they ran across one
+         */
+        private final StampedLock published = new StampedLock();
+        private long publishStamp;
+        /**
+         * The changes of the write in progress, to be logged and written back
+         * (guarded by the write lock)
+         */
+        private final Map<Long, Widget> writtenBack = new LinkedHashMap<>();
+        /**
+         * While a transaction holds the board (see writeAtomically), the widgets
+         * as they were before it by id (null for the ones it created), and the
+         * ids it deleted, kept in the id index until it commits (guarded by the
+         * write lock, the ids are read by any reader)
+         */
+        private Map<Long, Widget> undo;
+        private final Set<Long> deletedIds = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Creates an empty board
+         */
+        private Board() {
+            this(List.of());
+        }
+
+        /**
+         * Creates a board holding widgets, building each index in one pass over
+         * the widgets sorted its way rather than widget by widget
+         *
+         * @param widgets The widgets as stored, in ascending z-index
+         */
+        private Board(final List<Widget> widgets) {
+            final List<Widget> byVersion = new ArrayList<>(widgets);
+            byVersion.sort(BY_VERSION);
+            widgetsByZIndex = new ConcurrentSkipListMap<>(
+                    new WidgetMap<>(widgets, null, Widget::getZIndex, widget -> widget));
+            widgetsByVersion = new ConcurrentSkipListMap<>(
+                    new WidgetMap<>(byVersion, BY_VERSION, widget -> widget, widget -> Boolean.TRUE));
+            widgetsByArea = new WidgetQuadTree(widgets);
+        }
+    }
+
+    /**
+     * A list of widgets seen as a map, only meant to be copied at once into a
+     * concurrent map: a ConcurrentHashMap sizes itself once for all of them,
+     * and a ConcurrentSkipListMap builds itself in linear time from a sorted
+     * map (the widgets must then be sorted by key). Only its size, comparator
+     * and entries are available.
+     *
+     * @param <K> The type of the keys
+     * @param <V> The type of the values
+     */
+    private static final class WidgetMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+        private final List<Widget> widgets;
+        private final Comparator<? super K> comparator;
+        private final Function<Widget, K> key;
+        private final Function<Widget, V> value;
+
+        /**
+         * Constructor
+         *
+         * @param widgets    The widgets (sorted by key for a sorted map)
+         * @param comparator The order of the keys (null for their natural order)
+         * @param key        Gives the key of a widget
+         * @param value      Gives the value of a widget
+         */
+        private WidgetMap(final List<Widget> widgets, final Comparator<? super K> comparator,
+                final Function<Widget, K> key, final Function<Widget, V> value) {
+            this.widgets = widgets;
+            this.comparator = comparator;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public int size() {
+            return widgets.size();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    final Iterator<Widget> iterator = widgets.iterator();
+                    return new Iterator<Map.Entry<K, V>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+                            final Widget widget = iterator.next();
+                            return new SimpleImmutableEntry<>(key.apply(widget), value.apply(widget));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return widgets.size();
+                }
+            };
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(final K fromKey, final K toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(final K toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(final K fromKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public K firstKey() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public K lastKey() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.miro.assignment.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import com.miro.assignment.domain.WidgetTombstone;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class provides an in-memory implementation of the
+ * WidgetTombstoneRepository, enabled with `widget.storage=memory` or
+ * `columnar`. Tombstones are kept in a skip list ordered by board and version, and with
+ * `widget.wal.enabled` logged and recovered with the widgets. Within a
+ * transaction, they are only kept once it commits.
+ */
+@Repository
+@Primary
+@ConditionalOnExpression("'${widget.storage:jpa}' == 'memory' or '${widget.storage:jpa}' == 'columnar'")
+public class InMemoryWidgetTombstoneRepository implements WidgetTombstoneRepository {
+
+    private final ConcurrentSkipListSet<WidgetTombstone> tombstones = new ConcurrentSkipListSet<>(
+            Comparator.comparing(WidgetTombstone::getBoardId).thenComparing(WidgetTombstone::getVersion)
+                    .thenComparing(WidgetTombstone::getId));
+
+    @Autowired(required = false)
+    private WidgetWriteAheadLog writeAheadLog;
+
+    /**
+     * Loads the tombstones recovered from the log
+     */
+    @PostConstruct
+    public void recover() {
+        if (writeAheadLog != null) {
+            final WidgetWriteAheadLog.Recovery recovery = writeAheadLog.getRecovery();
+            if (recovery != null) {
+                tombstones.addAll(recovery.getTombstones());
+            }
+            writeAheadLog.setTombstones(() -> new ArrayList<>(tombstones));
+        }
+    }
+
+    @Override
+    public WidgetTombstone save(final WidgetTombstone tombstone) {
+        final WidgetTombstone stored = new WidgetTombstone(tombstone.getId(), tombstone.getBoardId(),
+                tombstone.getVersion());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            store(stored);
+            return tombstone;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                store(stored);
+            }
+        });
+        return tombstone;
+    }
+
+    @Override
+    public List<Long> findDeletedBetween(final long boardId, final long since, final long until) {
+        return tombstones
+                .subSet(new WidgetTombstone(Long.MAX_VALUE, boardId, since), false,
+                        new WidgetTombstone(Long.MAX_VALUE, boardId, until), true)
+                .stream().map(WidgetTombstone::getId).collect(Collectors.toList());
+    }
+
+    @Override
+    public Long findMaxVersion() {
+        return tombstones.stream().mapToLong(WidgetTombstone::getVersion).boxed().max(Long::compare).orElse(null);
+    }
+
+    /**
+     * Keeps and logs a tombstone
+     *
+     * @param tombstone The tombstone (not shared with callers)
+     */
+    private void store(final WidgetTombstone tombstone) {
+        tombstones.add(tombstone);
+        if (writeAheadLog != null) {
+            writeAheadLog.appendTombstone(tombstone);
+        }
+    }
+}
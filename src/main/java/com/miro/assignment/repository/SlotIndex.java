@@ -0,0 +1,252 @@
+package com.miro.assignment.repository;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+
+/**
+ * This class provides an ordered index of the slots of a columnar store: the
+ * slots are kept sorted by a key read from the columns, in blocks of at most
+ * {@value #BLOCK_SIZE} ints, so an insert or a removal moves at most a block
+ * and a seek is two binary searches. It costs about 4 bytes per slot, against
+ * about 40 for a skip list entry.
+ * <p>
+ * The order must be total (ties broken by id) and the key of a slot must not
+ * change while the slot is indexed, except by changes which keep the order.
+ * The index is not thread-safe.
+ */
+class SlotIndex {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final IntBinaryOperator order;
+    private int[][] blocks = new int[0][];
+    private int[] sizes = new int[0];
+    private int blockCount;
+    private int size;
+
+    /**
+     * Creates an empty index
+     *
+     * @param order Compares the keys of two slots
+     */
+    SlotIndex(final IntBinaryOperator order) {
+        this.order = order;
+    }
+
+    /**
+     * @return The number of slots indexed
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The slot with the lowest key, or -1 if the index is empty
+     */
+    int first() {
+        return blockCount == 0 ? -1 : blocks[0][0];
+    }
+
+    /**
+     * @return The slot with the highest key, or -1 if the index is empty
+     */
+    int last() {
+        return blockCount == 0 ? -1 : blocks[blockCount - 1][sizes[blockCount - 1] - 1];
+    }
+
+    /**
+     * Adds a slot
+     *
+     * @param slot The slot, with its key in the columns
+     */
+    void insert(final int slot) {
+        if (blockCount == 0) {
+            insertBlock(0, new int[BLOCK_SIZE]);
+            blocks[0][0] = slot;
+            sizes[0] = 1;
+            size = 1;
+            return;
+        }
+        final long position = lowerBound(x -> order.applyAsInt(x, slot) < 0);
+        int block = Math.min(block(position), blockCount - 1);
+        int index = block(position) == blockCount ? sizes[block] : index(position);
+
+        if (sizes[block] == BLOCK_SIZE) {
+            if (block == blockCount - 1 && index == BLOCK_SIZE) {
+                // Appending (e.g. the z-index of a new top widget): a new block keeps the full one full
+                insertBlock(blockCount, new int[BLOCK_SIZE]);
+                block++;
+                index = 0;
+            } else {
+                final int[] upper = new int[BLOCK_SIZE];
+                final int half = BLOCK_SIZE / 2;
+                System.arraycopy(blocks[block], half, upper, 0, BLOCK_SIZE - half);
+                sizes[block] = half;
+                insertBlock(block + 1, upper);
+                sizes[block + 1] = BLOCK_SIZE - half;
+                if (index > half) {
+                    block++;
+                    index -= half;
+                }
+            }
+        }
+
+        final int[] slots = blocks[block];
+        System.arraycopy(slots, index, slots, index + 1, sizes[block] - index);
+        slots[index] = slot;
+        sizes[block]++;
+        size++;
+    }
+
+    /**
+     * Removes a slot
+     *
+     * @param slot The slot, with the key it was added with in the columns
+     * @return True if the slot was indexed
+     */
+    boolean remove(final int slot) {
+        final long position = lowerBound(x -> order.applyAsInt(x, slot) < 0);
+        final int block = block(position);
+        final int index = index(position);
+        if (block == blockCount || blocks[block][index] != slot) {
+            return false;
+        }
+        final int[] slots = blocks[block];
+        System.arraycopy(slots, index + 1, slots, index, sizes[block] - index - 1);
+        sizes[block]--;
+        size--;
+        if (sizes[block] == 0) {
+            System.arraycopy(blocks, block + 1, blocks, block, blockCount - block - 1);
+            System.arraycopy(sizes, block + 1, sizes, block, blockCount - block - 1);
+            blocks[--blockCount] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Removes all slots
+     */
+    void clear() {
+        blocks = new int[0][];
+        sizes = new int[0];
+        blockCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Visits the slots in ascending key from a seek position, until told to stop
+     *
+     * @param below  Tells whether the key of a slot is below the first key to
+     *               visit
+     * @param action Receives each slot, returning false to stop. It must not
+     *               change the index.
+     */
+    void forEachFrom(final IntPredicate below, final IntPredicate action) {
+        final long position = lowerBound(below);
+        int index = index(position);
+        for (int block = block(position); block < blockCount; block++) {
+            final int[] slots = blocks[block];
+            for (; index < sizes[block]; index++) {
+                if (!action.test(slots[index])) {
+                    return;
+                }
+            }
+            index = 0;
+        }
+    }
+
+    /**
+     * Visits the slots in descending key from a seek position, until told to
+     * stop
+     *
+     * @param below  Tells whether the key of a slot is below the first key not
+     *               to visit
+     * @param action Receives each slot, returning false to stop. It must not
+     *               change the index.
+     */
+    void forEachBefore(final IntPredicate below, final IntPredicate action) {
+        final long position = lowerBound(below);
+        int index = index(position) - 1;
+        for (int block = block(position); block >= 0; block--) {
+            for (; index >= 0; index--) {
+                if (!action.test(blocks[block][index])) {
+                    return;
+                }
+            }
+            if (block > 0) {
+                index = sizes[block - 1] - 1;
+            }
+        }
+    }
+
+    /**
+     * Visits all slots in ascending key, until told to stop
+     *
+     * @param action Receives each slot, returning false to stop. It must not
+     *               change the index.
+     */
+    void forEach(final IntPredicate action) {
+        forEachFrom(x -> false, action);
+    }
+
+    /**
+     * Finds the first slot whose key is not below a target
+     *
+     * @param below Tells whether the key of a slot is below the target
+     * @return The position (block and index), or the end of the index
+     */
+    private long lowerBound(final IntPredicate below) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (below.test(blocks[middle][sizes[middle] - 1])) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == blockCount) {
+            return position(blockCount, 0);
+        }
+        final int block = low;
+        final int[] slots = blocks[block];
+        low = 0;
+        high = sizes[block] - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (below.test(slots[middle])) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return position(block, low);
+    }
+
+    private void insertBlock(final int block, final int[] slots) {
+        if (blockCount == blocks.length) {
+            final int capacity = Math.max(4, blockCount * 2);
+            blocks = Arrays.copyOf(blocks, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        System.arraycopy(blocks, block, blocks, block + 1, blockCount - block);
+        System.arraycopy(sizes, block, sizes, block + 1, blockCount - block);
+        blocks[block] = slots;
+        sizes[block] = 0;
+        blockCount++;
+    }
+
+    private static long position(final int block, final int index) {
+        return (long) block << 32 | index;
+    }
+
+    private static int block(final long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int index(final long position) {
+        return (int) position;
+    }
+}
@@ -0,0 +1,712 @@
+package com.miro.assignment.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+import com.miro.assignment.domain.Widget;
+
+/**
+ * This class provides a spatial index of Widget bounding boxes (an MX-CIF
+ * quadtree): each widget is kept in the smallest quadrant that fully contains
+ * it, so an area query only visits the quadrants along the edges of the area
+ * and takes every quadrant inside it as a whole. A quadrant is only split once
+ * it holds more than a few widgets, so the tree is as deep as the widgets are
+ * dense rather than as deep as the plane is wide.
+ * <p>
+ * The widgets of a quadrant which cross its vertical center line are sorted by
+ * y coordinate, the others by x coordinate, so a query only examines the ones
+ * within its own range on that axis (widened by the tallest or widest of them)
+ * rather than all the widgets crossing the quadrant.
+ * <p>
+ * The tree covers the whole integer plane and only holds ids and bounding
+ * boxes, so moving a widget in the z-plane does not touch it. It is safe for
+ * concurrent use (queries run in parallel, changes are exclusive).
+ */
+public class WidgetQuadTree {
+
+    private static final long ROOT_MIN = -(1L << 32);
+    private static final long ROOT_SIZE = 1L << 33;
+    private static final int LEAF_CAPACITY = 16;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Node(ROOT_MIN, ROOT_MIN, ROOT_SIZE);
+
+    /**
+     * Creates an empty tree
+     */
+    public WidgetQuadTree() {
+    }
+
+    /**
+     * Creates a tree holding widgets, built in one pass down the tree rather
+     * than widget by widget (e.g. when recovering a board)
+     *
+     * @param widgets The widgets to add (with id and bounding box)
+     */
+    public WidgetQuadTree(final Collection<Widget> widgets) {
+        final Bulk bulk = new Bulk(widgets);
+        final int count = bulk.entries.length;
+
+        // Every entry goes down the quadrants containing all of them
+        Node node = root;
+        if (count > LEAF_CAPACITY) {
+            long minX = Long.MAX_VALUE;
+            long minY = Long.MAX_VALUE;
+            long maxX = Long.MIN_VALUE;
+            long maxY = Long.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                minX = Math.min(minX, bulk.x[i]);
+                minY = Math.min(minY, bulk.y[i]);
+                maxX = Math.max(maxX, bulk.maxX[i]);
+                maxY = Math.max(maxY, bulk.maxY[i]);
+            }
+            for (int quadrant = node.quadrantOf(minX, minY, maxX, maxY); quadrant >= 0; quadrant = node
+                    .quadrantOf(minX, minY, maxX, maxY)) {
+                node.count = count;
+                node.children = new Node[4];
+                node.children[quadrant] = node.child(quadrant);
+                node = node.children[quadrant];
+            }
+        }
+        build(node, bulk, 0, count);
+    }
+
+    /**
+     * Adds a widget
+     *
+     * @param widget The widget to add (with id and bounding box)
+     */
+    public void insert(final Widget widget) {
+        final Entry entry = new Entry(widget);
+        lock.writeLock().lock();
+        try {
+            insert(root, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a widget
+     *
+     * @param widget The widget to remove (with the bounding box it was added with)
+     */
+    public void remove(final Widget widget) {
+        final Entry entry = new Entry(widget);
+        lock.writeLock().lock();
+        try {
+            remove(root, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all widgets
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            root = new Node(ROOT_MIN, ROOT_MIN, ROOT_SIZE);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the widgets which fit an area
+     *
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @return The ids of the widgets within the area (in no particular order)
+     */
+    public List<Long> findWithin(final int xCoordinate, final int yCoordinate, final int width, final int height) {
+        return findWithin(xCoordinate, yCoordinate, width, height, examined -> {
+        });
+    }
+
+    /**
+     * Finds the widgets which fit an area, telling how many were examined
+     *
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @param examined    Receives the number of widgets examined (including the
+     *                    ones taken with a whole quadrant)
+     * @return The ids of the widgets within the area (in no particular order)
+     */
+    public List<Long> findWithin(final int xCoordinate, final int yCoordinate, final int width, final int height,
+            final LongConsumer examined) {
+        final Entry area = new Entry(0, xCoordinate, yCoordinate, width, height);
+        final List<Long> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            examined.accept(findWithin(root, area, ids));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    /**
+     * Finds the widgets which intersect an area (edges included)
+     *
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @return The ids of the widgets intersecting the area (in no particular
+     *         order)
+     */
+    public List<Long> findIntersecting(final int xCoordinate, final int yCoordinate, final int width,
+            final int height) {
+        final Entry area = new Entry(0, xCoordinate, yCoordinate, width, height);
+        final List<Long> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            findIntersecting(root, area, ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    /**
+     * Finds the widgets which fully contain an area (edges included), e.g. the
+     * widgets at a point for an area without width nor height. Only the
+     * quadrants containing the area are visited, i.e. a path down the tree.
+     *
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @return The ids of the widgets containing the area (in no particular order)
+     */
+    public List<Long> findContaining(final int xCoordinate, final int yCoordinate, final int width,
+            final int height) {
+        final Entry area = new Entry(0, xCoordinate, yCoordinate, width, height);
+        final List<Long> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            findContaining(root, area, ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    /**
+     * Adds an entry to a subtree, splitting the leaf it lands in when full
+     *
+     * @param node  The root of the subtree
+     * @param entry The entry to add
+     */
+    private static void insert(Node node, final Entry entry) {
+        node.count++;
+        for (int quadrant = node.quadrantOf(entry); quadrant >= 0 && node.children != null; quadrant = node
+                .quadrantOf(entry)) {
+            if (node.children[quadrant] == null) {
+                node.children[quadrant] = node.child(quadrant);
+            }
+            node = node.children[quadrant];
+            node.count++;
+        }
+        node.add(entry);
+        if (node.children == null && node.entryCount() > LEAF_CAPACITY && node.size > 1) {
+            split(node);
+        }
+    }
+
+    /**
+     * Adds entries to an empty subtree at once, as inserting them one by one
+     * would: they stay in a leaf if they fit, otherwise the ones which fit a
+     * child quadrant are moved down to it
+     *
+     * @param node The root of the subtree
+     * @param bulk The entries
+     * @param from The first entry to add (inclusive)
+     * @param to   The last entry to add (exclusive)
+     */
+    private static void build(final Node node, final Bulk bulk, final int from, final int to) {
+        node.count = to - from;
+        if (to - from <= LEAF_CAPACITY || node.size == 1) {
+            node.addAll(bulk.entries, from, to);
+            return;
+        }
+        final int[] starts = bulk.group(node, from, to);
+        node.children = new Node[4];
+        node.addAll(bulk.entries, starts[0], starts[1]);
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            if (starts[quadrant + 2] > starts[quadrant + 1]) {
+                node.children[quadrant] = node.child(quadrant);
+                build(node.children[quadrant], bulk, starts[quadrant + 1], starts[quadrant + 2]);
+            }
+        }
+    }
+
+    /**
+     * Turns a leaf into an inner node, moving down the entries which fit a child
+     *
+     * @param node The leaf
+     */
+    private static void split(final Node node) {
+        final List<Entry> entries = new ArrayList<>(node.byY.entries);
+        entries.addAll(node.byX.entries);
+        node.children = new Node[4];
+        node.byY.entries.clear();
+        node.byX.entries.clear();
+        for (final Entry entry : entries) {
+            final int quadrant = node.quadrantOf(entry);
+            if (quadrant < 0) {
+                node.add(entry);
+            } else {
+                if (node.children[quadrant] == null) {
+                    node.children[quadrant] = node.child(quadrant);
+                }
+                insert(node.children[quadrant], entry);
+            }
+        }
+    }
+
+    /**
+     * Removes an entry from a subtree, dropping the quadrants left empty
+     *
+     * @param node  The root of the subtree
+     * @param entry The entry to remove
+     * @return True if the entry was found
+     */
+    private static boolean remove(final Node node, final Entry entry) {
+        final int quadrant = node.quadrantOf(entry);
+        final boolean removed;
+        if (quadrant < 0 || node.children == null) {
+            removed = node.remove(entry);
+        } else {
+            final Node child = node.children == null ? null : node.children[quadrant];
+            removed = child != null && remove(child, entry);
+            if (removed && child.count == 0) {
+                node.children[quadrant] = null;
+            }
+        }
+        if (removed) {
+            node.count--;
+        }
+        return removed;
+    }
+
+    /**
+     * Collects the entries of a subtree which fit an area
+     *
+     * @param node The root of the subtree
+     * @param area The search area
+     * @param ids  The ids found so far
+     * @return The number of entries examined
+     */
+    private static long findWithin(final Node node, final Entry area, final List<Long> ids) {
+        if (!node.intersects(area)) {
+            return 0;
+        }
+        if (area.contains(node.minX, node.minY, node.maxX(), node.maxY())) {
+            collect(node, ids);
+            return node.count;
+        }
+        final Predicate<Entry> within = entry -> area.contains(entry.x, entry.y, entry.maxX, entry.maxY);
+        long examined = node.byY.scan(area.y, area.maxY, within, ids);
+        examined += node.byX.scan(area.x, area.maxX, within, ids);
+        if (node.children != null) {
+            for (final Node child : node.children) {
+                if (child != null) {
+                    examined += findWithin(child, area, ids);
+                }
+            }
+        }
+        return examined;
+    }
+
+    /**
+     * Collects the entries of a subtree which intersect an area
+     *
+     * @param node The root of the subtree
+     * @param area The search area
+     * @param ids  The ids found so far
+     */
+    private static void findIntersecting(final Node node, final Entry area, final List<Long> ids) {
+        if (!node.intersects(area)) {
+            return;
+        }
+        if (area.contains(node.minX, node.minY, node.maxX(), node.maxY())) {
+            collect(node, ids);
+            return;
+        }
+        final Predicate<Entry> intersecting = entry -> entry.intersects(area);
+        node.byY.scan(area.y - node.byY.maxExtent, area.maxY, intersecting, ids);
+        node.byX.scan(area.x - node.byX.maxExtent, area.maxX, intersecting, ids);
+        if (node.children != null) {
+            for (final Node child : node.children) {
+                if (child != null) {
+                    findIntersecting(child, area, ids);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the entries of a subtree which contain an area, the subtree
+     * containing it
+     *
+     * @param node The root of the subtree
+     * @param area The search area
+     * @param ids  The ids found so far
+     */
+    private static void findContaining(final Node node, final Entry area, final List<Long> ids) {
+        final Predicate<Entry> containing = entry -> entry.contains(area.x, area.y, area.maxX, area.maxY);
+        node.byY.scan(area.maxY - node.byY.maxExtent, area.y, containing, ids);
+        node.byX.scan(area.maxX - node.byX.maxExtent, area.x, containing, ids);
+        if (node.children != null) {
+            // Quadrants share their edges, so an area on a center line is in two of them
+            for (final Node child : node.children) {
+                if (child != null && child.contains(area)) {
+                    findContaining(child, area, ids);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects all the entries of a subtree
+     *
+     * @param node The root of the subtree
+     * @param ids  The ids found so far
+     */
+    private static void collect(final Node node, final List<Long> ids) {
+        for (final Entry entry : node.byY.entries) {
+            ids.add(entry.id);
+        }
+        for (final Entry entry : node.byX.entries) {
+            ids.add(entry.id);
+        }
+        if (node.children != null) {
+            for (final Node child : node.children) {
+                if (child != null) {
+                    collect(child, ids);
+                }
+            }
+        }
+    }
+
+    /**
+     * A widget's bounding box (edges included)
+     */
+    private static final class Entry {
+        private final long id;
+        private final long x;
+        private final long y;
+        private final long maxX;
+        private final long maxY;
+
+        private Entry(final Widget widget) {
+            this(widget.getId(), widget.getXCoordinate(), widget.getYCoordinate(), widget.getWidth(),
+                    widget.getHeight());
+        }
+
+        private Entry(final long id, final int x, final int y, final int width, final int height) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.maxX = (long) x + width;
+            this.maxY = (long) y + height;
+        }
+
+        private boolean contains(final long minX, final long minY, final long maxX, final long maxY) {
+            return minX >= x && minY >= y && maxX <= this.maxX && maxY <= this.maxY;
+        }
+
+        private boolean intersects(final Entry area) {
+            return x <= area.maxX && maxX >= area.x && y <= area.maxY && maxY >= area.y;
+        }
+    }
+
+    /**
+     * The entries of a tree being built, with their bounding boxes copied in
+     * arrays: grouping a range of entries by quadrant then reads and moves
+     * them in sequence, rather than visiting each entry wherever it lies in
+     * memory at every level of the tree
+     */
+    private static final class Bulk {
+        private final Entry[] entries;
+        private final long[] x;
+        private final long[] y;
+        private final long[] maxX;
+        private final long[] maxY;
+        private final byte[] groups;
+        private final int[] targets;
+        private final Entry[] entryBuffer;
+        private final long[] buffer;
+
+        private Bulk(final Collection<Widget> widgets) {
+            final int count = widgets.size();
+            entries = new Entry[count];
+            x = new long[count];
+            y = new long[count];
+            maxX = new long[count];
+            maxY = new long[count];
+            groups = new byte[count];
+            targets = new int[count];
+            entryBuffer = new Entry[count];
+            buffer = new long[count];
+            int i = 0;
+            for (final Widget widget : widgets) {
+                final Entry entry = new Entry(widget);
+                entries[i] = entry;
+                x[i] = entry.x;
+                y[i] = entry.y;
+                maxX[i] = entry.maxX;
+                maxY[i] = entry.maxY;
+                i++;
+            }
+        }
+
+        /**
+         * Groups a range of entries in place: first the ones which belong to a
+         * node, then the ones of each of its quadrants in turn
+         *
+         * @param node The node
+         * @param from The first entry (inclusive)
+         * @param to   The last entry (exclusive)
+         * @return The start of each of the 5 groups, followed by the end of the
+         *         range
+         */
+        private int[] group(final Node node, final int from, final int to) {
+            final int[] starts = new int[6];
+            for (int i = from; i < to; i++) {
+                groups[i] = (byte) (node.quadrantOf(x[i], y[i], maxX[i], maxY[i]) + 1);
+                starts[groups[i] + 1]++;
+            }
+            starts[0] = from;
+            for (int group = 1; group < starts.length; group++) {
+                starts[group] += starts[group - 1];
+            }
+            final int[] next = Arrays.copyOf(starts, 5);
+            for (int i = from; i < to; i++) {
+                targets[i] = next[groups[i]]++;
+            }
+            move(x, from, to);
+            move(y, from, to);
+            move(maxX, from, to);
+            move(maxY, from, to);
+            for (int i = from; i < to; i++) {
+                entryBuffer[targets[i]] = entries[i];
+            }
+            System.arraycopy(entryBuffer, from, entries, from, to - from);
+            return starts;
+        }
+
+        private void move(final long[] values, final int from, final int to) {
+            for (int i = from; i < to; i++) {
+                buffer[targets[i]] = values[i];
+            }
+            System.arraycopy(buffer, from, values, from, to - from);
+        }
+    }
+
+    /**
+     * Entries sorted by x or y coordinate, with the largest extent (width or
+     * height) along that axis, so the entries which may reach a range of the
+     * axis are a slice of the list
+     */
+    private static final class SortedEntries {
+        private final boolean byY;
+        private final List<Entry> entries = new ArrayList<>(0);
+        private long maxExtent;
+
+        private SortedEntries(final boolean byY) {
+            this.byY = byY;
+        }
+
+        private long key(final Entry entry) {
+            return byY ? entry.y : entry.x;
+        }
+
+        private void add(final Entry entry) {
+            entries.add(lowerBound(key(entry) + 1), entry);
+            maxExtent = Math.max(maxExtent, extent(entry));
+        }
+
+        /**
+         * Adds entries to an empty list, sorting them once
+         */
+        private void addAll(final List<Entry> added) {
+            entries.addAll(added);
+            entries.sort(Comparator.comparingLong(this::key));
+            for (final Entry entry : added) {
+                maxExtent = Math.max(maxExtent, extent(entry));
+            }
+        }
+
+        private long extent(final Entry entry) {
+            return byY ? entry.maxY - entry.y : entry.maxX - entry.x;
+        }
+
+        private boolean remove(final Entry entry) {
+            final long key = key(entry);
+            for (int i = lowerBound(key); i < entries.size() && key(entries.get(i)) == key; i++) {
+                if (entries.get(i).id == entry.id) {
+                    entries.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Collects the matching entries whose coordinate is within a range
+         *
+         * @param from    The lowest coordinate
+         * @param to      The highest coordinate
+         * @param matches Tells whether an entry matches
+         * @param ids     The ids found so far
+         * @return The number of entries examined
+         */
+        private long scan(final long from, final long to, final Predicate<Entry> matches, final List<Long> ids) {
+            long examined = 0;
+            for (int i = lowerBound(from); i < entries.size() && key(entries.get(i)) <= to; i++) {
+                examined++;
+                if (matches.test(entries.get(i))) {
+                    ids.add(entries.get(i).id);
+                }
+            }
+            return examined;
+        }
+
+        /**
+         * @return The index of the first entry whose coordinate is not below a key
+         */
+        private int lowerBound(final long key) {
+            int low = 0;
+            int high = entries.size();
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (key(entries.get(middle)) < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * A square quadrant (edges included) with the entries which straddle its
+     * center lines, or with all its entries while it is a leaf
+     */
+    private static final class Node {
+        private final long minX;
+        private final long minY;
+        private final long size;
+        private final SortedEntries byY = new SortedEntries(true);
+        private final SortedEntries byX = new SortedEntries(false);
+        private Node[] children;
+        private int count;
+
+        private Node(final long minX, final long minY, final long size) {
+            this.minX = minX;
+            this.minY = minY;
+            this.size = size;
+        }
+
+        private long maxX() {
+            return minX + size;
+        }
+
+        private int entryCount() {
+            return byY.entries.size() + byX.entries.size();
+        }
+
+        /**
+         * Adds an entry, sorted by y coordinate if it crosses the vertical center
+         * line and by x coordinate otherwise
+         */
+        private void add(final Entry entry) {
+            (crossesCenter(entry) ? byY : byX).add(entry);
+        }
+
+        /**
+         * Adds entries to an empty node
+         */
+        private void addAll(final Entry[] entries, final int from, final int to) {
+            final List<Entry> crossing = new ArrayList<>();
+            final List<Entry> others = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                (crossesCenter(entries[i]) ? crossing : others).add(entries[i]);
+            }
+            byY.addAll(crossing);
+            byX.addAll(others);
+        }
+
+        private boolean crossesCenter(final Entry entry) {
+            final long midX = minX + size / 2;
+            return entry.x < midX && entry.maxX > midX;
+        }
+
+        private boolean remove(final Entry entry) {
+            return byY.remove(entry) || byX.remove(entry);
+        }
+
+        private long maxY() {
+            return minY + size;
+        }
+
+        private boolean intersects(final Entry area) {
+            return minX <= area.maxX && maxX() >= area.x && minY <= area.maxY && maxY() >= area.y;
+        }
+
+        private boolean contains(final Entry area) {
+            return minX <= area.x && maxX() >= area.maxX && minY <= area.y && maxY() >= area.maxY;
+        }
+
+        /**
+         * Finds the child quadrant which fully contains an entry
+         *
+         * @param entry The entry
+         * @return The quadrant (0 to 3), or -1 if the entry belongs to this node
+         */
+        private int quadrantOf(final Entry entry) {
+            return quadrantOf(entry.x, entry.y, entry.maxX, entry.maxY);
+        }
+
+        /**
+         * Finds the child quadrant which fully contains a bounding box
+         *
+         * @param x    The lowest x coordinate of the box
+         * @param y    The lowest y coordinate of the box
+         * @param maxX The highest x coordinate of the box
+         * @param maxY The highest y coordinate of the box
+         * @return The quadrant (0 to 3), or -1 if the box belongs to this node
+         */
+        private int quadrantOf(final long x, final long y, final long maxX, final long maxY) {
+            if (size == 1) {
+                return -1;
+            }
+            final long midX = minX + size / 2;
+            final long midY = minY + size / 2;
+            final int column = maxX <= midX ? 0 : x >= midX ? 1 : -1;
+            final int row = maxY <= midY ? 0 : y >= midY ? 2 : -1;
+            return column < 0 || row < 0 ? -1 : column + row;
+        }
+
+        private Node child(final int quadrant) {
+            final long half = size / 2;
+            return new Node(minX + (quadrant & 1) * half, minY + (quadrant >> 1) * half, half);
+        }
+    }
+}
@@ -1,19 +1,314 @@
 package com.miro.assignment.repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+
 import java.util.List;
+import java.util.function.LongConsumer;
+
+import javax.persistence.QueryHint;
 
 import com.miro.assignment.domain.Widget;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
- * This class is responsible for the data retrieval
+ * This class is responsible for the data retrieval. Widgets are partitioned by
+ * board: every query besides the ones by id is scoped to a board. The pages
+ * of the listings are kept in the Hibernate query cache, which drops them on
+ * any write to the widgets (bulk shifts included). Queries returning whole
+ * boards are not cached, as a hit would load each widget missing from the
+ * second-level cache with a query of its own. Projections of the widgets on
+ * some of their fields are read through WidgetViewRepository.
  */
 @Repository
-public interface WidgetRepository extends PagingAndSortingRepository<Widget, Long> {
+public interface WidgetRepository extends PagingAndSortingRepository<Widget, Long>, WidgetViewRepository {
     /**
-     * Retuns a list with all the widgets in the repository
+     * Retuns a list with all the widgets in the repository, of every board
      */
     List<Widget> findAll();
+
+    /**
+     * Retrieves all the widgets of a board
+     *
+     * @param boardId The board
+     * @return A list of widgets
+     */
+    List<Widget> findAllByBoardId(long boardId);
+
+    /**
+     * Retrieves a page of the widgets of a board
+     *
+     * @param boardId  The board
+     * @param pageable The page
+     * @return The page
+     */
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    Page<Widget> findAllByBoardId(long boardId, Pageable pageable);
+
+    /**
+     * Lists the boards holding widgets
+     *
+     * @return The ids of the boards
+     */
+    @Query("SELECT DISTINCT w.boardId FROM Widget w")
+    List<Long> findBoardIds();
+
+    /**
+     * Counts the widgets of a board
+     *
+     * @param boardId The board
+     * @return The number of widgets
+     */
+    long countByBoardId(long boardId);
+
+    /**
+     * Retrieves the widgets of a board from a z-index upwards, in ascending
+     * z-index (a seek, without offset or count queries)
+     *
+     * @param boardId  The board
+     * @param zIndex   The lowest z-index to include
+     * @param pageable The page size (the page number must be 0)
+     * @return A list with up to a page of widgets
+     */
+    @Query("SELECT w FROM Widget w WHERE w.boardId = :boardId AND w.zIndex >= :zIndex ORDER BY w.zIndex")
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<Widget> findPageFromZIndex(@Param("boardId") long boardId, @Param("zIndex") int zIndex, Pageable pageable);
+
+    /**
+     * Retrieves the widgets of a board from a z-index downwards, in descending
+     * z-index (a seek, without offset or count queries)
+     *
+     * @param boardId  The board
+     * @param zIndex   The highest z-index to include
+     * @param pageable The page size (the page number must be 0)
+     * @return A list with up to a page of widgets
+     */
+    @Query("SELECT w FROM Widget w WHERE w.boardId = :boardId AND w.zIndex <= :zIndex ORDER BY w.zIndex DESC")
+    List<Widget> findPageToZIndex(@Param("boardId") long boardId, @Param("zIndex") int zIndex, Pageable pageable);
+
+    /**
+     * Retrieves all widgets of a board which fit an area, in ascending z-index
+     *
+     * @param boardId     The board
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @return A list of widgets within the area
+     */
+    default List<Widget> findAllWithinArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height) {
+        return findAllWithinArea(boardId, xCoordinate, yCoordinate, width, height, scanned -> {
+        });
+    }
+
+    /**
+     * Retrieves all widgets of a board which fit an area, in ascending z-index,
+     * telling how many widgets were examined. The default implementation filters
+     * in the database, over the indexed edges of the widgets, so only the widgets
+     * returned are read (and counted as examined).
+     *
+     * @param boardId     The board
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @param scanned     Receives the number of widgets examined
+     * @return A list of widgets within the area
+     */
+    default List<Widget> findAllWithinArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final LongConsumer scanned) {
+        final List<Widget> widgets = findWithin(boardId, xCoordinate, yCoordinate, (long) xCoordinate + width,
+                (long) yCoordinate + height);
+        scanned.accept(widgets.size());
+        return widgets;
+    }
+
+    /**
+     * Query of findAllWithinArea. Every condition compares a column with a
+     * parameter (the right and bottom edges being columns computed by the
+     * database), so each can be answered from an index.
+     */
+    @Query("SELECT w FROM Widget w WHERE w.boardId = :boardId AND w.xCoordinate >= :minX AND w.rightEdge <= :maxX"
+            + " AND w.yCoordinate >= :minY AND w.bottomEdge <= :maxY ORDER BY w.zIndex")
+    List<Widget> findWithin(@Param("boardId") long boardId, @Param("minX") int minX, @Param("minY") int minY,
+            @Param("maxX") long maxX, @Param("maxY") long maxY);
+
+    /**
+     * Retrieves the topmost widgets of a board which intersect an area (edges
+     * included), in descending z-index
+     *
+     * @param boardId     The board
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @param limit       The maximum number of widgets to return
+     * @return A list of widgets intersecting the area
+     */
+    default List<Widget> findIntersectingArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final int limit) {
+        return findIntersecting(boardId, xCoordinate, yCoordinate, (long) xCoordinate + width,
+                (long) yCoordinate + height, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Retrieves the topmost widgets of a board which fully contain an area
+     * (edges included), in descending z-index. A widget at a point contains the
+     * area of the point, with no width nor height.
+     *
+     * @param boardId     The board
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @param limit       The maximum number of widgets to return
+     * @return A list of widgets containing the area
+     */
+    default List<Widget> findContainingArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final int limit) {
+        return findContaining(boardId, xCoordinate, yCoordinate, (long) xCoordinate + width,
+                (long) yCoordinate + height, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Query of findIntersectingArea, the limit being the page size (the right
+     * and bottom edges are computed as longs, which cannot overflow)
+     */
+    @Query("SELECT w FROM Widget w WHERE w.boardId = :boardId AND cast(w.xCoordinate as long) <= :maxX"
+            + " AND cast(w.xCoordinate as long) + w.width >= :minX AND cast(w.yCoordinate as long) <= :maxY"
+            + " AND cast(w.yCoordinate as long) + w.height >= :minY ORDER BY w.zIndex DESC")
+    List<Widget> findIntersecting(@Param("boardId") long boardId, @Param("minX") long minX, @Param("minY") long minY,
+            @Param("maxX") long maxX, @Param("maxY") long maxY, Pageable pageable);
+
+    /**
+     * Query of findContainingArea, the limit being the page size
+     */
+    @Query("SELECT w FROM Widget w WHERE w.boardId = :boardId AND cast(w.xCoordinate as long) <= :minX"
+            + " AND cast(w.xCoordinate as long) + w.width >= :maxX AND cast(w.yCoordinate as long) <= :minY"
+            + " AND cast(w.yCoordinate as long) + w.height >= :maxY ORDER BY w.zIndex DESC")
+    List<Widget> findContaining(@Param("boardId") long boardId, @Param("minX") long minX, @Param("minY") long minY,
+            @Param("maxX") long maxX, @Param("maxY") long maxY, Pageable pageable);
+
+    /**
+     * Reads the current z-index of a widget of a board (without loading it)
+     *
+     * @param boardId The board
+     * @param id      The widget's id
+     * @return The z-index, or null if the board has no widget with the id
+     */
+    @Query("SELECT w.zIndex FROM Widget w WHERE w.id = :id AND w.boardId = :boardId")
+    Integer findZIndexById(@Param("boardId") long boardId, @Param("id") Long id);
+
+    /**
+     * Checks whether a z-index is taken by any widget of a board
+     *
+     * @param boardId The board
+     * @param zIndex  The z-index to check
+     * @return True if a widget uses the z-index
+     */
+    @Query("SELECT CASE WHEN COUNT(w) > 0 THEN true ELSE false END FROM Widget w"
+            + " WHERE w.boardId = :boardId AND w.zIndex = :zIndex")
+    boolean existsByZIndex(@Param("boardId") long boardId, @Param("zIndex") int zIndex);
+
+    /**
+     * Finds the last z-index of the contiguous run of taken z-indexes of a board
+     * starting at the given one (i.e. the first taken z-index whose successor is
+     * free)
+     *
+     * @param boardId The board
+     * @param zIndex  The z-index where the run starts
+     * @return The last z-index of the run, or null if no z-index from the given one
+     *         upwards is taken
+     */
+    @Query("SELECT MIN(w.zIndex) FROM Widget w WHERE w.boardId = :boardId AND w.zIndex >= :zIndex"
+            + " AND NOT EXISTS (SELECT o FROM Widget o WHERE o.boardId = :boardId AND o.zIndex = w.zIndex + 1)")
+    Integer findZIndexRunEnd(@Param("boardId") long boardId, @Param("zIndex") int zIndex);
+
+    /**
+     * Finds the lowest z-index taken by any widget of a board
+     *
+     * @param boardId The board
+     * @return The lowest z-index, or null if the board has no widgets
+     */
+    @Query("SELECT MIN(w.zIndex) FROM Widget w WHERE w.boardId = :boardId")
+    Integer findMinZIndex(@Param("boardId") long boardId);
+
+    /**
+     * Finds the highest z-index taken by any widget of a board
+     *
+     * @param boardId The board
+     * @return The highest z-index, or null if the board has no widgets
+     */
+    @Query("SELECT MAX(w.zIndex) FROM Widget w WHERE w.boardId = :boardId")
+    Integer findMaxZIndex(@Param("boardId") long boardId);
+
+    /**
+     * Retrieves the widgets of a board changed within a range of versions, in
+     * ascending version (a seek on the board and version index)
+     *
+     * @param boardId The board
+     * @param since   The last version excluded
+     * @param until   The last version included
+     * @return A list of widgets
+     */
+    @Query("SELECT w FROM Widget w WHERE w.boardId = :boardId AND w.version > :since AND w.version <= :until"
+            + " ORDER BY w.version, w.id")
+    List<Widget> findChangedBetween(@Param("boardId") long boardId, @Param("since") long since,
+            @Param("until") long until);
+
+    /**
+     * Finds the highest version of any widget, of every board
+     *
+     * @return The highest version, or null if there are no widgets
+     */
+    @Query("SELECT MAX(w.version) FROM Widget w")
+    Long findMaxVersion();
+
+    /**
+     * Moves every widget of a board within a z-index range by an offset in a
+     * single bulk update. The target range must only overlap the moved range
+     * itself (H2 removes all the old rows before adding the new ones, so the
+     * unique constraint holds for the statement as a whole).
+     *
+     * @param boardId The board
+     * @param from    The first z-index of the range (inclusive)
+     * @param to      The last z-index of the range (inclusive)
+     * @param offset  The offset to add to each z-index
+     * @param version The version of the board the widgets are moved in
+     * @return The number of widgets moved
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Widget w SET w.zIndex = w.zIndex + :offset, w.lastModified = CURRENT_TIMESTAMP,"
+            + " w.version = :version WHERE w.boardId = :boardId AND w.zIndex BETWEEN :from AND :to")
+    int shiftZIndexRange(@Param("boardId") long boardId, @Param("from") int from, @Param("to") int to,
+            @Param("offset") int offset, @Param("version") long version);
+
+    /**
+     * Writes the pending changes to the storage, so that later writes are checked
+     * against them
+     */
+    void flush();
+
+    /**
+     * Makes the writes of the current transaction to a board, from now on,
+     * visible to other readers only once it commits, and undone if it rolls
+     * back. The database does so already; the in-memory storages hold the
+     * board until the transaction completes. The caller must hold the whole
+     * z-plane of the board (see ZIndexLocks#lockAll), so that no other
+     * transaction is writing to it. Does nothing outside a transaction.
+     *
+     * @param boardId The board
+     */
+    default void writeAtomically(final long boardId) {
+        // Transactions of the database are atomic
+    }
 }
@@ -0,0 +1,45 @@
+package com.miro.assignment.repository;
+
+import java.util.List;
+
+import com.miro.assignment.domain.WidgetTombstone;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * This class is responsible for the tombstones of deleted widgets
+ */
+@Repository
+public interface WidgetTombstoneRepository extends org.springframework.data.repository.Repository<WidgetTombstone, Long> {
+    /**
+     * Stores a tombstone
+     *
+     * @param tombstone The tombstone
+     * @return The stored tombstone
+     */
+    WidgetTombstone save(WidgetTombstone tombstone);
+
+    /**
+     * Retrieves the ids of the widgets of a board deleted within a range of
+     * versions, in ascending version
+     *
+     * @param boardId The board
+     * @param since   The last version excluded
+     * @param until   The last version included
+     * @return A list of widget ids
+     */
+    @Query("SELECT t.id FROM WidgetTombstone t WHERE t.boardId = :boardId AND t.version > :since"
+            + " AND t.version <= :until ORDER BY t.version, t.id")
+    List<Long> findDeletedBetween(@Param("boardId") long boardId, @Param("since") long since,
+            @Param("until") long until);
+
+    /**
+     * Finds the highest version of any tombstone
+     *
+     * @return The highest version, or null if there are no tombstones
+     */
+    @Query("SELECT MAX(t.version) FROM WidgetTombstone t")
+    Long findMaxVersion();
+}
@@ -0,0 +1,58 @@
+package com.miro.assignment.repository;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.domain.WidgetView;
+
+import org.springframework.data.domain.Pageable;
+
+/**
+ * This class is responsible for the retrieval of projections of the widgets
+ * (sparse fieldsets): only the fields requested are read. Its JPA
+ * implementation (WidgetViewRepositoryImpl) is part of the WidgetRepository,
+ * and selects the requested columns only.
+ */
+public interface WidgetViewRepository {
+    /**
+     * Retrieves a page of the projections of the widgets of a board
+     *
+     * @param boardId  The board
+     * @param fields   The fields to read
+     * @param pageable The page, and its order
+     * @return A list with up to a page of projections
+     */
+    List<WidgetView> findViewsByBoardId(long boardId, Set<WidgetField> fields, Pageable pageable);
+
+    /**
+     * Retrieves the projections of the widgets of a board from a z-index
+     * upwards, in ascending z-index (as findPageFromZIndex)
+     *
+     * @param boardId  The board
+     * @param zIndex   The lowest z-index to include
+     * @param fields   The fields to read
+     * @param pageable The page size (the page number must be 0), or unpaged for
+     *                 every widget
+     * @return A list with up to a page of projections
+     */
+    List<WidgetView> findViewsFromZIndex(long boardId, int zIndex, Set<WidgetField> fields, Pageable pageable);
+
+    /**
+     * Retrieves the projections of the widgets of a board which fit an area, in
+     * ascending z-index, telling how many widgets were examined (as
+     * findAllWithinArea)
+     *
+     * @param boardId     The board
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @param fields      The fields to read
+     * @param scanned     Receives the number of widgets examined
+     * @return A list of projections of the widgets within the area
+     */
+    List<WidgetView> findViewsWithinArea(long boardId, int xCoordinate, int yCoordinate, int width, int height,
+            Set<WidgetField> fields, LongConsumer scanned);
+}
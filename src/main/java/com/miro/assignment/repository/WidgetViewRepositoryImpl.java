@@ -0,0 +1,122 @@
+package com.miro.assignment.repository;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.domain.WidgetView;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+/**
+ * This class provides the JPA implementation of the WidgetViewRepository: the
+ * projections are read as tuples of the requested columns, so no entity is
+ * loaded nor managed. The conditions are those of the WidgetRepository
+ * queries, and the pages are kept in the query cache like theirs.
+ */
+public class WidgetViewRepositoryImpl implements WidgetViewRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<WidgetView> findViewsByBoardId(final long boardId, final Set<WidgetField> fields,
+            final Pageable pageable) {
+        final CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        final Root<Widget> widget = query.from(Widget.class);
+        query.where(builder.equal(widget.get("boardId"), boardId));
+        query.orderBy(QueryUtils.toOrders(pageable.getSort(), widget, builder));
+        return views(select(query, widget, fields), fields, pageable);
+    }
+
+    @Override
+    public List<WidgetView> findViewsFromZIndex(final long boardId, final int zIndex, final Set<WidgetField> fields,
+            final Pageable pageable) {
+        final CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        final Root<Widget> widget = query.from(Widget.class);
+        query.where(builder.equal(widget.get("boardId"), boardId),
+                builder.greaterThanOrEqualTo(widget.get("zIndex"), zIndex));
+        query.orderBy(builder.asc(widget.get("zIndex")));
+        return views(select(query, widget, fields), fields, pageable);
+    }
+
+    @Override
+    public List<WidgetView> findViewsWithinArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final Set<WidgetField> fields, final LongConsumer scanned) {
+        final CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        final Root<Widget> widget = query.from(Widget.class);
+        // The conditions of findWithin, each answered from an index
+        final List<Predicate> conditions = new ArrayList<>();
+        conditions.add(builder.equal(widget.get("boardId"), boardId));
+        conditions.add(builder.greaterThanOrEqualTo(widget.get("xCoordinate"), xCoordinate));
+        conditions.add(builder.lessThanOrEqualTo(widget.get("rightEdge"), (long) xCoordinate + width));
+        conditions.add(builder.greaterThanOrEqualTo(widget.get("yCoordinate"), yCoordinate));
+        conditions.add(builder.lessThanOrEqualTo(widget.get("bottomEdge"), (long) yCoordinate + height));
+        query.where(conditions.toArray(new Predicate[0]));
+        query.orderBy(builder.asc(widget.get("zIndex")));
+        final List<WidgetView> views = views(select(query, widget, fields), fields, Pageable.unpaged());
+        scanned.accept(views.size());
+        return views;
+    }
+
+    /**
+     * Selects the columns of the fields
+     *
+     * @param query  The query
+     * @param widget The root of the query
+     * @param fields The fields to read
+     * @return The query
+     */
+    private TypedQuery<Tuple> select(final CriteriaQuery<Tuple> query, final Root<Widget> widget,
+            final Set<WidgetField> fields) {
+        query.multiselect(fields.stream().map(field -> widget.get(field.getAttribute())).collect(Collectors.toList()));
+        return entityManager.createQuery(query);
+    }
+
+    /**
+     * Reads the projections. Pages are cached, whole boards and areas are not
+     * (they may be large, and each area is rarely asked twice).
+     *
+     * @param query    The query
+     * @param fields   The fields read, in the order of the columns
+     * @param pageable The page (unpaged for every row)
+     * @return The projections
+     */
+    private static List<WidgetView> views(final TypedQuery<Tuple> query, final Set<WidgetField> fields,
+            final Pageable pageable) {
+        if (pageable.isPaged()) {
+            query.setFirstResult(Math.toIntExact(pageable.getOffset())).setMaxResults(pageable.getPageSize())
+                    .setHint(HINT_CACHEABLE, true);
+        }
+        final List<Tuple> rows = query.getResultList();
+        final List<WidgetView> views = new ArrayList<>(rows.size());
+        for (final Tuple row : rows) {
+            final WidgetView view = new WidgetView();
+            int column = 0;
+            for (final WidgetField field : fields) {
+                field.set(view, row.get(column++));
+            }
+            views.add(view);
+        }
+        return views;
+    }
+}
@@ -0,0 +1,631 @@
+package com.miro.assignment.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetTombstone;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class makes the in-memory storage durable without a database, enabled
+ * with `widget.storage=memory` and `widget.wal.enabled=true`: every change is
+ * appended to a binary write-ahead log, which is compacted into a snapshot of
+ * the whole board every `widget.wal.snapshot-interval`. On startup the board
+ * is recovered from the latest snapshot and the log written since.
+ * <p>
+ * The log is a sequence of segments (`<n>.wal`), each record being its length,
+ * a CRC32 and the change. The changes of a write are buffered and
+ * written together once it completes, so they survive a crash of the process; they
+ * are forced to the disk every `widget.wal.sync-interval` (0 forces every
+ * write). A snapshot (`<n>.snapshot`) holds the board as it was when segment n
+ * started, as fixed-size records, and is read through a memory-mapped file.
+ * Snapshots are written to a temporary file and renamed once complete, and
+ * then replace the older segments and snapshots.
+ * <p>
+ * A record cut short or failing its CRC at the end of the last segment (a
+ * write torn by a crash) ends the recovery and is truncated; anywhere else it
+ * means the log is corrupt, and the recovery fails.
+ */
+@Component
+@ConditionalOnExpression("'${widget.storage:jpa}' == 'memory' and ${widget.wal.enabled:false}")
+public class WidgetWriteAheadLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WidgetWriteAheadLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final Pattern FILE_NAME = Pattern.compile("(\\d+)(\\.wal|\\.snapshot)");
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte TOMBSTONE = 3;
+
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2;
+    private static final int WIDGET_SIZE = Long.BYTES * 2 + Integer.BYTES * 5 + Long.BYTES * 2;
+    private static final int TOMBSTONE_SIZE = Long.BYTES * 3;
+    private static final int MAX_RECORD_SIZE = 1 + WIDGET_SIZE;
+    private static final long SNAPSHOT_MAGIC = 0x5749444745545332L;
+    private static final int SNAPSHOT_HEADER_SIZE = Long.BYTES + Integer.BYTES * 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final boolean syncEveryWrite;
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor(new CustomizableThreadFactory("widget-wal-"));
+    private final Duration syncInterval;
+    private final Duration snapshotInterval;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Object snapshotLock = new Object();
+
+    private Recovery recovery;
+    private boolean recovered;
+    private FileChannel segment;
+    private long segmentNumber;
+    private Supplier<List<Widget>> checkpoint;
+    private Supplier<Collection<WidgetTombstone>> tombstones;
+
+    /**
+     * Creates the log
+     *
+     * @param directory        The directory of the segments and snapshots
+     * @param syncInterval     The time between forcing the log to the disk (0
+     *                         for every write)
+     * @param snapshotInterval The time between snapshots
+     */
+    public WidgetWriteAheadLog(final @Value("${widget.wal.directory:data/wal}") Path directory,
+            final @Value("${widget.wal.sync-interval:1s}") Duration syncInterval,
+            final @Value("${widget.wal.snapshot-interval:5m}") Duration snapshotInterval) {
+        this.directory = directory;
+        this.syncEveryWrite = syncInterval.isZero();
+        this.syncInterval = syncInterval;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Recovers the board from the directory, and starts a new segment
+     *
+     * @throws IOException If the directory cannot be read or the log is corrupt
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        Files.createDirectories(directory);
+        recovery = read(directory);
+        recovered = !recovery.empty;
+        synchronized (this) {
+            segmentNumber = recovery.lastSegment + 1;
+            segment = FileChannel.open(directory.resolve(segmentNumber + SEGMENT_SUFFIX), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * @return The board recovered on startup, or null if the directory was empty
+     *         (only until started)
+     */
+    public Recovery getRecovery() {
+        return recovered ? recovery : null;
+    }
+
+    /**
+     * Provides the tombstones to snapshot
+     *
+     * @param tombstones Returns every tombstone
+     */
+    public void setTombstones(final Supplier<Collection<WidgetTombstone>> tombstones) {
+        this.tombstones = tombstones;
+    }
+
+    /**
+     * Starts the scheduled syncs and snapshots, taking a snapshot right away if
+     * nothing was recovered (e.g. a board seeded from the database)
+     *
+     * @param checkpoint Starts a new segment (see {@link #rotate()}) and returns
+     *                   every widget as of its start, holding the storage's
+     *                   write lock
+     */
+    public void start(final Supplier<List<Widget>> checkpoint) {
+        this.checkpoint = checkpoint;
+        recovery = null;
+        if (!recovered) {
+            snapshot();
+        }
+        if (!syncEveryWrite) {
+            executor.scheduleWithFixedDelay(this::syncQuietly, syncInterval.toNanos(), syncInterval.toNanos(),
+                    TimeUnit.NANOSECONDS);
+        }
+        executor.scheduleWithFixedDelay(this::snapshotQuietly, snapshotInterval.toNanos(),
+                snapshotInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Logs the change of a widget (buffered until {@link #flush()})
+     *
+     * @param id     The widget's id
+     * @param widget The widget as stored, or null if it was deleted
+     */
+    public synchronized void append(final Long id, final Widget widget) {
+        reserve();
+        final int start = startRecord();
+        if (widget == null) {
+            buffer.put(DELETE).putLong(id);
+        } else {
+            buffer.put(PUT);
+            putWidget(buffer, widget);
+        }
+        endRecord(start);
+    }
+
+    /**
+     * Logs the changes of a write and writes them together (see
+     * {@link #flush()}), so the changes of writes running in parallel are never
+     * interleaved
+     *
+     * @param changes The widgets as stored by id, or null for the deleted ones
+     */
+    public synchronized void append(final Map<Long, Widget> changes) {
+        changes.forEach(this::append);
+        flush();
+    }
+
+    /**
+     * Logs a tombstone and writes it
+     *
+     * @param tombstone The tombstone
+     */
+    public synchronized void appendTombstone(final WidgetTombstone tombstone) {
+        reserve();
+        final int start = startRecord();
+        buffer.put(TOMBSTONE);
+        putTombstone(buffer, tombstone);
+        endRecord(start);
+        flush();
+    }
+
+    /**
+     * Writes the buffered changes to the current segment (and forces them to the
+     * disk with a sync interval of 0)
+     */
+    public synchronized void flush() {
+        try {
+            writeBuffer();
+            if (syncEveryWrite) {
+                segment.force(false);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the buffered changes and starts a new segment. Must be called
+     * holding the storage's write lock.
+     *
+     * @return The number of the new segment
+     */
+    public synchronized long rotate() {
+        try {
+            writeBuffer();
+            segment.force(false);
+            segment.close();
+            segmentNumber++;
+            segment = FileChannel.open(directory.resolve(segmentNumber + SEGMENT_SUFFIX),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return segmentNumber;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the board, then deletes the segments and snapshots it
+     * replaces
+     */
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            final List<Widget> widgets = checkpoint.get();
+            final long number;
+            synchronized (this) {
+                number = segmentNumber;
+            }
+            // Tombstones are read after the segment started: any tombstone missing
+            // from the snapshot is logged in the new segment
+            final Collection<WidgetTombstone> deleted = tombstones == null ? List.of() : tombstones.get();
+            try {
+                writeSnapshot(directory, number, widgets, deleted);
+                deleteBefore(number);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Stops the scheduled tasks, and writes and forces the log
+     *
+     * @throws IOException If the log cannot be written
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        executor.shutdown();
+        synchronized (this) {
+            if (segment.isOpen()) {
+                writeBuffer();
+                segment.force(false);
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the latest valid snapshot of a directory and applies the segments
+     * written since, truncating a torn record at the end of the last one
+     *
+     * @param directory The directory
+     * @return The recovered board
+     * @throws IOException If the directory cannot be read or the log is corrupt
+     */
+    static Recovery read(final Path directory) throws IOException {
+        final List<Long> snapshots = list(directory, SNAPSHOT_SUFFIX);
+        final List<Long> segments = list(directory, SEGMENT_SUFFIX);
+
+        final Map<Long, Widget> widgets = new LinkedHashMap<>();
+        final Map<Long, WidgetTombstone> deleted = new LinkedHashMap<>();
+        long from = 0;
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            if (readSnapshot(directory.resolve(snapshots.get(i) + SNAPSHOT_SUFFIX), widgets, deleted)) {
+                from = snapshots.get(i);
+                break;
+            }
+            LOGGER.warn("Skipping the invalid snapshot {}", snapshots.get(i));
+        }
+
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i) >= from) {
+                readSegment(directory.resolve(segments.get(i) + SEGMENT_SUFFIX), widgets, deleted,
+                        i == segments.size() - 1);
+            }
+        }
+
+        final long lastSegment = Math.max(snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1),
+                segments.isEmpty() ? 0 : segments.get(segments.size() - 1));
+        final List<Widget> board = new ArrayList<>(widgets.values());
+        board.sort(Comparator.comparing(Widget::getBoardId).thenComparing(Widget::getZIndex));
+        return new Recovery(board, new ArrayList<>(deleted.values()), lastSegment,
+                snapshots.isEmpty() && segments.isEmpty());
+    }
+
+    /**
+     * Writes a snapshot
+     *
+     * @param directory The directory
+     * @param number    The number of the segment started with the snapshot
+     * @param widgets   The widgets
+     * @param deleted   The tombstones
+     * @throws IOException If the snapshot cannot be written
+     */
+    static void writeSnapshot(final Path directory, final long number, final Collection<Widget> widgets,
+            final Collection<WidgetTombstone> deleted) throws IOException {
+        final Path temporary = directory.resolve(number + SNAPSHOT_SUFFIX + ".tmp");
+        final CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+            out.putLong(SNAPSHOT_MAGIC).putInt(widgets.size()).putInt(deleted.size());
+            for (final Widget widget : widgets) {
+                if (out.remaining() < WIDGET_SIZE) {
+                    write(channel, out, checksum);
+                }
+                putWidget(out, widget);
+            }
+            for (final WidgetTombstone tombstone : deleted) {
+                if (out.remaining() < TOMBSTONE_SIZE) {
+                    write(channel, out, checksum);
+                }
+                putTombstone(out, tombstone);
+            }
+            write(channel, out, checksum);
+            out.putInt((int) checksum.getValue());
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(number + SNAPSHOT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot through a memory-mapped file
+     *
+     * @param file    The snapshot
+     * @param widgets Receives the widgets, by id
+     * @param deleted Receives the tombstones, by id
+     * @return False if the snapshot is incomplete or fails its CRC (nothing is
+     *         read)
+     * @throws IOException If the snapshot cannot be read
+     */
+    private static boolean readSnapshot(final Path file, final Map<Long, Widget> widgets,
+            final Map<Long, WidgetTombstone> deleted) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < SNAPSHOT_HEADER_SIZE + Integer.BYTES) {
+                return false;
+            }
+            final MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (in.getLong(0) != SNAPSHOT_MAGIC || size != SNAPSHOT_HEADER_SIZE
+                    + (long) in.getInt(Long.BYTES) * WIDGET_SIZE
+                    + (long) in.getInt(Long.BYTES + Integer.BYTES) * TOMBSTONE_SIZE + Integer.BYTES) {
+                return false;
+            }
+            final CRC32 checksum = new CRC32();
+            checksum.update(in.duplicate().limit((int) size - Integer.BYTES));
+            if (in.getInt((int) size - Integer.BYTES) != (int) checksum.getValue()) {
+                return false;
+            }
+
+            in.position(Long.BYTES);
+            final int widgetCount = in.getInt();
+            final int tombstoneCount = in.getInt();
+            for (int i = 0; i < widgetCount; i++) {
+                final Widget widget = getWidget(in);
+                widgets.put(widget.getId(), widget);
+            }
+            for (int i = 0; i < tombstoneCount; i++) {
+                final WidgetTombstone tombstone = getTombstone(in);
+                deleted.put(tombstone.getId(), tombstone);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Applies the records of a segment, read through a memory-mapped file
+     *
+     * @param file    The segment
+     * @param widgets The widgets to change, by id
+     * @param deleted The tombstones to add to, by id
+     * @param last    Whether it is the last segment, whose torn record at the
+     *                end is truncated
+     * @throws IOException If the segment cannot be read or is corrupt
+     */
+    private static void readSegment(final Path file, final Map<Long, Widget> widgets,
+            final Map<Long, WidgetTombstone> deleted, final boolean last) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            final MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            final CRC32 checksum = new CRC32();
+            while (in.hasRemaining()) {
+                final int start = in.position();
+                final int length = in.remaining() < RECORD_HEADER_SIZE ? -1 : in.getInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE || in.remaining() < Integer.BYTES + length) {
+                    torn(channel, file, start, last);
+                    return;
+                }
+                final int expected = in.getInt();
+                checksum.reset();
+                checksum.update(in.duplicate().limit(in.position() + length));
+                if ((int) checksum.getValue() != expected) {
+                    torn(channel, file, start, last);
+                    return;
+                }
+                switch (in.get()) {
+                case PUT:
+                    final Widget widget = getWidget(in);
+                    widgets.put(widget.getId(), widget);
+                    break;
+                case DELETE:
+                    widgets.remove(in.getLong());
+                    break;
+                case TOMBSTONE:
+                    final WidgetTombstone tombstone = getTombstone(in);
+                    deleted.put(tombstone.getId(), tombstone);
+                    break;
+                default:
+                    throw new IOException("Unknown record at " + start + " in " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a record cut short or failing its CRC
+     */
+    private static void torn(final FileChannel channel, final Path file, final int position, final boolean last)
+            throws IOException {
+        if (!last) {
+            throw new IOException("Corrupt record at " + position + " in " + file);
+        }
+        LOGGER.warn("Truncating the torn record at {} in {}", position, file);
+        channel.truncate(position);
+        channel.force(true);
+    }
+
+    /**
+     * Lists the numbers of the files with a suffix, in ascending order
+     */
+    private static List<Long> list(final Path directory, final String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(x -> FILE_NAME.matcher(x.getFileName().toString())).filter(Matcher::matches)
+                    .filter(x -> x.group(2).equals(suffix)).map(x -> Long.parseLong(x.group(1))).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Deletes the segments and snapshots older than a snapshot
+     */
+    private void deleteBefore(final long number) throws IOException {
+        for (final String suffix : List.of(SEGMENT_SUFFIX, SNAPSHOT_SUFFIX)) {
+            for (final long older : list(directory, suffix)) {
+                if (older < number) {
+                    Files.deleteIfExists(directory.resolve(older + suffix));
+                }
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            synchronized (this) {
+                segment.force(false);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Write-ahead log sync failed", e);
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Write-ahead log snapshot failed, retrying with the next one", e);
+        }
+    }
+
+    /**
+     * Makes room in the buffer for a record
+     */
+    private void reserve() {
+        if (buffer.remaining() < RECORD_HEADER_SIZE + MAX_RECORD_SIZE) {
+            try {
+                writeBuffer();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private int startRecord() {
+        final int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_SIZE);
+        return start;
+    }
+
+    private void endRecord(final int start) {
+        final int length = buffer.position() - start - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + RECORD_HEADER_SIZE).limit(buffer.position()));
+        buffer.putInt(start, length).putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes a buffer, adding it to a checksum, and clears it
+     */
+    private static void write(final FileChannel channel, final ByteBuffer out, final CRC32 checksum)
+            throws IOException {
+        out.flip();
+        checksum.update(out.duplicate());
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static void putWidget(final ByteBuffer out, final Widget widget) {
+        final LocalDateTime lastModified = widget.getLastModified();
+        out.putLong(widget.getId()).putLong(widget.getBoardId()).putInt(widget.getXCoordinate()).putInt(widget.getYCoordinate())
+                .putInt(widget.getZIndex()).putInt(widget.getWidth()).putInt(widget.getHeight())
+                .putLong(widget.getVersion())
+                .putLong(lastModified.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + lastModified.getNano());
+    }
+
+    private static Widget getWidget(final ByteBuffer in) {
+        final Widget widget = new Widget();
+        widget.setId(in.getLong());
+        widget.setBoardId(in.getLong());
+        widget.setXCoordinate(in.getInt());
+        widget.setYCoordinate(in.getInt());
+        widget.setZIndex(in.getInt());
+        widget.setWidth(in.getInt());
+        widget.setHeight(in.getInt());
+        widget.setVersion(in.getLong());
+        final long lastModified = in.getLong();
+        widget.setLastModified(LocalDateTime.ofEpochSecond(Math.floorDiv(lastModified, 1_000_000_000L),
+                (int) Math.floorMod(lastModified, 1_000_000_000L), ZoneOffset.UTC));
+        return widget;
+    }
+
+    private static void putTombstone(final ByteBuffer out, final WidgetTombstone tombstone) {
+        out.putLong(tombstone.getId()).putLong(tombstone.getBoardId()).putLong(tombstone.getVersion());
+    }
+
+    private static WidgetTombstone getTombstone(final ByteBuffer in) {
+        return new WidgetTombstone(in.getLong(), in.getLong(), in.getLong());
+    }
+
+    /**
+     * The board read from a directory
+     */
+    public static final class Recovery {
+        private final List<Widget> widgets;
+        private final List<WidgetTombstone> tombstones;
+        private final long lastSegment;
+        private final boolean empty;
+
+        private Recovery(final List<Widget> widgets, final List<WidgetTombstone> tombstones, final long lastSegment,
+                final boolean empty) {
+            this.widgets = widgets;
+            this.tombstones = tombstones;
+            this.lastSegment = lastSegment;
+            this.empty = empty;
+        }
+
+        /**
+         * @return The widgets, by board in ascending z-index
+         */
+        public List<Widget> getWidgets() {
+            return widgets;
+        }
+
+        /**
+         * @return The tombstones
+         */
+        public List<WidgetTombstone> getTombstones() {
+            return tombstones;
+        }
+    }
+}
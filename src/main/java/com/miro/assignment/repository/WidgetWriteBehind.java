@@ -0,0 +1,246 @@
+package com.miro.assignment.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import com.miro.assignment.domain.Widget;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * This class writes the changes of the in-memory storage back to the database,
+ * enabled with `widget.storage=memory` and `widget.write-behind.enabled=true`.
+ * The in-memory storage stays authoritative for reads and writes, which never
+ * wait for the database.
+ * <p>
+ * Changes are coalesced by widget, so a widget changed many times (e.g. by
+ * several shifts) is written once. Every `widget.write-behind.flush-interval`
+ * a background thread writes the latest state of the widgets changed since the
+ * previous flush in a single transaction: the changed rows are deleted, then
+ * the current ones inserted, both as JDBC batches (deleting first keeps the
+ * unique z-index constraint for any reordering). As the changes of a write are
+ * queued together, each flush writes a consistent state of every board.
+ * <p>
+ * Writes wait while the oldest change not yet flushed is older than
+ * `widget.write-behind.max-lag`. A failed flush is retried by the next one,
+ * and the pending changes are flushed on shutdown.
+ */
+@Component
+@ConditionalOnExpression("'${widget.storage:jpa}' == 'memory' and ${widget.write-behind.enabled:false}")
+public class WidgetWriteBehind {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WidgetWriteBehind.class);
+
+    private static final String DELETE = "DELETE FROM widget WHERE id = ?";
+    private static final String INSERT = "INSERT INTO widget"
+            + " (id, board_id, x_coordinate, y_coordinate, z_index, width, height, last_modified, version)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long maxLagNanos;
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor(new CustomizableThreadFactory("widget-write-behind-"));
+    private final Timer flushTimer;
+    private final DistributionSummary flushedWidgets;
+
+    private final Object flushLock = new Object();
+    private Map<Long, Widget> pending = new HashMap<>();
+    private long oldestPendingNanos;
+    private boolean flushing;
+    private long oldestFlushingNanos;
+
+    /**
+     * Creates the write-behind and schedules its flushes
+     *
+     * @param jdbcTemplate       The database access
+     * @param transactionManager The transaction manager of the database
+     * @param registry           The registry to register the metrics in
+     * @param flushInterval      The time between the end of a flush and the
+     *                           start of the next one
+     * @param maxLag             The age of the oldest change not yet flushed
+     *                           from which writes wait
+     */
+    public WidgetWriteBehind(final JdbcTemplate jdbcTemplate, final PlatformTransactionManager transactionManager,
+            final MeterRegistry registry,
+            final @Value("${widget.write-behind.flush-interval:100ms}") Duration flushInterval,
+            final @Value("${widget.write-behind.max-lag:5s}") Duration maxLag) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxLagNanos = maxLag.toNanos();
+
+        flushTimer = Timer.builder("widget.write-behind.flush").description("Time to write a flush to the database")
+                .register(registry);
+        flushedWidgets = DistributionSummary.builder("widget.write-behind.flushed")
+                .description("Widgets written by a flush").baseUnit("widgets").register(registry);
+        Gauge.builder("widget.write-behind.pending", this, WidgetWriteBehind::getPendingCount)
+                .description("Changed widgets not yet flushed").baseUnit("widgets").register(registry);
+
+        executor.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toNanos(), flushInterval.toNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Queues the changes of a write, replacing the earlier pending changes of
+     * the same widgets
+     *
+     * @param changes The widgets as stored (never modified afterwards) by id, or
+     *                null for the deleted ones
+     */
+    public synchronized void changed(final Map<Long, Widget> changes) {
+        if (pending.isEmpty()) {
+            oldestPendingNanos = System.nanoTime();
+        }
+        pending.putAll(changes);
+    }
+
+    /**
+     * Waits until the oldest change not yet flushed is within the maximum lag
+     */
+    public synchronized void awaitLag() {
+        while (lagNanos() > maxLagNanos) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The number of changed widgets not yet flushed
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes the pending changes to the database, while new changes are queued
+     * for the next flush. On failure they are queued again (behind any newer
+     * change of the same widgets).
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            final Map<Long, Widget> changes;
+            synchronized (this) {
+                changes = pending;
+                if (changes.isEmpty()) {
+                    return;
+                }
+                pending = new HashMap<>();
+                flushing = true;
+                oldestFlushingNanos = oldestPendingNanos;
+            }
+
+            boolean written = false;
+            try {
+                flushTimer.record(() -> write(changes));
+                flushedWidgets.record(changes.size());
+                written = true;
+            } finally {
+                synchronized (this) {
+                    if (!written) {
+                        changes.putAll(pending);
+                        pending = changes;
+                        oldestPendingNanos = oldestFlushingNanos;
+                    }
+                    flushing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the scheduled flushes and flushes the pending changes
+     *
+     * @throws InterruptedException If interrupted while waiting for a flush in
+     *                              progress
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        flush();
+    }
+
+    /**
+     * Must be called holding the monitor
+     *
+     * @return The age of the oldest change not yet flushed (0 if there are none)
+     */
+    private long lagNanos() {
+        if (flushing) {
+            return System.nanoTime() - oldestFlushingNanos;
+        }
+        return pending.isEmpty() ? 0 : System.nanoTime() - oldestPendingNanos;
+    }
+
+    /**
+     * Flushes, logging a failure (the changes are retried by the next flush)
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Write-behind flush failed, retrying with the next one", e);
+        }
+    }
+
+    /**
+     * Writes changes in a single transaction
+     *
+     * @param changes The latest state of each changed widget (null if deleted),
+     *                by id
+     */
+    private void write(final Map<Long, Widget> changes) {
+        final List<Long> ids = new ArrayList<>(changes.keySet());
+        final List<Widget> widgets = changes.values().stream().filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(DELETE, ids, BATCH_SIZE, (statement, id) -> statement.setLong(1, id));
+            jdbcTemplate.batchUpdate(INSERT, widgets, BATCH_SIZE, WidgetWriteBehind::setInsertParameters);
+        });
+    }
+
+    private static void setInsertParameters(final PreparedStatement statement, final Widget widget)
+            throws SQLException {
+        statement.setLong(1, widget.getId());
+        statement.setLong(2, widget.getBoardId());
+        statement.setInt(3, widget.getXCoordinate());
+        statement.setInt(4, widget.getYCoordinate());
+        statement.setInt(5, widget.getZIndex());
+        statement.setInt(6, widget.getWidth());
+        statement.setInt(7, widget.getHeight());
+        statement.setTimestamp(8, Timestamp.valueOf(widget.getLastModified()));
+        statement.setLong(9, widget.getVersion());
+    }
+}
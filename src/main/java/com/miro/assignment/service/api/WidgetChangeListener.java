@@ -0,0 +1,28 @@
+package com.miro.assignment.service.api;
+
+import java.io.IOException;
+
+import com.miro.assignment.domain.WidgetChange;
+
+/**
+ * This class provides the interface for the subscribers of the change feed.
+ * Each subscriber is called from a single thread at a time, in commit order.
+ */
+public interface WidgetChangeListener {
+    /**
+     * Receives a committed change
+     * 
+     * @param sequence The position of the change in the feed (increasing)
+     * @param change   The change
+     * @throws IOException If the change cannot be delivered (the subscriber is
+     *                     removed)
+     */
+    void onChange(long sequence, WidgetChange change) throws IOException;
+
+    /**
+     * Tells the subscriber it fell too far behind, or took too long to receive
+     * a change: it was removed and the changes it had not received yet were
+     * dropped, so it must reload the board
+     */
+    void onOverflow();
+}
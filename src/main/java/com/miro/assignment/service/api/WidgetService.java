@@ -1,77 +1,276 @@
 package com.miro.assignment.service.api;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.miro.assignment.domain.CacheStatistics;
 import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetDelta;
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.domain.WidgetOperation;
+import com.miro.assignment.domain.WidgetTile;
+import com.miro.assignment.domain.WidgetView;
+import com.miro.assignment.exception.InvalidBatchOperationException;
+import com.miro.assignment.exception.InvalidLimitException;
 import com.miro.assignment.exception.MissingWidgetFieldException;
+import com.miro.assignment.exception.UnknownVersionException;
 import com.miro.assignment.exception.WidgetNotFoundException;
 
 /**
- * This class provides the interface for the Widget service
+ * This class provides the interface for the Widget service. Widgets belong to
+ * a board, each with its own z-plane: every operation applies to a single
+ * board, and a widget of another board is not found.
  */
 public interface WidgetService {
     /**
      * Creates a new Widget entity
      * 
-     * @param widget An object which contains the data to use
+     * @param boardId The board
+     * @param widget  An object which contains the data to use
      * @return A new Widget entity
      * @throws MissingWidgetFieldException If input data is missing required fields
      */
-    Widget create(Widget widget) throws MissingWidgetFieldException;
+    Widget create(long boardId, Widget widget) throws MissingWidgetFieldException;
 
     /**
      * Retrieves a Widget entity by its id
      * 
-     * @param id The id to look for
+     * @param boardId The board
+     * @param id      The id to look for
      * @return The entity found
      * @throws WidgetNotFoundException If no entity could be found with the given id
      */
-    Widget find(Long id) throws WidgetNotFoundException;
+    Widget find(long boardId, Long id) throws WidgetNotFoundException;
 
     /**
      * Update a Widget's data
      * 
-     * @param id     The entity's id
-     * @param widget The object data to update (empty fields will be ignored)
+     * @param boardId The board
+     * @param id      The entity's id
+     * @param widget  The object data to update (empty fields will be ignored)
      * @return The updated entity
      * @throws WidgetNotFoundException If no entity could be found with the given id
      */
-    Widget update(Long id, Widget widget) throws WidgetNotFoundException;
+    Widget update(long boardId, Long id, Widget widget) throws WidgetNotFoundException;
 
     /**
      * Delete a Widget entity from the repository
      * 
-     * @param id The entity's id
+     * @param boardId The board
+     * @param id      The entity's id
      * @throws WidgetNotFoundException If no entity could be found with the given id
      */
-    void delete(Long id) throws WidgetNotFoundException;
+    void delete(long boardId, Long id) throws WidgetNotFoundException;
+
+    /**
+     * Applies a batch of create, update and delete operations as a whole: either
+     * all of them are applied or none is, and other readers see all of them at
+     * once, whatever the storage. Deletes are applied first; then every
+     * widget created or updated with a z-index takes it and pushes the widgets
+     * it lands on 1 place up, all resolved in a single pass over the z-plane.
+     * The requested z-indexes refer to the board before the batch, and widgets
+     * requesting the same z-index keep their batch order. Widgets created
+     * without a z-index go below all others.
+     * 
+     * @param boardId    The board
+     * @param operations The operations to apply, in order
+     * @return The resulting Widget entity of each operation (null for deletes)
+     * @throws MissingWidgetFieldException    If an operation is missing required
+     *                                        fields
+     * @throws WidgetNotFoundException        If no entity could be found for an
+     *                                        update or delete
+     * @throws InvalidBatchOperationException If a widget is changed by more than
+     *                                        one operation
+     */
+    List<Widget> applyBatch(long boardId, List<WidgetOperation> operations)
+            throws MissingWidgetFieldException, WidgetNotFoundException, InvalidBatchOperationException;
 
     /**
      * Retrieve all Widget entities from the repository according to certain
      * criteria
      * 
+     * @param boardId  The board
      * @param pageNo   The page number to display
      * @param pageSize The page size to use
      * @param sortBy   The sorting criteria
      * @return A list of Widgets according to the criteria
      */
-    List<Widget> getAll(int pageNo, int pageSize, String sortBy);
+    List<Widget> getAll(long boardId, int pageNo, int pageSize, String sortBy);
+
+    /**
+     * Retrieve a page of Widget entities in ascending z-index, following the last
+     * widget of the previous page. Pages stay consistent while widgets are
+     * created or shifted, as shifting keeps the relative order of the widgets.
+     * 
+     * @param boardId    The board
+     * @param lastId     The id of the last widget of the previous page (null for
+     *                   the first page)
+     * @param lastZIndex The z-index of that widget, used if it no longer exists
+     * @param pageSize   The page size to use
+     * @return A list of up to a page of Widgets
+     */
+    List<Widget> getAllAfter(long boardId, Long lastId, Integer lastZIndex, int pageSize);
 
     /**
      * Retrieve all Widget entities from the repository in ascending z-index
      * 
+     * @param boardId The board
      * @return A list of all Widget entities
      */
-    List<Widget> getAll();
+    List<Widget> getAll(long boardId);
+
+    /**
+     * Retrieve a page of projections of the Widget entities on some of their
+     * fields, read without loading the entities
+     * 
+     * @param boardId  The board
+     * @param pageNo   The page number to display
+     * @param pageSize The page size to use
+     * @param sortBy   The sorting criteria
+     * @param fields   The fields to read
+     * @return A list of projections according to the criteria
+     */
+    List<WidgetView> getAll(long boardId, int pageNo, int pageSize, String sortBy, Set<WidgetField> fields);
+
+    /**
+     * Retrieve a page of projections of the Widget entities in ascending z-index,
+     * following the last widget of the previous page (see getAllAfter)
+     * 
+     * @param boardId    The board
+     * @param lastId     The id of the last widget of the previous page (null for
+     *                   the first page)
+     * @param lastZIndex The z-index of that widget, used if it no longer exists
+     * @param pageSize   The page size to use
+     * @param fields     The fields to read
+     * @return A list of up to a page of projections
+     */
+    List<WidgetView> getAllAfter(long boardId, Long lastId, Integer lastZIndex, int pageSize,
+            Set<WidgetField> fields);
+
+    /**
+     * Retrieve the projections of all Widget entities in ascending z-index
+     * 
+     * @param boardId The board
+     * @param fields  The fields to read
+     * @return A list of the projections of all Widget entities
+     */
+    List<WidgetView> getAll(long boardId, Set<WidgetField> fields);
 
     /**
      * Retrieve all Widget entities from the repository within an area
      * 
+     * @param boardId     The board
      * @param xCoordinate Search area X coordinate
      * @param yCoordinate Search area Y coordinate
      * @param width       Search area width
      * @param height      earch area height
      * @return A list of Widgets within the area
      */
-    List<Widget> getWidgetsFilteredByArea(int xCoordinate, int yCoordinate, int width, int height);
+    List<Widget> getWidgetsFilteredByArea(long boardId, int xCoordinate, int yCoordinate, int width, int height);
+
+    /**
+     * Retrieve the projections of the Widget entities within an area
+     * 
+     * @param boardId     The board
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @param fields      The fields to read
+     * @return A list of the projections of the Widgets within the area
+     */
+    List<WidgetView> getWidgetsFilteredByArea(long boardId, int xCoordinate, int yCoordinate, int width, int height,
+            Set<WidgetField> fields);
+
+    /**
+     * Retrieve the topmost Widget entities which intersect an area (edges
+     * included)
+     * 
+     * @param boardId     The board
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @param limit       The maximum number of Widgets to return (null for all)
+     * @return A list of Widgets intersecting the area, in descending z-index
+     * @throws InvalidLimitException If the limit is not positive
+     */
+    List<Widget> getWidgetsIntersectingArea(long boardId, int xCoordinate, int yCoordinate, int width, int height,
+            Integer limit) throws InvalidLimitException;
+
+    /**
+     * Retrieve the topmost Widget entities which fully contain an area (edges
+     * included)
+     * 
+     * @param boardId     The board
+     * @param xCoordinate Search area X coordinate
+     * @param yCoordinate Search area Y coordinate
+     * @param width       Search area width
+     * @param height      Search area height
+     * @param limit       The maximum number of Widgets to return (null for all)
+     * @return A list of Widgets containing the area, in descending z-index
+     * @throws InvalidLimitException If the limit is not positive
+     */
+    List<Widget> getWidgetsContainingArea(long boardId, int xCoordinate, int yCoordinate, int width, int height,
+            Integer limit) throws InvalidLimitException;
+
+    /**
+     * Retrieve the topmost Widget entity at a point (edges included), e.g. the
+     * one clicked
+     * 
+     * @param boardId     The board
+     * @param xCoordinate The point's X coordinate
+     * @param yCoordinate The point's Y coordinate
+     * @return The Widget with the highest z-index containing the point
+     * @throws WidgetNotFoundException If no Widget contains the point
+     */
+    Widget getWidgetAt(long boardId, int xCoordinate, int yCoordinate) throws WidgetNotFoundException;
+
+    /**
+     * Retrieve a tile of the plane: the Widget entities intersecting it (edges
+     * included) in ascending z-index, serialized. Tiles are cached until a
+     * change touches them
+     * 
+     * @param boardId The board
+     * @param tileX   The tile's column (tile x covers the X coordinates from x *
+     *                size to (x + 1) * size - 1)
+     * @param tileY   The tile's row
+     * @return The tile
+     */
+    WidgetTile getTile(long boardId, int tileX, int tileY);
+
+    /**
+     * @return The width and height of a tile
+     */
+    int getTileSize();
+
+    /**
+     * Retrieve the changes of the board since a version
+     * 
+     * @param boardId The board
+     * @param since   The version the client has seen (null for the whole board)
+     * @return The widgets changed and the ids of the widgets deleted since the
+     *         version, up to the version returned
+     * @throws UnknownVersionException If the board has not reached the version
+     */
+    WidgetDelta getDelta(long boardId, Long since) throws UnknownVersionException;
+
+    /**
+     * Subscribes to the changes of the board committed from now on
+     * 
+     * @param boardId  The board
+     * @param listener The subscriber
+     * @return Unsubscribes
+     */
+    Runnable subscribeToChanges(long boardId, WidgetChangeListener listener);
+
+    /**
+     * Retrieve the statistics of the widget caches
+     * 
+     * @return The statistics of the widget cache (`widgets`), of the listing
+     *         cache (`listing`), of the tile cache (`tiles`) and of the JSON
+     *         cache (`json`)
+     */
+    Map<String, CacheStatistics> getCacheStatistics();
 }
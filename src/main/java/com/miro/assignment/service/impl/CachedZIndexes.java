@@ -0,0 +1,85 @@
+package com.miro.assignment.service.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class indexes the entries of a cache by the z-indexes of the widgets
+ * they hold on each board, so the entries within a shifted z-index range are
+ * found without going through the whole cache.
+ * <p>
+ * Each z-index maps the keys of the entries holding it to the values they were
+ * cached with, and a value is only unindexed by itself: indexing a new value
+ * and unindexing the one it replaced may happen in any order. All methods are
+ * atomic, and only the calls for the same board wait for each other.
+ *
+ * @param <K> The type of the keys of the cache
+ */
+class CachedZIndexes<K> {
+
+    private final ConcurrentHashMap<Long, NavigableMap<Integer, Map<K, Object>>> boards = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes a cached value
+     *
+     * @param boardId  The board
+     * @param zIndexes The z-indexes of the widgets of the value
+     * @param key      The key of the value
+     * @param value    The value
+     */
+    void index(final long boardId, final int[] zIndexes, final K key, final Object value) {
+        boards.compute(boardId, (id, board) -> {
+            final NavigableMap<Integer, Map<K, Object>> indexed = board == null ? new TreeMap<>() : board;
+            for (final int zIndex : zIndexes) {
+                indexed.computeIfAbsent(zIndex, z -> new HashMap<>(2)).put(key, value);
+            }
+            return indexed;
+        });
+    }
+
+    /**
+     * Unindexes a value removed from the cache, unless its key was indexed with
+     * another value since
+     *
+     * @param boardId  The board
+     * @param zIndexes The z-indexes of the widgets of the value
+     * @param key      The key of the value
+     * @param value    The value
+     */
+    void unindex(final long boardId, final int[] zIndexes, final K key, final Object value) {
+        boards.computeIfPresent(boardId, (id, board) -> {
+            for (final int zIndex : zIndexes) {
+                final Map<K, Object> keys = board.get(zIndex);
+                if (keys != null && keys.get(key) == value) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        board.remove(zIndex);
+                    }
+                }
+            }
+            return board.isEmpty() ? null : board;
+        });
+    }
+
+    /**
+     * Finds the keys of the values holding a widget within a z-index range
+     *
+     * @param boardId The board
+     * @param from    The first z-index of the range (inclusive)
+     * @param to      The last z-index of the range (inclusive)
+     * @return The keys
+     */
+    Set<K> findBetween(final long boardId, final int from, final int to) {
+        final Set<K> keys = new HashSet<>();
+        boards.computeIfPresent(boardId, (id, board) -> {
+            board.subMap(from, true, to, true).values().forEach(indexed -> keys.addAll(indexed.keySet()));
+            return board;
+        });
+        return keys;
+    }
+}
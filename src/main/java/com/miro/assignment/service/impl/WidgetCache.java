@@ -0,0 +1,252 @@
+package com.miro.assignment.service.impl;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.miro.assignment.domain.CacheStatistics;
+import com.miro.assignment.domain.Widget;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * This class provides a read-through cache of single widgets (by id) and of
+ * the z-ordered listing of each board, bounded in size and age.
+ * <p>
+ * Writes evict what they change once their transaction completes: the widgets
+ * updated or deleted, every cached widget of the board within a shifted
+ * z-index range and the listing of the board. A value loaded while an
+ * eviction happens is returned but not cached, as it may have been read before
+ * the change was committed. Cached widgets are copies, so callers never share
+ * them with the persistence context. They are indexed by z-index on each
+ * board, so a shift only goes through the widgets it evicts.
+ * <p>
+ * The statistics of both caches are also published as metrics (`cache.*`,
+ * tagged `widgets` and `widget-listing`).
+ */
+@Component
+public class WidgetCache implements MeterBinder {
+
+    private final Cache<Long, Widget> widgets;
+    private final Cache<Long, List<Widget>> listing;
+    private final CachedZIndexes<Long> zIndexes = new CachedZIndexes<>();
+    private final ReadWriteLock evictionLock = new ReentrantReadWriteLock();
+    private volatile long evictions;
+
+    /**
+     * Creates the caches
+     *
+     * @param maximumSize         The maximum number of cached widgets (0 disables
+     *                            the cache)
+     * @param maximumListingsSize The maximum number of cached listings
+     * @param expireAfterWrite    The time a cached value is kept
+     */
+    public WidgetCache(final @Value("${widget.cache.maximum-size:10000}") long maximumSize,
+            final @Value("${widget.cache.maximum-listings:16}") long maximumListingsSize,
+            final @Value("${widget.cache.expire-after-write:300s}") Duration expireAfterWrite) {
+        widgets = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterWrite).recordStats()
+                .writer(new CacheWriter<Long, Widget>() {
+                    @Override
+                    public void write(final Long id, final Widget widget) {
+                        // Indexed by cache(), which knows the widget replaced
+                    }
+
+                    @Override
+                    public void delete(final Long id, final Widget widget, final RemovalCause cause) {
+                        zIndexes.unindex(widget.getBoardId(), new int[] { widget.getZIndex() }, id, widget);
+                    }
+                }).build();
+        listing = Caffeine.newBuilder().maximumSize(maximumSize == 0 ? 0 : maximumListingsSize)
+                .expireAfterWrite(expireAfterWrite).recordStats().build();
+    }
+
+    /**
+     * Finds a widget, loading and caching it on a miss
+     *
+     * @param id     The widget's id
+     * @param loader Loads the widget from the repository
+     * @return A copy of the widget
+     */
+    public Widget find(final Long id, final Supplier<Widget> loader) {
+        final Widget cached = widgets.getIfPresent(id);
+        if (cached != null) {
+            return cached.copy();
+        }
+        final long loadedAfter = evictions;
+        final Widget widget = loader.get();
+        cacheIfUnchanged(loadedAfter, () -> cache(id, widget.copy()));
+        return widget;
+    }
+
+    /**
+     * Lists all widgets of a board in z-order, loading and caching the list on a
+     * miss
+     *
+     * @param boardId The board
+     * @param loader  Loads the list from the repository
+     * @return The list, which is shared and cannot be modified (nor its widgets)
+     */
+    public List<Widget> getAll(final long boardId, final Supplier<List<Widget>> loader) {
+        final List<Widget> cached = listing.getIfPresent(boardId);
+        if (cached != null) {
+            return cached;
+        }
+        final long loadedAfter = evictions;
+        final List<Widget> all = Collections.unmodifiableList(
+                loader.get().stream().map(Widget::copy).collect(Collectors.toList()));
+        cacheIfUnchanged(loadedAfter, () -> listing.put(boardId, all));
+        return all;
+    }
+
+    /**
+     * Evicts widgets and the listing of their board once the current transaction
+     * completes
+     *
+     * @param boardId The board
+     * @param ids     The ids of the widgets changed
+     */
+    public void evict(final long boardId, final Collection<Long> ids) {
+        evictOnCompletion(boardId, () -> widgets.invalidateAll(ids));
+    }
+
+    /**
+     * Evicts the listing of a board once the current transaction completes
+     *
+     * @param boardId The board
+     */
+    public void evictListing(final long boardId) {
+        evictOnCompletion(boardId, () -> {
+        });
+    }
+
+    /**
+     * Evicts the widgets of a board within a shifted z-index range (as they were
+     * cached) and the listing of the board once the current transaction
+     * completes
+     *
+     * @param boardId The board
+     * @param from    The first z-index of the range (inclusive)
+     * @param to      The last z-index of the range (inclusive)
+     */
+    public void evictZIndexRange(final long boardId, final int from, final int to) {
+        evictOnCompletion(boardId, () -> widgets.invalidateAll(zIndexes.findBetween(boardId, from, to)));
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        // Same tag keys as the caches of the cache manager (Prometheus requires it)
+        CaffeineCacheMetrics.monitor(registry, widgets, "widgets", "cacheManager", "widgetCache", "name", "widgets");
+        CaffeineCacheMetrics.monitor(registry, listing, "widget-listing", "cacheManager", "widgetCache", "name",
+                "widget-listing");
+    }
+
+    /**
+     * @return The statistics of the widget cache
+     */
+    public CacheStatistics getWidgetStatistics() {
+        return statistics(widgets);
+    }
+
+    /**
+     * @return The statistics of the listing cache
+     */
+    public CacheStatistics getListingStatistics() {
+        return statistics(listing);
+    }
+
+    /**
+     * Caches a loaded value unless an eviction happened since it was loaded
+     *
+     * @param loadedAfter The eviction count before loading
+     * @param put         Caches the value
+     */
+    private void cacheIfUnchanged(final long loadedAfter, final Runnable put) {
+        evictionLock.readLock().lock();
+        try {
+            if (evictions == loadedAfter) {
+                put.run();
+            }
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Caches a widget and indexes it by z-index, along with the removal of the
+     * widget it replaces
+     *
+     * @param id     The widget's id
+     * @param widget The widget
+     */
+    private void cache(final Long id, final Widget widget) {
+        widgets.asMap().compute(id, (key, replaced) -> {
+            if (replaced != null) {
+                zIndexes.unindex(replaced.getBoardId(), new int[] { replaced.getZIndex() }, id, replaced);
+            }
+            zIndexes.index(widget.getBoardId(), new int[] { widget.getZIndex() }, id, widget);
+            return widget;
+        });
+    }
+
+    /**
+     * Runs an eviction (and evicts the listing of the board) once the current
+     * transaction commits or rolls back, or right away without a transaction
+     *
+     * @param boardId  The board
+     * @param eviction The eviction
+     */
+    private void evictOnCompletion(final long boardId, final Runnable eviction) {
+        final Runnable evictAll = () -> {
+            evictionLock.writeLock().lock();
+            try {
+                evictions++;
+                eviction.run();
+                listing.invalidate(boardId);
+            } finally {
+                evictionLock.writeLock().unlock();
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evictAll.run();
+            return;
+        }
+        // Committed or not, values may have been loaded from uncommitted changes. On
+        // commit, evict before the changes are published (registered later)
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictAll.run();
+            }
+
+            @Override
+            public void afterCompletion(final int status) {
+                if (status != STATUS_COMMITTED) {
+                    evictAll.run();
+                }
+            }
+        });
+    }
+
+    private static CacheStatistics statistics(final Cache<?, ?> cache) {
+        final CacheStats stats = cache.stats();
+        return new CacheStatistics(stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount(),
+                cache.estimatedSize());
+    }
+}
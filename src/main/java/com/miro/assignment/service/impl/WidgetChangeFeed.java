@@ -0,0 +1,338 @@
+package com.miro.assignment.service.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import com.miro.assignment.domain.WidgetChange;
+import com.miro.assignment.service.api.WidgetChangeListener;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class publishes the committed changes of each board to its subscribers.
+ * <p>
+ * The changes of a transaction are collected and published once it commits,
+ * while its z-index locks are still held, so changes of overlapping z-index
+ * ranges are published in commit order. Publishing only queues the changes:
+ * each subscriber has a bounded buffer, drained by a task on a fixed pool of
+ * threads, so a slow subscriber never holds up writes. A subscriber whose
+ * buffer is full is removed and told to reload the board.
+ * <p>
+ * A subscriber taking longer than the send timeout to receive a change (e.g. a
+ * client which stopped reading) is removed too, its thread is interrupted and
+ * it is told to reload the board once the change returns. Meanwhile its thread
+ * is replaced, so the other subscribers keep receiving their changes; at most
+ * as many threads as the pool holds are replaced, so stalled subscribers never
+ * take more than twice the threads of the pool.
+ */
+@Component
+public class WidgetChangeFeed {
+
+    private final int bufferSize;
+    private final int threads;
+    private final long sendTimeoutNanos;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog = Executors
+            .newSingleThreadScheduledExecutor(new CustomizableThreadFactory("widget-changes-watchdog-"));
+    private long sequence;
+
+    /**
+     * The threads of the pool replaced while stalled subscribers hold them
+     * (guarded by the executor)
+     */
+    private int replacedThreads;
+
+    /**
+     * Creates the feed
+     *
+     * @param bufferSize  The number of changes buffered for each subscriber
+     * @param threads     The number of threads delivering the changes
+     * @param sendTimeout The time a subscriber may take to receive a change
+     */
+    public WidgetChangeFeed(final @Value("${widget.changes.buffer-size:1000}") int bufferSize,
+            final @Value("${widget.changes.threads:8}") int threads,
+            final @Value("${widget.changes.send-timeout:10s}") Duration sendTimeout) {
+        this.bufferSize = bufferSize;
+        this.threads = threads;
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        // At most one task per subscriber is queued
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("widget-changes-"));
+        final long period = Math.max(1, sendTimeout.toMillis() / 2);
+        watchdog.scheduleAtFixedRate(this::expireStalled, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a subscriber, which receives the changes of a board committed from now
+     * on
+     *
+     * @param boardId  The board
+     * @param listener The subscriber
+     * @return Removes the subscriber
+     */
+    public Runnable subscribe(final long boardId, final WidgetChangeListener listener) {
+        final Subscriber subscriber = new Subscriber(boardId, listener);
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    /**
+     * Publishes a change once the current transaction commits (or right away
+     * without a transaction)
+     *
+     * @param change The change
+     */
+    public void publish(final WidgetChange change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dispatch(List.of(change));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<WidgetChange> changes = (List<WidgetChange>) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            final List<WidgetChange> transactionChanges = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, transactionChanges);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(transactionChanges);
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    TransactionSynchronizationManager.unbindResource(WidgetChangeFeed.this);
+                }
+            });
+            changes = transactionChanges;
+        }
+        changes.add(change);
+    }
+
+    /**
+     * Stops delivering changes
+     */
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues changes for every subscriber, in a single order for all of them
+     *
+     * @param changes The changes
+     */
+    private synchronized void dispatch(final List<WidgetChange> changes) {
+        for (final WidgetChange change : changes) {
+            sequence++;
+            for (final Subscriber subscriber : subscribers) {
+                if (subscriber.boardId == change.getBoardId()) {
+                    subscriber.offer(sequence, change);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the subscribers which have been receiving a change for longer than
+     * the send timeout
+     */
+    private void expireStalled() {
+        final long now = System.nanoTime();
+        for (final Subscriber subscriber : subscribers) {
+            subscriber.expireIfStalled(now);
+        }
+    }
+
+    /**
+     * Adds a thread to the pool in place of a thread held by a stalled
+     * subscriber, unless as many threads were already replaced as the pool holds
+     *
+     * @return Whether a thread was added
+     */
+    private boolean replaceThread() {
+        synchronized (executor) {
+            if (replacedThreads == threads) {
+                return false;
+            }
+            replacedThreads++;
+            executor.setMaximumPoolSize(threads + replacedThreads);
+            executor.setCorePoolSize(threads + replacedThreads);
+            return true;
+        }
+    }
+
+    /**
+     * Removes the thread added in place of a thread which a stalled subscriber
+     * released
+     */
+    private void releaseThread() {
+        synchronized (executor) {
+            replacedThreads--;
+            executor.setCorePoolSize(threads + replacedThreads);
+            executor.setMaximumPoolSize(threads + replacedThreads);
+        }
+    }
+
+    /**
+     * A change with its position in the feed
+     */
+    private static final class SequencedChange {
+        private final long sequence;
+        private final WidgetChange change;
+
+        private SequencedChange(final long sequence, final WidgetChange change) {
+            this.sequence = sequence;
+            this.change = change;
+        }
+    }
+
+    /**
+     * A subscriber with its buffer
+     */
+    private final class Subscriber {
+        private final long boardId;
+        private final WidgetChangeListener listener;
+        private final Queue<SequencedChange> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean overflowed;
+
+        /**
+         * The thread delivering a change and since when (guarded by the
+         * subscriber)
+         */
+        private Thread deliverer;
+        private long deliveringSince;
+
+        /**
+         * Whether the subscriber took too long to receive a change, and whether
+         * its thread was replaced meanwhile (guarded by the subscriber)
+         */
+        private boolean expired;
+        private boolean threadReplaced;
+
+        private Subscriber(final long boardId, final WidgetChangeListener listener) {
+            this.boardId = boardId;
+            this.listener = listener;
+        }
+
+        /**
+         * Buffers a change and makes sure the buffer is being drained
+         *
+         * @param sequence The position of the change in the feed
+         * @param change   The change
+         */
+        private void offer(final long sequence, final WidgetChange change) {
+            if (!buffer.offer(new SequencedChange(sequence, change))) {
+                subscribers.remove(this);
+                overflowed = true;
+            }
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        /**
+         * Delivers the buffered changes until the buffer is empty
+         */
+        private void drain() {
+            while (true) {
+                for (SequencedChange next = buffer.poll(); next != null && !overflowed; next = buffer.poll()) {
+                    synchronized (this) {
+                        deliverer = Thread.currentThread();
+                        deliveringSince = System.nanoTime();
+                    }
+                    try {
+                        listener.onChange(next.sequence, next.change);
+                    } catch (final IOException | RuntimeException e) {
+                        if (!endDelivery()) {
+                            subscribers.remove(this);
+                            buffer.clear();
+                        }
+                        return;
+                    }
+                    if (endDelivery()) {
+                        return;
+                    }
+                }
+                if (overflowed) {
+                    buffer.clear();
+                    listener.onOverflow();
+                    return;
+                }
+                draining.set(false);
+                // A change offered after the last poll may have found the flag still set
+                if (buffer.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Ends the delivery of a change, and tells the subscriber to reload the
+         * board if it took too long (it is not drained anymore)
+         *
+         * @return Whether the subscriber took too long
+         */
+        private boolean endDelivery() {
+            final boolean replaced;
+            synchronized (this) {
+                deliverer = null;
+                if (!expired) {
+                    return false;
+                }
+                replaced = threadReplaced;
+            }
+            // Interrupted when it expired
+            Thread.interrupted();
+            buffer.clear();
+            try {
+                listener.onOverflow();
+            } finally {
+                if (replaced) {
+                    releaseThread();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Removes the subscriber if it has been receiving a change for longer
+         * than the send timeout, interrupts its thread and replaces it
+         *
+         * @param now The current time
+         */
+        private void expireIfStalled(final long now) {
+            final Thread stalled;
+            synchronized (this) {
+                if (deliverer == null || expired || now - deliveringSince < sendTimeoutNanos) {
+                    return;
+                }
+                expired = true;
+                stalled = deliverer;
+                subscribers.remove(this);
+                threadReplaced = replaceThread();
+            }
+            stalled.interrupt();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.miro.assignment.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.miro.assignment.domain.CacheStatistics;
+import com.miro.assignment.domain.Widget;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * This class provides a cache of the JSON of each widget (by id), encoded in
+ * UTF-8, which the serializer of the widgets (see WidgetJsonConfig) copies
+ * into the responses instead of serializing the widget again.
+ * <p>
+ * Each entry keeps the widget it was encoded from and the encoding it was
+ * encoded with, and is only used for a widget with the same fields written
+ * with the same encoding: a widget which changed in any way, shifts included,
+ * is encoded again and replaces the entry. No write has to evict
+ * anything, and a widget read before a change was committed never leaks into
+ * the responses of later reads.
+ * <p>
+ * The statistics of the cache are also published as metrics (`cache.*`,
+ * tagged `widget-json`).
+ */
+@Component
+public class WidgetJsonCache implements MeterBinder {
+
+    private final boolean enabled;
+    private final Cache<Long, Entry> entries;
+
+    /**
+     * Creates the cache
+     *
+     * @param maximumSize The maximum number of cached widgets (0 disables the
+     *                    cache)
+     */
+    public WidgetJsonCache(final @Value("${widget.json-cache.maximum-size:100000}") long maximumSize) {
+        enabled = maximumSize > 0;
+        entries = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * @return Whether widgets are cached
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Finds the JSON of a widget, encoding and caching it on a miss
+     *
+     * @param widget   The widget
+     * @param encoding What the JSON depends on besides the widget (compared with
+     *                 equals)
+     * @param encoder  Encodes a widget as JSON
+     * @return The JSON of the widget, in UTF-8
+     */
+    public SerializableString find(final Widget widget, final Object encoding,
+            final Function<Widget, byte[]> encoder) {
+        if (widget.getId() == null) {
+            // Not stored yet
+            return new EncodedJson(encoder.apply(widget));
+        }
+        final Entry cached = entries.getIfPresent(widget.getId());
+        if (cached != null && cached.encoding.equals(encoding) && cached.widget.equals(widget)) {
+            return cached.json;
+        }
+        final Entry entry = new Entry(widget.copy(), encoding, new EncodedJson(encoder.apply(widget)));
+        entries.put(widget.getId(), entry);
+        return entry.json;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        // Same tag keys as the caches of the cache manager (Prometheus requires it)
+        CaffeineCacheMetrics.monitor(registry, entries, "widget-json", "cacheManager", "widgetCache", "name",
+                "widget-json");
+    }
+
+    /**
+     * @return The statistics of the cache
+     */
+    public CacheStatistics getStatistics() {
+        final CacheStats stats = entries.stats();
+        return new CacheStatistics(stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount(),
+                entries.estimatedSize());
+    }
+
+    /**
+     * A widget (as it was encoded), the encoding and its JSON
+     */
+    private static final class Entry {
+        private final Widget widget;
+        private final Object encoding;
+        private final EncodedJson json;
+
+        private Entry(final Widget widget, final Object encoding, final EncodedJson json) {
+            this.widget = widget;
+            this.encoding = encoding;
+            this.json = json;
+        }
+    }
+
+    /**
+     * JSON already encoded in UTF-8, which generators writing bytes copy as is.
+     * It is only meant to be written raw: its quoted forms are computed on
+     * demand.
+     */
+    private static final class EncodedJson implements SerializableString {
+        private final byte[] bytes;
+
+        private EncodedJson(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getValue() {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int charLength() {
+            return getValue().length();
+        }
+
+        @Override
+        public byte[] asUnquotedUTF8() {
+            return bytes;
+        }
+
+        @Override
+        public int appendUnquotedUTF8(final byte[] buffer, final int offset) {
+            if (offset + bytes.length > buffer.length) {
+                return -1;
+            }
+            System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+            return bytes.length;
+        }
+
+        @Override
+        public int appendUnquoted(final char[] buffer, final int offset) {
+            return quoted().appendUnquoted(buffer, offset);
+        }
+
+        @Override
+        public int writeUnquotedUTF8(final OutputStream out) throws IOException {
+            out.write(bytes);
+            return bytes.length;
+        }
+
+        @Override
+        public int putUnquotedUTF8(final ByteBuffer buffer) {
+            if (bytes.length > buffer.remaining()) {
+                return -1;
+            }
+            buffer.put(bytes);
+            return bytes.length;
+        }
+
+        @Override
+        public char[] asQuotedChars() {
+            return quoted().asQuotedChars();
+        }
+
+        @Override
+        public byte[] asQuotedUTF8() {
+            return quoted().asQuotedUTF8();
+        }
+
+        @Override
+        public int appendQuotedUTF8(final byte[] buffer, final int offset) {
+            return quoted().appendQuotedUTF8(buffer, offset);
+        }
+
+        @Override
+        public int appendQuoted(final char[] buffer, final int offset) {
+            return quoted().appendQuoted(buffer, offset);
+        }
+
+        @Override
+        public int writeQuotedUTF8(final OutputStream out) throws IOException {
+            return quoted().writeQuotedUTF8(out);
+        }
+
+        @Override
+        public int putQuotedUTF8(final ByteBuffer buffer) throws IOException {
+            return quoted().putQuotedUTF8(buffer);
+        }
+
+        /**
+         * @return The JSON as a string, to be quoted
+         */
+        private SerializedString quoted() {
+            return new SerializedString(getValue());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.miro.assignment.service.impl;
+
+import com.miro.assignment.repository.WidgetRepository;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class records the domain metrics of the widget service: how far z-index
+ * shifts reach, how much area queries read and how deep offset paging goes.
+ * The board size is read from the repository when the metrics are scraped.
+ * <p>
+ * Percentiles are configured per metric name (`widget.*`) in the application
+ * properties.
+ */
+@Component
+public class WidgetMetrics {
+
+    private final DistributionSummary shiftedWidgets;
+    private final DistributionSummary lockExtensions;
+    private final DistributionSummary areaScannedWidgets;
+    private final DistributionSummary areaFoundWidgets;
+    private final DistributionSummary pageDepth;
+
+    /**
+     * Registers the metrics
+     * 
+     * @param registry   The registry to register the metrics in
+     * @param repository The repository to read the board size from
+     */
+    public WidgetMetrics(final MeterRegistry registry, final WidgetRepository repository) {
+        shiftedWidgets = DistributionSummary.builder("widget.zindex.shifted")
+                .description("Widgets moved up by a z-index change").baseUnit("widgets").register(registry);
+        lockExtensions = DistributionSummary.builder("widget.zindex.lock.extensions")
+                .description("Times the z-index lock of a shift grew to reach the end of the run")
+                .register(registry);
+        areaScannedWidgets = DistributionSummary.builder("widget.area.scanned")
+                .description("Widgets examined by an area query").baseUnit("widgets").register(registry);
+        areaFoundWidgets = DistributionSummary.builder("widget.area.found")
+                .description("Widgets returned by an area query").baseUnit("widgets").register(registry);
+        pageDepth = DistributionSummary.builder("widget.page.depth")
+                .description("Page number requested with offset paging").register(registry);
+        Gauge.builder("widget.board.size", repository, WidgetRepository::count).description("Widgets on the board")
+                .baseUnit("widgets").register(registry);
+    }
+
+    /**
+     * Records a z-index change
+     * 
+     * @param shifted    The number of widgets moved up (0 if the z-index was
+     *                   free)
+     * @param extensions The number of times the lock was extended
+     */
+    public void recordZIndexChange(final int shifted, final int extensions) {
+        shiftedWidgets.record(shifted);
+        lockExtensions.record(extensions);
+    }
+
+    /**
+     * Records an area query
+     * 
+     * @param scanned The number of widgets examined
+     * @param found   The number of widgets returned
+     */
+    public void recordAreaQuery(final long scanned, final int found) {
+        areaScannedWidgets.record(scanned);
+        areaFoundWidgets.record(found);
+    }
+
+    /**
+     * Records an offset page request
+     * 
+     * @param pageNo The page number requested
+     */
+    public void recordPageDepth(final int pageNo) {
+        pageDepth.record(pageNo);
+    }
+}
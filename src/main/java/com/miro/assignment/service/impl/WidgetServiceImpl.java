@@ -1,15 +1,34 @@
 package com.miro.assignment.service.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import com.miro.assignment.domain.CacheStatistics;
 import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetChange;
+import com.miro.assignment.domain.WidgetDelta;
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.domain.WidgetOperation;
+import com.miro.assignment.domain.WidgetTile;
+import com.miro.assignment.domain.WidgetTombstone;
+import com.miro.assignment.domain.WidgetView;
+import com.miro.assignment.exception.InvalidBatchOperationException;
+import com.miro.assignment.exception.InvalidLimitException;
 import com.miro.assignment.exception.MissingWidgetFieldException;
+import com.miro.assignment.exception.UnknownVersionException;
 import com.miro.assignment.exception.WidgetNotFoundException;
 import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.repository.WidgetTombstoneRepository;
+import com.miro.assignment.service.api.WidgetChangeListener;
 import com.miro.assignment.service.api.WidgetService;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,9 +37,10 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.micrometer.core.annotation.Timed;
+
 /**
  * This class provides the implementation of the WidgetService
  */
@@ -30,9 +50,39 @@ public class WidgetServiceImpl implements WidgetService {
     @Autowired
     private WidgetRepository repository;
 
+    @Autowired
+    private ZIndexBounds zIndexBounds;
+
+    @Autowired
+    private ZIndexLocks zIndexLocks;
+
+    @Autowired
+    private WidgetCache widgetCache;
+
+    @Autowired
+    private WidgetTileCache widgetTileCache;
+
+    @Autowired
+    private WidgetJsonCache widgetJsonCache;
+
+    @Autowired
+    private WidgetMetrics widgetMetrics;
+
+    @Autowired
+    private WidgetChangeFeed widgetChangeFeed;
+
+    @Autowired
+    private WidgetTombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private WidgetVersions widgetVersions;
+
+    private static final String TIMER_NAME = "widget.service";
+
     @Override
-    @Transactional(propagation = Propagation.NEVER)
-    public Widget create(final Widget widget) throws MissingWidgetFieldException {
+    @Timed(TIMER_NAME)
+    @Transactional
+    public Widget create(final long boardId, final Widget widget) throws MissingWidgetFieldException {
 
         // Check required fields
         checkRequiredField(widget.getXCoordinate(), "xCoordiante");
@@ -40,122 +90,548 @@ public class WidgetServiceImpl implements WidgetService {
         checkRequiredField(widget.getWidth(), "width");
         checkRequiredField(widget.getHeight(), "height");
 
-        final Integer zIndex = widget.getZIndex() == null ? findNewZIndex() : widget.getZIndex();
-
         final Widget newWidget = new Widget.Builder(widget.getXCoordinate(), widget.getYCoordinate(), widget.getWidth(),
-                widget.getHeight()).withZIndex(zIndex).build();
+                widget.getHeight()).withBoardId(boardId).build();
 
-        setZIndex(zIndex, newWidget);
+        final ZIndexLocks.Range locked = widget.getZIndex() == null ? zIndexLocks.lockBottom(boardId)
+                : zIndexLocks.lock(boardId, widget.getZIndex(), widget.getZIndex());
+        setZIndex(boardId, locked.getFrom(), newWidget, locked);
 
-        return repository.save(newWidget);
+        newWidget.setVersion(widgetVersions.current());
+        widgetCache.evictListing(boardId);
+        final Widget createdWidget = repository.save(newWidget);
+        widgetTileCache.evict(createdWidget);
+        widgetChangeFeed.publish(WidgetChange.created(createdWidget));
+        return createdWidget;
     }
 
     @Override
-    @Transactional
-    public Widget find(final Long id) throws WidgetNotFoundException {
-        return repository.findById(id).orElseThrow(() -> new WidgetNotFoundException(id));
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public Widget find(final long boardId, final Long id) throws WidgetNotFoundException {
+        final Widget widget = widgetCache.find(id, () -> load(boardId, id));
+        if (widget.getBoardId() != boardId) {
+            throw new WidgetNotFoundException(id);
+        }
+        return widget;
     }
 
     @Override
+    @Timed(TIMER_NAME)
     @Transactional
-    public Widget update(final Long id, final Widget widget) throws WidgetNotFoundException {
-        final Widget widgetToUpdate = find(id);
-
-        // Only update non-null values
-        if (widget.getXCoordinate() != null) {
-            widgetToUpdate.setXCoordinate(widget.getXCoordinate());
-        }
-        if (widget.getYCoordinate() != null) {
-            widgetToUpdate.setYCoordinate(widget.getYCoordinate());
-        }
-        if (widget.getWidth() != null) {
-            widgetToUpdate.setWidth(widget.getWidth());
-        }
-        if (widget.getHeight() != null) {
-            widgetToUpdate.setHeight(widget.getHeight());
-        }
+    public Widget update(final long boardId, final Long id, final Widget widget) throws WidgetNotFoundException {
+        final ZIndexLocks.Range locked = lockWidget(boardId, id, widget.getZIndex());
+        final Widget widgetToUpdate = load(boardId, id);
+        widgetTileCache.evict(widgetToUpdate);
+        updateFields(widgetToUpdate, widget);
 
         if (widget.getZIndex() != null) {
             // Free up z-index if necessary
-            setZIndex(widget.getZIndex(), widgetToUpdate);
+            setZIndex(boardId, widget.getZIndex(), widgetToUpdate, locked);
         }
 
-        return repository.save(widgetToUpdate);
+        widgetToUpdate.setVersion(widgetVersions.current());
+        widgetCache.evict(boardId, List.of(id));
+        final Widget updatedWidget = repository.save(widgetToUpdate);
+        widgetTileCache.evict(updatedWidget);
+        widgetChangeFeed.publish(WidgetChange.updated(updatedWidget));
+        return updatedWidget;
     }
 
     @Override
+    @Timed(TIMER_NAME)
     @Transactional
-    public void delete(final Long id) throws WidgetNotFoundException {
-        final Widget widget = find(id);
+    public void delete(final long boardId, final Long id) throws WidgetNotFoundException {
+        lockWidget(boardId, id, null);
+        final Widget widget = load(boardId, id);
+        widgetCache.evict(boardId, List.of(id));
+        widgetTileCache.evict(widget);
         repository.delete(widget);
+        tombstoneRepository.save(new WidgetTombstone(id, boardId, widgetVersions.current()));
+        widgetChangeFeed.publish(WidgetChange.deleted(widget));
     }
 
     @Override
+    @Timed(TIMER_NAME)
     @Transactional
-    public List<Widget> getAll(final int pageNo, final int pageSize, final String sortBy) {
+    public List<Widget> applyBatch(final long boardId, final List<WidgetOperation> operations)
+            throws MissingWidgetFieldException, WidgetNotFoundException, InvalidBatchOperationException {
+        // Batches may move widgets anywhere, so they lock the whole z-plane
+        zIndexLocks.lockAll(boardId);
+        final long version = widgetVersions.current();
+
+        // Validate every operation and load its widget before changing anything
+        final Widget[] results = new Widget[operations.size()];
+        final Set<Long> changedIds = new HashSet<>();
+        final List<Widget> widgetsToDelete = new ArrayList<>();
+        final Map<Long, Widget> widgetsToUpdate = new LinkedHashMap<>();
+        final List<Widget> widgetsToCreate = new ArrayList<>();
+        final List<Widget> widgetsToCreateAtBottom = new ArrayList<>();
+        final List<ZIndexPlacement> placements = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            final WidgetOperation operation = operations.get(i);
+            checkRequiredField(operation.getType(), "type");
+            if (operation.getType() != WidgetOperation.Type.DELETE) {
+                checkRequiredField(operation.getWidget(), "widget");
+            }
+            if (operation.getType() != WidgetOperation.Type.CREATE) {
+                checkRequiredField(operation.getId(), "id");
+                if (!changedIds.add(operation.getId())) {
+                    throw new InvalidBatchOperationException(i,
+                            "widget " + operation.getId() + " is changed by an earlier operation");
+                }
+            }
+
+            final Widget data = operation.getWidget();
+            switch (operation.getType()) {
+            case CREATE:
+                checkRequiredField(data.getXCoordinate(), "xCoordiante");
+                checkRequiredField(data.getYCoordinate(), "yCoordinate");
+                checkRequiredField(data.getWidth(), "width");
+                checkRequiredField(data.getHeight(), "height");
+                results[i] = new Widget.Builder(data.getXCoordinate(), data.getYCoordinate(), data.getWidth(),
+                        data.getHeight()).withBoardId(boardId).build();
+                results[i].setVersion(version);
+                widgetsToCreate.add(results[i]);
+                if (data.getZIndex() == null) {
+                    widgetsToCreateAtBottom.add(results[i]);
+                } else {
+                    placements.add(new ZIndexPlacement(results[i], data.getZIndex()));
+                }
+                break;
+            case UPDATE:
+                results[i] = load(boardId, operation.getId());
+                widgetTileCache.evict(results[i]);
+                updateFields(results[i], data);
+                results[i].setVersion(version);
+                widgetsToUpdate.put(results[i].getId(), results[i]);
+                if (data.getZIndex() != null && data.getZIndex() != results[i].getZIndex().intValue()) {
+                    placements.add(new ZIndexPlacement(results[i], data.getZIndex()));
+                }
+                break;
+            default:
+                widgetsToDelete.add(load(boardId, operation.getId()));
+                break;
+            }
+        }
+
+        // Readers see the whole batch or none of it, whatever the storage
+        repository.writeAtomically(boardId);
+        widgetsToDelete.forEach(widgetTileCache::evict);
+        repository.deleteAll(widgetsToDelete);
+        widgetsToDelete
+                .forEach(widget -> tombstoneRepository.save(new WidgetTombstone(widget.getId(), boardId, version)));
+        repository.flush();
+
+        // Resolve all z-index conflicts in a single pass, then write each changed
+        // widget once
+        final List<ZIndexPlacement> moves = placeWidgets(boardId, placements, widgetsToUpdate);
+        if (!placements.isEmpty()) {
+            widgetMetrics.recordZIndexChange(moves.size() - placements.size(), 0);
+        }
+        parkWidgets(boardId, moves);
+        final Map<Long, Widget> widgetsToSave = new LinkedHashMap<>(widgetsToUpdate);
+        for (final ZIndexPlacement move : moves) {
+            zIndexBounds.include(boardId, move.zIndex);
+            move.widget.setZIndex(move.zIndex);
+            move.widget.setVersion(version);
+            if (move.widget.getId() != null) {
+                widgetsToSave.put(move.widget.getId(), move.widget);
+            }
+        }
+        final Iterable<Widget> updatedWidgets = repository.saveAll(widgetsToSave.values());
+        changedIds.addAll(widgetsToSave.keySet());
+        widgetCache.evict(boardId, changedIds);
+        updatedWidgets.forEach(widgetTileCache::evict);
+
+        // Widgets without a z-index go below all others, in batch order
+        for (final Widget widget : widgetsToCreateAtBottom) {
+            widget.setZIndex(zIndexBounds.takeBottom(boardId));
+        }
+        final Iterable<Widget> createdWidgets = repository.saveAll(widgetsToCreate);
+        createdWidgets.forEach(widgetTileCache::evict);
+
+        widgetsToDelete.forEach(widget -> widgetChangeFeed.publish(WidgetChange.deleted(widget)));
+        updatedWidgets.forEach(widget -> widgetChangeFeed.publish(WidgetChange.updated(widget)));
+        createdWidgets.forEach(widget -> widgetChangeFeed.publish(WidgetChange.created(widget)));
+        return Arrays.asList(results);
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<Widget> getAll(final long boardId, final int pageNo, final int pageSize, final String sortBy) {
+        widgetMetrics.recordPageDepth(pageNo);
         final Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by(sortBy));
-        final Page<Widget> pagedResult = repository.findAll(paging);
+        final Page<Widget> pagedResult = repository.findAllByBoardId(boardId, paging);
         return pagedResult.hasContent() ? pagedResult.getContent() : new ArrayList<Widget>();
     }
 
     @Override
-    @Transactional
-    public List<Widget> getAll() {
-        return repository.findAll().stream().sorted(Comparator.comparingInt(Widget::getZIndex))
-                .collect(Collectors.toList());
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<Widget> getAllAfter(final long boardId, final Long lastId, final Integer lastZIndex,
+            final int pageSize) {
+        final Integer zIndex = nextZIndex(boardId, lastId, lastZIndex);
+        return zIndex == null ? new ArrayList<Widget>()
+                : repository.findPageFromZIndex(boardId, zIndex, PageRequest.of(0, pageSize));
     }
 
     @Override
-    @Transactional
-    public List<Widget> getWidgetsFilteredByArea(final int xCoordinate, final int yCoordinate, final int width,
-            final int height) {
-        return repository.findAll().stream()
-                .filter(x -> x.getXCoordinate() >= xCoordinate && x.getYCoordinate() >= yCoordinate
-                        && x.getXCoordinate() + x.getWidth() <= xCoordinate + width
-                        && x.getYCoordinate() + x.getHeight() <= yCoordinate + height)
-                .collect(Collectors.toList());
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<WidgetView> getAll(final long boardId, final int pageNo, final int pageSize, final String sortBy,
+            final Set<WidgetField> fields) {
+        widgetMetrics.recordPageDepth(pageNo);
+        return repository.findViewsByBoardId(boardId, fields, PageRequest.of(pageNo, pageSize, Sort.by(sortBy)));
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<WidgetView> getAllAfter(final long boardId, final Long lastId, final Integer lastZIndex,
+            final int pageSize, final Set<WidgetField> fields) {
+        final Integer zIndex = nextZIndex(boardId, lastId, lastZIndex);
+        return zIndex == null ? new ArrayList<WidgetView>()
+                : repository.findViewsFromZIndex(boardId, zIndex, fields, PageRequest.of(0, pageSize));
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<Widget> getAll(final long boardId) {
+        return widgetCache.getAll(boardId, () -> repository.findAllByBoardId(boardId).stream()
+                .sorted(Comparator.comparingInt(Widget::getZIndex)).collect(Collectors.toList()));
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<WidgetView> getAll(final long boardId, final Set<WidgetField> fields) {
+        return repository.findViewsFromZIndex(boardId, Integer.MIN_VALUE, fields, Pageable.unpaged());
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<Widget> getWidgetsFilteredByArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height) {
+        final AtomicLong scanned = new AtomicLong();
+        final List<Widget> widgets = repository.findAllWithinArea(boardId, xCoordinate, yCoordinate, width, height,
+                scanned::set);
+        widgetMetrics.recordAreaQuery(scanned.get(), widgets.size());
+        return widgets;
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<WidgetView> getWidgetsFilteredByArea(final long boardId, final int xCoordinate,
+            final int yCoordinate, final int width, final int height, final Set<WidgetField> fields) {
+        final AtomicLong scanned = new AtomicLong();
+        final List<WidgetView> views = repository.findViewsWithinArea(boardId, xCoordinate, yCoordinate, width,
+                height, fields, scanned::set);
+        widgetMetrics.recordAreaQuery(scanned.get(), views.size());
+        return views;
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<Widget> getWidgetsIntersectingArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final Integer limit) throws InvalidLimitException {
+        return repository.findIntersectingArea(boardId, xCoordinate, yCoordinate, width, height, limit(limit));
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<Widget> getWidgetsContainingArea(final long boardId, final int xCoordinate, final int yCoordinate,
+            final int width, final int height, final Integer limit) throws InvalidLimitException {
+        return repository.findContainingArea(boardId, xCoordinate, yCoordinate, width, height, limit(limit));
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public Widget getWidgetAt(final long boardId, final int xCoordinate, final int yCoordinate)
+            throws WidgetNotFoundException {
+        final List<Widget> widgets = repository.findContainingArea(boardId, xCoordinate, yCoordinate, 0, 0, 1);
+        if (widgets.isEmpty()) {
+            throw new WidgetNotFoundException(xCoordinate, yCoordinate);
+        }
+        return widgets.get(0);
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public WidgetTile getTile(final long boardId, final int tileX, final int tileY) {
+        final long size = widgetTileCache.getTileSize();
+        return widgetTileCache.find(boardId, tileX, tileY, () -> repository
+                .findIntersecting(boardId, tileX * size, tileY * size, tileX * size + size - 1, tileY * size + size - 1,
+                        PageRequest.of(0, Integer.MAX_VALUE))
+                .stream().sorted(Comparator.comparingInt(Widget::getZIndex)).collect(Collectors.toList()));
+    }
+
+    @Override
+    public int getTileSize() {
+        return widgetTileCache.getTileSize();
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public WidgetDelta getDelta(final long boardId, final Long since) throws UnknownVersionException {
+        // Changes above the committed version may still be rolled back or be
+        // followed by lower versions: they are left for the next delta (the whole
+        // board may include some of them, which the next delta repeats)
+        final long version = widgetVersions.committed();
+        if (since == null) {
+            return new WidgetDelta(version, repository.findAllByBoardId(boardId), List.of());
+        }
+        if (since > version) {
+            throw new UnknownVersionException(since, version);
+        }
+        return new WidgetDelta(version, repository.findChangedBetween(boardId, since, version),
+                tombstoneRepository.findDeletedBetween(boardId, since, version));
+    }
+
+    @Override
+    public Runnable subscribeToChanges(final long boardId, final WidgetChangeListener listener) {
+        return widgetChangeFeed.subscribe(boardId, listener);
+    }
+
+    @Override
+    @Timed(TIMER_NAME)
+    public Map<String, CacheStatistics> getCacheStatistics() {
+        final Map<String, CacheStatistics> statistics = new LinkedHashMap<>();
+        statistics.put("widgets", widgetCache.getWidgetStatistics());
+        statistics.put("listing", widgetCache.getListingStatistics());
+        statistics.put("tiles", widgetTileCache.getStatistics());
+        statistics.put("json", widgetJsonCache.getStatistics());
+        return statistics;
     }
 
     /**
-     * Retrieves the lowest available z-index
+     * Loads a widget of a board from the repository, bypassing the cache
      * 
-     * @return  The lowest available z-index
+     * @param boardId The board
+     * @param id      The widget's id
+     * @return The widget
+     * @throws WidgetNotFoundException If the board has no entity with the given
+     *                                 id
      */
-    private int findNewZIndex() {
-        final List<Widget> allWidgets = getAll();
-        return allWidgets.isEmpty() ? 0 : allWidgets.get(0).getZIndex() - 1;
+    private Widget load(final long boardId, final Long id) throws WidgetNotFoundException {
+        return repository.findById(id).filter(widget -> widget.getBoardId() == boardId)
+                .orElseThrow(() -> new WidgetNotFoundException(id));
     }
 
     /**
-     * Sets the z-index of an entity. If the index is taken by another entity it
-     * moves that index by 1 (recursively, as long as necessary)
+     * Finds where the page following a widget starts
      * 
-     * @param zIndex The z-index to use
-     * @param widget The widget to set
+     * @param boardId    The board
+     * @param lastId     The id of the last widget of the previous page (null for
+     *                   the first page)
+     * @param lastZIndex The z-index of that widget, used if it no longer exists
+     * @return The lowest z-index of the page, or null if the widget was the last
+     *         possible one
      */
-    private void setZIndex(final int zIndex, final Widget widget) {
-        final List<Widget> allWidgets = getAll();
-        final Map<Integer, Widget> widgets = allWidgets.stream().collect(Collectors.toMap(Widget::getZIndex, x -> x));
-        // Is it safe to use this index? If not move necessary widgets 1 place in the
-        // z-plane
-        freeZIndex(zIndex, widget, widgets);
+    private Integer nextZIndex(final long boardId, final Long lastId, final Integer lastZIndex) {
+        if (lastId == null) {
+            return Integer.MIN_VALUE;
+        }
+
+        // Continue after the last widget's current z-index, in case it was shifted
+        final Integer currentZIndex = repository.findZIndexById(boardId, lastId);
+        final int lastSeenZIndex = currentZIndex != null ? currentZIndex : lastZIndex;
+        return lastSeenZIndex == Integer.MAX_VALUE ? null : lastSeenZIndex + 1;
     }
 
     /**
-     * Frees up a z-index if it was already taken
+     * Locks the z-index of a stored widget (and the one it moves to), so no other
+     * write moves it until the transaction completes
      * 
-     * @param zIndex  The z-index to check
-     * @param widget  The entity
-     * @param widgets The map of widgets (z-index <-> widget)
+     * @param boardId The board
+     * @param id      The widget's id
+     * @param zIndex  The z-index the widget moves to (null if it does not move)
+     * @return The locked range
+     * @throws WidgetNotFoundException If the board has no entity with the given
+     *                                 id
      */
-    private void freeZIndex(final int zIndex, final Widget widget, final Map<Integer, Widget> widgets) {
-        if (widgets.containsKey(zIndex)) {
-            freeZIndex(zIndex + 1, widgets.get(zIndex), widgets);
+    private ZIndexLocks.Range lockWidget(final long boardId, final Long id, final Integer zIndex)
+            throws WidgetNotFoundException {
+        final Integer current = repository.findZIndexById(boardId, id);
+        if (current == null) {
+            throw new WidgetNotFoundException(id);
+        }
+        ZIndexLocks.Range locked = lockWidgetAt(boardId, current, zIndex);
+
+        // Other writes may move it until it is within the lock: up when a z-index
+        // is freed, down by batches and compactions. Follow it until it is locked
+        for (Integer moved = repository.findZIndexById(boardId, id); moved == null || moved < locked.getFrom()
+                || moved > locked.getTo(); moved = repository.findZIndexById(boardId, id)) {
+            if (moved == null) {
+                throw new WidgetNotFoundException(id);
+            }
+            if (moved > locked.getTo()) {
+                zIndexLocks.extend(locked, moved);
+            } else {
+                // A range is only extended upwards: lock again from where it is now
+                zIndexLocks.release(locked);
+                locked = lockWidgetAt(boardId, moved, zIndex);
+            }
+        }
+        return locked;
+    }
+
+    /**
+     * Locks the z-index of a widget and the one it moves to
+     * 
+     * @param boardId The board
+     * @param current The widget's z-index
+     * @param zIndex  The z-index the widget moves to (null if it does not move)
+     * @return The locked range
+     */
+    private ZIndexLocks.Range lockWidgetAt(final long boardId, final int current, final Integer zIndex) {
+        return zIndexLocks.lock(boardId, zIndex == null ? current : Math.min(current, zIndex),
+                zIndex == null ? current : Math.max(current, zIndex));
+    }
+
+    /**
+     * Sets the z-index of an entity. If the index is taken by another entity, the
+     * contiguous run of taken z-indexes starting at it is moved 1 place up in the
+     * z-plane with a single bulk operation
+     * 
+     * @param boardId The board
+     * @param zIndex  The z-index to use
+     * @param widget  The widget to set
+     * @param locked  The locked range, which includes the z-index (extended up
+     *                to the end of the run)
+     */
+    private void setZIndex(final long boardId, final int zIndex, final Widget widget,
+            final ZIndexLocks.Range locked) {
+        if (widget.getId() != null && widget.getZIndex() != null && widget.getZIndex() == zIndex) {
+            return;
+        }
+
+        // Is it safe to use this index? If not move necessary widgets 1 place in the
+        // z-plane (an index outside the bounds is always free)
+        if (!zIndexBounds.claim(boardId, zIndex) && repository.existsByZIndex(boardId, zIndex)) {
+            int runEnd = repository.findZIndexRunEnd(boardId, zIndex);
+            int extensions = 0;
+            while (runEnd >= locked.getTo()) {
+                // The run goes on above the lock: lock up to the free z-index after it
+                zIndexLocks.extend(locked, Math.incrementExact(runEnd));
+                runEnd = repository.findZIndexRunEnd(boardId, zIndex);
+                extensions++;
+            }
+            zIndexBounds.include(boardId, runEnd + 1);
+            repository.shiftZIndexRange(boardId, zIndex, runEnd, 1, widgetVersions.current());
+            widgetCache.evictZIndexRange(boardId, zIndex, runEnd);
+            widgetTileCache.evictZIndexRange(boardId, zIndex, runEnd);
+            widgetChangeFeed.publish(WidgetChange.shifted(boardId, zIndex, runEnd, 1));
+            widgetMetrics.recordZIndexChange(runEnd - zIndex + 1, extensions);
+        } else {
+            widgetMetrics.recordZIndexChange(0, 0);
         }
 
         // Set new z-index
         widget.setZIndex(zIndex);
-        repository.save(widget);
+    }
+
+    /**
+     * Updates the non-null fields of a widget, except the z-index
+     * 
+     * @param widgetToUpdate The widget to update
+     * @param widget         The object data to update
+     */
+    private static void updateFields(final Widget widgetToUpdate, final Widget widget) {
+        if (widget.getXCoordinate() != null) {
+            widgetToUpdate.setXCoordinate(widget.getXCoordinate());
+        }
+        if (widget.getYCoordinate() != null) {
+            widgetToUpdate.setYCoordinate(widget.getYCoordinate());
+        }
+        if (widget.getWidth() != null) {
+            widgetToUpdate.setWidth(widget.getWidth());
+        }
+        if (widget.getHeight() != null) {
+            widgetToUpdate.setHeight(widget.getHeight());
+        }
+    }
+
+    /**
+     * Assigns the final z-index of the widgets placed by a batch, and of the
+     * existing widgets they push up. Placed widgets take their target z-index
+     * (in batch order when targets are equal) and push the widgets they land on
+     * 1 place up, as a single create would. Only the existing widgets from the
+     * lowest target up to the end of the last push are read, in z-order.
+     * 
+     * @param boardId       The board
+     * @param placements    The widgets placed by the batch with their targets
+     *                      (the final z-index is set on each)
+     * @param loadedWidgets The widgets already loaded by the batch, by id
+     * @return The placed widgets followed by the existing widgets pushed up
+     */
+    private List<ZIndexPlacement> placeWidgets(final long boardId, final List<ZIndexPlacement> placements,
+            final Map<Long, Widget> loadedWidgets) {
+        final List<ZIndexPlacement> moves = new ArrayList<>(placements);
+        if (placements.isEmpty()) {
+            return moves;
+        }
+        placements.sort(Comparator.comparingInt(x -> x.target));
+
+        final Set<Long> placedIds = placements.stream().map(x -> x.widget.getId()).filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        final ZOrderedWidgets existing = new ZOrderedWidgets(boardId, placements.get(0).target, placedIds,
+                loadedWidgets);
+        Widget current = existing.next();
+        int next = 0;
+        long last = Long.MIN_VALUE;
+        while (next < placements.size() || current != null) {
+            if (next < placements.size() && (current == null || placements.get(next).target <= current.getZIndex())) {
+                final ZIndexPlacement placement = placements.get(next++);
+                placement.zIndex = Math.toIntExact(Math.max(placement.target, last + 1));
+                last = placement.zIndex;
+            } else if (current.getZIndex() > last) {
+                if (next == placements.size()) {
+                    break;
+                }
+                last = current.getZIndex();
+                current = existing.next();
+            } else {
+                final ZIndexPlacement push = new ZIndexPlacement(current, current.getZIndex());
+                push.zIndex = Math.toIntExact(++last);
+                moves.add(push);
+                current = existing.next();
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Moves the existing widgets which change z-index above every z-index in use
+     * or assigned, so writing their final z-index never hits a taken one
+     * 
+     * @param boardId The board
+     * @param moves   The widgets with their final z-index
+     */
+    private void parkWidgets(final long boardId, final List<ZIndexPlacement> moves) {
+        final List<Widget> widgets = moves.stream().map(x -> x.widget).filter(x -> x.getId() != null)
+                .collect(Collectors.toList());
+        if (widgets.isEmpty()) {
+            return;
+        }
+        final Integer maxZIndex = repository.findMaxZIndex(boardId);
+        int parking = Math.max(maxZIndex == null ? 0 : maxZIndex,
+                moves.stream().mapToInt(x -> x.zIndex).max().getAsInt());
+        for (final Widget widget : widgets) {
+            widget.setZIndex(Math.incrementExact(parking));
+            parking++;
+        }
+        repository.saveAll(widgets);
+        repository.flush();
     }
 
     /**
@@ -171,4 +647,85 @@ public class WidgetServiceImpl implements WidgetService {
             throw new MissingWidgetFieldException(fieldName);
         }
     }
+
+    /**
+     * Checks a result limit
+     * 
+     * @param limit The requested limit (null for none)
+     * @return The limit to apply
+     * @throws InvalidLimitException If the limit is not positive
+     */
+    private static int limit(final Integer limit) throws InvalidLimitException {
+        if (limit == null) {
+            return Integer.MAX_VALUE;
+        }
+        if (limit < 1) {
+            throw new InvalidLimitException(limit);
+        }
+        return limit;
+    }
+
+    /**
+     * A widget with the z-index requested for it and the one it finally gets
+     */
+    private static final class ZIndexPlacement {
+        private final Widget widget;
+        private final int target;
+        private int zIndex;
+
+        private ZIndexPlacement(final Widget widget, final int target) {
+            this.widget = widget;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Iterates the stored widgets of a board in ascending z-index, reading them
+     * in chunks
+     */
+    private final class ZOrderedWidgets {
+        private static final int CHUNK_SIZE = 500;
+
+        private final long boardId;
+        private final Set<Long> skippedIds;
+        private final Map<Long, Widget> loadedWidgets;
+        private List<Widget> chunk;
+        private int position;
+
+        /**
+         * @param boardId       The board
+         * @param zIndex        The lowest z-index to include
+         * @param skippedIds    The ids of the widgets to leave out
+         * @param loadedWidgets The widgets to return instead of the stored ones, by
+         *                      id
+         */
+        private ZOrderedWidgets(final long boardId, final int zIndex, final Set<Long> skippedIds,
+                final Map<Long, Widget> loadedWidgets) {
+            this.boardId = boardId;
+            this.skippedIds = skippedIds;
+            this.loadedWidgets = loadedWidgets;
+            this.chunk = repository.findPageFromZIndex(boardId, zIndex, PageRequest.of(0, CHUNK_SIZE));
+        }
+
+        /**
+         * @return The next widget, or null if there are no more
+         */
+        private Widget next() {
+            while (true) {
+                if (position == chunk.size()) {
+                    final int lastZIndex = chunk.isEmpty() ? Integer.MAX_VALUE
+                            : chunk.get(chunk.size() - 1).getZIndex();
+                    if (chunk.size() < CHUNK_SIZE || lastZIndex == Integer.MAX_VALUE) {
+                        return null;
+                    }
+                    chunk = repository.findPageFromZIndex(boardId, lastZIndex + 1, PageRequest.of(0, CHUNK_SIZE));
+                    position = 0;
+                }
+                final Widget widget = chunk.get(position++);
+                if (!skippedIds.contains(widget.getId())) {
+                    return loadedWidgets.getOrDefault(widget.getId(), widget);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,285 @@
+package com.miro.assignment.service.impl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.miro.assignment.domain.CacheStatistics;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetTile;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * This class provides a read-through cache of the tiles of the plane of each
+ * board, each cached as its serialized response with an entity tag.
+ * <p>
+ * The plane is divided into square tiles of a fixed size: tile (x, y) covers
+ * the coordinates from x * size to (x + 1) * size - 1 (and the same for y),
+ * and holds the widgets intersecting it, edges included. A write evicts, once
+ * its transaction completes, the tiles its widgets overlapped before and after
+ * the change, and the tiles holding a widget within a shifted z-index range
+ * (found by the z-indexes of the widgets of each tile). A tile loaded while an
+ * eviction happens is returned but not cached, as in {@link WidgetCache}.
+ * <p>
+ * The statistics of the cache are also published as metrics (`cache.*`,
+ * tagged `widget-tiles`).
+ */
+@Component
+public class WidgetTileCache implements MeterBinder {
+
+    private final int tileSize;
+    private final ObjectWriter writer;
+    private final Cache<Key, Entry> tiles;
+    private final CachedZIndexes<Key> zIndexes = new CachedZIndexes<>();
+    private final ReadWriteLock evictionLock = new ReentrantReadWriteLock();
+    private volatile long evictions;
+
+    /**
+     * Creates the cache
+     *
+     * @param tileSize         The width and height of a tile
+     * @param maximumSize      The maximum number of cached tiles (0 disables the
+     *                         cache)
+     * @param expireAfterWrite The time a cached tile is kept
+     * @param objectMapper     Serializes the tiles
+     */
+    public WidgetTileCache(final @Value("${widget.tiles.size:1024}") int tileSize,
+            final @Value("${widget.tiles.maximum-size:10000}") long maximumSize,
+            final @Value("${widget.tiles.expire-after-write:300s}") Duration expireAfterWrite,
+            final ObjectMapper objectMapper) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("The tile size must be at least 1: " + tileSize);
+        }
+        this.tileSize = tileSize;
+        writer = objectMapper.writerFor(new TypeReference<List<Widget>>() {
+        });
+        tiles = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterWrite).recordStats()
+                .writer(new CacheWriter<Key, Entry>() {
+                    @Override
+                    public void write(final Key key, final Entry entry) {
+                        // Indexed by find(), which knows the tile replaced
+                    }
+
+                    @Override
+                    public void delete(final Key key, final Entry entry, final RemovalCause cause) {
+                        zIndexes.unindex(key.boardId, entry.zIndexes, key, entry);
+                    }
+                }).build();
+    }
+
+    /**
+     * @return The width and height of a tile
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Finds a tile, loading, serializing and caching it on a miss
+     *
+     * @param boardId The board
+     * @param tileX   The tile's column
+     * @param tileY   The tile's row
+     * @param loader  Loads the widgets intersecting the tile from the
+     *                repository, in ascending z-index
+     * @return The tile
+     */
+    public WidgetTile find(final long boardId, final int tileX, final int tileY,
+            final Supplier<List<Widget>> loader) {
+        final Key key = new Key(boardId, tileX, tileY);
+        final Entry cached = tiles.getIfPresent(key);
+        if (cached != null) {
+            return cached.tile;
+        }
+        final long loadedAfter = evictions;
+        final Entry entry = serialize(loader.get());
+        evictionLock.readLock().lock();
+        try {
+            if (evictions == loadedAfter) {
+                tiles.asMap().compute(key, (tile, replaced) -> {
+                    if (replaced != null) {
+                        zIndexes.unindex(boardId, replaced.zIndexes, key, replaced);
+                    }
+                    zIndexes.index(boardId, entry.zIndexes, key, entry);
+                    return entry;
+                });
+            }
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+        return entry.tile;
+    }
+
+    /**
+     * Evicts the tiles a widget overlaps (as it is now) once the current
+     * transaction completes
+     *
+     * @param widget The widget changed
+     */
+    public void evict(final Widget widget) {
+        final long boardId = widget.getBoardId();
+        final int fromX = column(widget.getXCoordinate());
+        final int toX = column((long) widget.getXCoordinate() + widget.getWidth());
+        final int fromY = column(widget.getYCoordinate());
+        final int toY = column((long) widget.getYCoordinate() + widget.getHeight());
+        evictOnCompletion(() -> {
+            final long overlapped = ((long) toX - fromX + 1) * ((long) toY - fromY + 1);
+            if (overlapped > tiles.estimatedSize()) {
+                // A large widget: cheaper to check the cached tiles
+                tiles.asMap().keySet().removeIf(key -> key.boardId == boardId && key.tileX >= fromX
+                        && key.tileX <= toX && key.tileY >= fromY && key.tileY <= toY);
+                return;
+            }
+            for (long x = fromX; x <= toX; x++) {
+                for (long y = fromY; y <= toY; y++) {
+                    tiles.invalidate(new Key(boardId, (int) x, (int) y));
+                }
+            }
+        });
+    }
+
+    /**
+     * Evicts the tiles of a board holding a widget within a shifted z-index
+     * range (as they were cached) once the current transaction completes
+     *
+     * @param boardId The board
+     * @param from    The first z-index of the range (inclusive)
+     * @param to      The last z-index of the range (inclusive)
+     */
+    public void evictZIndexRange(final long boardId, final int from, final int to) {
+        evictOnCompletion(() -> tiles.invalidateAll(zIndexes.findBetween(boardId, from, to)));
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        // Same tag keys as the caches of the cache manager (Prometheus requires it)
+        CaffeineCacheMetrics.monitor(registry, tiles, "widget-tiles", "cacheManager", "widgetCache", "name",
+                "widget-tiles");
+    }
+
+    /**
+     * @return The statistics of the tile cache
+     */
+    public CacheStatistics getStatistics() {
+        final CacheStats stats = tiles.stats();
+        return new CacheStatistics(stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount(),
+                tiles.estimatedSize());
+    }
+
+    /**
+     * Runs an eviction once the current transaction commits or rolls back, or
+     * right away without a transaction
+     *
+     * @param eviction The eviction
+     */
+    private void evictOnCompletion(final Runnable eviction) {
+        final Runnable evict = () -> {
+            evictionLock.writeLock().lock();
+            try {
+                evictions++;
+                eviction.run();
+            } finally {
+                evictionLock.writeLock().unlock();
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict.run();
+            return;
+        }
+        // Committed or not, tiles may have been loaded from uncommitted changes
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(final int status) {
+                evict.run();
+            }
+        });
+    }
+
+    /**
+     * Serializes the widgets of a tile
+     *
+     * @param widgets The widgets, in ascending z-index
+     * @return The cache entry
+     */
+    private Entry serialize(final List<Widget> widgets) {
+        final byte[] content;
+        try {
+            content = writer.writeValueAsBytes(widgets);
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize a tile", e);
+        }
+        final int[] zIndexes = widgets.stream().mapToInt(Widget::getZIndex).toArray();
+        return new Entry(new WidgetTile(content, "\"" + DigestUtils.md5DigestAsHex(content) + "\""), zIndexes);
+    }
+
+    /**
+     * @param coordinate A coordinate
+     * @return The column (or row) of the tiles covering it (the last one past
+     *         the last tile which can be requested)
+     */
+    private int column(final long coordinate) {
+        return (int) Math.min(Math.floorDiv(coordinate, tileSize), Integer.MAX_VALUE);
+    }
+
+    /**
+     * The key of a cached tile
+     */
+    private static final class Key {
+        private final long boardId;
+        private final int tileX;
+        private final int tileY;
+
+        private Key(final long boardId, final int tileX, final int tileY) {
+            this.boardId = boardId;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return boardId == key.boardId && tileX == key.tileX && tileY == key.tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(boardId) * 31 + tileX) * 31 + tileY;
+        }
+    }
+
+    /**
+     * A cached tile with the z-indexes of its widgets
+     */
+    private static final class Entry {
+        private final WidgetTile tile;
+        private final int[] zIndexes;
+
+        private Entry(final WidgetTile tile, final int[] zIndexes) {
+            this.tile = tile;
+            this.zIndexes = zIndexes;
+        }
+    }
+}
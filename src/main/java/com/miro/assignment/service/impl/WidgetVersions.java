@@ -0,0 +1,87 @@
+package com.miro.assignment.service.impl;
+
+import java.util.TreeSet;
+
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.repository.WidgetTombstoneRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class numbers the versions of the board: every write transaction gets
+ * the next version, which it stores on each widget (or tombstone) it writes.
+ * <p>
+ * Versions are handed out in start order but committed in any order, so the
+ * committed version is the one below the lowest version still in progress:
+ * every change up to it is visible, and none above it is missed by a later
+ * delta. A version taken once the z-index locks are held is above the version
+ * of every earlier write to the same widgets.
+ */
+@Component
+public class WidgetVersions {
+
+    @Autowired
+    private WidgetRepository repository;
+
+    @Autowired
+    private WidgetTombstoneRepository tombstoneRepository;
+
+    private final TreeSet<Long> inProgress = new TreeSet<>();
+    private Long last;
+
+    /**
+     * Returns the version of the current transaction, taking the next one on the
+     * first call
+     *
+     * @return The version
+     */
+    public long current() {
+        final Long bound = (Long) TransactionSynchronizationManager.getResource(this);
+        if (bound != null) {
+            return bound;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Versions are only taken within a transaction");
+        }
+
+        final long version;
+        synchronized (this) {
+            version = last() + 1;
+            last = version;
+            inProgress.add(version);
+        }
+        TransactionSynchronizationManager.bindResource(this, version);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(final int status) {
+                TransactionSynchronizationManager.unbindResource(WidgetVersions.this);
+                synchronized (WidgetVersions.this) {
+                    inProgress.remove(version);
+                }
+            }
+        });
+        return version;
+    }
+
+    /**
+     * @return The highest version below every version still in progress
+     */
+    public synchronized long committed() {
+        return inProgress.isEmpty() ? last() : inProgress.first() - 1;
+    }
+
+    /**
+     * @return The last version taken, read from the storage the first time
+     */
+    private long last() {
+        if (last == null) {
+            final Long widgets = repository.findMaxVersion();
+            final Long tombstones = tombstoneRepository.findMaxVersion();
+            last = Math.max(widgets == null ? 0 : widgets, tombstones == null ? 0 : tombstones);
+        }
+        return last;
+    }
+}
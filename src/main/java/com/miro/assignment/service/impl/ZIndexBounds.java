@@ -0,0 +1,132 @@
+package com.miro.assignment.service.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.miro.assignment.repository.WidgetRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class keeps the lowest and highest z-index in use on each board, so a
+ * free z-index at either end of a z-plane is found in constant time, without
+ * reading the board.
+ * <p>
+ * A z-index is included before the widget using it is written and deletes do
+ * not shrink the bounds, so any z-index outside them is free, even while other
+ * writes are not committed yet. The bounds of a board are read from the
+ * repository on first use, and again after a compaction. All methods are
+ * atomic, and only the calls for the same board wait for each other.
+ */
+@Component
+public class ZIndexBounds {
+
+    @Autowired
+    private WidgetRepository repository;
+
+    private final ConcurrentHashMap<Long, Bounds> boards = new ConcurrentHashMap<>();
+
+    /**
+     * Takes the z-index below all others (0 on an empty board)
+     * 
+     * @param boardId The board
+     * @return The z-index taken
+     */
+    public int takeBottom(final long boardId) {
+        return bounds(boardId).takeBottom();
+    }
+
+    /**
+     * Includes a z-index, telling whether it was outside the bounds
+     * 
+     * @param boardId The board
+     * @param zIndex  The z-index to include
+     * @return True if the z-index was outside the bounds, so it is free
+     */
+    public boolean claim(final long boardId, final int zIndex) {
+        return bounds(boardId).claim(zIndex);
+    }
+
+    /**
+     * Includes a z-index in the bounds
+     * 
+     * @param boardId The board
+     * @param zIndex  The z-index to include
+     */
+    public void include(final long boardId, final int zIndex) {
+        bounds(boardId).include(zIndex);
+    }
+
+    /**
+     * Reads the bounds of a board from the repository again once the current
+     * transaction commits, so they shrink to the z-indexes in use (e.g. after a
+     * compaction). The transaction must hold the whole z-plane of the board, so
+     * no other write has included a z-index it has not stored yet.
+     *
+     * @param boardId The board
+     */
+    public void reloadOnCommit(final long boardId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                boards.remove(boardId);
+            }
+        });
+    }
+
+    private Bounds bounds(final long boardId) {
+        return boards.computeIfAbsent(boardId, Bounds::new);
+    }
+
+    /**
+     * The bounds of a board
+     */
+    private final class Bounds {
+        private final long boardId;
+        private boolean loaded;
+        private boolean empty;
+        private int min;
+        private int max;
+
+        private Bounds(final long boardId) {
+            this.boardId = boardId;
+        }
+
+        private synchronized int takeBottom() {
+            load();
+            final int zIndex = empty ? 0 : Math.decrementExact(min);
+            include(zIndex);
+            return zIndex;
+        }
+
+        private synchronized boolean claim(final int zIndex) {
+            load();
+            final boolean outside = empty || zIndex < min || zIndex > max;
+            include(zIndex);
+            return outside;
+        }
+
+        private synchronized void include(final int zIndex) {
+            load();
+            min = empty ? zIndex : Math.min(min, zIndex);
+            max = empty ? zIndex : Math.max(max, zIndex);
+            empty = false;
+        }
+
+        /**
+         * Reads the bounds from the repository the first time they are needed
+         */
+        private void load() {
+            if (!loaded) {
+                final Integer minZIndex = repository.findMinZIndex(boardId);
+                final Integer maxZIndex = repository.findMaxZIndex(boardId);
+                empty = minZIndex == null;
+                min = empty ? 0 : minZIndex;
+                max = empty ? 0 : maxZIndex;
+                loaded = true;
+            }
+        }
+    }
+}
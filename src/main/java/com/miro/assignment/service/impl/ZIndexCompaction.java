@@ -0,0 +1,384 @@
+package com.miro.assignment.service.impl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetChange;
+import com.miro.assignment.repository.WidgetRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * This class compacts the z-planes of the boards in the background, enabled
+ * with `widget.compaction.enabled=true`. Creates without a z-index go below
+ * the lowest widget and shifts push widgets up, so over time the z-indexes of
+ * a board spread out with gaps (making shifted runs longer) and drift towards
+ * the ends of the integer range.
+ * <p>
+ * Every `widget.compaction.interval` each board is checked, and compacted when
+ * its z-index span is more than `widget.compaction.max-sparsity` times its
+ * number of widgets, or when its farthest z-index is beyond
+ * `widget.compaction.max-drift` of the integer range away from 0. A compaction
+ * renumbers the widgets into consecutive z-indexes in the same order, moving
+ * them towards the end of the board closest to 0: that end keeps its z-index
+ * if at least half of the widgets fit between it and 0, otherwise the widgets
+ * are centered on 0.
+ * <p>
+ * Widgets are renumbered in chunks of `widget.compaction.chunk-size`, starting
+ * from that end, each chunk in its own transaction which only locks the
+ * z-index range it changes: writes elsewhere on the board go on between and
+ * during chunks, and reads never wait. A widget never moves past the one
+ * before it, so each run of consecutive z-indexes of a chunk moves with a
+ * single bulk shift into free z-indexes, and the order is kept whatever the
+ * writes between chunks. Shifts take a board version, evict the caches and are
+ * published to the change feed like any other (with a negative offset when
+ * moving down). Finally, the whole z-plane of the board is locked for a moment
+ * so its z-index bounds shrink to the compacted range.
+ * <p>
+ * Compaction times are published as `widget.zindex.compaction`, and the
+ * widgets moved by each compaction as `widget.zindex.compacted`.
+ */
+@Component
+@ConditionalOnProperty(name = "widget.compaction.enabled", havingValue = "true")
+public class ZIndexCompaction {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZIndexCompaction.class);
+
+    @Autowired
+    private WidgetRepository repository;
+
+    @Autowired
+    private ZIndexBounds zIndexBounds;
+
+    @Autowired
+    private ZIndexLocks zIndexLocks;
+
+    @Autowired
+    private WidgetVersions widgetVersions;
+
+    @Autowired
+    private WidgetCache widgetCache;
+
+    @Autowired
+    private WidgetTileCache widgetTileCache;
+
+    @Autowired
+    private WidgetChangeFeed widgetChangeFeed;
+
+    private final TransactionTemplate transactionTemplate;
+    private final Duration interval;
+    private final int chunkSize;
+    private final double maxSparsity;
+    private final double maxDrift;
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor(new CustomizableThreadFactory("widget-compaction-"));
+    private final Timer compactionTimer;
+    private final DistributionSummary compactedWidgets;
+
+    /**
+     * Creates the compaction
+     *
+     * @param transactionManager The transaction manager of the storage
+     * @param registry           The registry to register the metrics in
+     * @param interval           The time between the end of a check of the
+     *                           boards and the start of the next one
+     * @param chunkSize          The maximum number of widgets renumbered in a
+     *                           transaction
+     * @param maxSparsity        The z-index span over the number of widgets
+     *                           from which a board is compacted
+     * @param maxDrift           The distance of the farthest z-index from 0, as
+     *                           a fraction of the integer range, from which a
+     *                           board is compacted
+     */
+    public ZIndexCompaction(final PlatformTransactionManager transactionManager, final MeterRegistry registry,
+            final @Value("${widget.compaction.interval:1m}") Duration interval,
+            final @Value("${widget.compaction.chunk-size:500}") int chunkSize,
+            final @Value("${widget.compaction.max-sparsity:2}") double maxSparsity,
+            final @Value("${widget.compaction.max-drift:0.5}") double maxDrift) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least 1: " + chunkSize);
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.interval = interval;
+        this.chunkSize = chunkSize;
+        this.maxSparsity = maxSparsity;
+        this.maxDrift = maxDrift;
+
+        compactionTimer = Timer.builder("widget.zindex.compaction").description("Time to compact a z-plane")
+                .register(registry);
+        compactedWidgets = DistributionSummary.builder("widget.zindex.compacted")
+                .description("Widgets moved by a z-plane compaction").baseUnit("widgets").register(registry);
+    }
+
+    /**
+     * Schedules the checks of the boards (the first one after an interval, once
+     * the storage is seeded)
+     */
+    @PostConstruct
+    public void start() {
+        executor.scheduleWithFixedDelay(this::compactBoardsQuietly, interval.toNanos(), interval.toNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the checks, waiting for a compaction in progress
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Compacts every board beyond the sparsity or drift thresholds
+     *
+     * @return The number of widgets moved
+     */
+    public long compactBoards() {
+        long moved = 0;
+        for (final Long boardId : repository.findBoardIds()) {
+            final long count = repository.countByBoardId(boardId);
+            final Integer min = repository.findMinZIndex(boardId);
+            final Integer max = repository.findMaxZIndex(boardId);
+            if (count > 0 && min != null && max != null && needsCompaction(count, min, max)) {
+                moved += compact(boardId);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Compacts the z-plane of a board, whatever its sparsity and drift
+     *
+     * @param boardId The board
+     * @return The number of widgets moved
+     */
+    public long compact(final long boardId) {
+        final long start = System.nanoTime();
+        final long count = repository.countByBoardId(boardId);
+        final Integer min = repository.findMinZIndex(boardId);
+        final Integer max = repository.findMaxZIndex(boardId);
+        if (count == 0 || min == null || max == null) {
+            return 0;
+        }
+
+        // Every widget moves towards the end closest to 0, which stays or moves
+        // beyond it
+        final long moved;
+        if (Math.abs((long) min) < Math.abs((long) max)) {
+            moved = compactDown(boardId, (int) Math.min(min, -(count / 2)), count);
+        } else {
+            moved = compactUp(boardId, (int) Math.max(max, count - 1 - count / 2), count);
+        }
+
+        // No write holds a z-index of the board while its whole z-plane is locked
+        transactionTemplate.execute(status -> {
+            zIndexLocks.lockAll(boardId);
+            zIndexBounds.reloadOnCommit(boardId);
+            return null;
+        });
+
+        compactionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        compactedWidgets.record(moved);
+        LOGGER.info("Compacted the z-plane of board {}: {} of {} widgets moved", boardId, moved, count);
+        return moved;
+    }
+
+    /**
+     * Checks whether a board is beyond the sparsity or drift thresholds
+     *
+     * @param count The number of widgets of the board
+     * @param min   The lowest z-index of the board
+     * @param max   The highest z-index of the board
+     * @return True if the board should be compacted
+     */
+    private boolean needsCompaction(final long count, final int min, final int max) {
+        final double sparsity = ((long) max - min + 1) / (double) count;
+        final double drift = Math.max(Math.abs((long) min), Math.abs((long) max)) / (double) Integer.MAX_VALUE;
+        return sparsity > maxSparsity || drift > maxDrift;
+    }
+
+    /**
+     * Renumbers the widgets of a board upwards from a bottom z-index, in chunks
+     * of ascending z-index
+     *
+     * @param boardId The board
+     * @param bottom  The z-index of the lowest widget once compacted (at most
+     *                the lowest z-index of the board)
+     * @param count   The number of widgets to renumber at most (widgets created
+     *                meanwhile may be left for the next compaction)
+     * @return The number of widgets moved
+     */
+    private long compactDown(final long boardId, final int bottom, final long count) {
+        long visited = 0;
+        long moved = 0;
+        int next = bottom;
+        while (visited < count) {
+            final List<Widget> ahead = repository.findPageFromZIndex(boardId, next, PageRequest.of(0, chunkSize));
+            if (ahead.isEmpty()) {
+                break;
+            }
+            final int from = next;
+            final int to = ahead.get(ahead.size() - 1).getZIndex();
+            final Chunk chunk = transactionTemplate.execute(status -> {
+                zIndexLocks.lock(boardId, from, to);
+                zIndexBounds.include(boardId, from);
+                // Re-read within the lock: every widget from the first target up to
+                // the last one read is in the chunk
+                final List<Widget> widgets = repository.findPageFromZIndex(boardId, from,
+                        PageRequest.of(0, chunkSize));
+                final Chunk result = new Chunk(from);
+                int i = 0;
+                while (i < widgets.size() && widgets.get(i).getZIndex() <= to) {
+                    final int runStart = widgets.get(i).getZIndex();
+                    int runEnd = runStart;
+                    for (i++; i < widgets.size() && widgets.get(i).getZIndex() == runEnd + 1; i++) {
+                        runEnd++;
+                    }
+                    result.move(boardId, runStart, runEnd, (long) result.next - runStart);
+                    result.next += runEnd - runStart + 1;
+                }
+                return result;
+            });
+            if (chunk.visited == 0) {
+                break;
+            }
+            visited += chunk.visited;
+            moved += chunk.moved;
+            next = chunk.next;
+        }
+        return moved;
+    }
+
+    /**
+     * Renumbers the widgets of a board downwards from a top z-index, in chunks
+     * of descending z-index
+     *
+     * @param boardId The board
+     * @param top     The z-index of the highest widget once compacted (at least
+     *                the highest z-index of the board)
+     * @param count   The number of widgets to renumber at most (widgets created
+     *                meanwhile may be left for the next compaction)
+     * @return The number of widgets moved
+     */
+    private long compactUp(final long boardId, final int top, final long count) {
+        long visited = 0;
+        long moved = 0;
+        int next = top;
+        while (visited < count) {
+            final List<Widget> ahead = repository.findPageToZIndex(boardId, next, PageRequest.of(0, chunkSize));
+            if (ahead.isEmpty()) {
+                break;
+            }
+            final int from = ahead.get(ahead.size() - 1).getZIndex();
+            final int to = next;
+            final Chunk chunk = transactionTemplate.execute(status -> {
+                zIndexLocks.lock(boardId, from, to);
+                zIndexBounds.include(boardId, to);
+                // Re-read within the lock: every widget from the first target down to
+                // the last one read is in the chunk
+                final List<Widget> widgets = repository.findPageToZIndex(boardId, to, PageRequest.of(0, chunkSize));
+                final Chunk result = new Chunk(to);
+                int i = 0;
+                while (i < widgets.size() && widgets.get(i).getZIndex() >= from) {
+                    final int runEnd = widgets.get(i).getZIndex();
+                    int runStart = runEnd;
+                    for (i++; i < widgets.size() && widgets.get(i).getZIndex() == runStart - 1; i++) {
+                        runStart--;
+                    }
+                    result.move(boardId, runStart, runEnd, (long) result.next - runEnd);
+                    result.next -= runEnd - runStart + 1;
+                }
+                return result;
+            });
+            if (chunk.visited == 0) {
+                break;
+            }
+            visited += chunk.visited;
+            moved += chunk.moved;
+            next = chunk.next;
+        }
+        return moved;
+    }
+
+    /**
+     * Runs a check of the boards, logging its failure (it is retried by the
+     * next one)
+     */
+    private void compactBoardsQuietly() {
+        try {
+            compactBoards();
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Z-index compaction failed, retrying later", e);
+        }
+    }
+
+    /**
+     * The progress of a chunk
+     */
+    private final class Chunk {
+        private int next;
+        private int visited;
+        private int moved;
+
+        /**
+         * @param next The z-index of the next widget renumbered
+         */
+        private Chunk(final int next) {
+            this.next = next;
+        }
+
+        /**
+         * Moves a run of consecutive z-indexes within the current transaction. An
+         * offset beyond the int range (across the z-axis) is applied in steps, each
+         * landing in the free z-indexes between the run and its target.
+         *
+         * @param boardId  The board
+         * @param runStart The first z-index of the run (inclusive)
+         * @param runEnd   The last z-index of the run (inclusive)
+         * @param offset   The offset to add to each z-index
+         */
+        private void move(final long boardId, final int runStart, final int runEnd, final long offset) {
+            final int length = runEnd - runStart + 1;
+            visited += length;
+            if (offset == 0) {
+                return;
+            }
+            int start = runStart;
+            int end = runEnd;
+            for (long remaining = offset; remaining != 0;) {
+                final int step = (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, remaining));
+                repository.shiftZIndexRange(boardId, start, end, step, widgetVersions.current());
+                widgetCache.evictZIndexRange(boardId, start, end);
+                widgetTileCache.evictZIndexRange(boardId, start, end);
+                widgetChangeFeed.publish(WidgetChange.shifted(boardId, start, end, step));
+                start += step;
+                end += step;
+                remaining -= step;
+            }
+            moved += length;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.miro.assignment.service.impl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class provides locks over ranges of the z-plane of each board, so only
+ * writes to the same board whose z-index ranges overlap wait for each other.
+ * <p>
+ * A lock is held until the current transaction completes, or until released
+ * early. Each transaction holds a single range at a time, which it may only
+ * extend upwards: to lock below it (e.g. a widget moved down by a batch or a
+ * compaction), the range is released and another one locked. A write then
+ * only waits for ranges starting above its own, or while holding none, so
+ * waits never form a cycle.
+ */
+@Component
+public class ZIndexLocks {
+
+    @Autowired
+    private ZIndexBounds zIndexBounds;
+
+    private final ConcurrentHashMap<Long, BoardLocks> boards = new ConcurrentHashMap<>();
+
+    /**
+     * Locks a range of z-indexes, waiting for the overlapping ranges to be
+     * released
+     * 
+     * @param boardId The board
+     * @param from    The first z-index of the range (inclusive)
+     * @param to      The last z-index of the range (inclusive)
+     * @return The locked range
+     */
+    public Range lock(final long boardId, final int from, final int to) {
+        return board(boardId).lock(from, to);
+    }
+
+    /**
+     * Takes the z-index below all others and locks it
+     * 
+     * @param boardId The board
+     * @return The locked range (of the z-index taken)
+     */
+    public Range lockBottom(final long boardId) {
+        final BoardLocks board = board(boardId);
+        board.lock.lock();
+        try {
+            // A z-index taken is only used once locked: one taken while its range is
+            // held by another write (e.g. a compaction resetting the bounds) is left
+            while (true) {
+                final int zIndex = zIndexBounds.takeBottom(boardId);
+                if (!board.overlaps(zIndex, zIndex)) {
+                    return board.lock(zIndex, zIndex);
+                }
+                board.released.awaitUninterruptibly();
+            }
+        } finally {
+            board.lock.unlock();
+        }
+    }
+
+    /**
+     * Locks the whole z-plane of a board
+     * 
+     * @param boardId The board
+     * @return The locked range
+     */
+    public Range lockAll(final long boardId) {
+        return lock(boardId, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Extends a locked range upwards, waiting for the overlapping ranges to be
+     * released
+     * 
+     * @param range The locked range
+     * @param to    The new last z-index of the range (ignored if already
+     *              included)
+     */
+    public void extend(final Range range, final int to) {
+        range.board.extend(range, to);
+    }
+
+    /**
+     * Releases a locked range before the current transaction completes, so
+     * another range can be locked instead. Nothing must have been written
+     * under the range yet.
+     * 
+     * @param range The locked range
+     */
+    public void release(final Range range) {
+        range.board.release(range);
+    }
+
+    private BoardLocks board(final long boardId) {
+        return boards.computeIfAbsent(boardId, id -> new BoardLocks());
+    }
+
+    /**
+     * The locked ranges of a board
+     */
+    private static final class BoardLocks {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        private final TreeMap<Integer, Range> held = new TreeMap<>();
+
+        private Range lock(final int from, final int to) {
+            lock.lock();
+            try {
+                while (overlaps(from, to)) {
+                    released.awaitUninterruptibly();
+                }
+                final Range range = new Range(this, from, to);
+                held.put(from, range);
+                releaseOnCompletion(range);
+                return range;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void extend(final Range range, final int to) {
+            lock.lock();
+            try {
+                while (to > range.to && overlaps(range.to + 1, to)) {
+                    released.awaitUninterruptibly();
+                }
+                range.to = Math.max(range.to, to);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Checks whether a range overlaps any locked range (the locked ranges do
+         * not overlap each other, so only the one starting last before the range's
+         * end can)
+         * 
+         * @param from The first z-index of the range (inclusive)
+         * @param to   The last z-index of the range (inclusive)
+         * @return True if the range overlaps a locked range
+         */
+        private boolean overlaps(final int from, final int to) {
+            final Map.Entry<Integer, Range> before = held.floorEntry(to);
+            return before != null && before.getValue().to >= from;
+        }
+
+        /**
+         * Releases a range once the current transaction completes
+         * 
+         * @param range The locked range
+         */
+        private void releaseOnCompletion(final Range range) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                held.remove(range.from, range);
+                throw new IllegalStateException("z-index locks can only be taken within a transaction");
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(final int status) {
+                    release(range);
+                }
+            });
+        }
+
+        /**
+         * Releases a range (if still held)
+         * 
+         * @param range The locked range
+         */
+        private void release(final Range range) {
+            lock.lock();
+            try {
+                held.remove(range.from, range);
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A locked range of z-indexes
+     */
+    public static final class Range {
+        private final BoardLocks board;
+        private final int from;
+        private int to;
+
+        private Range(final BoardLocks board, final int from, final int to) {
+            this.board = board;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @return The first z-index of the range (inclusive)
+         */
+        public int getFrom() {
+            return from;
+        }
+
+        /**
+         * @return The last z-index of the range (inclusive)
+         */
+        public int getTo() {
+            return to;
+        }
+    }
+}
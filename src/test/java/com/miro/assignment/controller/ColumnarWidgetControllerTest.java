@@ -0,0 +1,11 @@
+package com.miro.assignment.controller;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * This class runs the integration tests for the Widget REST API against the
+ * columnar in-memory storage
+ */
+@TestPropertySource(properties = "widget.storage=columnar")
+public class ColumnarWidgetControllerTest extends WidgetControllerTest {
+}
@@ -0,0 +1,11 @@
+package com.miro.assignment.controller;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * This class runs the integration tests for the Widget REST API against the
+ * in-memory storage
+ */
+@TestPropertySource(properties = "widget.storage=memory")
+public class InMemoryWidgetControllerTest extends WidgetControllerTest {
+}
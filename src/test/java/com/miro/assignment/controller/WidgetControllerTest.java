@@ -1,21 +1,38 @@
 package com.miro.assignment.controller;
 
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miro.assignment.utils.Utils;
 import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetOperation;
 import com.miro.assignment.repository.WidgetRepository;
 
 import org.junit.jupiter.api.Test;
@@ -27,6 +44,9 @@ import org.springframework.context.annotation.PropertySource;
 
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.jayway.jsonpath.JsonPath;
 
 /**
  * This class provided integration tests for the Widget REST API
@@ -52,7 +72,7 @@ public class WidgetControllerTest {
     @Test
     void getAllWidgets_OK() throws Exception {
         // Count widgets in repo
-        final int count = repository.findAll().size();
+        final int count = widgets().size();
 
         mockMvc.perform(get(apiBasePath + "/")
                 .contentType("application/json"))
@@ -60,6 +80,184 @@ public class WidgetControllerTest {
                 .andExpect(jsonPath("$", hasSize(count)));
     }
 
+    /**
+     * Test listing all Widgets with only some of their fields
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getAllWidgets_OK_fields() throws Exception {
+        final List<Integer> zIndexes = widgets().stream().map(Widget::getZIndex).sorted()
+                .collect(Collectors.toList());
+
+        final MvcResult result = mockMvc.perform(get(apiBasePath + "/")
+                .param("fields", "id,zIndex,width"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", notNullValue()))
+                .andExpect(jsonPath("$[0].width", notNullValue()))
+                .andExpect(jsonPath("$[0].xcoordinate").doesNotExist())
+                .andExpect(jsonPath("$[0].lastModified").doesNotExist())
+                .andReturn();
+        assertThat(JsonPath.read(result.getResponse().getContentAsString(), "$[*].zindex"), is(zIndexes));
+    }
+
+    /**
+     * Test listing all Widgets with an unknown field
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getAllWidgets_NOK_unknownField() throws Exception {
+        mockMvc.perform(get(apiBasePath + "/")
+                .param("fields", "id,color"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Test streaming all Widgets as newline delimited JSON
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void streamAllWidgets_OK() throws Exception {
+        final List<Integer> zIndexes = widgets().stream().map(Widget::getZIndex).sorted()
+                .collect(Collectors.toList());
+
+        final MvcResult result = mockMvc.perform(get(apiBasePath + "/")
+                .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        final String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        final List<Integer> streamedZIndexes = new ArrayList<>();
+        for (final String line : lines) {
+            streamedZIndexes.add(JsonPath.read(line, "$.zindex"));
+        }
+        assertThat(streamedZIndexes, is(zIndexes));
+    }
+
+    /**
+     * Test listing all Widgets with cursor paging
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getAllWidgetsPaged_OK_cursor() throws Exception {
+        final List<Integer> zIndexes = widgets().stream().map(Widget::getZIndex).sorted()
+                .collect(Collectors.toList());
+
+        final List<Integer> pagedZIndexes = new ArrayList<>();
+        String cursor = "";
+        while (cursor != null) {
+            final MvcResult result = mockMvc.perform(get(apiBasePath + "/paged_list")
+                    .contentType("application/json")
+                    .param("size", "3")
+                    .param("cursor", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            pagedZIndexes.addAll(JsonPath.<List<Integer>>read(result.getResponse().getContentAsString(), "$[*].zindex"));
+            cursor = result.getResponse().getHeader("X-Next-Cursor");
+        }
+
+        assertThat(pagedZIndexes, is(zIndexes));
+    }
+
+    /**
+     * Test cursor paging does not repeat or skip Widgets when Widgets are shifted
+     * between pages
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getAllWidgetsPaged_OK_cursorWhileShifting() throws Exception {
+        final List<Long> ids = widgets().stream().map(Widget::getId).collect(Collectors.toList());
+        final int minZIndex = widgets().stream().mapToInt(Widget::getZIndex).min().getAsInt();
+
+        final MvcResult firstPage = mockMvc.perform(get(apiBasePath + "/paged_list")
+                .contentType("application/json")
+                .param("size", "2")
+                .param("cursor", ""))
+                .andExpect(status().isOk())
+                .andReturn();
+        final List<Long> pagedIds = new ArrayList<>();
+        JsonPath.<List<Integer>>read(firstPage.getResponse().getContentAsString(), "$[*].id")
+                .forEach(id -> pagedIds.add(id.longValue()));
+
+        // Shift the first page up
+        final Widget widget = new Widget.Builder(10, 20, 25, 30).withZIndex(minZIndex).build();
+        widget.setLastModified(null);
+        mockMvc.perform(post(apiBasePath + "/")
+                .contentType("application/json")
+                .content(Utils.asJsonString(widget)))
+                .andExpect(status().isCreated());
+
+        final MvcResult secondPage = mockMvc.perform(get(apiBasePath + "/paged_list")
+                .contentType("application/json")
+                .param("size", "500")
+                .param("cursor", firstPage.getResponse().getHeader("X-Next-Cursor")))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonPath.<List<Integer>>read(secondPage.getResponse().getContentAsString(), "$[*].id")
+                .forEach(id -> pagedIds.add(id.longValue()));
+
+        assertThat(new HashSet<>(pagedIds).size(), is(pagedIds.size()));
+        assertThat(pagedIds.containsAll(ids), is(true));
+    }
+
+    /**
+     * Test paging with only some of the fields, by page and by cursor (which
+     * returns the id and z-index too)
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getAllWidgetsPaged_OK_fields() throws Exception {
+        final List<Integer> zIndexes = widgets().stream().map(Widget::getZIndex).sorted()
+                .collect(Collectors.toList());
+
+        mockMvc.perform(get(apiBasePath + "/paged_list")
+                .param("size", "2")
+                .param("fields", "zindex"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[*].zindex", is(zIndexes.subList(0, 2))))
+                .andExpect(jsonPath("$[0].id").doesNotExist());
+
+        final List<Integer> pagedZIndexes = new ArrayList<>();
+        String cursor = "";
+        while (cursor != null) {
+            final MvcResult result = mockMvc.perform(get(apiBasePath + "/paged_list")
+                    .param("size", "3")
+                    .param("cursor", cursor)
+                    .param("fields", "height"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[*].width", hasSize(0)))
+                    .andReturn();
+            final String page = result.getResponse().getContentAsString();
+            pagedZIndexes.addAll(JsonPath.<List<Integer>>read(page, "$[*].zindex"));
+            assertThat(JsonPath.<List<Integer>>read(page, "$[*].height").size(),
+                    is(JsonPath.<List<Integer>>read(page, "$[*].id").size()));
+            cursor = result.getResponse().getHeader("X-Next-Cursor");
+        }
+        assertThat(pagedZIndexes, is(zIndexes));
+    }
+
+    /**
+     * Test cursor paging (with an invalid cursor)
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getAllWidgetsPaged_NOK_invalidCursor() throws Exception {
+        mockMvc.perform(get(apiBasePath + "/paged_list")
+                .contentType("application/json")
+                .param("cursor", "not a cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * Test displaying a Widget
      * 
@@ -84,7 +282,7 @@ public class WidgetControllerTest {
     @Test
     void showWidget_NOK_NotFound() throws Exception {
         // Generate a non existing id by finding the max stored
-        final Optional<Widget> widgets = repository.findAll().stream().max(Comparator.comparingLong(Widget::getId));
+        final Optional<Widget> widgets = widgets().stream().max(Comparator.comparingLong(Widget::getId));
         assertThat(widgets.isPresent(), is(equalTo(true)));        
         final long notExistingID = widgets.get().getId() + 1;
         
@@ -101,10 +299,10 @@ public class WidgetControllerTest {
     @Test
     void createWidget_OK() throws Exception {
         // Count widgets in repo
-        final int count = repository.findAll().size();
+        final int count = widgets().size();
 
         // Find lowest z-index widget
-        final Optional<Widget> minZIndexWidget = repository.findAll().stream().min(Comparator.comparingLong(Widget::getZIndex));
+        final Optional<Widget> minZIndexWidget = widgets().stream().min(Comparator.comparingLong(Widget::getZIndex));
         assertThat(minZIndexWidget.isPresent(), is(equalTo(true)));
         final int minZIndex = minZIndexWidget.get().getZIndex();
 
@@ -117,8 +315,8 @@ public class WidgetControllerTest {
                 .content(Utils.asJsonString(widget)))
                 .andExpect(status().isCreated());
 
-        assertThat(repository.findAll().size(), is(count + 1));
-        final Optional<Widget> minZIndexWidget2 = repository.findAll().stream().min(Comparator.comparingLong(Widget::getZIndex));
+        assertThat(widgets().size(), is(count + 1));
+        final Optional<Widget> minZIndexWidget2 = widgets().stream().min(Comparator.comparingLong(Widget::getZIndex));
         assertThat(minZIndexWidget2.isPresent(), is(equalTo(true)));
         assertThat(minZIndexWidget2.get().getZIndex(), is(minZIndex - 1));
     }
@@ -131,10 +329,10 @@ public class WidgetControllerTest {
     @Test
     void createWidget_OK_withZIndex() throws Exception {
         // Count widgets in repo
-        final int count = repository.findAll().size();
+        final int count = widgets().size();
 
         // Find lowest z-index widget
-        final Optional<Widget> minZIndexWidget = repository.findAll().stream().min(Comparator.comparingLong(Widget::getZIndex));
+        final Optional<Widget> minZIndexWidget = widgets().stream().min(Comparator.comparingLong(Widget::getZIndex));
         assertThat(minZIndexWidget.isPresent(), is(equalTo(true)));
         final int minZIndex = minZIndexWidget.get().getZIndex();
 
@@ -147,13 +345,225 @@ public class WidgetControllerTest {
                 .content(Utils.asJsonString(widget)))
                 .andExpect(status().isCreated());
 
-        assertThat(repository.findAll().size(), is(count + 1));
-        final Optional<Widget> minZIndexWidget2 = repository.findAll().stream().min(Comparator.comparingLong(Widget::getZIndex));
+        assertThat(widgets().size(), is(count + 1));
+        final Optional<Widget> minZIndexWidget2 = widgets().stream().min(Comparator.comparingLong(Widget::getZIndex));
         assertThat(minZIndexWidget2.isPresent(), is(equalTo(true)));
         assertThat(minZIndexWidget2.get().getZIndex(), is(minZIndex));
         assertThat(repository.findById(minZIndexWidget.get().getId()).get().getZIndex(), is(minZIndex + 1));
     }
 
+    /**
+     * Test creating a Widget (with z-index) only moves the contiguous run of
+     * z-indexes above it
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void createWidget_OK_withZIndex_shiftsContiguousRun() throws Exception {
+        // Demo data: widgets 5 and 6 are contiguous, widget 7 is above a gap
+        final int zIndex5 = repository.findById(5L).get().getZIndex();
+        final int zIndex6 = repository.findById(6L).get().getZIndex();
+        final int zIndex7 = repository.findById(7L).get().getZIndex();
+        assertThat(zIndex6, is(zIndex5 + 1));
+        assertThat(zIndex7 > zIndex6 + 1, is(true));
+
+        // Create a new Widget
+        final Widget widget = new Widget.Builder(10, 20, 25, 30).withZIndex(zIndex5).build();
+        widget.setLastModified(null);
+
+        mockMvc.perform(post(apiBasePath + "/")
+                .contentType("application/json")
+                .content(Utils.asJsonString(widget)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.zindex", is(zIndex5)));
+
+        assertThat(repository.findById(5L).get().getZIndex(), is(zIndex5 + 1));
+        assertThat(repository.findById(6L).get().getZIndex(), is(zIndex6 + 1));
+        assertThat(repository.findById(7L).get().getZIndex(), is(zIndex7));
+    }
+
+    /**
+     * Test a cached Widget is evicted when a create shifts it
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void showWidget_OK_cachedWidgetShifted() throws Exception {
+        final int maxZIndex = widgets().stream().mapToInt(Widget::getZIndex).max().getAsInt();
+        final Widget widget = new Widget.Builder(10, 20, 25, 30).withZIndex(maxZIndex + 10).build();
+        widget.setLastModified(null);
+        final MvcResult created = mockMvc.perform(post(apiBasePath + "/")
+                .contentType("application/json")
+                .content(Utils.asJsonString(widget)))
+                .andExpect(status().isCreated())
+                .andReturn();
+        final long widgetId = ((Number) JsonPath.read(created.getResponse().getContentAsString(), "$.id")).longValue();
+
+        // Read it twice: the second read is a cache hit
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get(apiBasePath + "/" + widgetId)
+                    .contentType("application/json"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.zindex", is(maxZIndex + 10)));
+        }
+        mockMvc.perform(get(apiBasePath + "/cache_stats")
+                .contentType("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.widgets.hitCount", greaterThanOrEqualTo(1)));
+
+        // Creating a Widget on its z-index shifts it
+        mockMvc.perform(post(apiBasePath + "/")
+                .contentType("application/json")
+                .content(Utils.asJsonString(widget)))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get(apiBasePath + "/" + widgetId)
+                .contentType("application/json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.zindex", is(maxZIndex + 11)));
+    }
+
+    /**
+     * Test the service timers and domain metrics are exported for Prometheus
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void prometheusMetrics_OK() throws Exception {
+        mockMvc.perform(get(apiBasePath + "/1")
+                .contentType("application/json"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get(apiBasePath + "/area")
+                .param("x_coordinate", "0")
+                .param("y_coordinate", "0")
+                .param("width", "1000")
+                .param("height", "1000"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("widget_service_seconds_bucket")))
+                .andExpect(content().string(containsString("method=\"find\"")))
+                .andExpect(content().string(containsString("quantile=\"0.999\"")))
+                .andExpect(content().string(containsString("widget_area_scanned_widgets_count")))
+                .andExpect(content().string(containsString("widget_board_size_widgets")))
+                .andExpect(content().string(containsString("cache=\"widgets\"")));
+    }
+
+    /**
+     * Test the changes of a create are streamed as server-sent events
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void streamChanges_OK() throws Exception {
+        final MvcResult stream = mockMvc.perform(get(apiBasePath + "/changes")
+                .accept("text/event-stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        final Widget widget = new Widget.Builder(10, 20, 25, 30).build();
+        widget.setLastModified(null);
+        final MvcResult created = mockMvc.perform(post(apiBasePath + "/")
+                .contentType("application/json")
+                .content(Utils.asJsonString(widget)))
+                .andExpect(status().isCreated())
+                .andReturn();
+        final long widgetId = ((Number) JsonPath.read(created.getResponse().getContentAsString(), "$.id")).longValue();
+
+        // Events are sent from the feed's own thread
+        final String event = "event:CREATED\ndata:{\"type\":\"CREATED\",\"boardId\":0,\"widget\":{\"id\":"
+                + widgetId + ",";
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!stream.getResponse().getContentAsString().contains(event) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(stream.getResponse().getContentAsString(), containsString(event));
+    }
+
+    /**
+     * Test listing the changes since a version, including the widgets shifted
+     * and deleted
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getDelta_OK() throws Exception {
+        final int base = widgets().stream().mapToInt(Widget::getZIndex).max().getAsInt() + 10;
+        final long shiftedId = createWidget(new Widget.Builder(10, 10, 10, 10).withZIndex(base).build());
+        final long deletedId = createWidget(new Widget.Builder(10, 10, 10, 10).withZIndex(base + 5).build());
+
+        final MvcResult board = mockMvc.perform(get(apiBasePath + "/delta"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.widgets[*].id", hasItems((int) shiftedId, (int) deletedId)))
+                .andReturn();
+        final long version = ((Number) JsonPath.read(board.getResponse().getContentAsString(), "$.version"))
+                .longValue();
+
+        final int createdId = (int) createWidget(new Widget.Builder(10, 20, 25, 30).withZIndex(base).build());
+        mockMvc.perform(delete(apiBasePath + "/" + deletedId))
+                .andExpect(status().isOk());
+
+        final MvcResult delta = mockMvc.perform(get(apiBasePath + "/delta")
+                .param("since", String.valueOf(version)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.widgets", hasSize(2)))
+                .andExpect(jsonPath("$.widgets[*].id", hasItems(createdId, (int) shiftedId)))
+                .andExpect(jsonPath("$.widgets[?(@.id == " + shiftedId + ")].zindex", hasItem(base + 1)))
+                .andExpect(jsonPath("$.deleted", is(List.of((int) deletedId))))
+                .andReturn();
+        final long nextVersion = ((Number) JsonPath.read(delta.getResponse().getContentAsString(), "$.version"))
+                .longValue();
+
+        mockMvc.perform(get(apiBasePath + "/delta")
+                .param("since", String.valueOf(nextVersion)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is((int) nextVersion)))
+                .andExpect(jsonPath("$.widgets", hasSize(0)))
+                .andExpect(jsonPath("$.deleted", hasSize(0)));
+    }
+
+    /**
+     * Creates a Widget on the default board through the API
+     *
+     * @param widget The Widget's data
+     * @return The id of the created Widget
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    private long createWidget(final Widget widget) throws Exception {
+        return createWidget(apiBasePath, widget);
+    }
+
+    /**
+     * Creates a Widget through the API
+     *
+     * @param basePath The widgets path of the board
+     * @param widget   The Widget's data
+     * @return The id of the created Widget
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    private long createWidget(final String basePath, final Widget widget) throws Exception {
+        widget.setLastModified(null);
+        final MvcResult created = mockMvc.perform(post(basePath + "/")
+                .contentType("application/json")
+                .content(Utils.asJsonString(widget)))
+                .andExpect(status().isCreated())
+                .andReturn();
+        return ((Number) JsonPath.read(created.getResponse().getContentAsString(), "$.id")).longValue();
+    }
+
+    /**
+     * Test listing the changes since a version the board has not reached
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getDelta_NOK_unknownVersion() throws Exception {
+        mockMvc.perform(get(apiBasePath + "/delta")
+                .param("since", String.valueOf(Long.MAX_VALUE)))
+                .andExpect(status().isGone());
+    }
+
     /**
      * Test creating a Widget (with missing required fields)
      * 
@@ -213,7 +623,7 @@ public class WidgetControllerTest {
     @Test
     void deleteWidget_OK() throws Exception {
         // Find a free z-index
-        final Optional<Widget> maxZIndexWidget = repository.findAll().stream().max(Comparator.comparingLong(Widget::getZIndex));
+        final Optional<Widget> maxZIndexWidget = widgets().stream().max(Comparator.comparingLong(Widget::getZIndex));
         assertThat(maxZIndexWidget.isPresent(), is(equalTo(true)));
         
         // Create and save an entity
@@ -235,7 +645,7 @@ public class WidgetControllerTest {
     @Test
     void deleteWidget_NOK() throws Exception {
         // Generate a non-existing ID
-        final Optional<Widget> maxIdWidget = repository.findAll().stream().max(Comparator.comparingLong(Widget::getId));
+        final Optional<Widget> maxIdWidget = widgets().stream().max(Comparator.comparingLong(Widget::getId));
         assertThat(maxIdWidget.isPresent(), is(equalTo(true)));  
         final long noExistingId = maxIdWidget.get().getId() + 1;
 
@@ -244,6 +654,96 @@ public class WidgetControllerTest {
             .andExpect(status().isNotFound());
     }
 
+    /**
+     * Test applying a batch of operations
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void applyBatch_OK() throws Exception {
+        // Work above the existing widgets: a run of 2 widgets, a gap, 1 widget
+        final int count = widgets().size();
+        final int minZIndex = widgets().stream().mapToInt(Widget::getZIndex).min().getAsInt();
+        final int base = widgets().stream().mapToInt(Widget::getZIndex).max().getAsInt() + 10;
+        final long idA = repository.save(new Widget.Builder(10, 10, 10, 10).withZIndex(base).build()).getId();
+        final long idB = repository.save(new Widget.Builder(10, 10, 10, 10).withZIndex(base + 1).build()).getId();
+        final long idC = repository.save(new Widget.Builder(10, 10, 10, 10).withZIndex(base + 3).build()).getId();
+        final long idD = repository.save(new Widget.Builder(10, 10, 10, 10).withZIndex(base + 10).build()).getId();
+
+        // Both placed widgets target the run: they keep batch order and push it up
+        final Widget created = new Widget.Builder(20, 20, 20, 20).withZIndex(base).build();
+        created.setLastModified(null);
+        final Widget moved = new Widget.Builder(30, 30, 30, 30).withZIndex(base).build();
+        moved.setLastModified(null);
+        final Widget bottom = new Widget.Builder(40, 40, 40, 40).build();
+        bottom.setLastModified(null);
+        final List<WidgetOperation> operations = List.of(WidgetOperation.create(created),
+                WidgetOperation.update(idC, moved), WidgetOperation.delete(idD), WidgetOperation.create(bottom));
+
+        mockMvc.perform(post(apiBasePath + "/batch")
+                .contentType("application/json")
+                .content(Utils.asJsonString(operations)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[0].zindex", is(base)))
+                .andExpect(jsonPath("$[1].id", is((int) idC)))
+                .andExpect(jsonPath("$[1].zindex", is(base + 1)))
+                .andExpect(jsonPath("$[1].xcoordinate", is(30)))
+                .andExpect(jsonPath("$[2]").doesNotExist())
+                .andExpect(jsonPath("$[3].zindex", is(minZIndex - 1)));
+
+        assertThat(widgets().size(), is(count + 5));
+        assertThat(repository.findById(idA).get().getZIndex(), is(base + 2));
+        assertThat(repository.findById(idB).get().getZIndex(), is(base + 3));
+        assertThat(repository.findById(idD).isPresent(), is(false));
+    }
+
+    /**
+     * Test applying a batch of operations (with a missing ID), which changes
+     * nothing
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void applyBatch_NOK_notFound() throws Exception {
+        final List<Widget> widgets = widgets();
+        final long noExistingId = widgets.stream().mapToLong(Widget::getId).max().getAsLong() + 1;
+        final Widget lowest = widgets.stream().min(Comparator.comparingInt(Widget::getZIndex)).get();
+
+        final Widget created = new Widget.Builder(10, 20, 25, 30).withZIndex(lowest.getZIndex()).build();
+        created.setLastModified(null);
+        final List<WidgetOperation> operations = List.of(WidgetOperation.create(created),
+                WidgetOperation.delete(noExistingId));
+
+        mockMvc.perform(post(apiBasePath + "/batch")
+                .contentType("application/json")
+                .content(Utils.asJsonString(operations)))
+                .andExpect(status().isNotFound());
+
+        assertThat(widgets().size(), is(widgets.size()));
+        assertThat(repository.findById(lowest.getId()).get().getZIndex(), is(lowest.getZIndex()));
+    }
+
+    /**
+     * Test applying a batch of operations (changing a Widget twice)
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void applyBatch_NOK_widgetChangedTwice() throws Exception {
+        final Widget update = new Widget.Builder(10, 20, 25, 30).build();
+        update.setLastModified(null);
+        final List<WidgetOperation> operations = List.of(WidgetOperation.update(1L, update),
+                WidgetOperation.delete(1L));
+
+        mockMvc.perform(post(apiBasePath + "/batch")
+                .contentType("application/json")
+                .content(Utils.asJsonString(operations)))
+                .andExpect(status().isBadRequest());
+
+        assertThat(repository.findById(1L).isPresent(), is(true));
+    }
+
     /**
      * Test retrieving all Widgets in an area
      * 
@@ -269,4 +769,353 @@ public class WidgetControllerTest {
             .andExpect(jsonPath("$[1].id", is(2)));
     }
 
+    /**
+     * Test retrieving all Widgets in an area with only some of their fields
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getAllWidgetFilterdByArea_OK_fields() throws Exception {
+        final String board = boardPath(Utils.newBoardId());
+        final long first = createWidget(board, new Widget.Builder(1000, 1000, 50, 50).withZIndex(1).build());
+        final long second = createWidget(board, new Widget.Builder(1050, 1000, 50, 50).withZIndex(2).build());
+        createWidget(board, new Widget.Builder(1100, 1100, 50, 50).build());
+
+        mockMvc.perform(get(board + "/area")
+                .param("x_coordinate", "1000")
+                .param("y_coordinate", "1000")
+                .param("width", "100")
+                .param("height", "150")
+                .param("fields", "id,xcoordinate"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is((int) first)))
+                .andExpect(jsonPath("$[1].id", is((int) second)))
+                .andExpect(jsonPath("$[1].xcoordinate", is(1050)))
+                .andExpect(jsonPath("$[0].zindex").doesNotExist());
+    }
+
+    /**
+     * Test listing the Widgets which intersect an area, topmost first, with and
+     * without a limit
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getWidgetsIntersectingArea_OK() throws Exception {
+        // Created without a z-index, each widget goes below the previous one
+        final long above = createWidget(new Widget.Builder(-50000, -50000, 100, 100).build());
+        final long below = createWidget(new Widget.Builder(-49950, -49950, 100, 100).build());
+        createWidget(new Widget.Builder(-49000, -49000, 10, 10).build());
+
+        mockMvc.perform(get(apiBasePath + "/intersecting")
+                .param("x_coordinate", "-49900")
+                .param("y_coordinate", "-49900")
+                .param("width", "10")
+                .param("height", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is((int) above)))
+                .andExpect(jsonPath("$[1].id", is((int) below)));
+
+        mockMvc.perform(get(apiBasePath + "/intersecting")
+                .param("x_coordinate", "-49900")
+                .param("y_coordinate", "-49900")
+                .param("width", "10")
+                .param("height", "10")
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is((int) above)));
+    }
+
+    /**
+     * Test listing the Widgets which contain an area
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getWidgetsContainingArea_OK() throws Exception {
+        final long outer = createWidget(new Widget.Builder(-60000, -60000, 1000, 1000).build());
+        final long inner = createWidget(new Widget.Builder(-59900, -59900, 100, 100).withZIndex(
+                repository.findMaxZIndex(DEFAULT_BOARD_ID) + 1).build());
+
+        mockMvc.perform(get(apiBasePath + "/containing")
+                .param("x_coordinate", "-59900")
+                .param("y_coordinate", "-59900")
+                .param("width", "100")
+                .param("height", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is((int) inner)))
+                .andExpect(jsonPath("$[1].id", is((int) outer)));
+
+        mockMvc.perform(get(apiBasePath + "/containing")
+                .param("x_coordinate", "-59900")
+                .param("y_coordinate", "-59900")
+                .param("width", "101")
+                .param("height", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is((int) outer)));
+    }
+
+    /**
+     * Test listing with a limit which is not positive
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getWidgetsContainingArea_NOK_invalidLimit() throws Exception {
+        mockMvc.perform(get(apiBasePath + "/containing")
+                .param("x_coordinate", "0")
+                .param("y_coordinate", "0")
+                .param("width", "10")
+                .param("height", "10")
+                .param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Test finding the topmost Widget at a point, edges included
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getWidgetAt_OK() throws Exception {
+        // Created without a z-index, the second widget goes below the first one
+        final long above = createWidget(new Widget.Builder(-70000, -70000, 100, 100).build());
+        final long below = createWidget(new Widget.Builder(-69950, -69950, 100, 100).build());
+
+        mockMvc.perform(get(apiBasePath + "/at")
+                .param("x_coordinate", "-69950")
+                .param("y_coordinate", "-69900"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is((int) above)));
+
+        mockMvc.perform(get(apiBasePath + "/at")
+                .param("x_coordinate", "-69850")
+                .param("y_coordinate", "-69899"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is((int) below)));
+    }
+
+    /**
+     * Test finding the topmost Widget at a point without any
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getWidgetAt_NOK_notFound() throws Exception {
+        mockMvc.perform(get(apiBasePath + "/at")
+                .param("x_coordinate", String.valueOf(Integer.MIN_VALUE))
+                .param("y_coordinate", String.valueOf(Integer.MIN_VALUE)))
+                .andExpect(status().isNotFound());
+    }
+
+
+    /**
+     * Test listing the Widgets of a tile, revalidating it with its ETag, and
+     * the tile being evicted when a Widget moves out of it
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getTile_OK() throws Exception {
+        // Tile (-80, -80) covers the coordinates from -81920 to -80897
+        final long widgetId = createWidget(new Widget.Builder(-81000, -81000, 200, 10).build());
+
+        final MvcResult tile = mockMvc.perform(get(apiBasePath + "/tiles/-80/-80"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Tile-Size", "1024"))
+                .andExpect(header().string("ETag", notNullValue()))
+                .andExpect(jsonPath("$[*].id", hasItem((int) widgetId)))
+                .andReturn();
+        // It also overlaps the next tile
+        mockMvc.perform(get(apiBasePath + "/tiles/-79/-80"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem((int) widgetId)));
+
+        final String eTag = tile.getResponse().getHeader("ETag");
+        mockMvc.perform(get(apiBasePath + "/tiles/-80/-80")
+                .header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        final Widget move = new Widget.Builder(-70000, -70000, 10, 10).build();
+        move.setLastModified(null);
+        mockMvc.perform(put(apiBasePath + "/" + widgetId)
+                .contentType("application/json")
+                .content(Utils.asJsonString(move)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get(apiBasePath + "/tiles/-80/-80")
+                .header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", not(hasItem((int) widgetId))));
+        mockMvc.perform(get(apiBasePath + "/tiles/-69/-69"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem((int) widgetId)));
+    }
+
+    /**
+     * Test a cached tile is evicted when a create elsewhere shifts one of its
+     * Widgets
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getTile_OK_widgetShifted() throws Exception {
+        final int zIndex = repository.findMaxZIndex(DEFAULT_BOARD_ID) + 10;
+        // Tile (-90, -90) covers the coordinates from -92160 to -91137
+        final long widgetId = createWidget(new Widget.Builder(-92000, -92000, 10, 10).withZIndex(zIndex).build());
+
+        mockMvc.perform(get(apiBasePath + "/tiles/-90/-90"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.id == " + widgetId + ")].zindex", hasItem(zIndex)));
+
+        createWidget(new Widget.Builder(90000, 90000, 10, 10).withZIndex(zIndex).build());
+
+        mockMvc.perform(get(apiBasePath + "/tiles/-90/-90"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.id == " + widgetId + ")].zindex", hasItem(zIndex + 1)));
+    }
+
+    /**
+     * Test that boards have their own z-index space: the same z-index taken on
+     * another board shifts nothing
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void createWidget_OK_boardsSeparateZIndexes() throws Exception {
+        final String board1 = boardPath(Utils.newBoardId());
+        final String board2 = boardPath(Utils.newBoardId());
+        final long id1 = createWidget(board1, new Widget.Builder(0, 0, 10, 10).withZIndex(5).build());
+        createWidget(board2, new Widget.Builder(0, 0, 10, 10).withZIndex(5).build());
+
+        mockMvc.perform(get(board1 + "/" + id1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.zindex", is(5)));
+        mockMvc.perform(get(board2 + "/"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].zindex", is(5)));
+
+        // Created without a z-index, it goes below the lowest of its own board
+        createWidget(board2, new Widget.Builder(0, 0, 10, 10).build());
+        mockMvc.perform(get(board2 + "/"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].zindex", is(4)));
+    }
+
+    /**
+     * Test that a Widget cannot be read, changed or deleted through another
+     * board
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void showWidget_NOK_otherBoard() throws Exception {
+        final long boardId = Utils.newBoardId();
+        final String board1 = boardPath(boardId);
+        final String board2 = boardPath(Utils.newBoardId());
+        final long id = createWidget(board1, new Widget.Builder(0, 0, 10, 10).build());
+
+        mockMvc.perform(get(board1 + "/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.boardId", is((int) boardId)));
+        mockMvc.perform(get(board2 + "/" + id))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get(apiBasePath + "/" + id))
+                .andExpect(status().isNotFound());
+
+        final Widget update = new Widget.Builder(20, 20, 10, 10).build();
+        update.setLastModified(null);
+        mockMvc.perform(put(board2 + "/" + id)
+                .contentType("application/json")
+                .content(Utils.asJsonString(update)))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(delete(board2 + "/" + id))
+                .andExpect(status().isNotFound());
+
+        assertThat(repository.findById(id).get().getXCoordinate(), is(0));
+    }
+
+    /**
+     * Test that the board and version of a request body are ignored: the board
+     * is the one of the path
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void createWidget_OK_readOnlyFields() throws Exception {
+        final long boardId = Utils.newBoardId();
+        final long otherBoardId = Utils.newBoardId();
+        final Widget widget = new Widget.Builder(0, 0, 10, 10).withBoardId(otherBoardId).build();
+        widget.setVersion(Long.MAX_VALUE);
+        widget.setLastModified(null);
+        final Widget read = new ObjectMapper().readValue(Utils.asJsonString(widget), Widget.class);
+        assertThat(read.getBoardId(), is(DEFAULT_BOARD_ID));
+        assertThat(read.getVersion(), is(0L));
+        final long id = createWidget(boardPath(boardId), widget);
+
+        mockMvc.perform(get(boardPath(boardId) + "/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.boardId", is((int) boardId)));
+        assertThat(repository.findById(id).get().getVersion() < Long.MAX_VALUE, is(true));
+
+        widget.setXCoordinate(20);
+        mockMvc.perform(put(boardPath(boardId) + "/" + id)
+                .contentType("application/json")
+                .content(Utils.asJsonString(widget)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.boardId", is((int) boardId)))
+                .andExpect(jsonPath("$.xcoordinate", is(20)));
+        mockMvc.perform(get(boardPath(otherBoardId) + "/"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    /**
+     * Test that area queries only return the Widgets of the board
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void getAllWidgetFilterdByArea_OK_board() throws Exception {
+        final String board1 = boardPath(Utils.newBoardId());
+        final String board2 = boardPath(Utils.newBoardId());
+        final long id = createWidget(board1, new Widget.Builder(1000, 1000, 50, 50).build());
+        createWidget(board2, new Widget.Builder(1000, 1000, 50, 50).build());
+
+        mockMvc.perform(get(board1 + "/area")
+                .param("x_coordinate", "1000")
+                .param("y_coordinate", "1000")
+                .param("width", "100")
+                .param("height", "150"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is((int) id)));
+        mockMvc.perform(get(board1 + "/at")
+                .param("x_coordinate", "1010")
+                .param("y_coordinate", "1010"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is((int) id)));
+    }
+
+    /**
+     * @param boardId A board
+     * @return The widgets path of the board
+     */
+    private static String boardPath(final long boardId) {
+        return "/api/v1/boards/" + boardId + "/widgets";
+    }
+
+    /**
+     * @return The Widgets of the default board
+     */
+    private List<Widget> widgets() {
+        return repository.findAllByBoardId(DEFAULT_BOARD_ID);
+    }
 }
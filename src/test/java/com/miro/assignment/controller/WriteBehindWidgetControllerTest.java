@@ -0,0 +1,11 @@
+package com.miro.assignment.controller;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * This class runs the integration tests for the Widget REST API against the
+ * in-memory storage written back to the database
+ */
+@TestPropertySource(properties = { "widget.storage=memory", "widget.write-behind.enabled=true" })
+public class WriteBehindWidgetControllerTest extends WidgetControllerTest {
+}
@@ -0,0 +1,113 @@
+package com.miro.assignment.repository;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+public class SlotIndexTest {
+
+    /**
+     * Test that the index keeps the order of a sorted map while slots are added
+     * and removed, across many blocks
+     */
+    @Test
+    public void testOrderMatchesSortedMap() {
+        final Random random = new Random(42);
+        final int[] keys = new int[20_000];
+        final SlotIndex index = new SlotIndex((a, b) -> Integer.compare(keys[a], keys[b]));
+        final TreeMap<Integer, Integer> expected = new TreeMap<>();
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            keys[slot] = slot < 5000 ? slot : random.nextInt();
+            if (!expected.containsKey(keys[slot])) {
+                expected.put(keys[slot], slot);
+                index.insert(slot);
+            }
+        }
+        for (final Integer slot : new ArrayList<>(expected.values())) {
+            if (random.nextInt(3) == 0) {
+                assertThat(index.remove(slot), is(true));
+                expected.remove(keys[slot]);
+            }
+        }
+
+        assertThat(index.size(), is(expected.size()));
+        assertThat(index.first(), is(expected.firstEntry().getValue()));
+        assertThat(index.last(), is(expected.lastEntry().getValue()));
+        assertThat(slots(index, Integer.MIN_VALUE, keys), is(new ArrayList<>(expected.values())));
+        for (int i = 0; i < 100; i++) {
+            final int from = random.nextInt();
+            assertThat(slots(index, from, keys), is(new ArrayList<>(expected.tailMap(from).values())));
+            assertThat(slotsDownTo(index, from, keys),
+                    is(new ArrayList<>(expected.headMap(from, true).descendingMap().values())));
+        }
+        assertThat(slotsDownTo(index, Integer.MAX_VALUE, keys),
+                is(new ArrayList<>(expected.descendingMap().values())));
+    }
+
+    /**
+     * Test that removing a slot which is not indexed changes nothing
+     */
+    @Test
+    public void testRemoveMissingSlot() {
+        final int[] keys = { 1, 2, 3 };
+        final SlotIndex index = new SlotIndex((a, b) -> Integer.compare(keys[a], keys[b]));
+        index.insert(0);
+        index.insert(2);
+
+        assertThat(index.remove(1), is(false));
+        assertThat(index.remove(0), is(true));
+        assertThat(index.remove(0), is(false));
+        assertThat(index.size(), is(1));
+        assertThat(index.first(), is(2));
+
+        index.clear();
+        assertThat(index.first(), is(-1));
+    }
+
+    /**
+     * Test that the id map matches a hash map while ids are added, replaced and
+     * removed
+     */
+    @Test
+    public void testIdSlotMapMatchesHashMap() {
+        final Random random = new Random(42);
+        final IdSlotMap map = new IdSlotMap();
+        final Map<Long, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 50_000; i++) {
+            final long id = random.nextInt(20_000) * 1024L;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(id), is(expected.containsKey(id) ? expected.remove(id) : -1));
+            } else {
+                map.put(id, i);
+                expected.put(id, i);
+            }
+        }
+
+        assertThat(map.size(), is(expected.size()));
+        for (long id = 0; id < 20_000 * 1024L; id += 1024) {
+            assertThat(map.get(id), is(expected.getOrDefault(id, -1)));
+        }
+    }
+
+    private static List<Integer> slots(final SlotIndex index, final int from, final int[] keys) {
+        final List<Integer> slots = new ArrayList<>();
+        index.forEachFrom(slot -> keys[slot] < from, slot -> slots.add(slot));
+        return slots;
+    }
+
+    private static List<Integer> slotsDownTo(final SlotIndex index, final int to, final int[] keys) {
+        final List<Integer> slots = new ArrayList<>();
+        index.forEachBefore(slot -> keys[slot] <= to, slot -> slots.add(slot));
+        return slots;
+    }
+}
@@ -0,0 +1,105 @@
+package com.miro.assignment.repository;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.utils.Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * This class provides tests for the area queries filtered by the database
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@DirtiesContext
+@PropertySource("classpath:application-test.properties")
+public class WidgetAreaQueryTest {
+    @Autowired
+    private WidgetRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Test that the widgets found by the database are those found by filtering
+     * the board in the JVM, in the same order, and that only they are read
+     */
+    @Test
+    void findAllWithinArea_matchesFilter() {
+        final long boardId = Utils.newBoardId();
+        final Random random = new Random(42);
+        final List<Widget> widgets = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            widgets.add(new Widget.Builder(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000,
+                    random.nextInt(300), random.nextInt(300)).withZIndex(random.nextInt()).withBoardId(boardId)
+                            .build());
+        }
+        // Edges overflowing an int, and a widget of no size
+        widgets.add(new Widget.Builder(Integer.MAX_VALUE - 10, 0, 100, 10).withZIndex(1).withBoardId(boardId)
+                .build());
+        widgets.add(new Widget.Builder(50, 50, 0, 0).withZIndex(2).withBoardId(boardId).build());
+        repository.saveAll(widgets);
+
+        final List<int[]> areas = new ArrayList<>();
+        areas.add(new int[] { -1000, -1000, 2300, 2300 });
+        areas.add(new int[] { 50, 50, 0, 0 });
+        areas.add(new int[] { Integer.MAX_VALUE - 100, 0, Integer.MAX_VALUE, 100 });
+        for (int i = 0; i < 50; i++) {
+            areas.add(new int[] { random.nextInt(2000) - 1000, random.nextInt(2000) - 1000, random.nextInt(1000),
+                    random.nextInt(1000) });
+        }
+        for (final int[] area : areas) {
+            final AtomicLong scanned = new AtomicLong();
+            final List<Widget> found = repository.findAllWithinArea(boardId, area[0], area[1], area[2], area[3],
+                    scanned::set);
+
+            final List<Long> expected = widgets.stream().filter(x -> within(x, area))
+                    .sorted(Comparator.comparingInt(Widget::getZIndex)).map(Widget::getId)
+                    .collect(Collectors.toList());
+            assertThat(found.stream().map(Widget::getId).collect(Collectors.toList()), is(expected));
+            assertThat(scanned.get(), is((long) expected.size()));
+        }
+    }
+
+    /**
+     * Test that the area query of a board is answered from an index over the
+     * widgets' edges
+     */
+    @Test
+    void findAllWithinArea_usesEdgeIndex() {
+        final String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT * FROM widget WHERE board_id = 0"
+                + " AND x_coordinate >= 0 AND right_edge <= 100 AND y_coordinate >= 0 AND bottom_edge <= 100"
+                + " ORDER BY z_index", String.class);
+
+        assertThat(plan.toUpperCase().matches("(?s).*WIDGET_BOARD_(LEFT_TOP|RIGHT_BOTTOM).*"), is(true));
+    }
+
+    /**
+     * The filter of the area query in the JVM (with the edges as longs)
+     *
+     * @param widget The widget
+     * @param area   The X and Y coordinates, width and height of the area
+     * @return True if the widget fits the area
+     */
+    private static boolean within(final Widget widget, final int[] area) {
+        return widget.getXCoordinate() >= area[0] && widget.getYCoordinate() >= area[1]
+                && (long) widget.getXCoordinate() + widget.getWidth() <= (long) area[0] + area[2]
+                && (long) widget.getYCoordinate() + widget.getHeight() <= (long) area[1] + area[3];
+    }
+}
@@ -0,0 +1,171 @@
+package com.miro.assignment.repository;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import com.miro.assignment.domain.Widget;
+
+import org.junit.jupiter.api.Test;
+
+public class WidgetQuadTreeTest {
+
+    /**
+     * Test that area queries match a linear scan while widgets are added, moved
+     * and removed
+     */
+    @Test
+    public void testFindWithinMatchesLinearScan() {
+        final Random random = new Random(42);
+        final WidgetQuadTree tree = new WidgetQuadTree();
+        final Map<Long, Widget> widgets = new HashMap<>();
+
+        for (long id = 1; id <= 2000; id++) {
+            final Widget widget = randomWidget(random, id);
+            widgets.put(id, widget);
+            tree.insert(widget);
+        }
+        for (long id = 1; id <= 500; id++) {
+            tree.remove(widgets.get(id));
+            if (id % 2 == 0) {
+                final Widget widget = randomWidget(random, id);
+                widgets.put(id, widget);
+                tree.insert(widget);
+            } else {
+                widgets.remove(id);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            final int x = random.nextInt(2000) - 1000;
+            final int y = random.nextInt(2000) - 1000;
+            final int width = random.nextInt(1000);
+            final int height = random.nextInt(1000);
+            final List<Long> expected = widgets.values().stream()
+                    .filter(w -> w.getXCoordinate() >= x && w.getYCoordinate() >= y
+                            && w.getXCoordinate() + w.getWidth() <= x + width
+                            && w.getYCoordinate() + w.getHeight() <= y + height)
+                    .map(Widget::getId).collect(Collectors.toList());
+            assertThat(tree.findWithin(x, y, width, height), containsInAnyOrder(expected.toArray()));
+        }
+    }
+
+    /**
+     * Test that intersecting and containing queries match a linear scan, points
+     * on the center lines of the quadrants included
+     */
+    @Test
+    public void testFindIntersectingAndContainingMatchLinearScan() {
+        final Random random = new Random(42);
+        final WidgetQuadTree tree = new WidgetQuadTree();
+        final List<Widget> widgets = new ArrayList<>();
+        for (long id = 1; id <= 2000; id++) {
+            final Widget widget = randomWidget(random, id);
+            widgets.add(widget);
+            tree.insert(widget);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            final int x = i < 10 ? 0 : random.nextInt(2000) - 1000;
+            final int y = i < 10 ? i * 64 : random.nextInt(2000) - 1000;
+            final int width = i % 2 == 0 ? 0 : random.nextInt(300);
+            final int height = i % 2 == 0 ? 0 : random.nextInt(300);
+            final List<Long> intersecting = widgets.stream()
+                    .filter(w -> w.getXCoordinate() <= x + width && w.getXCoordinate() + w.getWidth() >= x
+                            && w.getYCoordinate() <= y + height && w.getYCoordinate() + w.getHeight() >= y)
+                    .map(Widget::getId).collect(Collectors.toList());
+            final List<Long> containing = widgets.stream()
+                    .filter(w -> w.getXCoordinate() <= x && w.getXCoordinate() + w.getWidth() >= x + width
+                            && w.getYCoordinate() <= y && w.getYCoordinate() + w.getHeight() >= y + height)
+                    .map(Widget::getId).collect(Collectors.toList());
+            assertThat(tree.findIntersecting(x, y, width, height), containsInAnyOrder(intersecting.toArray()));
+            assertThat(tree.findContaining(x, y, width, height), containsInAnyOrder(containing.toArray()));
+        }
+    }
+
+    /**
+     * Test that a tree built in bulk answers like a linear scan, clustered
+     * widgets and widgets inserted and removed afterwards included
+     */
+    @Test
+    public void testBulkBuiltTreeMatchesLinearScan() {
+        final Random random = new Random(42);
+        final Map<Long, Widget> widgets = new HashMap<>();
+        for (long id = 1; id <= 3000; id++) {
+            final Widget widget = id <= 2000 ? randomWidget(random, id)
+                    : new Widget.Builder(500 + random.nextInt(16), 500 + random.nextInt(16), random.nextInt(4),
+                            random.nextInt(4)).build();
+            widget.setId(id);
+            widgets.put(id, widget);
+        }
+        final WidgetQuadTree tree = new WidgetQuadTree(widgets.values());
+
+        for (long id = 1; id <= 500; id++) {
+            tree.remove(widgets.get(id));
+            if (id % 2 == 0) {
+                final Widget widget = randomWidget(random, id);
+                widgets.put(id, widget);
+                tree.insert(widget);
+            } else {
+                widgets.remove(id);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            final int x = i < 20 ? 500 + random.nextInt(16) : random.nextInt(2000) - 1000;
+            final int y = i < 20 ? 500 + random.nextInt(16) : random.nextInt(2000) - 1000;
+            final int width = i < 20 ? random.nextInt(8) : random.nextInt(1000);
+            final int height = i < 20 ? random.nextInt(8) : random.nextInt(1000);
+            final List<Long> within = widgets.values().stream()
+                    .filter(w -> w.getXCoordinate() >= x && w.getYCoordinate() >= y
+                            && w.getXCoordinate() + w.getWidth() <= x + width
+                            && w.getYCoordinate() + w.getHeight() <= y + height)
+                    .map(Widget::getId).collect(Collectors.toList());
+            final List<Long> intersecting = widgets.values().stream()
+                    .filter(w -> w.getXCoordinate() <= x + width && w.getXCoordinate() + w.getWidth() >= x
+                            && w.getYCoordinate() <= y + height && w.getYCoordinate() + w.getHeight() >= y)
+                    .map(Widget::getId).collect(Collectors.toList());
+            assertThat(tree.findWithin(x, y, width, height), containsInAnyOrder(within.toArray()));
+            assertThat(tree.findIntersecting(x, y, width, height), containsInAnyOrder(intersecting.toArray()));
+        }
+    }
+
+    /**
+     * Test that widgets on the area's edges are included
+     */
+    @Test
+    public void testFindWithinIncludesEdges() {
+        final WidgetQuadTree tree = new WidgetQuadTree();
+        final Widget widget = new Widget.Builder(0, 0, 10, 10).build();
+        widget.setId(1L);
+        tree.insert(widget);
+
+        assertThat(tree.findWithin(0, 0, 10, 10), is(List.of(1L)));
+        assertThat(tree.findWithin(0, 0, 9, 10), is(empty()));
+
+        tree.clear();
+        assertThat(tree.findWithin(0, 0, 10, 10), is(new ArrayList<Long>()));
+    }
+
+    /**
+     * Creates a widget with a random bounding box around the origin
+     *
+     * @param random The random generator
+     * @param id     The widget id
+     * @return The widget
+     */
+    private static Widget randomWidget(final Random random, final long id) {
+        final Widget widget = new Widget.Builder(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000,
+                random.nextInt(200), random.nextInt(200)).build();
+        widget.setId(id);
+        return widget;
+    }
+}
@@ -0,0 +1,122 @@
+package com.miro.assignment.repository;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManagerFactory;
+
+import com.miro.assignment.config.SecondLevelCacheConfig;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.service.api.WidgetService;
+import com.miro.assignment.utils.Utils;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * This class provides tests for the Hibernate second-level and query caches of
+ * the JPA storage
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@DirtiesContext
+@PropertySource("classpath:application-test.properties")
+public class WidgetSecondLevelCacheTest {
+    @Autowired
+    private WidgetRepository repository;
+
+    @Autowired
+    private WidgetService widgetService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Test that a widget read again is served from the second-level cache
+     */
+    @Test
+    void findById_cached() {
+        final long boardId = Utils.newBoardId();
+        final Widget widget = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(0).build());
+        repository.findById(widget.getId());
+
+        final long hits = widgetRegionHits();
+        final long fetches = statistics().getEntityLoadCount();
+        assertThat(repository.findById(widget.getId()).get().getZIndex(), is(0));
+
+        assertThat(widgetRegionHits(), is(hits + 1));
+        assertThat(statistics().getEntityLoadCount(), is(fetches));
+    }
+
+    /**
+     * Test that the widgets shifted by a create are not read from the cache with
+     * their previous z-index
+     */
+    @Test
+    void findById_afterShift() {
+        final long boardId = Utils.newBoardId();
+        final Widget bottom = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(5).build());
+        final Widget top = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(6).build());
+        repository.findById(bottom.getId());
+        repository.findById(top.getId());
+
+        widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(5).build());
+
+        assertThat(repository.findById(bottom.getId()).get().getZIndex(), is(6));
+        assertThat(repository.findById(top.getId()).get().getZIndex(), is(7));
+    }
+
+    /**
+     * Test that a page read again is served from the query cache, and that a
+     * write drops it
+     */
+    @Test
+    void getAll_pageCached() {
+        final long boardId = Utils.newBoardId();
+        final Widget first = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(1).build());
+        final Widget second = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(2).build());
+        widgetService.getAll(boardId, 0, 10, "zIndex");
+
+        final long hits = statistics().getQueryCacheHitCount();
+        assertThat(ids(widgetService.getAll(boardId, 0, 10, "zIndex")), is(List.of(first.getId(), second.getId())));
+        assertThat(statistics().getQueryCacheHitCount() > hits, is(true));
+
+        final Widget shifting = widgetService.create(boardId,
+                new Widget.Builder(0, 0, 10, 10).withZIndex(1).build());
+        final List<Widget> page = widgetService.getAll(boardId, 0, 10, "zIndex");
+        assertThat(ids(page), is(List.of(shifting.getId(), first.getId(), second.getId())));
+        assertThat(page.stream().map(Widget::getZIndex).collect(Collectors.toList()), is(List.of(1, 2, 3)));
+    }
+
+    /**
+     * @return The Hibernate statistics
+     */
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * @return The hits of the second-level cache region of the widgets
+     */
+    private long widgetRegionHits() {
+        return statistics().getDomainDataRegionStatistics(SecondLevelCacheConfig.WIDGET_REGION).getHitCount();
+    }
+
+    /**
+     * @param widgets Widgets
+     * @return Their ids, in the same order
+     */
+    private static List<Long> ids(final List<Widget> widgets) {
+        return widgets.stream().map(Widget::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,112 @@
+package com.miro.assignment.repository;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManagerFactory;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetField;
+import com.miro.assignment.domain.WidgetView;
+import com.miro.assignment.service.api.WidgetService;
+import com.miro.assignment.utils.Utils;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * This class provides tests for the projections of the JPA storage: they are
+ * read without loading any widget, and their pages are kept in the query cache
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@DirtiesContext
+@PropertySource("classpath:application-test.properties")
+public class WidgetViewRepositoryTest {
+    @Autowired
+    private WidgetRepository repository;
+
+    @Autowired
+    private WidgetService widgetService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private static final Set<WidgetField> FIELDS = EnumSet.of(WidgetField.ID, WidgetField.Z_INDEX);
+
+    /**
+     * Test that projections only read the fields requested, without loading the
+     * widgets
+     */
+    @Test
+    void findViews_noEntityLoaded() {
+        final long boardId = Utils.newBoardId();
+        final Widget bottom = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(1).build());
+        final Widget top = widgetService.create(boardId, new Widget.Builder(20, 0, 10, 10).withZIndex(2).build());
+
+        final long loads = statistics().getEntityLoadCount();
+        final List<WidgetView> all = repository.findViewsFromZIndex(boardId, Integer.MIN_VALUE, FIELDS,
+                Pageable.unpaged());
+        final List<WidgetView> area = repository.findViewsWithinArea(boardId, 15, 0, 20, 10, FIELDS, scanned -> {
+        });
+
+        assertThat(statistics().getEntityLoadCount(), is(loads));
+        assertThat(ids(all), is(List.of(bottom.getId(), top.getId())));
+        assertThat(all.get(1).getZIndex(), is(2));
+        assertThat(all.get(1).getXCoordinate(), nullValue());
+        assertThat(ids(area), is(List.of(top.getId())));
+    }
+
+    /**
+     * Test that a page read again is served from the query cache, and that a
+     * shift drops it
+     */
+    @Test
+    void findViewsByBoardId_pageCached() {
+        final long boardId = Utils.newBoardId();
+        final Widget first = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(1).build());
+        final Pageable page = PageRequest.of(0, 10, Sort.by("zIndex"));
+        repository.findViewsByBoardId(boardId, FIELDS, page);
+
+        final long hits = statistics().getQueryCacheHitCount();
+        assertThat(ids(repository.findViewsByBoardId(boardId, FIELDS, page)), is(List.of(first.getId())));
+        assertThat(statistics().getQueryCacheHitCount() > hits, is(true));
+
+        final Widget shifting = widgetService.create(boardId,
+                new Widget.Builder(0, 0, 10, 10).withZIndex(1).build());
+        final List<WidgetView> views = repository.findViewsByBoardId(boardId, FIELDS, page);
+        assertThat(ids(views), is(List.of(shifting.getId(), first.getId())));
+        assertThat(views.get(1).getZIndex(), is(2));
+    }
+
+    /**
+     * @return The Hibernate statistics
+     */
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * @param views Projections
+     * @return Their ids, in the same order
+     */
+    private static List<Long> ids(final List<WidgetView> views) {
+        return views.stream().map(WidgetView::getId).collect(Collectors.toList());
+    }
+}
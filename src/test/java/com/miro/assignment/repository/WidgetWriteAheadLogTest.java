@@ -0,0 +1,241 @@
+package com.miro.assignment.repository;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.miro.assignment.AssignmentApplication;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetDelta;
+import com.miro.assignment.domain.WidgetTombstone;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * This class provides tests for the write-ahead log of the in-memory storage,
+ * including the recovery from a crash in the middle of a write
+ */
+public class WidgetWriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Test the logged changes are recovered
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void recover_OK() throws Exception {
+        final Map<Long, Widget> board = new LinkedHashMap<>();
+        final WidgetWriteAheadLog log = start(directory, board);
+        put(log, board, widget(1, 0));
+        put(log, board, widget(2, 1));
+        put(log, board, widget(1, 2));
+        log.append(2L, null);
+        board.remove(2L);
+        log.appendTombstone(new WidgetTombstone(2L, DEFAULT_BOARD_ID, 3L));
+        log.flush();
+        log.close();
+
+        final WidgetWriteAheadLog.Recovery recovery = WidgetWriteAheadLog.read(directory);
+        assertThat(recovery.getWidgets(), is(new ArrayList<>(board.values())));
+        assertThat(recovery.getTombstones(), is(List.of(new WidgetTombstone(2L, DEFAULT_BOARD_ID, 3L))));
+    }
+
+    /**
+     * Test a snapshot replaces the older log, and the log written since is
+     * applied to it
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void recover_OK_fromSnapshot() throws Exception {
+        final Map<Long, Widget> board = new LinkedHashMap<>();
+        final WidgetWriteAheadLog log = start(directory, board);
+        for (int i = 0; i < 100; i++) {
+            put(log, board, widget(i, i));
+        }
+        log.flush();
+        log.snapshot();
+        put(log, board, widget(100, 100));
+        log.append(5L, null);
+        board.remove(5L);
+        log.flush();
+        log.close();
+
+        assertThat(files(directory), is(List.of("3.snapshot", "3.wal")));
+        assertThat(sorted(WidgetWriteAheadLog.read(directory).getWidgets()), is(sorted(board.values())));
+    }
+
+    /**
+     * Test a record cut short at any byte is dropped (with the log truncated
+     * before it), keeping every earlier record, and the log can be appended to
+     * afterwards
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void recover_OK_truncatedMidRecord() throws Exception {
+        final Map<Long, Widget> board = new LinkedHashMap<>();
+        final WidgetWriteAheadLog log = start(directory, board);
+        for (int i = 0; i < 10; i++) {
+            put(log, board, widget(i, i));
+        }
+        log.flush();
+        final long complete = Files.size(directory.resolve("2.wal"));
+        final Widget torn = widget(10, 10);
+        log.append(torn.getId(), torn);
+        log.flush();
+        log.close();
+        final long size = Files.size(directory.resolve("2.wal"));
+
+        for (long cut = complete + 1; cut < size; cut++) {
+            final Path crashed = Files.createDirectories(directory.resolve("crashed-" + cut));
+            Files.copy(directory.resolve("2.snapshot"), crashed.resolve("2.snapshot"));
+            Files.copy(directory.resolve("2.wal"), crashed.resolve("2.wal"));
+            try (FileChannel segment = FileChannel.open(crashed.resolve("2.wal"), StandardOpenOption.WRITE)) {
+                segment.truncate(cut);
+            }
+
+            assertThat(sorted(WidgetWriteAheadLog.read(crashed).getWidgets()), is(sorted(board.values())));
+            assertThat(Files.size(crashed.resolve("2.wal")), is(complete));
+
+            final Map<Long, Widget> recovered = new LinkedHashMap<>(board);
+            final WidgetWriteAheadLog reopened = start(crashed, recovered);
+            put(reopened, recovered, torn);
+            reopened.flush();
+            reopened.close();
+            assertThat(sorted(WidgetWriteAheadLog.read(crashed).getWidgets()), is(sorted(recovered.values())));
+        }
+    }
+
+    /**
+     * Test a record failing its CRC at the end of the log is dropped, and
+     * anywhere else fails the recovery
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void recover_corruptRecord() throws Exception {
+        final Map<Long, Widget> board = new LinkedHashMap<>();
+        final WidgetWriteAheadLog log = start(directory, board);
+        put(log, board, widget(1, 1));
+        log.flush();
+        final long complete = Files.size(directory.resolve("2.wal"));
+        final Widget corrupt = widget(2, 2);
+        log.append(corrupt.getId(), corrupt);
+        log.flush();
+        log.close();
+
+        flipByte(directory.resolve("2.wal"), complete + 12);
+        assertThat(WidgetWriteAheadLog.read(directory).getWidgets(), is(List.of(widget(1, 1))));
+
+        flipByte(directory.resolve("2.wal"), 12);
+        Files.createFile(directory.resolve("3.wal"));
+        assertThrows(IOException.class, () -> WidgetWriteAheadLog.read(directory));
+    }
+
+    /**
+     * Test the application recovers the board, and the tombstones of the delta
+     * sync, after a restart
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void restart_recoversBoard() throws Exception {
+        final List<Widget> board;
+        final long version;
+        try (ConfigurableApplicationContext context = startApplication(directory)) {
+            final WidgetService widgetService = context.getBean(WidgetService.class);
+            version = widgetService.getDelta(DEFAULT_BOARD_ID, null).getVersion();
+            widgetService.create(DEFAULT_BOARD_ID, new Widget.Builder(10, 20, 25, 30).withZIndex(0).build());
+            widgetService.delete(DEFAULT_BOARD_ID, 2L);
+            board = sorted(widgetService.getAll(DEFAULT_BOARD_ID));
+        }
+
+        try (ConfigurableApplicationContext context = startApplication(directory)) {
+            final WidgetService widgetService = context.getBean(WidgetService.class);
+            assertThat(sorted(widgetService.getAll(DEFAULT_BOARD_ID)), is(board));
+
+            final WidgetDelta delta = widgetService.getDelta(DEFAULT_BOARD_ID, version);
+            assertThat(delta.getDeleted(), is(List.of(2L)));
+        }
+    }
+
+    /**
+     * Starts a log as the storage would
+     *
+     * @param directory The log's directory
+     * @param board     The board kept by the storage
+     * @return The log
+     * @throws IOException If the log cannot be recovered
+     */
+    private static WidgetWriteAheadLog start(final Path directory, final Map<Long, Widget> board)
+            throws IOException {
+        final WidgetWriteAheadLog log = new WidgetWriteAheadLog(directory, Duration.ZERO, Duration.ofHours(1));
+        log.recover();
+        log.start(() -> {
+            log.rotate();
+            return new ArrayList<>(board.values());
+        });
+        return log;
+    }
+
+    private static ConfigurableApplicationContext startApplication(final Path directory) {
+        return new SpringApplicationBuilder(AssignmentApplication.class).run("--widget.storage=memory",
+                "--widget.wal.enabled=true", "--widget.wal.directory=" + directory,
+                "--spring.datasource.url=jdbc:h2:mem:wal-restart;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE",
+                "--server.port=0", "--bucket4j.enabled=false", "--spring.cache.type=none");
+    }
+
+    private static void put(final WidgetWriteAheadLog log, final Map<Long, Widget> board, final Widget widget) {
+        log.append(widget.getId(), widget);
+        board.put(widget.getId(), widget);
+    }
+
+    private static Widget widget(final long id, final int zIndex) {
+        final Widget widget = new Widget.Builder((int) id * 10, -(int) id, 100, 50).withZIndex(zIndex).build();
+        widget.setId(id);
+        widget.setVersion(id + 1);
+        widget.setLastModified(LocalDateTime.of(2020, 1, 1, 15, 0, 15, 123_456_789));
+        return widget;
+    }
+
+    private static List<Widget> sorted(final Collection<Widget> widgets) {
+        return widgets.stream().sorted(Comparator.comparing(Widget::getId)).collect(Collectors.toList());
+    }
+
+    private static List<String> files(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(x -> x.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void flipByte(final Path file, final long position) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        bytes[(int) position] ^= 0xFF;
+        Files.write(file, bytes);
+    }
+}
@@ -0,0 +1,129 @@
+package com.miro.assignment.repository;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.miro.assignment.AssignmentApplication;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * This class provides tests for writing the in-memory storage back to the
+ * database. Each test runs its own application on its own database, with
+ * flushes only when asked for.
+ */
+public class WidgetWriteBehindTest {
+
+    /**
+     * Test a flush writes the state of the board, shifted and deleted widgets
+     * included
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void flush_writesBoard() throws Exception {
+        final String url = url("writebehind-flush");
+        try (ConfigurableApplicationContext context = start(url)) {
+            final WidgetService widgetService = context.getBean(WidgetService.class);
+            final WidgetRepository repository = context.getBean(WidgetRepository.class);
+            final int minZIndex = repository.findMinZIndex(DEFAULT_BOARD_ID);
+
+            // Shifts the run at the bottom, twice
+            widgetService.create(DEFAULT_BOARD_ID, new Widget.Builder(10, 20, 25, 30).withZIndex(minZIndex).build());
+            widgetService.create(DEFAULT_BOARD_ID, new Widget.Builder(10, 20, 25, 30).withZIndex(minZIndex).build());
+            widgetService.update(DEFAULT_BOARD_ID, 2L, new Widget.Builder(500, 500, 50, 50).build());
+            widgetService.delete(DEFAULT_BOARD_ID, 3L);
+            assertThat(context.getBean(WidgetWriteBehind.class).getPendingCount() > 0, is(true));
+
+            context.getBean(WidgetWriteBehind.class).flush();
+
+            assertThat(context.getBean(WidgetWriteBehind.class).getPendingCount(), is(0));
+            assertThat(readDatabase(url), is(describe(repository.findAll())));
+        }
+    }
+
+    /**
+     * Test the pending changes are written on shutdown
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void shutdown_flushesPendingChanges() throws Exception {
+        final String url = url("writebehind-shutdown");
+        final List<String> board;
+        try (ConfigurableApplicationContext context = start(url)) {
+            final WidgetService widgetService = context.getBean(WidgetService.class);
+            widgetService.create(DEFAULT_BOARD_ID, new Widget.Builder(10, 20, 25, 30).build());
+            widgetService.delete(DEFAULT_BOARD_ID, 1L);
+            board = describe(context.getBean(WidgetRepository.class).findAll());
+        }
+
+        assertThat(readDatabase(url), is(board));
+    }
+
+    /**
+     * Starts the application on the memory storage with write-behind, without
+     * scheduled flushes. The schema outlives the application.
+     *
+     * @param url The database URL
+     * @return The application context
+     */
+    private static ConfigurableApplicationContext start(final String url) {
+        return new SpringApplicationBuilder(AssignmentApplication.class).run("--widget.storage=memory",
+                "--widget.write-behind.enabled=true", "--widget.write-behind.flush-interval=1h",
+                "--spring.datasource.url=" + url, "--spring.jpa.hibernate.ddl-auto=create", "--server.port=0",
+                "--bucket4j.enabled=false", "--spring.cache.type=none");
+    }
+
+    private static String url(final String database) {
+        return "jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE";
+    }
+
+    /**
+     * Reads the widgets stored in the database
+     *
+     * @param url The database URL
+     * @return A description of each widget, by id
+     * @throws Exception If the database cannot be read
+     */
+    private static List<String> readDatabase(final String url) throws Exception {
+        final List<String> widgets = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+                Statement statement = connection.createStatement();
+                ResultSet rows = statement.executeQuery("SELECT id, x_coordinate, y_coordinate, z_index, width,"
+                        + " height, version FROM widget ORDER BY id")) {
+            while (rows.next()) {
+                widgets.add(describe(rows.getLong(1), rows.getInt(2), rows.getInt(3), rows.getInt(4), rows.getInt(5),
+                        rows.getInt(6), rows.getLong(7)));
+            }
+        }
+        return widgets;
+    }
+
+    private static List<String> describe(final List<Widget> widgets) {
+        return widgets.stream().sorted(Comparator.comparing(Widget::getId))
+                .map(x -> describe(x.getId(), x.getXCoordinate(), x.getYCoordinate(), x.getZIndex(), x.getWidth(),
+                        x.getHeight(), x.getVersion()))
+                .collect(Collectors.toList());
+    }
+
+    private static String describe(final long id, final int xCoordinate, final int yCoordinate, final int zIndex,
+            final int width, final int height, final long version) {
+        return id + ": " + xCoordinate + "," + yCoordinate + " z" + zIndex + " " + width + "x" + height + " v"
+                + version;
+    }
+}
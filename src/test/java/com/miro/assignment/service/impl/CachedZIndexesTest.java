@@ -0,0 +1,47 @@
+package com.miro.assignment.service.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class CachedZIndexesTest {
+
+    /**
+     * Test that the keys found are those of the values holding a z-index within
+     * the range, on the board only
+     */
+    @Test
+    public void testFindBetween() {
+        final CachedZIndexes<String> index = new CachedZIndexes<>();
+        index.index(1, new int[] { 1, 5 }, "a", new Object());
+        index.index(1, new int[] { 3 }, "b", new Object());
+        index.index(1, new int[] { 7, 9 }, "c", new Object());
+        index.index(2, new int[] { 4 }, "d", new Object());
+
+        assertThat(index.findBetween(1, 2, 5), is(Set.of("a", "b")));
+        assertThat(index.findBetween(1, 6, 6), is(Set.of()));
+        assertThat(index.findBetween(1, Integer.MIN_VALUE, Integer.MAX_VALUE), is(Set.of("a", "b", "c")));
+        assertThat(index.findBetween(3, Integer.MIN_VALUE, Integer.MAX_VALUE), is(Set.of()));
+    }
+
+    /**
+     * Test that a value replaced is only unindexed by itself, before or after
+     * the value replacing it was indexed
+     */
+    @Test
+    public void testUnindexReplacedValue() {
+        final CachedZIndexes<String> index = new CachedZIndexes<>();
+        final Object replaced = new Object();
+        final Object value = new Object();
+        index.index(1, new int[] { 3 }, "a", replaced);
+        index.index(1, new int[] { 3 }, "a", value);
+        index.unindex(1, new int[] { 3 }, "a", replaced);
+        assertThat(index.findBetween(1, 3, 3), is(Set.of("a")));
+
+        index.unindex(1, new int[] { 3 }, "a", value);
+        assertThat(index.findBetween(1, 3, 3), is(Set.of()));
+    }
+}
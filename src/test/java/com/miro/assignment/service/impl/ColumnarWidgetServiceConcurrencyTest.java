@@ -0,0 +1,11 @@
+package com.miro.assignment.service.impl;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * This class runs the Widget service concurrency tests against the columnar
+ * in-memory storage
+ */
+@TestPropertySource(properties = "widget.storage=columnar")
+public class ColumnarWidgetServiceConcurrencyTest extends WidgetServiceConcurrencyTest {
+}
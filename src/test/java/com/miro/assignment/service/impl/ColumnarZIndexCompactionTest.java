@@ -0,0 +1,10 @@
+package com.miro.assignment.service.impl;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * This class runs the z-index compaction tests against the columnar in-memory storage
+ */
+@TestPropertySource(properties = "widget.storage=columnar")
+public class ColumnarZIndexCompactionTest extends ZIndexCompactionTest {
+}
@@ -0,0 +1,11 @@
+package com.miro.assignment.service.impl;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * This class runs the Widget service concurrency tests against the in-memory
+ * storage
+ */
+@TestPropertySource(properties = "widget.storage=memory")
+public class InMemoryWidgetServiceConcurrencyTest extends WidgetServiceConcurrencyTest {
+}
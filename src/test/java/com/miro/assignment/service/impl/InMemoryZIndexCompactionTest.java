@@ -0,0 +1,10 @@
+package com.miro.assignment.service.impl;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * This class runs the z-index compaction tests against the in-memory storage
+ */
+@TestPropertySource(properties = "widget.storage=memory")
+public class InMemoryZIndexCompactionTest extends ZIndexCompactionTest {
+}
@@ -0,0 +1,89 @@
+package com.miro.assignment.service.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.service.api.WidgetService;
+import com.miro.assignment.utils.Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class provides tests for the read-only transactions of the JPA storage:
+ * their connections come from the read pool and they never write
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@DirtiesContext
+@PropertySource("classpath:application-test.properties")
+public class ReadOnlyTransactionTest {
+    @Autowired
+    private WidgetService widgetService;
+
+    @Autowired
+    private WidgetRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Test that reads take their connections from the read pool, and writes from
+     * the write pool
+     */
+    @Test
+    void connections_routedByTransaction() {
+        final long boardId = Utils.newBoardId();
+        final long reads = acquired("widget-read");
+        final long writes = acquired("widget-write");
+
+        widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(0).build());
+        assertThat(acquired("widget-read"), is(reads));
+        assertThat(acquired("widget-write") > writes, is(true));
+
+        final long writesAfterCreate = acquired("widget-write");
+        widgetService.getAll(boardId, 0, 10, "zIndex");
+        widgetService.getWidgetsFilteredByArea(boardId, 0, 0, 100, 100);
+        assertThat(acquired("widget-read") > reads, is(true));
+        assertThat(acquired("widget-write"), is(writesAfterCreate));
+    }
+
+    /**
+     * Test that a change to a widget loaded in a read-only transaction is not
+     * flushed
+     */
+    @Test
+    void readOnly_notFlushed() {
+        final long boardId = Utils.newBoardId();
+        final Widget widget = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(0).build());
+
+        final TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> repository.findById(widget.getId()).get().setWidth(500));
+
+        assertThat(repository.findAllByBoardId(boardId).get(0).getWidth(), is(10));
+    }
+
+    /**
+     * @param pool The name of a pool
+     * @return The number of connections taken from the pool
+     */
+    private long acquired(final String pool) {
+        return registry.get("hikaricp.connections.acquire").tag("pool", pool).timer().count();
+    }
+}
@@ -0,0 +1,185 @@
+package com.miro.assignment.service.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetChange;
+import com.miro.assignment.service.api.WidgetChangeListener;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class WidgetChangeFeedTest {
+    private static final int BUFFER_SIZE = 10;
+    private static final int THREADS = 2;
+
+    private final WidgetChangeFeed feed = new WidgetChangeFeed(BUFFER_SIZE, THREADS, Duration.ofMinutes(1));
+
+    /**
+     * A feed with a single thread and a short send timeout
+     */
+    private final WidgetChangeFeed singleThreadFeed = new WidgetChangeFeed(BUFFER_SIZE, 1, Duration.ofMillis(200));
+
+    @AfterEach
+    void shutdown() {
+        feed.shutdown();
+        singleThreadFeed.shutdown();
+    }
+
+    /**
+     * Test that every subscriber receives the changes in publishing order
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    void publish_deliversInOrder() throws InterruptedException {
+        final List<Long> sequences = new CopyOnWriteArrayList<>();
+        final CountDownLatch received = new CountDownLatch(5);
+        feed.subscribe(Widget.DEFAULT_BOARD_ID, new WidgetChangeListener() {
+            @Override
+            public void onChange(final long sequence, final WidgetChange change) {
+                sequences.add(sequence);
+                received.countDown();
+            }
+
+            @Override
+            public void onOverflow() {
+                throw new AssertionError("Unexpected overflow");
+            }
+        });
+
+        for (long id = 1; id <= 5; id++) {
+            feed.publish(deleted(id));
+        }
+
+        assertThat(received.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(sequences, is(List.of(1L, 2L, 3L, 4L, 5L)));
+    }
+
+    /**
+     * Test that a stalled subscriber does not block publishing, is removed once
+     * its buffer is full and is told so, while other subscribers keep receiving
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    void publish_stalledSubscriberOverflows() throws InterruptedException {
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch overflowed = new CountDownLatch(1);
+        feed.subscribe(Widget.DEFAULT_BOARD_ID, new WidgetChangeListener() {
+            @Override
+            public void onChange(final long sequence, final WidgetChange change) {
+                try {
+                    stalled.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onOverflow() {
+                overflowed.countDown();
+            }
+        });
+        final Semaphore received = new Semaphore(0);
+        feed.subscribe(Widget.DEFAULT_BOARD_ID, new WidgetChangeListener() {
+            @Override
+            public void onChange(final long sequence, final WidgetChange change) {
+                received.release();
+            }
+
+            @Override
+            public void onOverflow() {
+                throw new AssertionError("Unexpected overflow");
+            }
+        });
+
+        // More changes than the stalled subscriber can buffer, at the pace of the
+        // other one
+        for (int i = 0; i < BUFFER_SIZE + 2; i++) {
+            feed.publish(WidgetChange.shifted(Widget.DEFAULT_BOARD_ID, i, i, 1));
+            assertThat(received.tryAcquire(5, TimeUnit.SECONDS), is(true));
+        }
+        assertThat(overflowed.getCount(), is(1L));
+
+        stalled.countDown();
+        assertThat(overflowed.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    /**
+     * Test that a subscriber which never returns from a change is removed once
+     * the send timeout elapsed and told so when it returns, while its thread is
+     * replaced for the other subscribers
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    void publish_stuckSubscriberTimesOut() throws InterruptedException {
+        final CountDownLatch stuck = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final CountDownLatch overflowed = new CountDownLatch(1);
+        singleThreadFeed.subscribe(Widget.DEFAULT_BOARD_ID, new WidgetChangeListener() {
+            @Override
+            public void onChange(final long sequence, final WidgetChange change) {
+                stuck.countDown();
+                // Like a blocked socket write, ignores interrupts
+                while (released.getCount() > 0) {
+                    try {
+                        released.await();
+                    } catch (final InterruptedException e) {
+                        // Keep waiting
+                    }
+                }
+            }
+
+            @Override
+            public void onOverflow() {
+                overflowed.countDown();
+            }
+        });
+        singleThreadFeed.publish(deleted(1));
+        assertThat(stuck.await(5, TimeUnit.SECONDS), is(true));
+
+        // Only thread of the pool held by the stuck subscriber
+        final Semaphore received = new Semaphore(0);
+        singleThreadFeed.subscribe(Widget.DEFAULT_BOARD_ID, new WidgetChangeListener() {
+            @Override
+            public void onChange(final long sequence, final WidgetChange change) {
+                received.release();
+            }
+
+            @Override
+            public void onOverflow() {
+                throw new AssertionError("Unexpected overflow");
+            }
+        });
+        for (long id = 2; id < 5; id++) {
+            singleThreadFeed.publish(deleted(id));
+        }
+        assertThat(received.tryAcquire(3, 5, TimeUnit.SECONDS), is(true));
+        assertThat(overflowed.getCount(), is(1L));
+
+        released.countDown();
+        assertThat(overflowed.await(5, TimeUnit.SECONDS), is(true));
+        singleThreadFeed.publish(deleted(5));
+        assertThat(received.tryAcquire(5, TimeUnit.SECONDS), is(true));
+    }
+
+    /**
+     * @param id The id of a widget of the default board
+     * @return The change deleting it
+     */
+    private static WidgetChange deleted(final long id) {
+        final Widget widget = new Widget();
+        widget.setId(id);
+        return WidgetChange.deleted(widget);
+    }
+}
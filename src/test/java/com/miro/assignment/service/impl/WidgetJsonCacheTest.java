@@ -0,0 +1,128 @@
+package com.miro.assignment.service.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.jayway.jsonpath.JsonPath;
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.service.api.WidgetService;
+import com.miro.assignment.utils.Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * This class provides tests for the cache of the JSON of the widgets, used by
+ * the ObjectMapper of the application
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@DirtiesContext
+@PropertySource("classpath:application-test.properties")
+public class WidgetJsonCacheTest {
+    @Autowired
+    private WidgetService widgetService;
+
+    @Autowired
+    private WidgetJsonCache widgetJsonCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Module widgetJsonModule;
+
+    /**
+     * Test that a widget serialized again is copied from the cache, as it was
+     * serialized the first time
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void serialize_cached() throws Exception {
+        final long boardId = Utils.newBoardId();
+        final Widget widget = widgetService.create(boardId, new Widget.Builder(5, 6, 7, 8).withZIndex(3).build());
+        final String json = objectMapper.writeValueAsString(widgetService.find(boardId, widget.getId()));
+
+        final long hits = widgetJsonCache.getStatistics().getHitCount();
+        assertThat(objectMapper.writeValueAsString(widgetService.find(boardId, widget.getId())), is(json));
+        assertThat(widgetJsonCache.getStatistics().getHitCount(), is(hits + 1));
+
+        assertThat(JsonPath.read(json, "$.id"), is(widget.getId().intValue()));
+        assertThat(JsonPath.read(json, "$.xcoordinate"), is(5));
+        assertThat(JsonPath.read(json, "$.zindex"), is(3));
+        assertThat(JsonPath.read(json, "$.boardId"), is((int) boardId));
+    }
+
+    /**
+     * Test that widgets are serialized again once they changed, shifts included
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void serialize_afterShift() throws Exception {
+        final long boardId = Utils.newBoardId();
+        final Widget bottom = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(1).build());
+        final Widget top = widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(2).build());
+        objectMapper.writeValueAsBytes(widgetService.getAll(boardId));
+
+        widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(1).build());
+
+        final String json = objectMapper.writeValueAsString(widgetService.getAll(boardId));
+        assertThat(JsonPath.read(json, "$[*].zindex"), is(List.of(1, 2, 3)));
+        assertThat(JsonPath.read(json, "$[1].id"), is(bottom.getId().intValue()));
+        assertThat(JsonPath.read(json, "$[2].id"), is(top.getId().intValue()));
+    }
+
+    /**
+     * Test that a widget is written as each mapper configures it, whichever
+     * mapper wrote it first
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void serialize_otherMapper() throws Exception {
+        final long boardId = Utils.newBoardId();
+        final Widget widget = widgetService.create(boardId, new Widget.Builder(5, 6, 7, 8).withZIndex(3).build());
+        final ObjectMapper numbersAsStrings = JsonMapper.builder().findAndAddModules().addModule(widgetJsonModule)
+                .enable(JsonWriteFeature.WRITE_NUMBERS_AS_STRINGS).build();
+
+        final String json = objectMapper.writeValueAsString(widget);
+        assertThat(JsonPath.read(numbersAsStrings.writeValueAsString(widget), "$.xcoordinate"), is("5"));
+        assertThat(objectMapper.writeValueAsString(widget), is(json));
+        assertThat(JsonPath.read(json, "$.xcoordinate"), is(5));
+
+        final String indented = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(widget);
+        assertThat(indented.contains("\n  \"xcoordinate\" : 5"), is(true));
+    }
+
+    /**
+     * Test that widgets converted to a tree are not written as raw JSON
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void valueToTree_fields() throws Exception {
+        final long boardId = Utils.newBoardId();
+        final Widget widget = widgetService.create(boardId, new Widget.Builder(1, 2, 3, 4).withZIndex(0).build());
+        objectMapper.writeValueAsBytes(widget);
+
+        final JsonNode tree = objectMapper.valueToTree(widget);
+        final JsonNode written = objectMapper.readTree(objectMapper.writeValueAsBytes(widget));
+        written.fieldNames().forEachRemaining(
+                field -> assertThat(field, tree.get(field).asText(), is(written.get(field).asText())));
+        assertThat(tree.get("height").intValue(), is(4));
+    }
+}
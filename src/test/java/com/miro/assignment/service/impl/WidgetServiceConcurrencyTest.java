@@ -0,0 +1,393 @@
+package com.miro.assignment.service.impl;
+
+import static com.miro.assignment.domain.Widget.DEFAULT_BOARD_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetOperation;
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.service.api.WidgetService;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class provides concurrency tests for the Widget service
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@DirtiesContext
+@PropertySource("classpath:application-test.properties")
+public class WidgetServiceConcurrencyTest {
+    @Autowired
+    private WidgetService widgetService;
+
+    @Autowired
+    private WidgetRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ZIndexLocks zIndexLocks;
+
+    private static final int THREADS = 8;
+    private static final int CREATES_PER_THREAD = 50;
+    private static final int BATCH_SIZE = 10;
+    private static final int WRITES_PER_THREAD = 100;
+    private static final int CONTENDED_Z_INDEXES = 20;
+    private static final long SHIFTED_BOARD_ID = 8000;
+    private static final int SHIFTED_BOARD_SIZE = 200;
+    private static final int SHIFTS = 100;
+    private static final long BATCHED_BOARD_ID = 8001;
+    private static final long ROLLED_BACK_BOARD_ID = 8002;
+    private static final long MOVED_DOWN_BOARD_ID = 8003;
+
+    /**
+     * Test creating Widgets (without z-index) from several threads at once
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void create_concurrentWithoutZIndex() throws Exception {
+        final int minZIndex = repository.findMinZIndex(DEFAULT_BOARD_ID);
+
+        final List<Integer> zIndexes = runConcurrently(() -> {
+            final List<Integer> created = new ArrayList<>();
+            for (int i = 0; i < CREATES_PER_THREAD; i++) {
+                created.add(
+                        widgetService.create(DEFAULT_BOARD_ID, new Widget.Builder(10, 10, 10, 10).build()).getZIndex());
+            }
+            return created;
+        });
+
+        assertUniqueBelow(zIndexes, minZIndex);
+    }
+
+    /**
+     * Test creating Widgets (without z-index) from several threads at once, both
+     * one by one and in batches
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void create_concurrentWithoutZIndex_withBatches() throws Exception {
+        final int minZIndex = repository.findMinZIndex(DEFAULT_BOARD_ID);
+
+        final List<Integer> zIndexes = runConcurrently(() -> {
+            final List<Integer> created = new ArrayList<>();
+            for (int i = 0; i < CREATES_PER_THREAD; i += BATCH_SIZE) {
+                final List<WidgetOperation> operations = new ArrayList<>();
+                for (int j = 0; j < BATCH_SIZE; j++) {
+                    operations.add(WidgetOperation.create(new Widget.Builder(10, 10, 10, 10).build()));
+                }
+                widgetService.applyBatch(DEFAULT_BOARD_ID, operations)
+                        .forEach(widget -> created.add(widget.getZIndex()));
+                created.add(
+                        widgetService.create(DEFAULT_BOARD_ID, new Widget.Builder(10, 10, 10, 10).build()).getZIndex());
+            }
+            return created;
+        });
+
+        assertUniqueBelow(zIndexes, minZIndex);
+    }
+
+    /**
+     * Stress test creating, moving and deleting Widgets from several threads at
+     * once, all of them on a few z-indexes so that most writes shift the same
+     * widgets
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void write_concurrentOverlappingZIndexes() throws Exception {
+        final long count = repository.countByBoardId(DEFAULT_BOARD_ID);
+        final int base = repository.findMaxZIndex(DEFAULT_BOARD_ID) + 1;
+
+        final List<Integer> created = runConcurrently(() -> {
+            final Random random = new Random();
+            final List<Long> ids = new ArrayList<>();
+            int net = 0;
+            for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                final int dice = random.nextInt(10);
+                final int zIndex = base + random.nextInt(CONTENDED_Z_INDEXES);
+                if (dice < 4 || ids.isEmpty()) {
+                    ids.add(widgetService
+                            .create(DEFAULT_BOARD_ID, new Widget.Builder(10, 10, 10, 10).withZIndex(zIndex).build())
+                            .getId());
+                    net++;
+                } else if (dice < 5) {
+                    ids.add(widgetService.create(DEFAULT_BOARD_ID, new Widget.Builder(10, 10, 10, 10).build()).getId());
+                    net++;
+                } else if (dice < 8) {
+                    final Widget moved = new Widget.Builder(20, 20, 20, 20).withZIndex(zIndex).build();
+                    assertThat(widgetService
+                            .update(DEFAULT_BOARD_ID, ids.get(random.nextInt(ids.size())), moved).getZIndex(),
+                            is(zIndex));
+                } else {
+                    widgetService.delete(DEFAULT_BOARD_ID, ids.remove(random.nextInt(ids.size())));
+                    net--;
+                }
+            }
+            return List.of(net);
+        });
+
+        final List<Widget> widgets = repository.findAllByBoardId(DEFAULT_BOARD_ID);
+        assertThat((long) widgets.size(), is(count + created.stream().mapToInt(Integer::intValue).sum()));
+        assertThat(widgets.stream().map(Widget::getZIndex).distinct().count(), is((long) widgets.size()));
+    }
+
+    /**
+     * Test that reads running while a board is shifted over and over never see
+     * it half-shifted: no widget missing, none twice
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void read_concurrentWithShifts() throws Exception {
+        for (int i = 0; i < SHIFTED_BOARD_SIZE; i++) {
+            widgetService.create(SHIFTED_BOARD_ID, new Widget.Builder(10, 10, 10, 10).withZIndex(i).build());
+        }
+
+        final AtomicBoolean shifting = new AtomicBoolean(true);
+        final AtomicInteger threads = new AtomicInteger();
+        final List<Integer> reads = runConcurrently(() -> {
+            if (threads.getAndIncrement() == 0) {
+                // Every create shifts the whole board up
+                for (int i = 0; i < SHIFTS; i++) {
+                    widgetService.create(SHIFTED_BOARD_ID, new Widget.Builder(10, 10, 10, 10).withZIndex(0).build());
+                }
+                shifting.set(false);
+                return List.of();
+            }
+            int lastCount = SHIFTED_BOARD_SIZE;
+            int read = 0;
+            while (shifting.get()) {
+                final List<Widget> widgets = repository.findAllByBoardId(SHIFTED_BOARD_ID);
+                assertThat(widgets.size() >= lastCount, is(true));
+                assertThat(widgets.stream().map(Widget::getId).distinct().count(), is((long) widgets.size()));
+                assertThat(widgets.stream().map(Widget::getZIndex).distinct().count(), is((long) widgets.size()));
+                final long count = repository.countByBoardId(SHIFTED_BOARD_ID);
+                assertThat(count >= widgets.size(), is(true));
+                lastCount = (int) count;
+                read++;
+            }
+            return List.of(read);
+        });
+
+        assertThat(reads.size(), is(THREADS - 1));
+        assertThat(repository.countByBoardId(SHIFTED_BOARD_ID), is((long) SHIFTED_BOARD_SIZE + SHIFTS));
+    }
+
+    /**
+     * Test that reads running while batches are applied to a board see each
+     * batch whole: never the widgets it parked above the others, nor its deletes
+     * without its creates
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void read_concurrentWithBatches() throws Exception {
+        for (int i = 0; i < SHIFTED_BOARD_SIZE; i++) {
+            widgetService.create(BATCHED_BOARD_ID, new Widget.Builder(10, 10, 10, 10).withZIndex(i).build());
+        }
+
+        final AtomicBoolean batching = new AtomicBoolean(true);
+        final AtomicInteger threads = new AtomicInteger();
+        final List<Integer> reads = runConcurrently(() -> {
+            if (threads.getAndIncrement() == 0) {
+                // Each batch deletes the 2 topmost widgets and creates one at the bottom, moving all others up: the
+                // board stays dense from 0
+                for (int i = 0; i < SHIFTED_BOARD_SIZE / 4; i++) {
+                    final List<Widget> widgets = repository.findAllByBoardId(BATCHED_BOARD_ID);
+                    widgetService.applyBatch(BATCHED_BOARD_ID, List.of(
+                            WidgetOperation.delete(widgets.get(widgets.size() - 1).getId()),
+                            WidgetOperation.delete(widgets.get(widgets.size() - 2).getId()),
+                            WidgetOperation.create(new Widget.Builder(10, 10, 10, 10).withZIndex(0).build())));
+                }
+                batching.set(false);
+                return List.of();
+            }
+            int lastCount = SHIFTED_BOARD_SIZE;
+            int read = 0;
+            while (batching.get()) {
+                final List<Integer> zIndexes = repository.findAllByBoardId(BATCHED_BOARD_ID).stream()
+                        .map(Widget::getZIndex).sorted().collect(Collectors.toList());
+                assertThat(zIndexes.size() <= lastCount, is(true));
+                assertThat(zIndexes, is(IntStream.range(0, zIndexes.size()).boxed().collect(Collectors.toList())));
+                lastCount = zIndexes.size();
+                read++;
+            }
+            return List.of(read);
+        });
+
+        assertThat(reads.size(), is(THREADS - 1));
+        assertThat(repository.countByBoardId(BATCHED_BOARD_ID), is((long) SHIFTED_BOARD_SIZE * 3 / 4));
+    }
+
+    /**
+     * Test that the writes of a transaction holding a board are undone when it
+     * rolls back, whatever the storage
+     */
+    @Test
+    void writeAtomically_rolledBack() {
+        final Widget kept = widgetService.create(ROLLED_BACK_BOARD_ID,
+                new Widget.Builder(10, 10, 10, 10).withZIndex(1).build());
+        final Widget deleted = widgetService.create(ROLLED_BACK_BOARD_ID,
+                new Widget.Builder(20, 20, 20, 20).withZIndex(2).build());
+        final List<Widget> before = repository.findAllByBoardId(ROLLED_BACK_BOARD_ID);
+
+        final TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            repository.writeAtomically(ROLLED_BACK_BOARD_ID);
+            repository.deleteById(deleted.getId());
+            repository.shiftZIndexRange(ROLLED_BACK_BOARD_ID, 1, 1, 1, kept.getVersion() + 1);
+            repository.save(new Widget.Builder(30, 30, 30, 30).withBoardId(ROLLED_BACK_BOARD_ID).withZIndex(1)
+                    .build());
+            repository.flush();
+            assertThat(repository.countByBoardId(ROLLED_BACK_BOARD_ID), is(2L));
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.findAllByBoardId(ROLLED_BACK_BOARD_ID), is(before));
+        assertThat(repository.findById(deleted.getId()).isPresent(), is(true));
+    }
+
+    /**
+     * Test that an update waiting for the z-index of its widget while a batch
+     * moves the widget down locks the z-index the widget moved to, until its
+     * transaction completes
+     * 
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void update_widgetMovedDownWhileLocking() throws Exception {
+        final Widget widget = widgetService.create(MOVED_DOWN_BOARD_ID,
+                new Widget.Builder(10, 10, 10, 10).withZIndex(10).build());
+        final Widget movedDown = new Widget();
+        movedDown.setZIndex(-10);
+        final Widget changed = new Widget();
+        changed.setXCoordinate(20);
+
+        final TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        final AtomicReference<Thread> updater = new AtomicReference<>();
+        final CountDownLatch batched = new CountDownLatch(1);
+        final CountDownLatch updated = new CountDownLatch(1);
+        final Semaphore completed = new Semaphore(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // The batch commits once the update waits for the z-index it read
+            final Future<?> batch = executor.submit(() -> transaction.executeWithoutResult(status -> {
+                widgetService.applyBatch(MOVED_DOWN_BOARD_ID,
+                        List.of(WidgetOperation.update(widget.getId(), movedDown)));
+                batched.countDown();
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while ((updater.get() == null || updater.get().getState() != Thread.State.WAITING)
+                        && System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+            }));
+            final Future<?> update = executor.submit(() -> {
+                batched.await();
+                updater.set(Thread.currentThread());
+                transaction.executeWithoutResult(status -> {
+                    widgetService.update(MOVED_DOWN_BOARD_ID, widget.getId(), changed);
+                    updated.countDown();
+                    completed.acquireUninterruptibly();
+                });
+                return null;
+            });
+            assertThat(updated.await(5, TimeUnit.SECONDS), is(true));
+            batch.get();
+
+            final Future<?> lock = executor.submit(() -> transaction
+                    .executeWithoutResult(status -> zIndexLocks.lock(MOVED_DOWN_BOARD_ID, -10, -10)));
+            assertThrows(TimeoutException.class, () -> lock.get(500, TimeUnit.MILLISECONDS));
+            completed.release();
+            update.get();
+            lock.get();
+        } finally {
+            completed.release();
+            executor.shutdown();
+        }
+
+        final Widget stored = widgetService.find(MOVED_DOWN_BOARD_ID, widget.getId());
+        assertThat(stored.getZIndex(), is(-10));
+        assertThat(stored.getXCoordinate(), is(20));
+    }
+
+    /**
+     * Runs a task in several threads, all starting at once
+     * 
+     * @param <T>  The type of the task results
+     * @param task The task
+     * @return The results of all threads
+     * @throws Exception If a task fails
+     */
+    private static <T> List<T> runConcurrently(final Callable<List<T>> task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<List<T>>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+
+            final List<T> values = new ArrayList<>();
+            for (final Future<List<T>> result : results) {
+                values.addAll(result.get());
+            }
+            return values;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks that no two Widgets received the same z-index, all of them below the
+     * Widgets existing before, and that they were stored with it
+     * 
+     * @param zIndexes  The z-indexes received
+     * @param minZIndex The lowest z-index before the Widgets were created
+     */
+    private void assertUniqueBelow(final List<Integer> zIndexes, final int minZIndex) {
+        final Set<Integer> uniqueZIndexes = new HashSet<>(zIndexes);
+        assertThat(uniqueZIndexes.size(), is(zIndexes.size()));
+        assertThat(zIndexes.stream().allMatch(x -> x < minZIndex), is(true));
+        for (final Integer zIndex : zIndexes) {
+            assertThat(repository.existsByZIndex(DEFAULT_BOARD_ID, zIndex), is(true));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.miro.assignment.service.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import com.miro.assignment.domain.Widget;
+import com.miro.assignment.domain.WidgetDelta;
+import com.miro.assignment.domain.WidgetOperation;
+import com.miro.assignment.exception.WidgetNotFoundException;
+import com.miro.assignment.repository.WidgetRepository;
+import com.miro.assignment.service.api.WidgetService;
+import com.miro.assignment.utils.Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * This class provides tests for the background z-index compaction (run on
+ * demand, in chunks of a few widgets)
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@DirtiesContext
+@PropertySource("classpath:application-test.properties")
+@TestPropertySource(properties = { "widget.compaction.enabled=true", "widget.compaction.interval=1h",
+        "widget.compaction.chunk-size=3" })
+public class ZIndexCompactionTest {
+    @Autowired
+    private WidgetService widgetService;
+
+    @Autowired
+    private WidgetRepository repository;
+
+    @Autowired
+    private ZIndexCompaction compaction;
+
+    /**
+     * Test compacting a sparse board near 0: the widgets are centered on 0 in
+     * the same order, and the delta since the compaction has them all
+     */
+    @Test
+    void compact_sparseBoard() {
+        final long boardId = Utils.newBoardId();
+        final List<Long> ids = create(boardId, 0, 10, 11, 12, 20, 100, 1000);
+        final long version = widgetService.getDelta(boardId, null).getVersion();
+
+        assertThat(compaction.compact(boardId), is(7L));
+
+        assertThat(zIndexes(boardId, ids), is(List.of(-3, -2, -1, 0, 1, 2, 3)));
+        final WidgetDelta delta = widgetService.getDelta(boardId, version);
+        assertThat(delta.getWidgets().stream().map(Widget::getId).sorted().collect(Collectors.toList()), is(ids));
+    }
+
+    /**
+     * Test compacting a board whose lowest end is far from 0: the highest
+     * widget keeps its z-index, and creates without a z-index start from the
+     * compacted range
+     */
+    @Test
+    void compact_driftedBoard() {
+        final long boardId = Utils.newBoardId();
+        final List<Long> ids = create(boardId, Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -5000, -10, 50);
+        widgetService.delete(boardId, ids.remove(0));
+
+        assertThat(compaction.compact(boardId), is(3L));
+
+        assertThat(zIndexes(boardId, ids), is(List.of(47, 48, 49, 50)));
+        assertThat(widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).build()).getZIndex(), is(46));
+    }
+
+    /**
+     * Test that only the boards beyond the sparsity or drift thresholds are
+     * compacted
+     */
+    @Test
+    void compactBoards_onlySparseOrDrifted() {
+        final long denseBoardId = Utils.newBoardId();
+        final List<Long> denseIds = create(denseBoardId, 5, 6, 8, 9);
+        final long sparseBoardId = Utils.newBoardId();
+        final List<Long> sparseIds = create(sparseBoardId, 5, 6, 80, 90);
+        final long driftedBoardId = Utils.newBoardId();
+        final List<Long> driftedIds = create(driftedBoardId, Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+
+        compaction.compactBoards();
+
+        assertThat(zIndexes(denseBoardId, denseIds), is(List.of(5, 6, 8, 9)));
+        assertThat(zIndexes(sparseBoardId, sparseIds), is(List.of(-2, -1, 0, 1)));
+        assertThat(zIndexes(driftedBoardId, driftedIds), is(List.of(-1, 0)));
+    }
+
+    /**
+     * Test compacting a board while other threads create widgets on it (which
+     * shift the widgets above them): no z-index is used twice and the widgets
+     * keep their order
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void compact_concurrentWrites() throws Exception {
+        final long boardId = Utils.newBoardId();
+        final int[] zIndexes = new int[60];
+        for (int i = 0; i < zIndexes.length; i++) {
+            zIndexes[i] = i * 10;
+        }
+        final List<Long> ids = create(boardId, zIndexes);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<Long>>> writers = new ArrayList<>();
+            for (int thread = 0; thread < 3; thread++) {
+                final int seed = thread;
+                writers.add(executor.submit(() -> {
+                    final List<Long> created = new ArrayList<>();
+                    for (int i = 0; i < 20; i++) {
+                        created.add(widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10)
+                                .withZIndex((seed * 200 + i * 7) % 600).build()).getId());
+                    }
+                    return created;
+                }));
+            }
+            final Future<Long> compacted = executor.submit(() -> compaction.compact(boardId));
+
+            final List<Long> created = new ArrayList<>();
+            for (final Future<List<Long>> writer : writers) {
+                created.addAll(writer.get());
+            }
+            compacted.get();
+
+            final List<Widget> widgets = repository.findAllByBoardId(boardId);
+            assertThat(widgets.size(), is(ids.size() + created.size()));
+            assertThat(widgets.stream().map(Widget::getZIndex).distinct().count(), is((long) widgets.size()));
+            final List<Long> order = widgets.stream().sorted(Comparator.comparingInt(Widget::getZIndex))
+                    .map(Widget::getId).filter(ids::contains).collect(Collectors.toList());
+            assertThat(order, is(ids));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stress test updating and deleting widgets while batches and compactions
+     * move them down (and up) the z-plane: each write follows its widget until
+     * it is locked, so no update is lost and no z-index is used twice
+     *
+     * @throws Exception If something unexpectedly goes wrong
+     */
+    @Test
+    void compact_concurrentUpdatesAndDeletes() throws Exception {
+        final long boardId = Utils.newBoardId();
+        final int[] zIndexes = new int[60];
+        for (int i = 0; i < zIndexes.length; i++) {
+            zIndexes[i] = i * 10;
+        }
+        final List<Long> ids = create(boardId, zIndexes);
+        final Map<Long, Integer> updated = new ConcurrentHashMap<>();
+        final List<Long> deleted = new ArrayList<>();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            // Each batch moves the topmost widget below all others, which the
+            // compactions then move back towards 0
+            final Future<?> batches = executor.submit(() -> {
+                while (writing.get()) {
+                    final List<Widget> widgets = repository.findAllByBoardId(boardId);
+                    widgets.sort(Comparator.comparingInt(Widget::getZIndex));
+                    final Widget moved = new Widget();
+                    moved.setZIndex(widgets.get(0).getZIndex() - 20);
+                    try {
+                        widgetService.applyBatch(boardId,
+                                List.of(WidgetOperation.update(widgets.get(widgets.size() - 1).getId(), moved)));
+                    } catch (final WidgetNotFoundException e) {
+                        // Deleted meanwhile
+                    }
+                }
+                return null;
+            });
+            final Future<?> compactions = executor.submit(() -> {
+                while (writing.get()) {
+                    compaction.compact(boardId);
+                }
+                return null;
+            });
+
+            // Each writer updates and deletes its own widgets, some of them moved
+            // to another z-index
+            final List<Future<List<Long>>> writers = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                final int seed = thread;
+                writers.add(executor.submit(() -> {
+                    final Random random = new Random(seed);
+                    final List<Long> owned = new ArrayList<>();
+                    for (int i = seed; i < ids.size(); i += 4) {
+                        owned.add(ids.get(i));
+                    }
+                    final List<Long> removed = new ArrayList<>();
+                    for (int i = 1; i <= 200 && !owned.isEmpty(); i++) {
+                        final Long id = owned.get(random.nextInt(owned.size()));
+                        if (random.nextInt(20) == 0) {
+                            widgetService.delete(boardId, id);
+                            owned.remove(id);
+                            updated.remove(id);
+                            removed.add(id);
+                        } else {
+                            final Widget widget = new Widget();
+                            widget.setXCoordinate(i);
+                            if (random.nextBoolean()) {
+                                widget.setZIndex(random.nextInt(700) - 100);
+                            }
+                            widgetService.update(boardId, id, widget);
+                            updated.put(id, i);
+                        }
+                    }
+                    return removed;
+                }));
+            }
+
+            try {
+                for (final Future<List<Long>> writer : writers) {
+                    deleted.addAll(writer.get());
+                }
+            } finally {
+                writing.set(false);
+            }
+            batches.get();
+            compactions.get();
+
+            final List<Widget> widgets = repository.findAllByBoardId(boardId);
+            assertThat(widgets.size(), is(ids.size() - deleted.size()));
+            assertThat(widgets.stream().map(Widget::getZIndex).distinct().count(), is((long) widgets.size()));
+            assertThat(widgets.stream().map(Widget::getId).anyMatch(deleted::contains), is(false));
+            for (final Widget widget : widgets) {
+                assertThat(widget.getXCoordinate(), is(updated.getOrDefault(widget.getId(), 0)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Creates widgets on a board
+     *
+     * @param boardId  The board
+     * @param zIndexes The z-indexes of the widgets
+     * @return The ids of the widgets, in the same order
+     */
+    private List<Long> create(final long boardId, final int... zIndexes) {
+        final List<Long> ids = new ArrayList<>();
+        for (final int zIndex : zIndexes) {
+            ids.add(widgetService.create(boardId, new Widget.Builder(0, 0, 10, 10).withZIndex(zIndex).build())
+                    .getId());
+        }
+        return ids;
+    }
+
+    /**
+     * @param boardId The board
+     * @param ids     The ids of widgets of the board
+     * @return The z-indexes of the widgets, in the same order
+     */
+    private List<Integer> zIndexes(final long boardId, final List<Long> ids) {
+        final Map<Long, Integer> zIndexes = repository.findAllByBoardId(boardId).stream()
+                .collect(Collectors.toMap(Widget::getId, Widget::getZIndex));
+        return ids.stream().map(zIndexes::get).collect(Collectors.toList());
+    }
+}
@@ -1,11 +1,15 @@
 package com.miro.assignment.utils;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * This class provides utility functions
  */
 public final class Utils {
+    private static final AtomicLong NEXT_BOARD_ID = new AtomicLong(1000);
+
     private Utils() {
         // Do not instantiate
     }
@@ -24,4 +28,13 @@ public final class Utils {
             throw new RuntimeException(e);
         }
     }  
+
+    /**
+     * Hands out a board no other test uses, as the database and the in-memory
+     * storages are shared by the tests of every class
+     * @return The id of the board
+     */
+    public static long newBoardId() {
+        return NEXT_BOARD_ID.getAndIncrement();
+    }
 }